@@ -0,0 +1,51 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.cockpit;
+
+import java.util.List;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class BatchPredictionRequestDto {
+
+  protected List<String> processInstanceIds;
+  protected String processDefinitionId;
+  protected String variable;
+
+  public List<String> getProcessInstanceIds() {
+    return processInstanceIds;
+  }
+
+  public void setProcessInstanceIds(List<String> processInstanceIds) {
+    this.processInstanceIds = processInstanceIds;
+  }
+
+  public String getProcessDefinitionId() {
+    return processDefinitionId;
+  }
+
+  public void setProcessDefinitionId(String processDefinitionId) {
+    this.processDefinitionId = processDefinitionId;
+  }
+
+  public String getVariable() {
+    return variable;
+  }
+
+  public void setVariable(String variable) {
+    this.variable = variable;
+  }
+
+}
@@ -12,11 +12,23 @@
  */
 package org.camunda.bpm.slacktime.cockpit;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
 
 import org.camunda.bpm.cockpit.Cockpit;
 import org.camunda.bpm.cockpit.plugin.resource.AbstractCockpitPluginRootResource;
@@ -24,14 +36,11 @@ import org.camunda.bpm.engine.ProcessEngine;
 import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
 import org.camunda.bpm.engine.impl.interceptor.Command;
 import org.camunda.bpm.engine.impl.interceptor.CommandContext;
-import org.camunda.bpm.slacktime.DecisionRepository;
 import org.camunda.bpm.slacktime.Distribution;
-import org.camunda.bpm.slacktime.DistributionSource;
 import org.camunda.bpm.slacktime.Evidence;
 import org.camunda.bpm.slacktime.PredictiveDmnEngine;
 import org.camunda.bpm.slacktime.Predictor;
-import org.camunda.bpm.slacktime.processengine.EngineDecisionRepository;
-import org.camunda.bpm.slacktime.processengine.HistoryDistributionSource;
+import org.camunda.bpm.slacktime.processengine.PredictiveDmnEngines;
 import org.camunda.bpm.slacktime.processengine.ProcessInstanceEvidenceGenerator;
 
 /**
@@ -41,48 +50,164 @@ import org.camunda.bpm.slacktime.processengine.ProcessInstanceEvidenceGenerator;
 @Path("plugin/" + DecisionPredictionCockpitPlugin.ID)
 public class DecisionPredictionPluginRootResource extends AbstractCockpitPluginRootResource {
 
+  protected static final int RETRY_AFTER_SECONDS = 1;
+
   public DecisionPredictionPluginRootResource() {
     super(DecisionPredictionCockpitPlugin.ID);
   }
 
+  /**
+   * Predicts the variable for a process instance. With <code>async=true</code>, the request does not wait
+   * for the predictor to be built but answers with <code>202 Accepted</code> while the build is in progress;
+   * the client is expected to repeat the request. Concurrent requests share a single build in both modes.
+   * The predictor is built by the threads of the prediction engine, see {@link PredictiveDmnEngine#getPredictorAsync(String)};
+   * if its build fails, the failure is returned instead of building the predictor on the request thread.
+   */
   @Path("{engine}/decision/{decisionId}/predict")
   @Produces("application/json")
   @GET
-  public DistributionDto predictDecisionVariable(
+  public Response predictDecisionVariable(
       @PathParam("engine") String processEngineName,
       @PathParam("decisionId") final String decisionId,
       @QueryParam("processInstanceId") final String processInstanceId,
-      @QueryParam("variable") final String variable) {
+      @QueryParam("variable") final String variable,
+      @QueryParam("async") boolean async) {
 
     final ProcessEngine processEngine = Cockpit.getRuntimeDelegate().getProcessEngine(processEngineName);
     ProcessEngineConfigurationImpl engineConfiguration = (ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration();
 
+    final PredictiveDmnEngine predictionEngine = PredictiveDmnEngines.getPredictiveEngine(processEngine);
+
+    final Predictor predictor;
+    if (async) {
+      Future<Predictor> predictorBuild = predictionEngine.getPredictorAsync(decisionId);
+      if (!predictorBuild.isDone()) {
+        return Response.status(Status.ACCEPTED).header("Retry-After", RETRY_AFTER_SECONDS).build();
+      }
+      predictor = getBuiltPredictor(predictorBuild);
+    }
+    else {
+      predictor = predictionEngine.getPredictor(decisionId);
+    }
+
     final ProcessInstanceEvidenceGenerator evidenceGenerator = new ProcessInstanceEvidenceGenerator(processEngine);
+    evidenceGenerator.setMetricsListener(predictionEngine.getMetricsListener());
+
+    Distribution distribution;
+    try {
+      distribution = engineConfiguration.getCommandExecutorTxRequired().execute(new Command<Distribution>() {
+
+        @Override
+        public Distribution execute(CommandContext commandContext) {
+          Evidence evidence = evidenceGenerator.generateEvidence(decisionId, processInstanceId);
+          if (evidence == null) {
+            throw new WebApplicationException(Status.NOT_FOUND);
+          }
+
+          String evaluatingVariable = variable;
+          if (evaluatingVariable == null) {
+            evaluatingVariable = "$rule";
+          }
+
+          // predicting by key treats values of the process instance that the model does not know as not observed
+          return predictionEngine
+              .predict(decisionId, predictor, evaluatingVariable, Collections.singletonMap(processInstanceId, evidence))
+              .get(processInstanceId);
+        }
+
+      });
+    } catch (IllegalArgumentException e) {
+      throw new WebApplicationException(e, Status.BAD_REQUEST);
+    }
 
-    Distribution distribution = engineConfiguration.getCommandExecutorTxRequired().execute(new Command<Distribution>() {
+    return Response.ok(DistributionDto.fromDistribution(variable, distribution)).build();
+  }
 
-      @Override
-      public Distribution execute(CommandContext commandContext) {
-        Evidence evidence = evidenceGenerator.generateEvidence(decisionId, processInstanceId);
+  protected Predictor getBuiltPredictor(Future<Predictor> predictorBuild) {
+    try {
+      return predictorBuild.get();
+    }
+    catch (ExecutionException e) {
+      throw new WebApplicationException(e.getCause(), Status.INTERNAL_SERVER_ERROR);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WebApplicationException(e, Status.SERVICE_UNAVAILABLE);
+    }
+  }
 
-        DecisionRepository decisionRepository = new EngineDecisionRepository(processEngine);
-        DistributionSource distributionSource = new HistoryDistributionSource(processEngine);
+  @Path("{engine}/decision/{decisionId}/predictions")
+  @Produces("application/json")
+  @GET
+  public List<PredictionGroupDto> predictDecisionVariableForProcessDefinition(
+      @PathParam("engine") String processEngineName,
+      @PathParam("decisionId") String decisionId,
+      @QueryParam("processDefinitionId") String processDefinitionId,
+      @QueryParam("variable") String variable) {
 
-        PredictiveDmnEngine predictionEngine = new PredictiveDmnEngine(decisionRepository, distributionSource);
+    BatchPredictionRequestDto request = new BatchPredictionRequestDto();
+    request.setProcessDefinitionId(processDefinitionId);
+    request.setVariable(variable);
 
-        Predictor predictor = predictionEngine.getPredictor(decisionId);
+    return predictDecisionVariableForProcessInstances(processEngineName, decisionId, request);
+  }
 
-        String evaluatingVariable = variable;
-        if (evaluatingVariable == null) {
-          evaluatingVariable = "$rule";
+  /**
+   * Predicts the variable for a list of process instances or all instances of a process definition.
+   * The model is built once and instances with identical evidence share one prediction.
+   */
+  @Path("{engine}/decision/{decisionId}/predictions")
+  @Consumes("application/json")
+  @Produces("application/json")
+  @POST
+  public List<PredictionGroupDto> predictDecisionVariableForProcessInstances(
+      @PathParam("engine") String processEngineName,
+      @PathParam("decisionId") final String decisionId,
+      final BatchPredictionRequestDto request) {
+
+    if (request == null || (request.getProcessInstanceIds() == null && request.getProcessDefinitionId() == null)) {
+      throw new WebApplicationException(Status.BAD_REQUEST);
+    }
+
+    final ProcessEngine processEngine = Cockpit.getRuntimeDelegate().getProcessEngine(processEngineName);
+    ProcessEngineConfigurationImpl engineConfiguration = (ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration();
+
+    final PredictiveDmnEngine predictionEngine = PredictiveDmnEngines.getPredictiveEngine(processEngine);
+    final ProcessInstanceEvidenceGenerator evidenceGenerator = new ProcessInstanceEvidenceGenerator(processEngine);
+    evidenceGenerator.setMetricsListener(predictionEngine.getMetricsListener());
+
+    final String variable = request.getVariable() != null ? request.getVariable() : "$rule";
+
+    Map<List<String>, Distribution> distributions;
+    try {
+      // the model is built outside of the transaction so that the build does not hold a database connection
+      Predictor predictor = predictionEngine.getPredictor(decisionId);
+
+      Map<String, Evidence> evidenceByProcessInstance = engineConfiguration.getCommandExecutorTxRequired().execute(new Command<Map<String, Evidence>>() {
+
+        @Override
+        public Map<String, Evidence> execute(CommandContext commandContext) {
+          if (request.getProcessInstanceIds() != null) {
+            return evidenceGenerator.generateEvidence(decisionId, request.getProcessInstanceIds());
+          }
+          else {
+            return evidenceGenerator.generateEvidenceForProcessDefinition(decisionId, request.getProcessDefinitionId());
+          }
         }
 
-        return predictor.getPosterior(evaluatingVariable, evidence);
-      }
+      });
+
+      distributions = predictionEngine.predictGroups(decisionId, predictor, variable, evidenceByProcessInstance);
+    } catch (IllegalArgumentException e) {
+      throw new WebApplicationException(e, Status.BAD_REQUEST);
+    }
 
-    });
+    List<PredictionGroupDto> predictions = new ArrayList<PredictionGroupDto>();
+    for (Map.Entry<List<String>, Distribution> group : distributions.entrySet()) {
+      predictions.add(PredictionGroupDto.fromDistribution(group.getKey(), variable, group.getValue()));
+    }
 
-    return DistributionDto.fromDistribution(variable, distribution);
+    return predictions;
   }
 
 }
@@ -0,0 +1,54 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.cockpit;
+
+import java.util.List;
+
+import org.camunda.bpm.slacktime.Distribution;
+
+/**
+ * The prediction shared by all process instances with identical evidence.
+ *
+ * @author Thorben Lindhauer
+ *
+ */
+public class PredictionGroupDto {
+
+  protected List<String> processInstanceIds;
+  protected DistributionDto distribution;
+
+  public static PredictionGroupDto fromDistribution(List<String> processInstanceIds, String variable, Distribution distribution) {
+    PredictionGroupDto dto = new PredictionGroupDto();
+    dto.processInstanceIds = processInstanceIds;
+    dto.distribution = DistributionDto.fromDistribution(variable, distribution);
+
+    return dto;
+  }
+
+  public List<String> getProcessInstanceIds() {
+    return processInstanceIds;
+  }
+
+  public void setProcessInstanceIds(List<String> processInstanceIds) {
+    this.processInstanceIds = processInstanceIds;
+  }
+
+  public DistributionDto getDistribution() {
+    return distribution;
+  }
+
+  public void setDistribution(DistributionDto distribution) {
+    this.distribution = distribution;
+  }
+
+}
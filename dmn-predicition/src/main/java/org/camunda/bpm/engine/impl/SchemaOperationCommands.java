@@ -0,0 +1,31 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.engine.impl;
+
+import org.camunda.bpm.engine.impl.interceptor.Command;
+
+/**
+ * Identifies the engine's schema operation commands that are not public. Lives in the package of
+ * the commands and therefore has to be loaded by the same class loader as the process engine.
+ *
+ * @author Thorben Lindhauer
+ */
+public class SchemaOperationCommands {
+
+  /**
+   * @return true if the command is executed when a process engine is closed
+   */
+  public static boolean isProcessEngineClose(Command<?> command) {
+    return command instanceof SchemaOperationProcessEngineClose;
+  }
+}
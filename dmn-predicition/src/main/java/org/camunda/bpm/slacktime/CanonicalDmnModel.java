@@ -13,21 +13,32 @@
 package org.camunda.bpm.slacktime;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import org.camunda.bpm.engine.impl.util.CollectionUtil;
 import org.camunda.bpm.model.dmn.DmnModelInstance;
+import org.camunda.bpm.model.dmn.HitPolicy;
 import org.camunda.bpm.model.dmn.instance.Decision;
 import org.camunda.bpm.model.dmn.instance.DecisionTable;
 import org.camunda.bpm.model.dmn.instance.Input;
 import org.camunda.bpm.model.dmn.instance.InputEntry;
+import org.camunda.bpm.model.dmn.instance.Output;
 import org.camunda.bpm.model.dmn.instance.Rule;
 
 import com.github.thorbenlindhauer.factor.DiscreteFactor;
@@ -47,49 +58,145 @@ public class CanonicalDmnModel {
   protected GraphicalModel<DiscreteFactor> graphicalModel;
   protected VariableIndex variableIndex;
   protected String modelId;
+  protected HitPolicy hitPolicy;
+
+  // factor tables in canonical value order; the rule factor is sparse over the network scope
+  protected Scope networkScope;
+  protected Map<String, double[]> inputTables = new HashMap<String, double[]>();
+  protected RuleFactor ruleFactor;
+
+  // per rule of the target decision, see #getTargetRuleAssignments
+  protected int[][] targetRuleAssignments;
+
+  // inputs that are conditioned on another input, see InputDependencyLearner
+  protected Map<String, String> inputParents = new HashMap<String, String>();
+
+  // outputs are deterministic functions of a rule variable and have their own index, see #getOutputMapping
+  protected VariableIndex outputIndex;
+  protected Map<String, OutputMapping> outputMappings = new LinkedHashMap<String, OutputMapping>();
+
+  // evidence scopes by the set of observed variables, see #getEvidencePattern
+  protected ConcurrentMap<Long, EvidencePattern> evidencePatterns = new ConcurrentHashMap<Long, EvidencePattern>();
 
   public static final String RULE_VARIABLE_NAME = "$rule";
 
+  /**
+   * The maximum number of combinations of rules of a decision requirements graph, since every
+   * required decision may multiply the number of rule factor entries
+   */
+  public static final int MAX_RULE_FACTOR_ENTRIES = 1 << 20;
+
   public static CanonicalDmnModel fromDmnModelInstance(String dmnModelId,
       DmnModelInstance modelInstance, DistributionSource distributionSource) {
-    CanonicalDmnModel model = new CanonicalDmnModel();
-    model.modelId = dmnModelId;
+    return fromDmnModelInstance(dmnModelId, modelInstance, distributionSource, null);
+  }
+
+  /**
+   * @param targetDecisionKey the id of the decision whose rules are the values of {@link #RULE_VARIABLE_NAME}
+   */
+  public static CanonicalDmnModel fromDmnModelInstance(String dmnModelId, DmnModelInstance modelInstance,
+      String targetDecisionKey, DistributionSource distributionSource) {
+    return fromDecisionRequirementsGraph(dmnModelId, new DecisionRequirementsGraph(modelInstance, targetDecisionKey), distributionSource, null, null);
+  }
 
-    Collection<Decision> decisions = modelInstance.getModelElementsByType(Decision.class);
+  /**
+   * The target decision is the decision of the model that no other decision requires,
+   * see {@link DecisionRequirementsGraph}.
+   *
+   * @param metricsListener may be null; is notified of the time spent building the factor tables,
+   *   not including the time the distribution source takes
+   */
+  public static CanonicalDmnModel fromDmnModelInstance(String dmnModelId,
+      DmnModelInstance modelInstance, DistributionSource distributionSource, PredictionMetricsListener metricsListener) {
+    return fromDecisionRequirementsGraph(dmnModelId, new DecisionRequirementsGraph(modelInstance), distributionSource, metricsListener, null);
+  }
 
-    // TODO: handle more than one decision per file
+  /**
+   * @param inputTableExecutor may be null; if set, the distribution of every input is fetched and tabulated
+   *   as a separate task of the executor while the rule factor is assembled, see
+   *   {@link #fromDecisionRequirementsGraph(String, DecisionRequirementsGraph, DistributionSource, PredictionMetricsListener, Executor)}
+   */
+  public static CanonicalDmnModel fromDmnModelInstance(String dmnModelId, DmnModelInstance modelInstance,
+      DistributionSource distributionSource, PredictionMetricsListener metricsListener, Executor inputTableExecutor) {
+    return fromDecisionRequirementsGraph(dmnModelId, new DecisionRequirementsGraph(modelInstance), distributionSource,
+        metricsListener, inputTableExecutor);
+  }
 
-    // TODO: check that at least one decision is present
-    Decision decision = decisions.iterator().next();
+  /**
+   * Compiles the target decision and all decisions it requires into one network. The rule variable
+   * of every required decision becomes a variable of its own (see {@link DecisionRequirementsGraph#getRuleVariable(Decision)})
+   * and inputs that are linked to the output of a required decision are determined by that decision's rules,
+   * so they have no input table. The rule factor then contains one entry per combination of rules
+   * that agree on all shared variables, and a single inference yields the posteriors of all decisions.
+   * A rule whose entry of a linked input is {@link DecisionRequirementsGraph#ANY_VALUE} agrees with every rule
+   * of the required decision. Graphs with more than {@link #MAX_RULE_FACTOR_ENTRIES} combinations are rejected.
+   *
+   * <p>With an executor, the inputs' distributions are requested one by one with
+   * {@link DistributionSource#getDistribution(String, String, VariableIndex)} in parallel tasks, so that
+   * the build waits for the slowest input instead of all of them in sequence. This only pays off for sources
+   * whose lookups per variable are independent; sources that build all distributions in one pass,
+   * like a scan of the history, should be used without an executor.</p>
+   *
+   * @param metricsListener may be null; is notified of the time spent building the factor tables,
+   *   not including the time the distribution source takes
+   * @param inputTableExecutor may be null to fetch all distributions at once in the calling thread
+   */
+  public static CanonicalDmnModel fromDecisionRequirementsGraph(final String dmnModelId,
+      DecisionRequirementsGraph requirementsGraph, final DistributionSource distributionSource,
+      PredictionMetricsListener metricsListener, Executor inputTableExecutor) {
+    long startTime = System.nanoTime();
 
+    CanonicalDmnModel model = new CanonicalDmnModel();
+    model.modelId = dmnModelId;
 
-    Collection<DecisionTable> decisionTables = decision.getChildElementsByType(DecisionTable.class);
-    DecisionTable decisionTable = decisionTables.iterator().next();
+    List<Decision> decisions = requirementsGraph.getDecisions();
+    DecisionTable targetDecisionTable = requirementsGraph.getDecisionTable(requirementsGraph.getTargetDecision());
+    model.hitPolicy = targetDecisionTable.getHitPolicy() != null ? targetDecisionTable.getHitPolicy() : HitPolicy.UNIQUE;
 
-    // TODO: parse outputs and add them as variables
-    Collection<Input> inputs = decisionTable.getInputs();
-    Collection<Rule> rules = decisionTable.getRules();
     TreeSet<String> sortedInputs = new TreeSet<String>();
+    List<String> ruleVariables = new ArrayList<String>();
+    Map<Output, Set<String>> linkedVariablesByOutput = new HashMap<Output, Set<String>>();
 
-    for (Input input : inputs) {
-      sortedInputs.add(input.getLabel());
-    }
-
-    // determine distinct input values
+    // determine distinct input values; linked inputs can also take the output values of the required decision
     Map<String, Set<String>> variableValuesByName = new HashMap<String, Set<String>>();
-    for (Rule rule : rules) {
-      Iterator<Input> inputIt = inputs.iterator();
-      Iterator<InputEntry> inputEntryIt = rule.getInputEntries().iterator();
+    for (Decision decision : decisions) {
+      DecisionTable decisionTable = requirementsGraph.getDecisionTable(decision);
+      Collection<Input> inputs = decisionTable.getInputs();
+      String ruleVariable = requirementsGraph.getRuleVariable(decision);
+      ruleVariables.add(ruleVariable);
+
+      for (Input input : inputs) {
+        sortedInputs.add(input.getLabel());
+
+        Output linkedOutput = requirementsGraph.getLinkedOutput(input);
+        if (linkedOutput != null) {
+          CollectionUtil.addToMapOfSets(linkedVariablesByOutput, linkedOutput, input.getLabel());
+
+          for (Rule requiredRule : ((DecisionTable) linkedOutput.getParentElement()).getRules()) {
+            String outputValue = requirementsGraph.getOutputEntry(requiredRule, linkedOutput);
+            if (outputValue != null) {
+              CollectionUtil.addToMapOfSets(variableValuesByName, input.getLabel(), outputValue);
+            }
+          }
+        }
+      }
 
-      while (inputIt.hasNext() && inputEntryIt.hasNext()) {
-        Input input = inputIt.next();
-        InputEntry inputEntry = inputEntryIt.next();
-        String inputValue = inputEntry.getTextContent();
+      for (Rule rule : decisionTable.getRules()) {
+        Iterator<Input> inputIt = inputs.iterator();
+        Iterator<InputEntry> inputEntryIt = rule.getInputEntries().iterator();
 
-        CollectionUtil.addToMapOfSets(variableValuesByName, input.getLabel(), inputValue);
-      }
+        while (inputIt.hasNext() && inputEntryIt.hasNext()) {
+          Input input = inputIt.next();
+          InputEntry inputEntry = inputEntryIt.next();
+          String inputValue = inputEntry.getTextContent();
+
+          if (!requirementsGraph.isAnyValue(input, inputValue)) {
+            CollectionUtil.addToMapOfSets(variableValuesByName, input.getLabel(), inputValue);
+          }
+        }
 
-      CollectionUtil.addToMapOfSets(variableValuesByName, RULE_VARIABLE_NAME, rule.getId());
+        CollectionUtil.addToMapOfSets(variableValuesByName, ruleVariable, rule.getId());
+      }
     }
 
     // order input values canonically
@@ -106,76 +213,485 @@ public class CanonicalDmnModel {
       scopeBuilder.discreteVariable(input, variableValuesByName.get(input).size());
     }
 
-    scopeBuilder.discreteVariable(RULE_VARIABLE_NAME, rules.size());
+    for (String ruleVariable : ruleVariables) {
+      scopeBuilder.discreteVariable(ruleVariable, variableValuesByName.get(ruleVariable).size());
+    }
     Scope networkScope = scopeBuilder.buildScope();
+    model.networkScope = networkScope;
 
-    ModelBuilder<DiscreteFactor, DiscreteFactorBuilder<DiscreteModelBuilder>> networkBuilder =
-        scopeBuilder.discreteNetwork();
+    // build distributions P(A) where A is an input that no required decision determines
+    Set<String> linkedVariables = requirementsGraph.getLinkedVariables();
+    List<String> independentInputs = new ArrayList<String>();
+    for (String input : sortedInputs) {
+      if (!linkedVariables.contains(input)) {
+        independentInputs.add(input);
+      }
+    }
+
+    long distributionTime = 0L;
+    Map<String, FutureTask<double[]>> inputTableTasks = new LinkedHashMap<String, FutureTask<double[]>>();
+    if (inputTableExecutor != null) {
+      final VariableIndex variableIndex = model.variableIndex;
+      for (final String input : independentInputs) {
+        final List<String> sortedValues = sortedVariableValues.get(input);
+        FutureTask<double[]> inputTableTask = new FutureTask<double[]>(new Callable<double[]>() {
+          public double[] call() {
+            return toInputTable(sortedValues, distributionSource.getDistribution(dmnModelId, input, variableIndex));
+          }
+        });
+        inputTableExecutor.execute(inputTableTask);
+        inputTableTasks.put(input, inputTableTask);
+      }
+    }
+    else {
+      long distributionStartTime = System.nanoTime();
+      Map<String, Distribution> distributions = distributionSource.getDistributions(dmnModelId, model.variableIndex);
+      distributionTime = System.nanoTime() - distributionStartTime;
+
+      for (String input : independentInputs) {
+        model.inputTables.put(input, toInputTable(sortedVariableValues.get(input), distributions.get(input)));
+      }
+    }
+
+    // build distribution P(all rules | all inputs) with one entry per consistent combination of rules
+    String[] networkVariables = networkScope.getVariableIds();
+    List<int[][]> ruleAssignments = new ArrayList<int[][]>();
+    for (Decision decision : decisions) {
+      ruleAssignments.add(toRuleAssignments(model.variableIndex, requirementsGraph, decision, networkVariables, linkedVariablesByOutput));
+    }
+
+    RuleFactor ruleFactor = new RuleFactor(networkScope);
+    int[] assignment = new int[networkVariables.length];
+    Arrays.fill(assignment, VariableIndex.UNKNOWN);
+    joinRuleAssignments(ruleAssignments, 0, assignment, ruleFactor, MAX_RULE_FACTOR_ENTRIES);
+
+    model.ruleFactor = ruleFactor;
+    model.targetRuleAssignments = ruleAssignments.get(ruleAssignments.size() - 1);
+
+    buildOutputMappings(model, requirementsGraph);
+
+    if (!inputTableTasks.isEmpty()) {
+      long distributionStartTime = System.nanoTime();
+      for (Map.Entry<String, FutureTask<double[]>> inputTableTask : inputTableTasks.entrySet()) {
+        model.inputTables.put(inputTableTask.getKey(), awaitInputTable(dmnModelId, inputTableTask.getValue()));
+      }
+      distributionTime = System.nanoTime() - distributionStartTime;
+    }
+
+    if (metricsListener != null) {
+      metricsListener.phaseCompleted(dmnModelId, PredictionPhase.MODEL_BUILDING, System.nanoTime() - startTime - distributionTime);
+      metricsListener.counterIncremented(dmnModelId, PredictionCounter.FACTOR_TABLE_ENTRIES, model.getNumFactorEntries());
+    }
+
+    return model;
+  }
+
+  /**
+   * @param sortedValues the values of the input in canonical order
+   * @param distribution may be null since sources may omit variables they know nothing about
+   */
+  protected static double[] toInputTable(List<String> sortedValues, Distribution distribution) {
+    double[] table = new double[sortedValues.size()];
+
+    int i = 0;
+    for (String inputValue : sortedValues) {
+      table[i] = distribution != null ? distribution.getProbability(inputValue) : 1.0d / sortedValues.size();
+      i++;
+    }
 
-    // build distributions P(A) where A is an input
-    for (Input input : inputs) {
-      Distribution distribution = distributionSource.getDistribution(dmnModelId, input.getLabel(), model.variableIndex);
+    return table;
+  }
 
-      // values in canonical order
-      List<String> sortedValues = sortedVariableValues.get(input.getLabel());
-      double[] table = new double[sortedValues.size()];
+  protected static double[] awaitInputTable(String dmnModelId, FutureTask<double[]> inputTableTask) {
+    boolean interrupted = false;
+
+    try {
+      while (true) {
+        try {
+          return inputTableTask.get();
+        }
+        catch (InterruptedException e) {
+          interrupted = true;
+        }
+        catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          else {
+            throw new IllegalStateException("Could not build input distribution of decision " + dmnModelId, cause);
+          }
+        }
+      }
+    }
+    finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
 
-      int i = 0;
-      for (String inputValue : sortedValues) {
-        table[i] = distribution.getProbability(inputValue);
-        i++;
+  /**
+   * Outputs are not part of the network but deterministic functions of their decision's rule variable.
+   * Outputs that are linked to an input of another decision are already network variables
+   * and an output whose name is taken keeps the first definition.
+   */
+  protected static void buildOutputMappings(CanonicalDmnModel model, DecisionRequirementsGraph requirementsGraph) {
+    Set<String> networkVariables = new HashSet<String>(Arrays.asList(model.networkScope.getVariableIds()));
+    Map<String, String> ruleVariablesByOutput = new LinkedHashMap<String, String>();
+    Map<String, Map<String, String>> outputValuesByRule = new HashMap<String, Map<String, String>>();
+    Map<String, Set<String>> outputValues = new HashMap<String, Set<String>>();
+
+    for (Decision decision : requirementsGraph.getDecisions()) {
+      DecisionTable decisionTable = requirementsGraph.getDecisionTable(decision);
+
+      for (Output output : decisionTable.getOutputs()) {
+        String outputVariable = requirementsGraph.getOutputVariable(output);
+        if (networkVariables.contains(outputVariable) || ruleVariablesByOutput.containsKey(outputVariable)) {
+          continue;
+        }
+        ruleVariablesByOutput.put(outputVariable, requirementsGraph.getRuleVariable(decision));
+
+        Map<String, String> valuesByRule = new HashMap<String, String>();
+        for (Rule rule : decisionTable.getRules()) {
+          String outputValue = requirementsGraph.getOutputEntry(rule, output);
+          if (outputValue == null) {
+            outputValue = "";
+          }
+          valuesByRule.put(rule.getId(), outputValue);
+          CollectionUtil.addToMapOfSets(outputValues, outputVariable, outputValue);
+        }
+        outputValuesByRule.put(outputVariable, valuesByRule);
       }
+    }
 
-      networkBuilder = networkBuilder
-        .factor()
-        .scope(input.getLabel())
-        .basedOnTable(table);
+    Map<String, List<String>> sortedOutputValues = new HashMap<String, List<String>>();
+    for (String outputVariable : ruleVariablesByOutput.keySet()) {
+      List<String> sortedValuesForOutput = new ArrayList<String>(outputValues.get(outputVariable));
+      Collections.sort(sortedValuesForOutput);
+      sortedOutputValues.put(outputVariable, sortedValuesForOutput);
     }
+    model.outputIndex = new VariableIndex(sortedOutputValues);
+
+    for (Map.Entry<String, String> ruleVariableByOutput : ruleVariablesByOutput.entrySet()) {
+      String outputVariable = ruleVariableByOutput.getKey();
+      String ruleVariable = ruleVariableByOutput.getValue();
+      int ruleCode = model.variableIndex.getVariableCode(ruleVariable);
+
+      int[] outputValueCodes = new int[model.variableIndex.getCardinality(ruleCode)];
+      for (Map.Entry<String, String> outputValueByRule : outputValuesByRule.get(outputVariable).entrySet()) {
+        int ruleValueCode = model.variableIndex.getIndex(ruleCode, outputValueByRule.getKey());
+        outputValueCodes[ruleValueCode] = model.outputIndex.getIndex(outputVariable, outputValueByRule.getValue());
+      }
 
-    // build distribution P($rule | all inputs)
-    DiscreteFactorBuilder<DiscreteModelBuilder> ruleFactorBuilder = networkBuilder.factor()
-        .scope(RULE_VARIABLE_NAME);
-    for (Input input : inputs) {
-      ruleFactorBuilder = ruleFactorBuilder.scope(input.getLabel());
+      model.outputMappings.put(outputVariable,
+          new OutputMapping(outputVariable, ruleVariable, outputValueCodes, model.outputIndex.getCardinality(outputVariable)));
     }
+  }
+
+  /**
+   * @return per rule of the decision, the value codes it implies in network scope order: its input entries,
+   *   its rule id and the output entries of linked inputs; all other positions, including linked inputs
+   *   that match any value, are {@link VariableIndex#UNKNOWN}
+   */
+  protected static int[][] toRuleAssignments(VariableIndex variableIndex, DecisionRequirementsGraph requirementsGraph,
+      Decision decision, String[] networkVariables, Map<Output, Set<String>> linkedVariablesByOutput) {
+    DecisionTable decisionTable = requirementsGraph.getDecisionTable(decision);
+    Collection<Input> inputs = decisionTable.getInputs();
+    Collection<Rule> rules = decisionTable.getRules();
 
-    ProbabilityTableBuilder tableBuilder = new ProbabilityTableBuilder(networkScope, model.variableIndex);
+    String ruleVariable = requirementsGraph.getRuleVariable(decision);
+    int rulePosition = InferenceUtil.indexOf(networkVariables, ruleVariable);
+    int ruleCode = variableIndex.getVariableCode(ruleVariable);
 
+    int[][] ruleAssignments = new int[rules.size()][];
+    int ruleNumber = 0;
     for (Rule rule : rules) {
-      Map<String, String> inputAssignment = new HashMap<String, String>();
-      inputAssignment.put(RULE_VARIABLE_NAME, rule.getId());
+      int[] assignment = new int[networkVariables.length];
+      Arrays.fill(assignment, VariableIndex.UNKNOWN);
+      assignment[rulePosition] = variableIndex.getIndex(ruleCode, rule.getId());
 
       Iterator<Input> inputIt = inputs.iterator();
       Iterator<InputEntry> inputEntryIt = rule.getInputEntries().iterator();
-
       while (inputIt.hasNext() && inputEntryIt.hasNext()) {
-        inputAssignment.put(inputIt.next().getLabel(), inputEntryIt.next().getTextContent());
+        Input input = inputIt.next();
+        String inputValue = inputEntryIt.next().getTextContent();
+        if (!requirementsGraph.isAnyValue(input, inputValue)) {
+          String variable = input.getLabel();
+          assignment[InferenceUtil.indexOf(networkVariables, variable)] = variableIndex.getIndex(variable, inputValue);
+        }
       }
 
-      tableBuilder.submitValue(inputAssignment, 1.0d);
+      for (Output output : decisionTable.getOutputs()) {
+        Set<String> linkedVariables = linkedVariablesByOutput.get(output);
+        String outputValue = requirementsGraph.getOutputEntry(rule, output);
+        if (linkedVariables != null && outputValue != null) {
+          for (String linkedVariable : linkedVariables) {
+            assignment[InferenceUtil.indexOf(networkVariables, linkedVariable)] = variableIndex.getIndex(linkedVariable, outputValue);
+          }
+        }
+      }
+
+      ruleAssignments[ruleNumber] = assignment;
+      ruleNumber++;
     }
 
-    networkBuilder = ruleFactorBuilder.basedOnTable(tableBuilder.getTable());
+    return ruleAssignments;
+  }
+
+  /**
+   * Adds an entry for every combination of one rule per decision whose assignments agree
+   * on all variables they share. Variables that no rule assigns default to their first value.
+   *
+   * @throws IllegalArgumentException if there are more than maxEntries combinations
+   */
+  protected static void joinRuleAssignments(List<int[][]> ruleAssignments, int decision, int[] assignment,
+      RuleFactor ruleFactor, int maxEntries) {
+    if (decision == ruleAssignments.size()) {
+      if (ruleFactor.getNumEntries() >= maxEntries) {
+        throw new IllegalArgumentException("The decisions combine to more than " + maxEntries + " rule combinations");
+      }
 
-    model.graphicalModel = networkBuilder.build();
+      int[] entry = assignment.clone();
+      for (int i = 0; i < entry.length; i++) {
+        if (entry[i] == VariableIndex.UNKNOWN) {
+          entry[i] = 0;
+        }
+      }
+      ruleFactor.addEntry(entry, 1.0d);
+      return;
+    }
 
-    return model;
+    int[] joinedAssignment = new int[assignment.length];
+    for (int[] ruleAssignment : ruleAssignments.get(decision)) {
+      if (join(assignment, ruleAssignment, joinedAssignment)) {
+        joinRuleAssignments(ruleAssignments, decision + 1, joinedAssignment.clone(), ruleFactor, maxEntries);
+      }
+    }
+  }
+
+  protected static boolean join(int[] assignment, int[] ruleAssignment, int[] joinedAssignment) {
+    for (int i = 0; i < assignment.length; i++) {
+      if (assignment[i] == VariableIndex.UNKNOWN) {
+        joinedAssignment[i] = ruleAssignment[i];
+      }
+      else if (ruleAssignment[i] == VariableIndex.UNKNOWN || ruleAssignment[i] == assignment[i]) {
+        joinedAssignment[i] = assignment[i];
+      }
+      else {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public String getModelId() {
+    return modelId;
+  }
+
+  public HitPolicy getHitPolicy() {
+    return hitPolicy;
+  }
+
+  public Scope getNetworkScope() {
+    return networkScope;
+  }
+
+  public VariableIndex getVariableIndex() {
+    return variableIndex;
+  }
+
+  /**
+   * @return P(A) in canonical value order or null if the variable is not an input, is
+   *   determined by a required decision or is conditioned on another input
+   */
+  public double[] getInputTable(String variable) {
+    return inputTables.get(variable);
+  }
+
+  /**
+   * @return the input the variable is conditioned on or null if it is independent of the other inputs
+   */
+  public String getInputParent(String variable) {
+    return inputParents.get(variable);
+  }
+
+  /**
+   * @return P($rule | all inputs) with one entry per rule; for a decision requirements graph,
+   *   the joint factor of all rule variables with one entry per consistent combination of rules
+   */
+  public RuleFactor getRuleFactor() {
+    return ruleFactor;
+  }
+
+  /**
+   * The decision history only records the rules of the target decision, so counts of the
+   * history are to be attributed with these assignments rather than with the entries of the rule factor,
+   * which may contain a target rule several times in a decision requirements graph.
+   *
+   * @return per rule of the target decision, the value codes of its input entries and its rule id
+   *   in network scope order; all other positions are {@link VariableIndex#UNKNOWN}
+   */
+  public int[][] getTargetRuleAssignments() {
+    return targetRuleAssignments;
+  }
+
+  /**
+   * @return the mapping of a rule variable's values to the output's values or null if the variable is no output
+   */
+  public OutputMapping getOutputMapping(String variable) {
+    return outputMappings.get(variable);
+  }
+
+  public Collection<OutputMapping> getOutputMappings() {
+    return outputMappings.values();
+  }
+
+  /**
+   * @return the values of all outputs in canonical order; outputs cannot be observed as evidence
+   */
+  public VariableIndex getOutputIndex() {
+    return outputIndex;
+  }
+
+  /**
+   * @return the number of entries of all input tables and the rule factor
+   */
+  public long getNumFactorEntries() {
+    long numEntries = ruleFactor.getNumEntries();
+    for (double[] inputTable : inputTables.values()) {
+      numEntries += inputTable.length;
+    }
+    return numEntries;
+  }
+
+  /**
+   * The graphical model requires a dense rule factor and is therefore only built
+   * on first access, i.e. if an inference method based on it is used.
+   */
+  public synchronized GraphicalModel<DiscreteFactor> getGraphicalModel() {
+    if (graphicalModel == null) {
+      graphicalModel = buildGraphicalModel();
+    }
+    return graphicalModel;
+  }
+
+  protected GraphicalModel<DiscreteFactor> buildGraphicalModel() {
+    String[] networkVariables = networkScope.getVariableIds();
+
+    ScopeBuilder scopeBuilder = GraphicalModel.create();
+    for (String variable : networkVariables) {
+      scopeBuilder.discreteVariable(variable, variableIndex.getCardinality(variable));
+    }
+
+    ModelBuilder<DiscreteFactor, DiscreteFactorBuilder<DiscreteModelBuilder>> networkBuilder =
+        scopeBuilder.discreteNetwork();
+
+    for (String variable : networkVariables) {
+      double[] inputTable = inputTables.get(variable);
+      if (inputTable != null) {
+        networkBuilder = networkBuilder
+          .factor()
+          .scope(variable)
+          .basedOnTable(inputTable);
+      }
+    }
+
+    DiscreteFactorBuilder<DiscreteModelBuilder> ruleFactorBuilder = networkBuilder.factor();
+    for (String variable : networkVariables) {
+      ruleFactorBuilder = ruleFactorBuilder.scope(variable);
+    }
+
+    return ruleFactorBuilder.basedOnTable(ruleFactor.toDenseTable(variableIndex)).build();
+  }
+
+  public EncodedEvidence encode(Evidence evidence) {
+    return variableIndex.encode(evidence);
+  }
+
+  public EncodedEvidence encode(Evidence evidence, boolean ignoreUnknown) {
+    return variableIndex.encode(evidence, ignoreUnknown);
   }
 
   public Scope toScope(Evidence evidence) {
-    return graphicalModel.getScope().subScope(evidence.getVariables());
+    return toScope(encode(evidence));
+  }
+
+  public Scope toScope(EncodedEvidence evidence) {
+    return getEvidencePattern(evidence).scope;
   }
 
   public int[] toCanonicalAssignment(Evidence evidence) {
-    Scope evidenceScope = toScope(evidence);
-    int[] assignment = new int[evidenceScope.size()];
-    String[] scopeVariables = evidenceScope.getVariableIds();
+    return toCanonicalAssignment(encode(evidence));
+  }
 
-    for (int i = 0; i < scopeVariables.length; i++) {
-      String variable = scopeVariables[i];
-      assignment[i] = variableIndex.getIndex(variable, evidence.getVariableAssignment(variable));
+  /**
+   * @return the value codes of the observed variables in the order of {@link #toScope(EncodedEvidence)}
+   */
+  public int[] toCanonicalAssignment(EncodedEvidence evidence) {
+    int[] variableCodes = getEvidencePattern(evidence).variableCodes;
+    int[] assignment = new int[variableCodes.length];
+
+    for (int i = 0; i < variableCodes.length; i++) {
+      assignment[i] = evidence.getValueCode(variableCodes[i]);
     }
 
     return assignment;
   }
+
+  /**
+   * Evidence scopes only depend on which variables are observed, so they are built
+   * once per observation pattern as long as the pattern fits into a bit mask.
+   */
+  protected EvidencePattern getEvidencePattern(EncodedEvidence evidence) {
+    int numVariables = evidence.getNumVariables();
+    if (numVariables > Long.SIZE) {
+      return createEvidencePattern(evidence);
+    }
+
+    long observationMask = 0L;
+    for (int i = 0; i < numVariables; i++) {
+      if (evidence.isObserved(i)) {
+        observationMask |= 1L << i;
+      }
+    }
+
+    EvidencePattern pattern = evidencePatterns.get(observationMask);
+    if (pattern == null) {
+      pattern = createEvidencePattern(evidence);
+      evidencePatterns.putIfAbsent(observationMask, pattern);
+    }
+
+    return pattern;
+  }
+
+  protected EvidencePattern createEvidencePattern(EncodedEvidence evidence) {
+    String[] observedVariables = new String[evidence.getNumObservedVariables()];
+    int observedVariable = 0;
+    for (int i = 0; i < evidence.getNumVariables(); i++) {
+      if (evidence.isObserved(i)) {
+        observedVariables[observedVariable] = variableIndex.getVariable(i);
+        observedVariable++;
+      }
+    }
+
+    EvidencePattern pattern = new EvidencePattern();
+    pattern.scope = networkScope.subScope(observedVariables);
+
+    String[] scopeVariables = pattern.scope.getVariableIds();
+    pattern.variableCodes = new int[scopeVariables.length];
+    for (int i = 0; i < scopeVariables.length; i++) {
+      pattern.variableCodes[i] = variableIndex.getVariableCode(scopeVariables[i]);
+    }
+
+    return pattern;
+  }
+
+  protected static class EvidencePattern {
+    protected Scope scope;
+    protected int[] variableCodes;
+  }
 }
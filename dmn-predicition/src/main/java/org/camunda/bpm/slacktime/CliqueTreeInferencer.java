@@ -0,0 +1,129 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.thorbenlindhauer.variable.Scope;
+
+/**
+ * Clique tree inferencer that is compiled once per model and then answers queries
+ * for arbitrary evidence.
+ *
+ * <p>Since P($rule | all inputs) spans every variable of a {@link CanonicalDmnModel},
+ * its clique tree consists of a single clique over the network scope. Compilation multiplies
+ * all factors into the potential of that clique once and keeps only its non-zero entries, so
+ * the calibrated belief is available without further message passing. Evidence is incorporated by
+ * restricting the belief to consistent entries, which yields the marginals of every variable in
+ * one sweep that is linear in the number of non-zero entries.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class CliqueTreeInferencer implements PosteriorInferencer {
+
+  protected String[] variables;
+  protected int[] cardinalities;
+
+  // non-zero entries of the calibrated clique belief
+  protected int[][] entryAssignments;
+  protected double[] entryValues;
+
+  public CliqueTreeInferencer(CanonicalDmnModel model) {
+    Scope networkScope = model.getNetworkScope();
+    this.variables = networkScope.getVariableIds();
+    this.cardinalities = new int[variables.length];
+
+    double[][] inputTables = new double[variables.length][];
+    for (int i = 0; i < variables.length; i++) {
+      cardinalities[i] = model.getVariableIndex().getCardinality(variables[i]);
+      inputTables[i] = model.getInputTable(variables[i]);
+    }
+
+    compile(model.getRuleFactor(), inputTables);
+  }
+
+  protected void compile(RuleFactor ruleFactor, double[][] inputTables) {
+    List<int[]> assignments = new ArrayList<int[]>();
+    List<Double> values = new ArrayList<Double>();
+
+    // the clique potential is non-zero only where the sparse rule factor is
+    for (int entry = 0; entry < ruleFactor.getNumEntries(); entry++) {
+      int[] assignment = ruleFactor.getAssignment(entry);
+      double value = ruleFactor.getValue(entry);
+
+      for (int i = 0; i < variables.length && value != 0.0d; i++) {
+        if (inputTables[i] != null) {
+          value *= inputTables[i][assignment[i]];
+        }
+      }
+
+      if (value != 0.0d) {
+        assignments.add(assignment);
+        values.add(value);
+      }
+    }
+
+    entryAssignments = assignments.toArray(new int[assignments.size()][]);
+    entryValues = new double[values.size()];
+    for (int i = 0; i < entryValues.length; i++) {
+      entryValues[i] = values.get(i);
+    }
+  }
+
+  public double[] getPosterior(String variable, Scope evidenceScope, int[] evidenceAssignment) {
+    return getPosteriors(evidenceScope, evidenceAssignment).get(variable);
+  }
+
+  public Map<String, double[]> getPosteriors(Scope evidenceScope, int[] evidenceAssignment) {
+    String[] evidenceVariables = evidenceScope.getVariableIds();
+    int[] evidencePositions = new int[evidenceVariables.length];
+    for (int i = 0; i < evidenceVariables.length; i++) {
+      evidencePositions[i] = InferenceUtil.indexOf(variables, evidenceVariables[i]);
+    }
+
+    double[][] marginals = new double[variables.length][];
+    for (int i = 0; i < variables.length; i++) {
+      marginals[i] = new double[cardinalities[i]];
+    }
+
+    for (int entry = 0; entry < entryAssignments.length; entry++) {
+      int[] assignment = entryAssignments[entry];
+
+      if (isConsistent(assignment, evidencePositions, evidenceAssignment)) {
+        for (int i = 0; i < variables.length; i++) {
+          marginals[i][assignment[i]] += entryValues[entry];
+        }
+      }
+    }
+
+    Map<String, double[]> posteriors = new HashMap<String, double[]>();
+    for (int i = 0; i < variables.length; i++) {
+      posteriors.put(variables[i], InferenceUtil.normalize(marginals[i]));
+    }
+
+    return posteriors;
+  }
+
+  protected boolean isConsistent(int[] assignment, int[] evidencePositions, int[] evidenceAssignment) {
+    for (int i = 0; i < evidencePositions.length; i++) {
+      if (assignment[evidencePositions[i]] != evidenceAssignment[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,24 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+/**
+ * Reports how many times a decision has been evaluated so far. Used to detect
+ * when a cached {@link Predictor} no longer reflects the available history.
+ *
+ * @author Thorben Lindhauer
+ */
+public interface DecisionEvaluationCounter {
+
+  long getEvaluationCount(String decisionDefinitionId);
+}
@@ -21,4 +21,10 @@ import org.camunda.bpm.model.dmn.DmnModelInstance;
 public interface DecisionRepository {
 
   DmnModelInstance getDecisionModel(String id);
+
+  /**
+   * @return the id of the decision within its model, which may contain further decisions that the decision requires
+   *   or that require it; null if it is the decision that no other decision of the model requires
+   */
+  String getDecisionKey(String id);
 }
@@ -0,0 +1,269 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.camunda.bpm.model.dmn.DmnModelInstance;
+import org.camunda.bpm.model.dmn.instance.Decision;
+import org.camunda.bpm.model.dmn.instance.DecisionTable;
+import org.camunda.bpm.model.dmn.instance.InformationRequirement;
+import org.camunda.bpm.model.dmn.instance.Input;
+import org.camunda.bpm.model.dmn.instance.InputExpression;
+import org.camunda.bpm.model.dmn.instance.Output;
+import org.camunda.bpm.model.dmn.instance.OutputEntry;
+import org.camunda.bpm.model.dmn.instance.Rule;
+
+/**
+ * The decisions of a DMN file that a target decision requires, directly or transitively, in
+ * topological order. An input of a decision is linked to an output of a required decision
+ * if its input expression or label equals the output's name or label; the value of a linked
+ * input is then determined by the rule the required decision matches.
+ *
+ * <p>The target decision is either given by its key or is the first decision in
+ * document order that no other decision requires. A file with a single decision table
+ * therefore yields a graph with just that decision.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class DecisionRequirementsGraph {
+
+  public static final String RULE_VARIABLE_SEPARATOR = ".";
+
+  /**
+   * The input entry that matches every value
+   */
+  public static final String ANY_VALUE = "-";
+
+  protected Decision targetDecision;
+
+  // required decisions first, the target decision last
+  protected List<Decision> decisions = new ArrayList<Decision>();
+  protected Map<Decision, DecisionTable> decisionTables = new HashMap<Decision, DecisionTable>();
+  protected Map<Input, Output> linkedOutputs = new HashMap<Input, Output>();
+
+  public DecisionRequirementsGraph(DmnModelInstance modelInstance) {
+    this(modelInstance, null);
+  }
+
+  /**
+   * @param targetDecisionKey may be null to use the decision that no other decision requires
+   */
+  public DecisionRequirementsGraph(DmnModelInstance modelInstance, String targetDecisionKey) {
+    this.targetDecision = findTargetDecision(modelInstance, targetDecisionKey);
+    addDecision(targetDecision, new HashSet<Decision>());
+  }
+
+  /**
+   * @param targetDecisionKey may be null to use the decision that no other decision requires
+   */
+  public static DecisionTable getTargetDecisionTable(DmnModelInstance modelInstance, String targetDecisionKey) {
+    return findDecisionTable(findTargetDecision(modelInstance, targetDecisionKey));
+  }
+
+  protected static Decision findTargetDecision(DmnModelInstance modelInstance, String targetDecisionKey) {
+    Collection<Decision> decisions = modelInstance.getModelElementsByType(Decision.class);
+
+    if (targetDecisionKey != null) {
+      for (Decision decision : decisions) {
+        if (targetDecisionKey.equals(decision.getId()) && findDecisionTable(decision) != null) {
+          return decision;
+        }
+      }
+      throw new IllegalArgumentException("Decision " + targetDecisionKey + " does not exist or has no decision table");
+    }
+
+    Set<Decision> requiredDecisions = new HashSet<Decision>();
+    for (Decision decision : decisions) {
+      for (InformationRequirement requirement : decision.getInformationRequirements()) {
+        if (requirement.getRequiredDecision() != null) {
+          requiredDecisions.add(requirement.getRequiredDecision());
+        }
+      }
+    }
+
+    for (Decision decision : decisions) {
+      if (!requiredDecisions.contains(decision) && findDecisionTable(decision) != null) {
+        return decision;
+      }
+    }
+
+    throw new IllegalArgumentException("The DMN model does not contain a decision table");
+  }
+
+  protected static DecisionTable findDecisionTable(Decision decision) {
+    Collection<DecisionTable> decisionTables = decision.getChildElementsByType(DecisionTable.class);
+    return decisionTables.isEmpty() ? null : decisionTables.iterator().next();
+  }
+
+  protected void addDecision(Decision decision, Set<Decision> visiting) {
+    if (decisionTables.containsKey(decision)) {
+      return;
+    }
+    if (!visiting.add(decision)) {
+      throw new IllegalArgumentException("The requirements of decision " + decision.getId() + " are cyclic");
+    }
+
+    DecisionTable decisionTable = findDecisionTable(decision);
+
+    for (InformationRequirement requirement : decision.getInformationRequirements()) {
+      Decision requiredDecision = requirement.getRequiredDecision();
+      if (requiredDecision == null || findDecisionTable(requiredDecision) == null) {
+        continue;
+      }
+
+      addDecision(requiredDecision, visiting);
+
+      for (Input input : decisionTable.getInputs()) {
+        Output output = findLinkedOutput(input, decisionTables.get(requiredDecision));
+        if (output != null && !linkedOutputs.containsKey(input)) {
+          linkedOutputs.put(input, output);
+        }
+      }
+    }
+
+    visiting.remove(decision);
+    decisionTables.put(decision, decisionTable);
+    decisions.add(decision);
+  }
+
+  protected Output findLinkedOutput(Input input, DecisionTable requiredDecisionTable) {
+    Set<String> inputNames = new HashSet<String>();
+    addName(inputNames, input.getLabel());
+    InputExpression inputExpression = input.getInputExpression();
+    if (inputExpression != null && inputExpression.getText() != null) {
+      addName(inputNames, inputExpression.getText().getTextContent());
+    }
+
+    for (Output output : requiredDecisionTable.getOutputs()) {
+      if (inputNames.contains(trim(output.getName())) || inputNames.contains(trim(output.getLabel()))) {
+        return output;
+      }
+    }
+
+    return null;
+  }
+
+  protected static void addName(Set<String> names, String name) {
+    String trimmedName = trim(name);
+    if (trimmedName != null && !trimmedName.isEmpty()) {
+      names.add(trimmedName);
+    }
+  }
+
+  protected static String trim(String name) {
+    return name != null ? name.trim() : null;
+  }
+
+  public Decision getTargetDecision() {
+    return targetDecision;
+  }
+
+  /**
+   * @return the decisions in topological order, i.e. every decision after the decisions it requires
+   */
+  public List<Decision> getDecisions() {
+    return decisions;
+  }
+
+  public DecisionTable getDecisionTable(Decision decision) {
+    return decisionTables.get(decision);
+  }
+
+  public boolean isMultiDecision() {
+    return decisions.size() > 1;
+  }
+
+  /**
+   * @return {@link CanonicalDmnModel#RULE_VARIABLE_NAME} for the target decision, otherwise
+   *   the rule variable name prefixed with the decision's id
+   */
+  public String getRuleVariable(Decision decision) {
+    if (decision.equals(targetDecision)) {
+      return CanonicalDmnModel.RULE_VARIABLE_NAME;
+    }
+    else {
+      return decision.getId() + RULE_VARIABLE_SEPARATOR + CanonicalDmnModel.RULE_VARIABLE_NAME;
+    }
+  }
+
+  /**
+   * @return the output of a required decision that determines the input or null if the input is not linked
+   */
+  public Output getLinkedOutput(Input input) {
+    return linkedOutputs.get(input);
+  }
+
+  /**
+   * @return true if the entry of a linked input matches every output of the required decision,
+   *   so that it does not constrain which rules of the required decision are combined with the rule
+   */
+  public boolean isAnyValue(Input input, String inputEntry) {
+    if (!linkedOutputs.containsKey(input)) {
+      return false;
+    }
+    String trimmedEntry = trim(inputEntry);
+    return trimmedEntry == null || trimmedEntry.isEmpty() || ANY_VALUE.equals(trimmedEntry);
+  }
+
+  /**
+   * @return the names of all inputs whose value is determined by a required decision
+   */
+  public Set<String> getLinkedVariables() {
+    Set<String> linkedVariables = new HashSet<String>();
+    for (Input input : linkedOutputs.keySet()) {
+      linkedVariables.add(input.getLabel());
+    }
+    return linkedVariables;
+  }
+
+  /**
+   * @return the name of the output or, if it has none, its label or id
+   */
+  public String getOutputVariable(Output output) {
+    String name = trim(output.getName());
+    if (name == null || name.isEmpty()) {
+      name = trim(output.getLabel());
+    }
+    if (name == null || name.isEmpty()) {
+      name = output.getId();
+    }
+    return name;
+  }
+
+  /**
+   * @return the text of the rule's entry for the output
+   */
+  public String getOutputEntry(Rule rule, Output output) {
+    DecisionTable decisionTable = (DecisionTable) rule.getParentElement();
+
+    Iterator<Output> outputIt = decisionTable.getOutputs().iterator();
+    Iterator<OutputEntry> outputEntryIt = rule.getOutputEntries().iterator();
+
+    while (outputIt.hasNext() && outputEntryIt.hasNext()) {
+      OutputEntry outputEntry = outputEntryIt.next();
+      if (outputIt.next().equals(output)) {
+        return outputEntry.getTextContent();
+      }
+    }
+
+    return null;
+  }
+}
@@ -12,6 +12,8 @@
  */
 package org.camunda.bpm.slacktime;
 
+import java.util.Map;
+
 /**
  * @author Thorben Lindhauer
  *
@@ -19,4 +21,11 @@ package org.camunda.bpm.slacktime;
 public interface DistributionSource {
 
   Distribution getDistribution(String dmnModelId, String variable, VariableIndex variableIndex);
+
+  /**
+   * Returns the distributions of all variables of the index, including the rule variable,
+   * keyed by variable name. Implementations should compute them in one pass over their data.
+   * Variables the source has no data for may be omitted.
+   */
+  Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex);
 }
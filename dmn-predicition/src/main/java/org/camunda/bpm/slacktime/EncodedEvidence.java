@@ -0,0 +1,74 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Arrays;
+
+/**
+ * {@link Evidence} in terms of the int codes of a {@link VariableIndex}: the value code
+ * of every observed variable stored at the position of its variable code.
+ *
+ * @author Thorben Lindhauer
+ *
+ */
+public class EncodedEvidence {
+
+  public static final int UNOBSERVED = -1;
+
+  protected int[] valueCodes;
+
+  public EncodedEvidence(int numVariables) {
+    this.valueCodes = new int[numVariables];
+    Arrays.fill(valueCodes, UNOBSERVED);
+  }
+
+  public void submit(int variableCode, int valueCode) {
+    valueCodes[variableCode] = valueCode;
+  }
+
+  public boolean isObserved(int variableCode) {
+    return valueCodes[variableCode] != UNOBSERVED;
+  }
+
+  public int getValueCode(int variableCode) {
+    return valueCodes[variableCode];
+  }
+
+  public int getNumVariables() {
+    return valueCodes.length;
+  }
+
+  public int getNumObservedVariables() {
+    int numObserved = 0;
+    for (int valueCode : valueCodes) {
+      if (valueCode != UNOBSERVED) {
+        numObserved++;
+      }
+    }
+    return numObserved;
+  }
+
+  public int hashCode() {
+    return Arrays.hashCode(valueCodes);
+  }
+
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof EncodedEvidence)) {
+      return false;
+    }
+    return Arrays.equals(valueCodes, ((EncodedEvidence) obj).valueCodes);
+  }
+}
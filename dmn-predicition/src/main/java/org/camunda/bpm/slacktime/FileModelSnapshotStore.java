@@ -0,0 +1,103 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one snapshot file per decision definition in a directory. Files are memory mapped
+ * when read and replaced atomically where the file system allows it when written.
+ *
+ * <p>A snapshot is only read when its decision's model is built, so the directory may hold the
+ * snapshots of many more decisions than are predicted; the caller is expected to cache the model.
+ * Snapshots are an optimization, so files that cannot be read or written are logged and otherwise ignored.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class FileModelSnapshotStore implements ModelSnapshotStore {
+
+  protected static final Logger LOG = Logger.getLogger(FileModelSnapshotStore.class.getName());
+
+  public static final String FILE_SUFFIX = ".snapshot";
+
+  protected File directory;
+
+  public FileModelSnapshotStore(File directory) {
+    this.directory = directory;
+  }
+
+  public ModelSnapshot load(String decisionDefinitionId) {
+    File file = getSnapshotFile(decisionDefinitionId);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    ModelSnapshot snapshot = readSnapshot(file);
+
+    // file names are sanitized ids, so they may collide
+    if (snapshot != null && decisionDefinitionId.equals(snapshot.getDecisionDefinitionId())) {
+      return snapshot;
+    }
+    else {
+      return null;
+    }
+  }
+
+  public void save(ModelSnapshot snapshot) {
+    File file = getSnapshotFile(snapshot.getDecisionDefinitionId());
+
+    try {
+      directory.mkdirs();
+      File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+      snapshot.writeTo(tempFile);
+
+      if (!tempFile.renameTo(file)) {
+        // some platforms do not replace existing files on rename
+        file.delete();
+        if (!tempFile.renameTo(file)) {
+          tempFile.delete();
+          throw new IOException("Could not move " + tempFile + " to " + file);
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.log(Level.WARNING, "Could not write model snapshot of decision " + snapshot.getDecisionDefinitionId(), e);
+    }
+  }
+
+  protected ModelSnapshot readSnapshot(File file) {
+    try {
+      return ModelSnapshot.readFrom(file);
+    }
+    catch (IOException e) {
+      LOG.log(Level.WARNING, "Could not read model snapshot " + file, e);
+      return null;
+    }
+    catch (RuntimeException e) {
+      // e.g. a truncated file
+      LOG.log(Level.WARNING, "Could not read model snapshot " + file, e);
+      return null;
+    }
+  }
+
+  protected File getSnapshotFile(String decisionDefinitionId) {
+    return new File(directory, decisionDefinitionId.replaceAll("[^A-Za-z0-9._-]", "_") + FILE_SUFFIX);
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+}
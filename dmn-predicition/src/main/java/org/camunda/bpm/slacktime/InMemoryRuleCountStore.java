@@ -0,0 +1,107 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class InMemoryRuleCountStore implements RuleCountStore {
+
+  protected ConcurrentMap<String, RuleCounts> countsByDecision = new ConcurrentHashMap<String, RuleCounts>();
+
+  public Map<String, Long> getRuleCounts(String decisionDefinitionId) {
+    RuleCounts ruleCounts = countsByDecision.get(decisionDefinitionId);
+
+    if (ruleCounts == null || !ruleCounts.initialized) {
+      return null;
+    }
+
+    Map<String, Long> snapshot = new HashMap<String, Long>();
+    for (Map.Entry<String, AtomicLong> ruleCount : ruleCounts.counts.entrySet()) {
+      snapshot.put(ruleCount.getKey(), ruleCount.getValue().get());
+    }
+
+    return snapshot;
+  }
+
+  public long startCounting(String decisionDefinitionId, long countingSince) {
+    RuleCounts newRuleCounts = new RuleCounts(countingSince);
+    RuleCounts ruleCounts = countsByDecision.putIfAbsent(decisionDefinitionId, newRuleCounts);
+
+    return ruleCounts != null ? ruleCounts.lateCommitFilter.getCountingSince() : countingSince;
+  }
+
+  public void initializeRuleCounts(String decisionDefinitionId, Map<String, Long> ruleCounts) {
+    initializeRuleCounts(decisionDefinitionId, ruleCounts, Collections.<RuleEvaluation>emptyList());
+  }
+
+  public void initializeRuleCounts(String decisionDefinitionId, Map<String, Long> ruleCounts, List<RuleEvaluation> lateEvaluations) {
+    startCounting(decisionDefinitionId, Long.MIN_VALUE);
+    countsByDecision.get(decisionDefinitionId).initialize(ruleCounts, lateEvaluations);
+  }
+
+  public void incrementRuleCount(String decisionDefinitionId, String decisionInstanceId, String ruleId, long evaluationTime) {
+    RuleCounts ruleCounts = countsByDecision.get(decisionDefinitionId);
+
+    if (ruleCounts != null && ruleCounts.lateCommitFilter.countOnCommit(decisionInstanceId, evaluationTime)) {
+      ruleCounts.add(ruleId, 1L);
+    }
+  }
+
+  protected static class RuleCounts {
+
+    protected LateCommitFilter lateCommitFilter;
+    protected ConcurrentMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+    protected volatile boolean initialized;
+
+    public RuleCounts(long countingSince) {
+      this.lateCommitFilter = new LateCommitFilter(countingSince);
+    }
+
+    public synchronized void initialize(Map<String, Long> initialCounts, List<RuleEvaluation> lateEvaluations) {
+      if (initialized) {
+        return;
+      }
+
+      for (Map.Entry<String, Long> ruleCount : initialCounts.entrySet()) {
+        add(ruleCount.getKey(), ruleCount.getValue());
+      }
+      for (RuleEvaluation evaluation : lateCommitFilter.initialize(lateEvaluations)) {
+        add(evaluation.getRuleId(), 1L);
+      }
+      initialized = true;
+    }
+
+    public void add(String ruleId, long count) {
+      AtomicLong ruleCount = counts.get(ruleId);
+      if (ruleCount == null) {
+        AtomicLong newRuleCount = new AtomicLong();
+        ruleCount = counts.putIfAbsent(ruleId, newRuleCount);
+        if (ruleCount == null) {
+          ruleCount = newRuleCount;
+        }
+      }
+      ruleCount.addAndGet(count);
+    }
+  }
+
+}
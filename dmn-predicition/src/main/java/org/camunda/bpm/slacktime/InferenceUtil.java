@@ -0,0 +1,73 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Arrays;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class InferenceUtil {
+
+  /**
+   * Advances the values of all variables that are not fixed like an odometer.
+   *
+   * @return false if all assignments have been visited
+   */
+  public static boolean nextAssignment(int[] assignment, int[] cardinalities, boolean[] fixed) {
+    for (int i = assignment.length - 1; i >= 0; i--) {
+      if (!fixed[i]) {
+        assignment[i]++;
+        if (assignment[i] < cardinalities[i]) {
+          return true;
+        }
+        assignment[i] = 0;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Normalizes the values in place so that they sum up to one. Values that sum up
+   * to zero are left as zeros.
+   */
+  public static double[] normalize(double[] values) {
+    double sum = 0.0d;
+    for (double value : values) {
+      sum += value;
+    }
+
+    if (sum == 0.0d) {
+      Arrays.fill(values, 0.0d);
+    }
+    else {
+      for (int i = 0; i < values.length; i++) {
+        values[i] /= sum;
+      }
+    }
+
+    return values;
+  }
+
+  public static int indexOf(String[] variables, String variable) {
+    for (int i = 0; i < variables.length; i++) {
+      if (variables[i].equals(variable)) {
+        return i;
+      }
+    }
+
+    throw new IllegalArgumentException("Variable " + variable + " is not part of the model");
+  }
+}
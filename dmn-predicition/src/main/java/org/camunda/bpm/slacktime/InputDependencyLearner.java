@@ -0,0 +1,287 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+
+/**
+ * Learns dependencies between the inputs of a {@link CanonicalDmnModel} from the decision history,
+ * replacing the independent marginals P(A) by a tree-structured distribution (Chow-Liu): the maximum
+ * spanning forest of the pairwise mutual information of the inputs, where every input except the root
+ * of a tree is conditioned on its parent.
+ *
+ * <p>The learned structure never exceeds the configured treewidth. A bound of 0 keeps the inputs
+ * independent, every higher bound yields a forest, which has a treewidth of 1, so that the size of every
+ * conditional table is the product of two cardinalities. Edges with a mutual information of at most
+ * <code>minMutualInformation</code> are left out.</p>
+ *
+ * <p>Since every rule determines the values of all inputs, the joint counts of the inputs are aggregated
+ * from the rule counts, preferably the same counts the model was built from, see {@link #learn(CanonicalDmnModel, Map)}.
+ * As the history only records the target decision of a decision requirements graph, every evaluation counts once
+ * for the inputs of its rule of the target decision; inputs of required decisions stay independent. Roots keep the input table of the model; the conditional tables are smoothed with
+ * {@link RuleCountDistributionSource#PSEUDO_COUNT} and folded into the values of the rule factor entries,
+ * so that all inferencers use the learned distribution without changes.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class InputDependencyLearner {
+
+  public static final int INDEPENDENT = 0;
+
+  protected RuleCountHistory ruleCountHistory;
+  protected int maxTreewidth;
+  protected double minMutualInformation = 0.0d;
+
+  public InputDependencyLearner(RuleCountHistory ruleCountHistory, int maxTreewidth) {
+    this.ruleCountHistory = ruleCountHistory;
+    this.maxTreewidth = maxTreewidth;
+  }
+
+  /**
+   * Learns the dependencies from the whole history of the decision. This reads the history again, so
+   * {@link #learn(CanonicalDmnModel, Map)} with the counts the model was built from is to be preferred,
+   * e.g. those of a {@link RuleCountingDistributionSource}.
+   *
+   * @return a copy of the model with the learned dependencies; the model itself if the inputs stay independent
+   */
+  public CanonicalDmnModel learn(CanonicalDmnModel model) {
+    if (maxTreewidth <= INDEPENDENT) {
+      return model;
+    }
+
+    long now = ClockUtil.getCurrentTime().getTime();
+    return learn(model, ruleCountHistory.getRuleCounts(model.getModelId(), ModelSnapshot.NO_WATERMARK, now));
+  }
+
+  /**
+   * @param ruleCounts the number of evaluations by matched rule id of the target decision; may be weighted
+   */
+  public CanonicalDmnModel learn(CanonicalDmnModel model, Map<String, ? extends Number> ruleCounts) {
+    if (maxTreewidth <= INDEPENDENT) {
+      return model;
+    }
+
+    VariableIndex variableIndex = model.getVariableIndex();
+    RuleFactor ruleFactor = model.getRuleFactor();
+    String[] variables = model.getNetworkScope().getVariableIds();
+    int rulePosition = InferenceUtil.indexOf(variables, CanonicalDmnModel.RULE_VARIABLE_NAME);
+    int ruleCode = variableIndex.getVariableCode(CanonicalDmnModel.RULE_VARIABLE_NAME);
+    int[][] targetRuleAssignments = model.getTargetRuleAssignments();
+
+    // only inputs with a marginal can be conditioned on each other
+    List<Integer> inputPositions = new ArrayList<Integer>();
+    for (int i = 0; i < variables.length; i++) {
+      if (model.getInputTable(variables[i]) != null) {
+        inputPositions.add(i);
+      }
+    }
+
+    // by target rule; a rule may be part of several rule factor entries
+    double[] targetRuleCounts = new double[targetRuleAssignments.length];
+    for (int rule = 0; rule < targetRuleCounts.length; rule++) {
+      Number ruleCount = ruleCounts.get(variableIndex.getValue(ruleCode, targetRuleAssignments[rule][rulePosition]));
+      targetRuleCounts[rule] = ruleCount != null ? ruleCount.doubleValue() : 0.0d;
+    }
+
+    int[] parents = learnForest(model, variables, inputPositions, targetRuleCounts);
+
+    CanonicalDmnModel dependentModel = new CanonicalDmnModel();
+    dependentModel.modelId = model.modelId;
+    dependentModel.hitPolicy = model.hitPolicy;
+    dependentModel.variableIndex = model.variableIndex;
+    dependentModel.networkScope = model.networkScope;
+    dependentModel.targetRuleAssignments = model.targetRuleAssignments;
+    dependentModel.outputIndex = model.outputIndex;
+    dependentModel.outputMappings = model.outputMappings;
+    dependentModel.inputTables = new HashMap<String, double[]>(model.inputTables);
+
+    double[][] conditionalTables = new double[variables.length][];
+    for (int child = 0; child < variables.length; child++) {
+      if (parents[child] != VariableIndex.UNKNOWN) {
+        conditionalTables[child] = toConditionalTable(model, variables, child, parents[child], targetRuleCounts);
+        dependentModel.inputTables.remove(variables[child]);
+        dependentModel.inputParents.put(variables[child], variables[parents[child]]);
+      }
+    }
+
+    RuleFactor dependentRuleFactor = new RuleFactor(ruleFactor.getScope());
+    for (int entry = 0; entry < ruleFactor.getNumEntries(); entry++) {
+      int[] assignment = ruleFactor.getAssignment(entry);
+      double value = ruleFactor.getValue(entry);
+
+      for (int child = 0; child < variables.length; child++) {
+        if (conditionalTables[child] != null) {
+          int childCardinality = variableIndex.getCardinality(variables[child]);
+          value *= conditionalTables[child][assignment[parents[child]] * childCardinality + assignment[child]];
+        }
+      }
+
+      dependentRuleFactor.addEntry(assignment, value);
+    }
+    dependentModel.ruleFactor = dependentRuleFactor;
+
+    return dependentModel;
+  }
+
+  /**
+   * Prim's algorithm on the mutual information of all input pairs; the first input of every tree in
+   * network scope order becomes its root.
+   *
+   * @return the parent position by network position or {@link VariableIndex#UNKNOWN} for roots and non-inputs
+   */
+  protected int[] learnForest(CanonicalDmnModel model, String[] variables, List<Integer> inputPositions, double[] targetRuleCounts) {
+    int numInputs = inputPositions.size();
+    double[][] mutualInformation = new double[numInputs][numInputs];
+    for (int i = 0; i < numInputs; i++) {
+      for (int j = i + 1; j < numInputs; j++) {
+        mutualInformation[i][j] = computeMutualInformation(model, variables, inputPositions.get(i), inputPositions.get(j), targetRuleCounts);
+        mutualInformation[j][i] = mutualInformation[i][j];
+      }
+    }
+
+    int[] parents = new int[variables.length];
+    Arrays.fill(parents, VariableIndex.UNKNOWN);
+
+    boolean[] inTree = new boolean[numInputs];
+    double[] bestWeight = new double[numInputs];
+    int[] bestNeighbor = new int[numInputs];
+
+    for (int root = 0; root < numInputs; root++) {
+      if (inTree[root]) {
+        continue;
+      }
+
+      // grow the tree of this root as long as there are informative edges
+      inTree[root] = true;
+      Arrays.fill(bestWeight, Double.NEGATIVE_INFINITY);
+      updateBestEdges(root, inTree, mutualInformation, bestWeight, bestNeighbor);
+
+      while (true) {
+        int next = VariableIndex.UNKNOWN;
+        for (int i = 0; i < numInputs; i++) {
+          if (!inTree[i] && bestWeight[i] > minMutualInformation && (next == VariableIndex.UNKNOWN || bestWeight[i] > bestWeight[next])) {
+            next = i;
+          }
+        }
+        if (next == VariableIndex.UNKNOWN) {
+          break;
+        }
+
+        inTree[next] = true;
+        parents[inputPositions.get(next)] = inputPositions.get(bestNeighbor[next]);
+        updateBestEdges(next, inTree, mutualInformation, bestWeight, bestNeighbor);
+      }
+    }
+
+    return parents;
+  }
+
+  protected void updateBestEdges(int added, boolean[] inTree, double[][] mutualInformation, double[] bestWeight, int[] bestNeighbor) {
+    for (int i = 0; i < inTree.length; i++) {
+      if (!inTree[i] && mutualInformation[added][i] > bestWeight[i]) {
+        bestWeight[i] = mutualInformation[added][i];
+        bestNeighbor[i] = added;
+      }
+    }
+  }
+
+  protected double computeMutualInformation(CanonicalDmnModel model, String[] variables, int first, int second, double[] targetRuleCounts) {
+    double[][] jointCounts = countJointly(model, variables, first, second, targetRuleCounts);
+    int firstCardinality = jointCounts.length;
+    int secondCardinality = jointCounts[0].length;
+
+    double total = 0.0d;
+    double[] firstCounts = new double[firstCardinality];
+    double[] secondCounts = new double[secondCardinality];
+    for (int a = 0; a < firstCardinality; a++) {
+      for (int b = 0; b < secondCardinality; b++) {
+        firstCounts[a] += jointCounts[a][b];
+        secondCounts[b] += jointCounts[a][b];
+        total += jointCounts[a][b];
+      }
+    }
+
+    if (total == 0.0d) {
+      return 0.0d;
+    }
+
+    double mutualInformation = 0.0d;
+    for (int a = 0; a < firstCardinality; a++) {
+      for (int b = 0; b < secondCardinality; b++) {
+        if (jointCounts[a][b] > 0.0d) {
+          mutualInformation += jointCounts[a][b] / total * Math.log(jointCounts[a][b] * total / (firstCounts[a] * secondCounts[b]));
+        }
+      }
+    }
+
+    return mutualInformation;
+  }
+
+  /**
+   * Counts the values of two inputs jointly; rules of the target decision without entries for both inputs do not count.
+   */
+  protected double[][] countJointly(CanonicalDmnModel model, String[] variables, int first, int second, double[] targetRuleCounts) {
+    VariableIndex variableIndex = model.getVariableIndex();
+    double[][] jointCounts = new double[variableIndex.getCardinality(variables[first])][variableIndex.getCardinality(variables[second])];
+
+    int[][] targetRuleAssignments = model.getTargetRuleAssignments();
+    for (int rule = 0; rule < targetRuleCounts.length; rule++) {
+      int[] assignment = targetRuleAssignments[rule];
+      if (assignment[first] != VariableIndex.UNKNOWN && assignment[second] != VariableIndex.UNKNOWN) {
+        jointCounts[assignment[first]][assignment[second]] += targetRuleCounts[rule];
+      }
+    }
+
+    return jointCounts;
+  }
+
+  /**
+   * @return P(child | parent) indexed by parent value * child cardinality + child value
+   */
+  protected double[] toConditionalTable(CanonicalDmnModel model, String[] variables, int child, int parent, double[] targetRuleCounts) {
+    double[][] jointCounts = countJointly(model, variables, parent, child, targetRuleCounts);
+    int parentCardinality = jointCounts.length;
+    int childCardinality = jointCounts[0].length;
+
+    double[] table = new double[parentCardinality * childCardinality];
+    for (int p = 0; p < parentCardinality; p++) {
+      double total = 0.0d;
+      for (int c = 0; c < childCardinality; c++) {
+        total += jointCounts[p][c] + RuleCountDistributionSource.PSEUDO_COUNT;
+      }
+      for (int c = 0; c < childCardinality; c++) {
+        table[p * childCardinality + c] = (jointCounts[p][c] + RuleCountDistributionSource.PSEUDO_COUNT) / total;
+      }
+    }
+
+    return table;
+  }
+
+  public int getMaxTreewidth() {
+    return maxTreewidth;
+  }
+
+  public double getMinMutualInformation() {
+    return minMutualInformation;
+  }
+
+  public void setMinMutualInformation(double minMutualInformation) {
+    this.minMutualInformation = minMutualInformation;
+  }
+}
@@ -0,0 +1,115 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which committed evaluations a {@link RuleCountStore} counts, so that every evaluation of a decision
+ * is counted once although the initial counts are read from the history while evaluations commit.
+ *
+ * <p>Evaluations at or after <code>countingSince</code> are counted when they commit. Evaluations within
+ * {@link RuleCountStore#LATE_COMMIT_WINDOW} milliseconds before are read from the history one by one, but may
+ * also commit only after the history has been read. They are counted once by their historic decision instance id,
+ * whichever comes first. Earlier evaluations are only counted from the history. The ids are dropped once the
+ * counts have been initialized and an evaluation that is a whole window younger than <code>countingSince</code>
+ * has committed.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class LateCommitFilter {
+
+  protected long countingSince;
+  protected long lateCommitsSince;
+
+  // guarded by this; null once no more evaluations before countingSince are expected to commit
+  protected Set<String> countedInstanceIds = new HashSet<String>();
+  protected boolean initialized;
+  protected volatile boolean released;
+
+  public LateCommitFilter(long countingSince) {
+    this.countingSince = countingSince;
+    this.lateCommitsSince = getLateCommitsSince(countingSince);
+  }
+
+  /**
+   * @return the time in milliseconds from which on evaluations before <code>countingSince</code> are told apart by their ids;
+   *   never before the beginning of the history
+   */
+  public static long getLateCommitsSince(long countingSince) {
+    if (countingSince > RuleCountStore.LATE_COMMIT_WINDOW) {
+      return countingSince - RuleCountStore.LATE_COMMIT_WINDOW;
+    }
+    else {
+      return Math.min(countingSince, 0L);
+    }
+  }
+
+  /**
+   * @return true if the committed evaluation is to be counted
+   */
+  public boolean countOnCommit(String decisionInstanceId, long evaluationTime) {
+    if (evaluationTime >= countingSince) {
+      if (!released && evaluationTime - countingSince >= RuleCountStore.LATE_COMMIT_WINDOW) {
+        release();
+      }
+      return true;
+    }
+    else if (evaluationTime >= lateCommitsSince) {
+      return countOnce(decisionInstanceId);
+    }
+    else {
+      // contained in the initial counts
+      return false;
+    }
+  }
+
+  /**
+   * @param lateEvaluations the evaluations from <code>lateCommitsSince</code> until before <code>countingSince</code>
+   *   read from the history
+   * @return those evaluations that have not been counted on commit yet
+   */
+  public synchronized List<RuleEvaluation> initialize(List<RuleEvaluation> lateEvaluations) {
+    List<RuleEvaluation> uncountedEvaluations = new ArrayList<RuleEvaluation>();
+    for (RuleEvaluation evaluation : lateEvaluations) {
+      if (countOnce(evaluation.getDecisionInstanceId())) {
+        uncountedEvaluations.add(evaluation);
+      }
+    }
+
+    initialized = true;
+    return uncountedEvaluations;
+  }
+
+  public long getCountingSince() {
+    return countingSince;
+  }
+
+  public long getLateCommitsSince() {
+    return lateCommitsSince;
+  }
+
+  protected synchronized boolean countOnce(String decisionInstanceId) {
+    return countedInstanceIds != null && countedInstanceIds.add(decisionInstanceId);
+  }
+
+  protected synchronized void release() {
+    if (initialized) {
+      countedInstanceIds = null;
+      released = true;
+    }
+  }
+}
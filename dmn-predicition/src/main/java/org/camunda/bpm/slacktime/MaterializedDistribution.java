@@ -0,0 +1,46 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Collection;
+
+/**
+ * A distribution over the values of a single variable whose probabilities have
+ * already been computed, in the canonical value order of the {@link VariableIndex}.
+ *
+ * @author Thorben Lindhauer
+ */
+public class MaterializedDistribution implements Distribution {
+
+  protected String variable;
+  protected double[] probabilities;
+  protected VariableIndex variableIndex;
+
+  public MaterializedDistribution(String variable, double[] probabilities, VariableIndex variableIndex) {
+    this.variable = variable;
+    this.probabilities = probabilities;
+    this.variableIndex = variableIndex;
+  }
+
+  public double getProbability(String value) {
+    return probabilities[variableIndex.getIndex(variable, value)];
+  }
+
+  public Collection<String> getValues() {
+    return variableIndex.getVariableValues(variable);
+  }
+
+  public double[] getProbabilities() {
+    return probabilities;
+  }
+}
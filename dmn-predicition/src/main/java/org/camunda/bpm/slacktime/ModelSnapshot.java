@@ -0,0 +1,427 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.model.dmn.HitPolicy;
+
+import com.github.thorbenlindhauer.network.GraphicalModel;
+import com.github.thorbenlindhauer.network.ScopeBuilder;
+import com.github.thorbenlindhauer.variable.Scope;
+
+/**
+ * A built {@link CanonicalDmnModel} together with the rule counts its input tables were
+ * derived from and a history watermark, i.e. the evaluation time up to which the decision history
+ * is included. History newer than the watermark can be replayed onto a snapshot, see
+ * {@link #replay(Map, long)}, so that a model never has to be rebuilt from the whole history.
+ *
+ * <p>The binary format is a sequence of big-endian values; strings are an int length followed by
+ * their UTF-8 bytes:</p>
+ * <pre>
+ * int magic, int version, string decisionDefinitionId, long historyWatermark, string hitPolicy
+ * int numVariables, per variable in code order: string name, int numValues, string[] values
+ * int numScopeVariables, int[] variableCodes in network scope order
+ * int numInputTables, per table: int variableCode, double[] probabilities in canonical value order
+ * int numRuleEntries, per entry: int[] assignment in network scope order, double value
+ * int numTargetRules, per rule of the target decision: int[] assignment in network scope order
+ * long[] ruleCounts by value code of the rule variable
+ * int numOutputs, per output: string name, int ruleVariableCode, int numValues, string[] values,
+ *   int[] outputValueCodes by value code of the rule variable
+ * </pre>
+ *
+ * @author Thorben Lindhauer
+ */
+public class ModelSnapshot {
+
+  public static final int MAGIC = 0x444D4E53;
+  public static final int VERSION = 3;
+
+  /**
+   * The watermark of a snapshot that does not include any history
+   */
+  public static final long NO_WATERMARK = -1L;
+
+  /**
+   * The number of milliseconds a watermark stays behind the current time, since evaluations
+   * become visible in the history only when their transaction commits
+   */
+  public static final long DEFAULT_WATERMARK_LAG = 60000L;
+
+  protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  protected String decisionDefinitionId;
+  protected long historyWatermark;
+  protected CanonicalDmnModel model;
+
+  // by value code of the rule variable
+  protected long[] ruleCounts;
+
+  /**
+   * @param ruleCounts the counts by rule id the input tables of the model are based on
+   * @param historyWatermark the evaluation time in milliseconds up to which the counts include the history
+   */
+  public ModelSnapshot(CanonicalDmnModel model, Map<String, Long> ruleCounts, long historyWatermark) {
+    this(model, toRuleCountVector(model.getVariableIndex(), ruleCounts), historyWatermark);
+  }
+
+  protected ModelSnapshot(CanonicalDmnModel model, long[] ruleCounts, long historyWatermark) {
+    this.decisionDefinitionId = model.getModelId();
+    this.model = model;
+    this.ruleCounts = ruleCounts;
+    this.historyWatermark = historyWatermark;
+  }
+
+  /**
+   * Adds the counts of newer history and rebuilds the input tables; the structure of
+   * the model is shared with this snapshot.
+   *
+   * @param additionalRuleCounts counts by rule id of the evaluations after this snapshot's watermark
+   * @param historyWatermark the watermark of the new snapshot
+   */
+  public ModelSnapshot replay(Map<String, Long> additionalRuleCounts, long historyWatermark) {
+    long[] additionalCounts = toRuleCountVector(model.getVariableIndex(), additionalRuleCounts);
+    long[] newRuleCounts = new long[ruleCounts.length];
+    for (int i = 0; i < ruleCounts.length; i++) {
+      newRuleCounts[i] = ruleCounts[i] + additionalCounts[i];
+    }
+
+    CanonicalDmnModel replayedModel = new CanonicalDmnModel();
+    replayedModel.modelId = model.modelId;
+    replayedModel.hitPolicy = model.hitPolicy;
+    replayedModel.variableIndex = model.variableIndex;
+    replayedModel.networkScope = model.networkScope;
+    replayedModel.ruleFactor = model.ruleFactor;
+    replayedModel.targetRuleAssignments = model.targetRuleAssignments;
+    replayedModel.outputIndex = model.outputIndex;
+    replayedModel.outputMappings = model.outputMappings;
+    replayedModel.inputTables = toInputTables(model, newRuleCounts);
+
+    return new ModelSnapshot(replayedModel, newRuleCounts, historyWatermark);
+  }
+
+  /**
+   * Input tables as {@link RuleCountDistributionSource} builds them: every evaluation counts once for
+   * the input entries of the matched rule of the target decision. Inputs of required decisions
+   * are not recorded in the history and keep a uniform distribution.
+   */
+  protected static Map<String, double[]> toInputTables(CanonicalDmnModel model, long[] ruleCounts) {
+    VariableIndex variableIndex = model.getVariableIndex();
+    String[] variables = model.getNetworkScope().getVariableIds();
+    int rulePosition = InferenceUtil.indexOf(variables, CanonicalDmnModel.RULE_VARIABLE_NAME);
+
+    double[][] counts = new double[variables.length][];
+    for (int i = 0; i < variables.length; i++) {
+      if (model.getInputTable(variables[i]) != null) {
+        counts[i] = new double[variableIndex.getCardinality(variables[i])];
+      }
+    }
+
+    for (int[] assignment : model.getTargetRuleAssignments()) {
+      long ruleCount = ruleCounts[assignment[rulePosition]];
+
+      for (int i = 0; i < variables.length; i++) {
+        if (counts[i] != null && assignment[i] != VariableIndex.UNKNOWN) {
+          counts[i][assignment[i]] += ruleCount;
+        }
+      }
+    }
+
+    Map<String, double[]> inputTables = new HashMap<String, double[]>();
+    for (int i = 0; i < variables.length; i++) {
+      if (counts[i] != null) {
+        inputTables.put(variables[i], toProbabilities(counts[i]));
+      }
+    }
+
+    return inputTables;
+  }
+
+  protected static double[] toProbabilities(double[] counts) {
+    double total = 0.0d;
+    for (double count : counts) {
+      total += count + RuleCountDistributionSource.PSEUDO_COUNT;
+    }
+
+    double[] probabilities = new double[counts.length];
+    for (int i = 0; i < counts.length; i++) {
+      probabilities[i] = (counts[i] + RuleCountDistributionSource.PSEUDO_COUNT) / total;
+    }
+
+    return probabilities;
+  }
+
+  protected static long[] toRuleCountVector(VariableIndex variableIndex, Map<String, Long> ruleCounts) {
+    int ruleCode = variableIndex.getVariableCode(CanonicalDmnModel.RULE_VARIABLE_NAME);
+    long[] ruleCountVector = new long[variableIndex.getCardinality(ruleCode)];
+
+    for (Map.Entry<String, Long> ruleCount : ruleCounts.entrySet()) {
+      int valueCode = variableIndex.getIndex(ruleCode, ruleCount.getKey());
+
+      // rules that are not part of the model anymore are ignored
+      if (valueCode != VariableIndex.UNKNOWN && ruleCount.getValue() != null) {
+        ruleCountVector[valueCode] += ruleCount.getValue();
+      }
+    }
+
+    return ruleCountVector;
+  }
+
+  public void writeTo(OutputStream outputStream) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    writeString(out, decisionDefinitionId);
+    out.writeLong(historyWatermark);
+    writeString(out, model.getHitPolicy().name());
+
+    VariableIndex variableIndex = model.getVariableIndex();
+    out.writeInt(variableIndex.getNumVariables());
+    for (int variableCode = 0; variableCode < variableIndex.getNumVariables(); variableCode++) {
+      writeString(out, variableIndex.getVariable(variableCode));
+      out.writeInt(variableIndex.getCardinality(variableCode));
+      for (int valueCode = 0; valueCode < variableIndex.getCardinality(variableCode); valueCode++) {
+        writeString(out, variableIndex.getValue(variableCode, valueCode));
+      }
+    }
+
+    String[] scopeVariables = model.getNetworkScope().getVariableIds();
+    out.writeInt(scopeVariables.length);
+    for (String variable : scopeVariables) {
+      out.writeInt(variableIndex.getVariableCode(variable));
+    }
+
+    out.writeInt(model.inputTables.size());
+    for (Map.Entry<String, double[]> inputTable : model.inputTables.entrySet()) {
+      out.writeInt(variableIndex.getVariableCode(inputTable.getKey()));
+      for (double probability : inputTable.getValue()) {
+        out.writeDouble(probability);
+      }
+    }
+
+    RuleFactor ruleFactor = model.getRuleFactor();
+    out.writeInt(ruleFactor.getNumEntries());
+    for (int entry = 0; entry < ruleFactor.getNumEntries(); entry++) {
+      for (int valueCode : ruleFactor.getAssignment(entry)) {
+        out.writeInt(valueCode);
+      }
+      out.writeDouble(ruleFactor.getValue(entry));
+    }
+
+    out.writeInt(model.targetRuleAssignments.length);
+    for (int[] assignment : model.targetRuleAssignments) {
+      for (int valueCode : assignment) {
+        out.writeInt(valueCode);
+      }
+    }
+
+    for (long ruleCount : ruleCounts) {
+      out.writeLong(ruleCount);
+    }
+
+    VariableIndex outputIndex = model.getOutputIndex();
+    out.writeInt(model.outputMappings.size());
+    for (OutputMapping outputMapping : model.getOutputMappings()) {
+      String outputVariable = outputMapping.getOutputVariable();
+      writeString(out, outputVariable);
+      int ruleCode = variableIndex.getVariableCode(outputMapping.getRuleVariable());
+      out.writeInt(ruleCode);
+      out.writeInt(outputMapping.getNumOutputValues());
+      for (String value : outputIndex.getVariableValues(outputVariable)) {
+        writeString(out, value);
+      }
+      for (int ruleValueCode = 0; ruleValueCode < variableIndex.getCardinality(ruleCode); ruleValueCode++) {
+        out.writeInt(outputMapping.getOutputValueCode(ruleValueCode));
+      }
+    }
+
+    out.flush();
+  }
+
+  public void writeTo(File file) throws IOException {
+    FileOutputStream outputStream = new FileOutputStream(file);
+    try {
+      writeTo(outputStream);
+    }
+    finally {
+      outputStream.close();
+    }
+  }
+
+  /**
+   * Reads a snapshot from a memory mapped file; the file is not held open afterwards.
+   */
+  public static ModelSnapshot readFrom(File file) throws IOException {
+    FileInputStream inputStream = new FileInputStream(file);
+    try {
+      FileChannel channel = inputStream.getChannel();
+      return readFrom(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+    finally {
+      inputStream.close();
+    }
+  }
+
+  public static ModelSnapshot readFrom(ByteBuffer buffer) throws IOException {
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not a model snapshot");
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported model snapshot version " + version);
+    }
+
+    CanonicalDmnModel model = new CanonicalDmnModel();
+    model.modelId = readString(buffer);
+    long historyWatermark = buffer.getLong();
+    model.hitPolicy = HitPolicy.valueOf(readString(buffer));
+
+    int numVariables = buffer.getInt();
+    Map<String, List<String>> variableValues = new HashMap<String, List<String>>();
+    String[] variables = new String[numVariables];
+    for (int variableCode = 0; variableCode < numVariables; variableCode++) {
+      variables[variableCode] = readString(buffer);
+      int numValues = buffer.getInt();
+      List<String> values = new ArrayList<String>(numValues);
+      for (int valueCode = 0; valueCode < numValues; valueCode++) {
+        values.add(readString(buffer));
+      }
+      variableValues.put(variables[variableCode], values);
+    }
+    model.variableIndex = new VariableIndex(variableValues);
+
+    int numScopeVariables = buffer.getInt();
+    ScopeBuilder scopeBuilder = GraphicalModel.create();
+    for (int i = 0; i < numScopeVariables; i++) {
+      String variable = variables[buffer.getInt()];
+      scopeBuilder.discreteVariable(variable, variableValues.get(variable).size());
+    }
+    Scope networkScope = scopeBuilder.buildScope();
+    model.networkScope = networkScope;
+
+    int numInputTables = buffer.getInt();
+    for (int i = 0; i < numInputTables; i++) {
+      String variable = variables[buffer.getInt()];
+      double[] table = new double[variableValues.get(variable).size()];
+      buffer.asDoubleBuffer().get(table);
+      buffer.position(buffer.position() + table.length * 8);
+      model.inputTables.put(variable, table);
+    }
+
+    int numRuleEntries = buffer.getInt();
+    RuleFactor ruleFactor = new RuleFactor(networkScope);
+    for (int entry = 0; entry < numRuleEntries; entry++) {
+      int[] assignment = new int[numScopeVariables];
+      buffer.asIntBuffer().get(assignment);
+      buffer.position(buffer.position() + assignment.length * 4);
+      ruleFactor.addEntry(assignment, buffer.getDouble());
+    }
+    model.ruleFactor = ruleFactor;
+
+    int numTargetRules = buffer.getInt();
+    model.targetRuleAssignments = new int[numTargetRules][];
+    for (int rule = 0; rule < numTargetRules; rule++) {
+      int[] assignment = new int[numScopeVariables];
+      buffer.asIntBuffer().get(assignment);
+      buffer.position(buffer.position() + assignment.length * 4);
+      model.targetRuleAssignments[rule] = assignment;
+    }
+
+    long[] ruleCounts = new long[model.variableIndex.getCardinality(CanonicalDmnModel.RULE_VARIABLE_NAME)];
+    buffer.asLongBuffer().get(ruleCounts);
+    buffer.position(buffer.position() + ruleCounts.length * 8);
+
+    int numOutputs = buffer.getInt();
+    Map<String, List<String>> outputValues = new HashMap<String, List<String>>();
+    List<OutputMapping> outputMappings = new ArrayList<OutputMapping>();
+    for (int output = 0; output < numOutputs; output++) {
+      String outputVariable = readString(buffer);
+      String ruleVariable = variables[buffer.getInt()];
+      int numValues = buffer.getInt();
+      List<String> values = new ArrayList<String>(numValues);
+      for (int valueCode = 0; valueCode < numValues; valueCode++) {
+        values.add(readString(buffer));
+      }
+      outputValues.put(outputVariable, values);
+
+      int[] outputValueCodes = new int[variableValues.get(ruleVariable).size()];
+      buffer.asIntBuffer().get(outputValueCodes);
+      buffer.position(buffer.position() + outputValueCodes.length * 4);
+      outputMappings.add(new OutputMapping(outputVariable, ruleVariable, outputValueCodes, numValues));
+    }
+    model.outputIndex = new VariableIndex(outputValues);
+    for (OutputMapping outputMapping : outputMappings) {
+      model.outputMappings.put(outputMapping.getOutputVariable(), outputMapping);
+    }
+
+    return new ModelSnapshot(model, ruleCounts, historyWatermark);
+  }
+
+  protected static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  protected static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  public String getDecisionDefinitionId() {
+    return decisionDefinitionId;
+  }
+
+  public long getHistoryWatermark() {
+    return historyWatermark;
+  }
+
+  public CanonicalDmnModel getModel() {
+    return model;
+  }
+
+  /**
+   * @return the counts by rule id the input tables of the model are based on
+   */
+  public Map<String, Long> getRuleCounts() {
+    VariableIndex variableIndex = model.getVariableIndex();
+    int ruleCode = variableIndex.getVariableCode(CanonicalDmnModel.RULE_VARIABLE_NAME);
+
+    Map<String, Long> ruleCountsById = new HashMap<String, Long>();
+    for (int valueCode = 0; valueCode < ruleCounts.length; valueCode++) {
+      ruleCountsById.put(variableIndex.getValue(ruleCode, valueCode), ruleCounts[valueCode]);
+    }
+
+    return ruleCountsById;
+  }
+
+  public long getRuleCount(String ruleId) {
+    int valueCode = model.getVariableIndex().getIndex(CanonicalDmnModel.RULE_VARIABLE_NAME, ruleId);
+    return valueCode != VariableIndex.UNKNOWN ? ruleCounts[valueCode] : 0L;
+  }
+}
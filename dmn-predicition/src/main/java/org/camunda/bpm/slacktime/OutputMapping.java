@@ -0,0 +1,65 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+/**
+ * An output of a decision as a deterministic function of the decision's rule variable:
+ * every rule yields exactly one output value. The posterior of the output is therefore
+ * the rule posterior summed per output value and needs no inference of its own.
+ *
+ * @author Thorben Lindhauer
+ */
+public class OutputMapping {
+
+  protected String outputVariable;
+  protected String ruleVariable;
+
+  // output value codes by value code of the rule variable
+  protected int[] outputValueCodes;
+  protected int numOutputValues;
+
+  public OutputMapping(String outputVariable, String ruleVariable, int[] outputValueCodes, int numOutputValues) {
+    this.outputVariable = outputVariable;
+    this.ruleVariable = ruleVariable;
+    this.outputValueCodes = outputValueCodes;
+    this.numOutputValues = numOutputValues;
+  }
+
+  /**
+   * @param rulePosterior the posterior of the rule variable in canonical value order
+   * @return the posterior of the output in canonical value order
+   */
+  public double[] fold(double[] rulePosterior) {
+    double[] outputPosterior = new double[numOutputValues];
+    for (int rule = 0; rule < rulePosterior.length; rule++) {
+      outputPosterior[outputValueCodes[rule]] += rulePosterior[rule];
+    }
+    return outputPosterior;
+  }
+
+  public String getOutputVariable() {
+    return outputVariable;
+  }
+
+  public String getRuleVariable() {
+    return ruleVariable;
+  }
+
+  public int getOutputValueCode(int ruleValueCode) {
+    return outputValueCodes[ruleValueCode];
+  }
+
+  public int getNumOutputValues() {
+    return numOutputValues;
+  }
+}
@@ -0,0 +1,118 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least-recently-used cache of posteriors keyed by the queried variable and
+ * the canonical evidence, i.e. the evidence scope's variables and their value indexes.
+ *
+ * @author Thorben Lindhauer
+ */
+public class PosteriorCache {
+
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  protected Map<PosteriorKey, double[]> posteriors;
+
+  protected long hitCount;
+  protected long missCount;
+
+  public PosteriorCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public PosteriorCache(final int maxSize) {
+    this.posteriors = new LinkedHashMap<PosteriorKey, double[]>(16, 0.75f, true) {
+
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<PosteriorKey, double[]> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * @return a copy of the cached posterior or null if there is none
+   */
+  public synchronized double[] get(String variable, String[] evidenceVariables, int[] evidenceAssignment) {
+    double[] posterior = posteriors.get(new PosteriorKey(variable, evidenceVariables, evidenceAssignment));
+
+    if (posterior != null) {
+      hitCount++;
+      return posterior.clone();
+    }
+    else {
+      missCount++;
+      return null;
+    }
+  }
+
+  public synchronized void put(String variable, String[] evidenceVariables, int[] evidenceAssignment, double[] posterior) {
+    posteriors.put(new PosteriorKey(variable, evidenceVariables, evidenceAssignment), posterior.clone());
+  }
+
+  public synchronized void clear() {
+    posteriors.clear();
+  }
+
+  public synchronized int size() {
+    return posteriors.size();
+  }
+
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  protected static class PosteriorKey {
+
+    protected String variable;
+    protected String[] evidenceVariables;
+    protected int[] evidenceAssignment;
+    protected int hashCode;
+
+    public PosteriorKey(String variable, String[] evidenceVariables, int[] evidenceAssignment) {
+      this.variable = variable;
+      this.evidenceVariables = evidenceVariables;
+      this.evidenceAssignment = evidenceAssignment;
+
+      this.hashCode = 31 * (31 * variable.hashCode() + Arrays.hashCode(evidenceVariables)) + Arrays.hashCode(evidenceAssignment);
+    }
+
+    public int hashCode() {
+      return hashCode;
+    }
+
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof PosteriorKey)) {
+        return false;
+      }
+
+      PosteriorKey other = (PosteriorKey) obj;
+      return variable.equals(other.variable)
+          && Arrays.equals(evidenceVariables, other.evidenceVariables)
+          && Arrays.equals(evidenceAssignment, other.evidenceAssignment);
+    }
+  }
+}
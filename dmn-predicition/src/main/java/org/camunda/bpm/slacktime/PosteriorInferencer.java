@@ -0,0 +1,36 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Map;
+
+import com.github.thorbenlindhauer.variable.Scope;
+
+/**
+ * Computes the posterior distribution of a single variable over all of its values at once.
+ *
+ * @author Thorben Lindhauer
+ */
+public interface PosteriorInferencer {
+
+  /**
+   * @param evidenceAssignment canonical value indexes in the variable order of the evidence scope
+   * @return the normalized posterior in canonical value order; all zeros if the evidence is impossible
+   */
+  double[] getPosterior(String variable, Scope evidenceScope, int[] evidenceAssignment);
+
+  /**
+   * @return the normalized posteriors of all variables of the model, keyed by variable
+   */
+  Map<String, double[]> getPosteriors(Scope evidenceScope, int[] evidenceAssignment);
+}
@@ -0,0 +1,142 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.github.thorbenlindhauer.network.ScopeBuilder;
+import com.github.thorbenlindhauer.network.ScopeBuilderImpl;
+import com.github.thorbenlindhauer.variable.Scope;
+
+/**
+ * Precomputes the $rule posterior for every evidence pattern over the inputs, including
+ * every subset of observed inputs, so that queries become array reads.
+ *
+ * <p>Each input is given an additional value that stands for "not observed". A pattern is
+ * encoded with the index coder of a scope over these extended inputs and the posteriors are
+ * stored in one dense array of <code>patterns x rules</code> entries. If that array would exceed
+ * the configured maximum size, nothing is precompiled. All queries that cannot be answered from the
+ * table are delegated to the fallback inferencer.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class PrecompiledInferencer implements PosteriorInferencer {
+
+  public static final int DEFAULT_MAX_TABLE_SIZE = 1 << 20;
+
+  protected PosteriorInferencer fallbackInferencer;
+
+  protected Scope patternScope;
+  protected String[] inputs;
+  protected int[] cardinalities;
+  protected int numRules;
+
+  // null if the model exceeds the size limit
+  protected double[] posteriorTable;
+
+  public PrecompiledInferencer(CanonicalDmnModel model, PosteriorInferencer fallbackInferencer, int maxTableSize) {
+    this.fallbackInferencer = fallbackInferencer;
+    this.numRules = model.getVariableIndex().getCardinality(CanonicalDmnModel.RULE_VARIABLE_NAME);
+
+    ScopeBuilder scopeBuilder = new ScopeBuilderImpl();
+    long tableSize = numRules;
+    for (String variable : model.getNetworkScope().getVariableIds()) {
+      if (!CanonicalDmnModel.RULE_VARIABLE_NAME.equals(variable)) {
+        int cardinality = model.getVariableIndex().getCardinality(variable);
+        scopeBuilder.discreteVariable(variable, cardinality + 1);
+        // stop multiplying once the limit is exceeded, so that the size cannot overflow
+        if (tableSize <= maxTableSize) {
+          tableSize *= cardinality + 1;
+        }
+      }
+    }
+
+    if (tableSize <= maxTableSize) {
+      patternScope = scopeBuilder.buildScope();
+      inputs = patternScope.getVariableIds();
+      cardinalities = new int[inputs.length];
+      for (int i = 0; i < inputs.length; i++) {
+        cardinalities[i] = model.getVariableIndex().getCardinality(inputs[i]);
+      }
+
+      precompile(model, (int) tableSize);
+    }
+  }
+
+  protected void precompile(CanonicalDmnModel model, int tableSize) {
+    posteriorTable = new double[tableSize];
+
+    int[] extendedCardinalities = new int[inputs.length];
+    for (int i = 0; i < inputs.length; i++) {
+      extendedCardinalities[i] = cardinalities[i] + 1;
+    }
+
+    int[] pattern = new int[inputs.length];
+    boolean[] fixed = new boolean[inputs.length];
+
+    do {
+      List<String> observedInputs = new ArrayList<String>();
+      for (int i = 0; i < inputs.length; i++) {
+        if (pattern[i] < cardinalities[i]) {
+          observedInputs.add(inputs[i]);
+        }
+      }
+
+      Scope evidenceScope = model.getNetworkScope().subScope(observedInputs.toArray(new String[observedInputs.size()]));
+      String[] evidenceVariables = evidenceScope.getVariableIds();
+      int[] evidenceAssignment = new int[evidenceVariables.length];
+      for (int i = 0; i < evidenceVariables.length; i++) {
+        evidenceAssignment[i] = pattern[InferenceUtil.indexOf(inputs, evidenceVariables[i])];
+      }
+
+      double[] posterior = fallbackInferencer.getPosterior(CanonicalDmnModel.RULE_VARIABLE_NAME, evidenceScope, evidenceAssignment);
+      int offset = patternScope.getIndexCoder().getIndexForAssignment(pattern) * numRules;
+      System.arraycopy(posterior, 0, posteriorTable, offset, numRules);
+
+    } while (InferenceUtil.nextAssignment(pattern, extendedCardinalities, fixed));
+  }
+
+  public boolean isPrecompiled() {
+    return posteriorTable != null;
+  }
+
+  public double[] getPosterior(String variable, Scope evidenceScope, int[] evidenceAssignment) {
+    if (!isPrecompiled() || !CanonicalDmnModel.RULE_VARIABLE_NAME.equals(variable)) {
+      return fallbackInferencer.getPosterior(variable, evidenceScope, evidenceAssignment);
+    }
+
+    // unobserved inputs are encoded by the additional value
+    int[] pattern = cardinalities.clone();
+
+    String[] evidenceVariables = evidenceScope.getVariableIds();
+    for (int i = 0; i < evidenceVariables.length; i++) {
+      if (CanonicalDmnModel.RULE_VARIABLE_NAME.equals(evidenceVariables[i])) {
+        return fallbackInferencer.getPosterior(variable, evidenceScope, evidenceAssignment);
+      }
+      pattern[InferenceUtil.indexOf(inputs, evidenceVariables[i])] = evidenceAssignment[i];
+    }
+
+    int offset = patternScope.getIndexCoder().getIndexForAssignment(pattern) * numRules;
+    double[] posterior = new double[numRules];
+    System.arraycopy(posteriorTable, offset, posterior, 0, numRules);
+
+    return posterior;
+  }
+
+  public Map<String, double[]> getPosteriors(Scope evidenceScope, int[] evidenceAssignment) {
+    return fallbackInferencer.getPosteriors(evidenceScope, evidenceAssignment);
+  }
+
+}
@@ -0,0 +1,55 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+/**
+ * Counters reported to a {@link PredictionMetricsListener}.
+ *
+ * @author Thorben Lindhauer
+ */
+public enum PredictionCounter {
+
+  HISTORIC_INSTANCES_SCANNED,
+
+  /**
+   * The number of entries of the input tables and the rule factor of built models
+   */
+  FACTOR_TABLE_ENTRIES,
+
+  /**
+   * The number of factor entries the inferencer has to visit, summed up over
+   * all inferences; this is the size of the model's factors per inference
+   */
+  ELIMINATION_COST,
+
+  PREDICTOR_CACHE_HITS,
+  PREDICTOR_CACHE_MISSES,
+
+  /**
+   * The number of requests that waited for a predictor build of another request instead of starting their own
+   */
+  COALESCED_PREDICTOR_BUILDS,
+
+  POSTERIOR_CACHE_HITS,
+  POSTERIOR_CACHE_MISSES,
+
+  /**
+   * The number of process instances evidence has been generated for
+   */
+  EVIDENCE_GENERATED,
+
+  /**
+   * The number of predictions that exceeded the slow prediction threshold of {@link PredictionMetrics}
+   */
+  SLOW_PREDICTIONS
+}
@@ -0,0 +1,152 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aggregates the timings and counters of the prediction pipeline over the lifetime of
+ * a {@link PredictiveDmnEngine}.
+ *
+ * <p>If a slow prediction threshold is set, predictions that take longer are logged
+ * with the dimensions of the model they were made with.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class PredictionMetrics implements PredictionMetricsListener {
+
+  protected static final Logger LOG = Logger.getLogger(PredictionMetrics.class.getName());
+
+  protected static final int NUM_PHASES = PredictionPhase.values().length;
+
+  // per phase: count, total and maximum duration in nanoseconds
+  protected AtomicLongArray phaseCounts = new AtomicLongArray(NUM_PHASES);
+  protected AtomicLongArray phaseTotalTimes = new AtomicLongArray(NUM_PHASES);
+  protected AtomicLongArray phaseMaxTimes = new AtomicLongArray(NUM_PHASES);
+
+  protected AtomicLongArray counters = new AtomicLongArray(PredictionCounter.values().length);
+
+  // milliseconds; 0 disables the slow prediction log
+  protected volatile long slowPredictionThreshold;
+
+  public void phaseCompleted(String decisionDefinitionId, PredictionPhase phase, long durationNanos) {
+    int index = phase.ordinal();
+    phaseCounts.incrementAndGet(index);
+    phaseTotalTimes.addAndGet(index, durationNanos);
+
+    long maxTime = phaseMaxTimes.get(index);
+    while (durationNanos > maxTime && !phaseMaxTimes.compareAndSet(index, maxTime, durationNanos)) {
+      maxTime = phaseMaxTimes.get(index);
+    }
+  }
+
+  public void counterIncremented(String decisionDefinitionId, PredictionCounter counter, long delta) {
+    counters.addAndGet(counter.ordinal(), delta);
+  }
+
+  public void predictionCompleted(String decisionDefinitionId, CanonicalDmnModel model, long durationNanos) {
+    long threshold = slowPredictionThreshold;
+    if (threshold > 0 && TimeUnit.NANOSECONDS.toMillis(durationNanos) >= threshold) {
+      counterIncremented(decisionDefinitionId, PredictionCounter.SLOW_PREDICTIONS, 1);
+
+      if (LOG.isLoggable(Level.WARNING)) {
+        LOG.warning("Prediction for decision " + decisionDefinitionId + " took "
+            + TimeUnit.NANOSECONDS.toMillis(durationNanos) + " ms; " + describeDimensions(model));
+      }
+    }
+  }
+
+  protected String describeDimensions(CanonicalDmnModel model) {
+    VariableIndex variableIndex = model.getVariableIndex();
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("model has ");
+    sb.append(variableIndex.getCardinality(CanonicalDmnModel.RULE_VARIABLE_NAME));
+    sb.append(" rules, ");
+    sb.append(model.getNumFactorEntries());
+    sb.append(" factor table entries and inputs [");
+
+    boolean first = true;
+    for (String variable : model.getNetworkScope().getVariableIds()) {
+      if (!CanonicalDmnModel.RULE_VARIABLE_NAME.equals(variable)) {
+        if (!first) {
+          sb.append(", ");
+        }
+        sb.append(variable);
+        sb.append(": ");
+        sb.append(variableIndex.getCardinality(variable));
+        sb.append(" values");
+        first = false;
+      }
+    }
+    sb.append("]");
+
+    return sb.toString();
+  }
+
+  public long getPhaseCount(PredictionPhase phase) {
+    return phaseCounts.get(phase.ordinal());
+  }
+
+  /**
+   * @return the accumulated duration of the phase in nanoseconds
+   */
+  public long getPhaseTotalTime(PredictionPhase phase) {
+    return phaseTotalTimes.get(phase.ordinal());
+  }
+
+  /**
+   * @return the longest duration of the phase in nanoseconds
+   */
+  public long getPhaseMaxTime(PredictionPhase phase) {
+    return phaseMaxTimes.get(phase.ordinal());
+  }
+
+  public long getCounter(PredictionCounter counter) {
+    return counters.get(counter.ordinal());
+  }
+
+  /**
+   * @return the ratio of hits to lookups or 0 if there were no lookups
+   */
+  public double getHitRate(PredictionCounter hits, PredictionCounter misses) {
+    long hitCount = getCounter(hits);
+    long lookups = hitCount + getCounter(misses);
+    return lookups > 0 ? (double) hitCount / lookups : 0.0d;
+  }
+
+  public void reset() {
+    for (int i = 0; i < NUM_PHASES; i++) {
+      phaseCounts.set(i, 0);
+      phaseTotalTimes.set(i, 0);
+      phaseMaxTimes.set(i, 0);
+    }
+    for (int i = 0; i < counters.length(); i++) {
+      counters.set(i, 0);
+    }
+  }
+
+  public long getSlowPredictionThreshold() {
+    return slowPredictionThreshold;
+  }
+
+  /**
+   * @param slowPredictionThreshold milliseconds after which a prediction is logged as slow; 0 disables logging
+   */
+  public void setSlowPredictionThreshold(long slowPredictionThreshold) {
+    this.slowPredictionThreshold = slowPredictionThreshold;
+  }
+}
@@ -0,0 +1,193 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes {@link PredictionMetrics} via JMX. For every {@link PredictionPhase} there are the
+ * attributes <code>&lt;Phase&gt;Count</code>, <code>&lt;Phase&gt;TotalTimeMillis</code>,
+ * <code>&lt;Phase&gt;MaxTimeMillis</code> and <code>&lt;Phase&gt;MeanTimeMillis</code>, e.g.
+ * <code>HistoryQueryMeanTimeMillis</code>, and one attribute per {@link PredictionCounter}.
+ *
+ * @author Thorben Lindhauer
+ */
+public class PredictionMetricsDynamicMBean implements DynamicMBean {
+
+  protected static final String SLOW_PREDICTION_THRESHOLD = "SlowPredictionThresholdMillis";
+  protected static final String PREDICTOR_CACHE_HIT_RATE = "PredictorCacheHitRate";
+  protected static final String POSTERIOR_CACHE_HIT_RATE = "PosteriorCacheHitRate";
+  protected static final String RESET = "reset";
+
+  protected static final String COUNT = "Count";
+  protected static final String TOTAL_TIME = "TotalTimeMillis";
+  protected static final String MAX_TIME = "MaxTimeMillis";
+  protected static final String MEAN_TIME = "MeanTimeMillis";
+
+  protected PredictionMetrics metrics;
+  protected MBeanInfo mBeanInfo;
+
+  public PredictionMetricsDynamicMBean(PredictionMetrics metrics) {
+    this.metrics = metrics;
+    this.mBeanInfo = createMBeanInfo();
+  }
+
+  protected MBeanInfo createMBeanInfo() {
+    List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+
+    for (PredictionPhase phase : PredictionPhase.values()) {
+      String phaseName = toAttributeName(phase.name());
+      attributes.add(new MBeanAttributeInfo(phaseName + COUNT, "long", "Number of completed phases", true, false, false));
+      attributes.add(new MBeanAttributeInfo(phaseName + TOTAL_TIME, "double", "Accumulated duration", true, false, false));
+      attributes.add(new MBeanAttributeInfo(phaseName + MAX_TIME, "double", "Longest duration", true, false, false));
+      attributes.add(new MBeanAttributeInfo(phaseName + MEAN_TIME, "double", "Mean duration", true, false, false));
+    }
+
+    for (PredictionCounter counter : PredictionCounter.values()) {
+      attributes.add(new MBeanAttributeInfo(toAttributeName(counter.name()), "long", counter.name(), true, false, false));
+    }
+
+    attributes.add(new MBeanAttributeInfo(PREDICTOR_CACHE_HIT_RATE, "double", "Ratio of predictor cache hits", true, false, false));
+    attributes.add(new MBeanAttributeInfo(POSTERIOR_CACHE_HIT_RATE, "double", "Ratio of posterior cache hits", true, false, false));
+    attributes.add(new MBeanAttributeInfo(SLOW_PREDICTION_THRESHOLD, "long", "Predictions taking longer are logged; 0 disables logging", true, true, false));
+
+    MBeanOperationInfo reset = new MBeanOperationInfo(RESET, "Resets all timers and counters",
+        new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+
+    return new MBeanInfo(getClass().getName(), "Metrics of the DMN prediction pipeline",
+        attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[]{reset}, null);
+  }
+
+  public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+    if (SLOW_PREDICTION_THRESHOLD.equals(attribute)) {
+      return metrics.getSlowPredictionThreshold();
+    }
+    else if (PREDICTOR_CACHE_HIT_RATE.equals(attribute)) {
+      return metrics.getHitRate(PredictionCounter.PREDICTOR_CACHE_HITS, PredictionCounter.PREDICTOR_CACHE_MISSES);
+    }
+    else if (POSTERIOR_CACHE_HIT_RATE.equals(attribute)) {
+      return metrics.getHitRate(PredictionCounter.POSTERIOR_CACHE_HITS, PredictionCounter.POSTERIOR_CACHE_MISSES);
+    }
+
+    for (PredictionCounter counter : PredictionCounter.values()) {
+      if (toAttributeName(counter.name()).equals(attribute)) {
+        return metrics.getCounter(counter);
+      }
+    }
+
+    for (PredictionPhase phase : PredictionPhase.values()) {
+      String phaseName = toAttributeName(phase.name());
+      if (attribute.startsWith(phaseName)) {
+        String suffix = attribute.substring(phaseName.length());
+        long count = metrics.getPhaseCount(phase);
+
+        if (COUNT.equals(suffix)) {
+          return count;
+        }
+        else if (TOTAL_TIME.equals(suffix)) {
+          return toMillis(metrics.getPhaseTotalTime(phase));
+        }
+        else if (MAX_TIME.equals(suffix)) {
+          return toMillis(metrics.getPhaseMaxTime(phase));
+        }
+        else if (MEAN_TIME.equals(suffix)) {
+          return count > 0 ? toMillis(metrics.getPhaseTotalTime(phase)) / count : 0.0d;
+        }
+      }
+    }
+
+    throw new AttributeNotFoundException(attribute);
+  }
+
+  public void setAttribute(Attribute attribute)
+      throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+    if (!SLOW_PREDICTION_THRESHOLD.equals(attribute.getName())) {
+      throw new AttributeNotFoundException(attribute.getName() + " is not writable");
+    }
+    if (!(attribute.getValue() instanceof Long)) {
+      throw new InvalidAttributeValueException(SLOW_PREDICTION_THRESHOLD + " must be a long");
+    }
+
+    metrics.setSlowPredictionThreshold((Long) attribute.getValue());
+  }
+
+  public AttributeList getAttributes(String[] attributes) {
+    AttributeList attributeList = new AttributeList();
+    for (String attribute : attributes) {
+      try {
+        attributeList.add(new Attribute(attribute, getAttribute(attribute)));
+      }
+      catch (Exception e) {
+        // as specified by DynamicMBean, attributes that cannot be read are omitted
+      }
+    }
+    return attributeList;
+  }
+
+  public AttributeList setAttributes(AttributeList attributes) {
+    AttributeList attributeList = new AttributeList();
+    for (Attribute attribute : attributes.asList()) {
+      try {
+        setAttribute(attribute);
+        attributeList.add(attribute);
+      }
+      catch (Exception e) {
+        // as specified by DynamicMBean, attributes that cannot be written are omitted
+      }
+    }
+    return attributeList;
+  }
+
+  public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+    if (RESET.equals(actionName)) {
+      metrics.reset();
+      return null;
+    }
+
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+
+  public MBeanInfo getMBeanInfo() {
+    return mBeanInfo;
+  }
+
+  protected static double toMillis(long nanos) {
+    return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /**
+   * HISTORY_QUERY => HistoryQuery
+   */
+  protected static String toAttributeName(String constantName) {
+    StringBuilder sb = new StringBuilder();
+    for (String part : constantName.split("_")) {
+      sb.append(part.charAt(0));
+      sb.append(part.substring(1).toLowerCase());
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,34 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+/**
+ * Receives timings and counters of the prediction pipeline. Implementations are called
+ * synchronously from the predicting thread and must therefore be thread-safe and cheap.
+ *
+ * @author Thorben Lindhauer
+ */
+public interface PredictionMetricsListener {
+
+  void phaseCompleted(String decisionDefinitionId, PredictionPhase phase, long durationNanos);
+
+  void counterIncremented(String decisionDefinitionId, PredictionCounter counter, long delta);
+
+  /**
+   * Called once per call of a <code>predict</code> method of {@link PredictiveDmnEngine},
+   * i.e. including building the predictor if it was not cached
+   *
+   * @param model the model the prediction was made with
+   */
+  void predictionCompleted(String decisionDefinitionId, CanonicalDmnModel model, long durationNanos);
+}
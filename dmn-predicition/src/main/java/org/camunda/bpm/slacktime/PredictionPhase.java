@@ -0,0 +1,46 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+/**
+ * The stages of a prediction that are timed separately, see {@link PredictionMetricsListener}.
+ *
+ * @author Thorben Lindhauer
+ */
+public enum PredictionPhase {
+
+  /**
+   * Reading the decision history to build the input distributions
+   */
+  HISTORY_QUERY,
+
+  /**
+   * Fetching the DMN model of the decision from the repository
+   */
+  MODEL_LOADING,
+
+  /**
+   * Building the factor tables of a {@link CanonicalDmnModel}, excluding the history query
+   */
+  MODEL_BUILDING,
+
+  /**
+   * Computing a posterior that is not served from the posterior cache
+   */
+  INFERENCE,
+
+  /**
+   * Evaluating the input expressions of a decision against process instance variables
+   */
+  EVIDENCE_GENERATION
+}
@@ -12,32 +12,619 @@
  */
 package org.camunda.bpm.slacktime;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.camunda.bpm.engine.impl.util.ClockUtil;
 import org.camunda.bpm.model.dmn.DmnModelInstance;
 
 /**
+ * Builds, caches and queries {@link Predictor}s. Concurrent requests for a predictor that
+ * is not cached share a single build, so that the history is scanned once per decision
+ * no matter how many requests are waiting for it. A build that started before its decision was
+ * invalidated in the cache does not cache its predictor.
+ *
  * @author Thorben Lindhauer
  *
  */
 public class PredictiveDmnEngine {
 
+  /**
+   * Milliseconds for which the failure of an asynchronous build is kept to be reported to the polling request
+   */
+  public static final long FAILED_BUILD_RETENTION = 60 * 1000L;
+
   protected DistributionSource distributionSource;
 
   protected DecisionRepository decisionRepository;
 
+  protected PredictorCache predictorCache;
+
+  protected Predictor.InferenceMethod inferenceMethod = Predictor.InferenceMethod.SINGLE_PASS;
+
+  protected int posteriorCacheSize = PosteriorCache.DEFAULT_MAX_SIZE;
+
+  protected int precompiledTableSizeLimit = PrecompiledInferencer.DEFAULT_MAX_TABLE_SIZE;
+
+  protected PredictionMetricsListener metricsListener;
+
+  protected ModelSnapshotStore snapshotStore;
+  protected RuleCountHistory ruleCountHistory;
+  protected long snapshotWatermarkLag = ModelSnapshot.DEFAULT_WATERMARK_LAG;
+
+  protected InputDependencyLearner inputDependencyLearner;
+
+  protected Executor inputTableExecutor;
+
+  protected Executor predictorBuildExecutor;
+
+  // builds in progress by decision definition id
+  protected ConcurrentMap<String, PredictorBuild> predictorBuilds = new ConcurrentHashMap<String, PredictorBuild>();
+
+  // failed asynchronous builds whose failure has not been reported to a polling request yet
+  protected ConcurrentMap<String, PredictorBuild> failedBuilds = new ConcurrentHashMap<String, PredictorBuild>();
+
   public PredictiveDmnEngine(DecisionRepository repository, DistributionSource distributionSource) {
+    this(repository, distributionSource, null);
+  }
+
+  /**
+   * @param predictorCache may be null in which case every call to {@link #getPredictor(String)} builds a new predictor
+   *   unless another build for the same decision is in progress
+   */
+  public PredictiveDmnEngine(DecisionRepository repository, DistributionSource distributionSource, PredictorCache predictorCache) {
     this.decisionRepository = repository;
     this.distributionSource = distributionSource;
+    this.predictorCache = predictorCache;
   }
 
   public Predictor getPredictor(String decisionDefinitionId) {
-    DmnModelInstance modelInstance = decisionRepository.getDecisionModel(decisionDefinitionId);
+    Predictor predictor = getCachedPredictor(decisionDefinitionId);
+    if (predictor != null) {
+      return predictor;
+    }
+
+    PredictorBuild build = new PredictorBuild(decisionDefinitionId);
+    PredictorBuild inFlightBuild = predictorBuilds.putIfAbsent(decisionDefinitionId, build);
+
+    if (inFlightBuild == null) {
+      build.run();
+      inFlightBuild = build;
+    }
+    else {
+      incrementCounter(decisionDefinitionId, PredictionCounter.COALESCED_PREDICTOR_BUILDS);
+    }
+
+    return awaitPredictor(inFlightBuild);
+  }
+
+  /**
+   * Returns a future of the predictor that is built by the predictor build executor,
+   * see {@link #getPredictorAsync(String, Executor)}.
+   */
+  public Future<Predictor> getPredictorAsync(String decisionDefinitionId) {
+    return getPredictorAsync(decisionDefinitionId, predictorBuildExecutor);
+  }
+
+  /**
+   * Returns a future of the predictor without blocking the caller. If the predictor is not cached,
+   * it is built by the executor unless a build for the decision is already in progress. If the last
+   * asynchronous build of the decision failed, its failure is reported once before the next build is started
+   * unless it is older than {@link #FAILED_BUILD_RETENTION} or the decision has been invalidated since.
+   *
+   * @param executor may be null to build the predictor in the calling thread
+   * @return a future that is done if the predictor was cached or its build failed
+   */
+  public Future<Predictor> getPredictorAsync(String decisionDefinitionId, Executor executor) {
+    final Predictor predictor = getCachedPredictor(decisionDefinitionId);
+    if (predictor != null) {
+      FutureTask<Predictor> cachedPredictor = new FutureTask<Predictor>(new Callable<Predictor>() {
+        public Predictor call() {
+          return predictor;
+        }
+      });
+      cachedPredictor.run();
+      return cachedPredictor;
+    }
+
+    PredictorBuild failedBuild = failedBuilds.remove(decisionDefinitionId);
+    if (failedBuild != null && !isOutdated(failedBuild)) {
+      return failedBuild;
+    }
+
+    PredictorBuild build = new PredictorBuild(decisionDefinitionId, true);
+    PredictorBuild inFlightBuild = predictorBuilds.putIfAbsent(decisionDefinitionId, build);
+
+    if (inFlightBuild != null) {
+      incrementCounter(decisionDefinitionId, PredictionCounter.COALESCED_PREDICTOR_BUILDS);
+      return inFlightBuild;
+    }
+
+    if (executor == null) {
+      build.run();
+      return build;
+    }
+
+    try {
+      executor.execute(build);
+    }
+    catch (RuntimeException e) {
+      predictorBuilds.remove(decisionDefinitionId, build);
+      throw e;
+    }
+
+    return build;
+  }
+
+  /**
+   * @return the cached predictor or null if there is none
+   */
+  protected Predictor getCachedPredictor(String decisionDefinitionId) {
+    if (predictorCache == null) {
+      return null;
+    }
+
+    Predictor predictor = predictorCache.get(decisionDefinitionId);
+    if (predictor != null) {
+      incrementCounter(decisionDefinitionId, PredictionCounter.PREDICTOR_CACHE_HITS);
+    }
+    else {
+      incrementCounter(decisionDefinitionId, PredictionCounter.PREDICTOR_CACHE_MISSES);
+    }
+
+    return predictor;
+  }
+
+  /**
+   * @return true if the failure of the build should not be reported anymore
+   */
+  protected boolean isOutdated(PredictorBuild failedBuild) {
+    if (ClockUtil.getCurrentTime().getTime() - failedBuild.failureTime >= FAILED_BUILD_RETENTION) {
+      return true;
+    }
+
+    return predictorCache != null
+        && predictorCache.getInvalidationGeneration(failedBuild.decisionDefinitionId) > failedBuild.cacheGeneration;
+  }
+
+  protected void removeOutdatedFailedBuilds() {
+    Iterator<PredictorBuild> it = failedBuilds.values().iterator();
+    while (it.hasNext()) {
+      if (isOutdated(it.next())) {
+        it.remove();
+      }
+    }
+  }
+
+  protected Predictor awaitPredictor(PredictorBuild build) {
+    boolean interrupted = false;
+
+    try {
+      while (true) {
+        try {
+          return build.get();
+        }
+        catch (InterruptedException e) {
+          // the build is shared with other requests, so it is not cancelled
+          interrupted = true;
+        }
+        catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          else {
+            throw new IllegalStateException("Could not build predictor for decision " + build.decisionDefinitionId, cause);
+          }
+        }
+      }
+    }
+    finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public Distribution predict(String decisionDefinitionId, String variable, Evidence evidence) {
+    long startTime = System.nanoTime();
+
+    Predictor predictor = getPredictor(decisionDefinitionId);
+    Distribution posterior = predictor.getPosterior(variable, evidence);
+
+    if (metricsListener != null) {
+      metricsListener.predictionCompleted(decisionDefinitionId, predictor.getTransformedModel(), System.nanoTime() - startTime);
+    }
+
+    return posterior;
+  }
+
+  /**
+   * Predicts the variable for many evidences, e.g. of several process instances, with
+   * a single predictor.
+   *
+   * @return the posterior by key of the evidence
+   */
+  public <K> Map<K, Distribution> predict(String decisionDefinitionId, String variable, Map<K, Evidence> evidenceByKey) {
+    return predict(decisionDefinitionId, getPredictor(decisionDefinitionId), variable, evidenceByKey);
+  }
 
-    CanonicalDmnModel transformedModel = CanonicalDmnModel.fromDmnModelInstance(decisionDefinitionId, modelInstance, distributionSource);
+  /**
+   * Predicts the variable for many evidences with a predictor of the decision that has been
+   * obtained before, e.g. by {@link #getPredictorAsync(String)}.
+   *
+   * @return the posterior by key of the evidence
+   */
+  public <K> Map<K, Distribution> predict(String decisionDefinitionId, Predictor predictor, String variable,
+      Map<K, Evidence> evidenceByKey) {
+    long startTime = System.nanoTime();
 
-    Predictor predictor = new Predictor(transformedModel);
+    Map<K, Distribution> posteriors = predictor.getPosteriors(variable, evidenceByKey);
+
+    if (metricsListener != null) {
+      metricsListener.predictionCompleted(decisionDefinitionId, predictor.getTransformedModel(), System.nanoTime() - startTime);
+    }
+
+    return posteriors;
+  }
+
+  /**
+   * Predicts the variable for many evidences with a predictor of the decision that has been
+   * obtained before, keeping the keys with identical evidence together, see
+   * {@link Predictor#getGroupedPosteriors(String, Map)}.
+   *
+   * @return the posterior by group of keys
+   */
+  public <K> Map<List<K>, Distribution> predictGroups(String decisionDefinitionId, Predictor predictor, String variable,
+      Map<K, Evidence> evidenceByKey) {
+    long startTime = System.nanoTime();
+
+    Map<List<K>, Distribution> posteriors = predictor.getGroupedPosteriors(variable, evidenceByKey);
+
+    if (metricsListener != null) {
+      metricsListener.predictionCompleted(decisionDefinitionId, predictor.getTransformedModel(), System.nanoTime() - startTime);
+    }
+
+    return posteriors;
+  }
+
+  protected Predictor buildPredictor(String decisionDefinitionId) {
+    CanonicalDmnModel transformedModel;
+
+    // the counts the model is built from, if it is built from rule counts
+    Map<String, ? extends Number> ruleCounts = null;
+
+    if (snapshotStore != null) {
+      ModelSnapshot snapshot = buildSnapshot(decisionDefinitionId);
+      transformedModel = snapshot.getModel();
+      ruleCounts = snapshot.getRuleCounts();
+    }
+    else if (inputDependencyLearner != null && inputTableExecutor == null && distributionSource instanceof RuleCountingDistributionSource) {
+      // the learner uses the rule counts of the scan the model is built from instead of reading the history again
+      Map<String, Long> scannedRuleCounts = new HashMap<String, Long>();
+      DistributionSource countingSource = new RuleCountCollectingSource((RuleCountingDistributionSource) distributionSource, scannedRuleCounts);
+      transformedModel = CanonicalDmnModel.fromDecisionRequirementsGraph(decisionDefinitionId, loadRequirementsGraph(decisionDefinitionId),
+          countingSource, metricsListener, inputTableExecutor);
+      ruleCounts = scannedRuleCounts;
+    }
+    else {
+      transformedModel = CanonicalDmnModel.fromDecisionRequirementsGraph(decisionDefinitionId, loadRequirementsGraph(decisionDefinitionId),
+          distributionSource, metricsListener, inputTableExecutor);
+
+      if (inputDependencyLearner != null && distributionSource instanceof RuleCountDistributionSource) {
+        ruleCounts = ((RuleCountDistributionSource) distributionSource).getWeightedRuleCounts(decisionDefinitionId);
+      }
+    }
+
+    if (inputDependencyLearner != null) {
+      if (ruleCounts != null) {
+        transformedModel = inputDependencyLearner.learn(transformedModel, ruleCounts);
+      }
+      else {
+        transformedModel = inputDependencyLearner.learn(transformedModel);
+      }
+    }
+
+    Predictor predictor = new Predictor(transformedModel, inferenceMethod, precompiledTableSizeLimit);
+
+    if (posteriorCacheSize > 0) {
+      predictor.setPosteriorCache(new PosteriorCache(posteriorCacheSize));
+    }
+    else {
+      predictor.setPosteriorCache(null);
+    }
+
+    predictor.setMetricsListener(metricsListener);
 
     return predictor;
   }
 
+  /**
+   * @return the decision of the definition and the decisions it requires; a DMN model may contain
+   *   several decisions, each deployed as a definition of its own
+   */
+  protected DecisionRequirementsGraph loadRequirementsGraph(String decisionDefinitionId) {
+    long startTime = System.nanoTime();
+    DmnModelInstance modelInstance = decisionRepository.getDecisionModel(decisionDefinitionId);
+    String decisionKey = decisionRepository.getDecisionKey(decisionDefinitionId);
+    DecisionRequirementsGraph requirementsGraph = new DecisionRequirementsGraph(modelInstance, decisionKey);
+    if (metricsListener != null) {
+      metricsListener.phaseCompleted(decisionDefinitionId, PredictionPhase.MODEL_LOADING, System.nanoTime() - startTime);
+    }
+
+    return requirementsGraph;
+  }
+
+  /**
+   * Loads the latest snapshot of the model and replays the history newer than its watermark.
+   * Without a snapshot, the model is built from the rule counts of the whole history. In both cases,
+   * the configured distribution source is not used.
+   *
+   * <p>An evaluation is only visible in the history once its transaction has committed, which may be after
+   * younger evaluations have been counted. Only the history older than the snapshot watermark lag is
+   * therefore saved in the snapshot; younger history is replayed onto the returned model but read
+   * again by the next build.</p>
+   *
+   * @return a snapshot that includes the history up to now, which may be newer than the saved snapshot
+   */
+  protected ModelSnapshot buildSnapshot(String decisionDefinitionId) {
+    long now = ClockUtil.getCurrentTime().getTime();
+    long settledUntil = Math.max(now - snapshotWatermarkLag, ModelSnapshot.NO_WATERMARK);
+
+    long startTime = System.nanoTime();
+    ModelSnapshot snapshot = snapshotStore.load(decisionDefinitionId);
+    if (metricsListener != null && snapshot != null) {
+      metricsListener.phaseCompleted(decisionDefinitionId, PredictionPhase.MODEL_LOADING, System.nanoTime() - startTime);
+    }
+
+    if (snapshot == null) {
+      Map<String, Long> ruleCounts = getRuleCounts(decisionDefinitionId, ModelSnapshot.NO_WATERMARK, settledUntil);
+
+      InMemoryRuleCountStore ruleCountStore = new InMemoryRuleCountStore();
+      ruleCountStore.initializeRuleCounts(decisionDefinitionId, ruleCounts);
+
+      CanonicalDmnModel model = CanonicalDmnModel.fromDecisionRequirementsGraph(decisionDefinitionId,
+          loadRequirementsGraph(decisionDefinitionId), new RuleCountDistributionSource(decisionRepository, ruleCountStore),
+          metricsListener, null);
+
+      snapshot = new ModelSnapshot(model, ruleCounts, settledUntil);
+      snapshotStore.save(snapshot);
+    }
+    else if (snapshot.getHistoryWatermark() < settledUntil) {
+      Map<String, Long> ruleCounts = getRuleCounts(decisionDefinitionId, snapshot.getHistoryWatermark(), settledUntil);
+      if (!ruleCounts.isEmpty()) {
+        snapshot = snapshot.replay(ruleCounts, settledUntil);
+        snapshotStore.save(snapshot);
+      }
+    }
+
+    long replayedSince = Math.max(snapshot.getHistoryWatermark(), settledUntil);
+    if (replayedSince < now) {
+      Map<String, Long> recentRuleCounts = getRuleCounts(decisionDefinitionId, replayedSince, now);
+      if (!recentRuleCounts.isEmpty()) {
+        return snapshot.replay(recentRuleCounts, now);
+      }
+    }
+
+    return snapshot;
+  }
+
+  protected Map<String, Long> getRuleCounts(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil) {
+    long startTime = System.nanoTime();
+    Map<String, Long> ruleCounts = ruleCountHistory.getRuleCounts(decisionDefinitionId, evaluatedAfter, evaluatedUntil);
+    if (metricsListener != null) {
+      metricsListener.phaseCompleted(decisionDefinitionId, PredictionPhase.HISTORY_QUERY, System.nanoTime() - startTime);
+    }
+
+    return ruleCounts;
+  }
+
+  protected void incrementCounter(String decisionDefinitionId, PredictionCounter counter) {
+    if (metricsListener != null) {
+      metricsListener.counterIncremented(decisionDefinitionId, counter, 1);
+    }
+  }
+
+  /**
+   * Builds a predictor and puts it into the cache before the waiting requests are released
+   * and the build is removed from the in-flight builds. The predictor is only cached if the
+   * decision has not been invalidated since the build was created.
+   */
+  protected class PredictorBuild extends FutureTask<Predictor> {
+
+    protected String decisionDefinitionId;
+    protected long cacheGeneration;
+    // only the failures of asynchronous builds are kept for the requests polling them
+    protected boolean asynchronous;
+    protected volatile boolean failed;
+    protected volatile long failureTime;
+
+    public PredictorBuild(String decisionDefinitionId) {
+      this(decisionDefinitionId, false);
+    }
+
+    public PredictorBuild(String decisionDefinitionId, boolean asynchronous) {
+      this(decisionDefinitionId, predictorCache != null ? predictorCache.getGeneration() : 0, asynchronous);
+    }
+
+    protected PredictorBuild(final String decisionDefinitionId, final long cacheGeneration, boolean asynchronous) {
+      super(new Callable<Predictor>() {
+        public Predictor call() {
+          Predictor predictor = buildPredictor(decisionDefinitionId);
+          if (predictorCache != null) {
+            predictorCache.put(decisionDefinitionId, predictor, cacheGeneration);
+          }
+          return predictor;
+        }
+      });
+      this.decisionDefinitionId = decisionDefinitionId;
+      this.cacheGeneration = cacheGeneration;
+      this.asynchronous = asynchronous;
+    }
+
+    protected void setException(Throwable t) {
+      failed = true;
+      super.setException(t);
+    }
+
+    protected void done() {
+      if (failed && asynchronous) {
+        failureTime = ClockUtil.getCurrentTime().getTime();
+        removeOutdatedFailedBuilds();
+        failedBuilds.put(decisionDefinitionId, this);
+      }
+      else {
+        failedBuilds.remove(decisionDefinitionId);
+      }
+      predictorBuilds.remove(decisionDefinitionId, this);
+    }
+  }
+
+  /**
+   * Collects the rule counts of the scans of a {@link RuleCountingDistributionSource} during one model build.
+   */
+  protected static class RuleCountCollectingSource implements DistributionSource {
+
+    protected RuleCountingDistributionSource distributionSource;
+    protected Map<String, Long> ruleCounts;
+
+    public RuleCountCollectingSource(RuleCountingDistributionSource distributionSource, Map<String, Long> ruleCounts) {
+      this.distributionSource = distributionSource;
+      this.ruleCounts = ruleCounts;
+    }
+
+    public Distribution getDistribution(String dmnModelId, String variable, VariableIndex variableIndex) {
+      return distributionSource.getDistribution(dmnModelId, variable, variableIndex);
+    }
+
+    public Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex) {
+      return distributionSource.getDistributions(dmnModelId, variableIndex, ruleCounts);
+    }
+  }
+
+  public Predictor.InferenceMethod getInferenceMethod() {
+    return inferenceMethod;
+  }
+
+  public void setInferenceMethod(Predictor.InferenceMethod inferenceMethod) {
+    this.inferenceMethod = inferenceMethod;
+  }
+
+  public int getPosteriorCacheSize() {
+    return posteriorCacheSize;
+  }
+
+  /**
+   * @param posteriorCacheSize the number of posteriors each predictor caches; 0 disables caching
+   */
+  public void setPosteriorCacheSize(int posteriorCacheSize) {
+    this.posteriorCacheSize = posteriorCacheSize;
+  }
+
+  public int getPrecompiledTableSizeLimit() {
+    return precompiledTableSizeLimit;
+  }
+
+  /**
+   * @param precompiledTableSizeLimit the maximum number of entries of a posterior table
+   *   in {@link Predictor.InferenceMethod#PRECOMPILED}
+   */
+  public void setPrecompiledTableSizeLimit(int precompiledTableSizeLimit) {
+    this.precompiledTableSizeLimit = precompiledTableSizeLimit;
+  }
+
+  public PredictionMetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+
+  /**
+   * Sets the listener that the engine and the predictors it builds report timings and counters to.
+   * The distribution source is not affected and has to be instrumented separately.
+   *
+   * @param metricsListener may be null to disable metrics
+   */
+  public void setMetricsListener(PredictionMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+  }
+
+  public ModelSnapshotStore getSnapshotStore() {
+    return snapshotStore;
+  }
+
+  /**
+   * Enables building models from snapshots which are kept up to date with the rule counts of
+   * newer history, see {@link #buildSnapshot(String)}.
+   *
+   * @param snapshotStore may be null to build models with the distribution source
+   */
+  public void setSnapshotStore(ModelSnapshotStore snapshotStore, RuleCountHistory ruleCountHistory) {
+    this.snapshotStore = snapshotStore;
+    this.ruleCountHistory = ruleCountHistory;
+  }
+
+  public long getSnapshotWatermarkLag() {
+    return snapshotWatermarkLag;
+  }
+
+  /**
+   * @param snapshotWatermarkLag the number of milliseconds of the most recent history that is replayed onto a model
+   *   but not saved in its snapshot; evaluations that become visible in the history later than that are not counted
+   */
+  public void setSnapshotWatermarkLag(long snapshotWatermarkLag) {
+    this.snapshotWatermarkLag = snapshotWatermarkLag;
+  }
+
+  public InputDependencyLearner getInputDependencyLearner() {
+    return inputDependencyLearner;
+  }
+
+  /**
+   * @param inputDependencyLearner may be null to model all inputs as independent; learns from the rule counts
+   *   the model is built from if the model is built from a snapshot, a {@link RuleCountDistributionSource} or,
+   *   without an input table executor, a {@link RuleCountingDistributionSource}; otherwise it reads the history itself
+   */
+  public void setInputDependencyLearner(InputDependencyLearner inputDependencyLearner) {
+    this.inputDependencyLearner = inputDependencyLearner;
+  }
+
+  public Executor getInputTableExecutor() {
+    return inputTableExecutor;
+  }
+
+  /**
+   * @param inputTableExecutor may be null; if set, the distributions of the inputs are fetched in parallel
+   *   tasks of the executor when a model is built with the distribution source
+   */
+  public void setInputTableExecutor(Executor inputTableExecutor) {
+    this.inputTableExecutor = inputTableExecutor;
+  }
+
+  public Executor getPredictorBuildExecutor() {
+    return predictorBuildExecutor;
+  }
+
+  /**
+   * @param predictorBuildExecutor builds the predictors requested by {@link #getPredictorAsync(String)};
+   *   may be null to build them in the requesting thread
+   */
+  public void setPredictorBuildExecutor(Executor predictorBuildExecutor) {
+    this.predictorBuildExecutor = predictorBuildExecutor;
+  }
+
+  public PredictorCache getPredictorCache() {
+    return predictorCache;
+  }
 
 }
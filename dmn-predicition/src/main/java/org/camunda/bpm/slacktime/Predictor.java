@@ -12,7 +12,12 @@
  */
 package org.camunda.bpm.slacktime;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.github.thorbenlindhauer.inference.DiscreteModelInferencer;
 import com.github.thorbenlindhauer.inference.VariableEliminationInferencer;
@@ -25,25 +30,123 @@ import com.github.thorbenlindhauer.variable.Scope;
  */
 public class Predictor {
 
+  /**
+   * Determines how {@link Predictor#getPosterior(String, Evidence)} computes a posterior.
+   */
+  public enum PosteriorMode {
+
+    /**
+     * Computes the posterior over all values in one inference pass
+     */
+    SINGLE_PASS,
+
+    /**
+     * Runs a separate variable elimination whenever the probability of a value is requested
+     */
+    PER_VALUE
+  }
+
+  /**
+   * The inferencer that computes posteriors in {@link PosteriorMode#SINGLE_PASS}
+   */
+  public enum InferenceMethod {
+
+    /**
+     * Sums over the factor tables for every query; uses the closed form of
+     * {@link UniqueHitPolicyInferencer} if the model qualifies
+     */
+    SINGLE_PASS,
+
+    /**
+     * Compiles a calibrated clique tree once; queries only restrict it to the evidence
+     */
+    CLIQUE_TREE,
+
+    /**
+     * Precomputes the $rule posterior for all evidence patterns if the model is small enough
+     * and falls back to {@link #SINGLE_PASS} otherwise
+     */
+    PRECOMPILED
+  }
+
   protected CanonicalDmnModel transformedModel;
 
+  // only initialized in PosteriorMode.PER_VALUE since it requires the dense graphical model
   protected DiscreteModelInferencer inferencer;
 
+  protected PosteriorInferencer posteriorInferencer;
+
+  protected PosteriorMode posteriorMode = PosteriorMode.SINGLE_PASS;
+
+  protected PosteriorCache posteriorCache = new PosteriorCache();
+
+  protected PredictionMetricsListener metricsListener;
+
   public Predictor(CanonicalDmnModel transformedModel) {
+    this(transformedModel, InferenceMethod.SINGLE_PASS);
+  }
+
+  public Predictor(CanonicalDmnModel transformedModel, InferenceMethod inferenceMethod) {
+    this(transformedModel, inferenceMethod, PrecompiledInferencer.DEFAULT_MAX_TABLE_SIZE);
+  }
+
+  /**
+   * @param precompiledTableSizeLimit the maximum number of entries of a posterior table in {@link InferenceMethod#PRECOMPILED}
+   */
+  public Predictor(CanonicalDmnModel transformedModel, InferenceMethod inferenceMethod, int precompiledTableSizeLimit) {
+    this(transformedModel, initializePosteriorInferencer(transformedModel, inferenceMethod, precompiledTableSizeLimit));
+  }
+
+  public Predictor(CanonicalDmnModel transformedModel, PosteriorInferencer posteriorInferencer) {
     this.transformedModel = transformedModel;
-    this.inferencer = initializeInferencer(transformedModel);
+    this.posteriorInferencer = posteriorInferencer;
   }
 
   protected static DiscreteModelInferencer initializeInferencer(CanonicalDmnModel model) {
     // TODO could be configurable at some point in time
-    return new VariableEliminationInferencer(model.graphicalModel, new MinFillEliminationStrategy());
+    return new VariableEliminationInferencer(model.getGraphicalModel(), new MinFillEliminationStrategy());
 
   }
 
-  public Distribution getPosterior(final String variable, Evidence evidence) {
+  protected static PosteriorInferencer initializePosteriorInferencer(CanonicalDmnModel model, InferenceMethod inferenceMethod,
+      int precompiledTableSizeLimit) {
+    if (inferenceMethod == InferenceMethod.CLIQUE_TREE) {
+      return new CliqueTreeInferencer(model);
+    }
+    else if (inferenceMethod == InferenceMethod.PRECOMPILED) {
+      return new PrecompiledInferencer(model, initializeSinglePassInferencer(model), precompiledTableSizeLimit);
+    }
+    else {
+      return initializeSinglePassInferencer(model);
+    }
+  }
+
+  protected static PosteriorInferencer initializeSinglePassInferencer(CanonicalDmnModel model) {
+    if (UniqueHitPolicyInferencer.isApplicable(model)) {
+      return new UniqueHitPolicyInferencer(model);
+    }
+    else {
+      return new SinglePassInferencer(model);
+    }
+  }
+
+  public Distribution getPosterior(String variable, Evidence evidence) {
+    return getPosterior(variable, transformedModel.encode(evidence));
+  }
+
+  public Distribution getPosterior(final String variable, EncodedEvidence evidence) {
+    if (transformedModel.getOutputMapping(variable) != null) {
+      return new MaterializedDistribution(variable, getPosteriorValues(variable, evidence), transformedModel.getOutputIndex());
+    }
+
+    if (posteriorMode == PosteriorMode.SINGLE_PASS) {
+      return new MaterializedDistribution(variable, getPosteriorValues(variable, evidence), transformedModel.variableIndex);
+    }
+
     final Scope evidenceScope = transformedModel.toScope(evidence);
     final int[] evidenceAssignment = transformedModel.toCanonicalAssignment(evidence);
-    final Scope projectionScope = transformedModel.graphicalModel.getScope().subScope(variable);
+    final Scope projectionScope = transformedModel.getNetworkScope().subScope(variable);
+    final DiscreteModelInferencer inferencer = getInferencer();
 
     return new Distribution() {
 
@@ -61,4 +164,203 @@ public class Predictor {
       }
     };
   }
+
+  /**
+   * @return the normalized posterior of the variable in the canonical order of its values
+   */
+  public double[] getPosteriorValues(String variable, Evidence evidence) {
+    return getPosteriorValues(variable, transformedModel.encode(evidence));
+  }
+
+  /**
+   * @return the normalized posterior of the variable in the canonical order of its values
+   */
+  public double[] getPosteriorValues(String variable, EncodedEvidence evidence) {
+    OutputMapping outputMapping = transformedModel.getOutputMapping(variable);
+    if (outputMapping != null) {
+      // an output is a function of its rule variable, so its posterior is an aggregation of the rule posterior
+      return outputMapping.fold(getPosteriorValues(outputMapping.getRuleVariable(), evidence));
+    }
+
+    Scope evidenceScope = transformedModel.toScope(evidence);
+    int[] evidenceAssignment = transformedModel.toCanonicalAssignment(evidence);
+
+    if (posteriorCache == null) {
+      return inferPosterior(variable, evidenceScope, evidenceAssignment);
+    }
+
+    String[] evidenceVariables = evidenceScope.getVariableIds();
+    double[] posterior = posteriorCache.get(variable, evidenceVariables, evidenceAssignment);
+
+    if (posterior == null) {
+      incrementCounter(PredictionCounter.POSTERIOR_CACHE_MISSES);
+      posterior = inferPosterior(variable, evidenceScope, evidenceAssignment);
+      posteriorCache.put(variable, evidenceVariables, evidenceAssignment, posterior);
+    }
+    else {
+      incrementCounter(PredictionCounter.POSTERIOR_CACHE_HITS);
+    }
+
+    return posterior;
+  }
+
+  protected double[] inferPosterior(String variable, Scope evidenceScope, int[] evidenceAssignment) {
+    if (metricsListener == null) {
+      return posteriorInferencer.getPosterior(variable, evidenceScope, evidenceAssignment);
+    }
+
+    long startTime = System.nanoTime();
+    double[] posterior = posteriorInferencer.getPosterior(variable, evidenceScope, evidenceAssignment);
+    recordInference(System.nanoTime() - startTime);
+
+    return posterior;
+  }
+
+  protected void recordInference(long durationNanos) {
+    String modelId = transformedModel.getModelId();
+    metricsListener.phaseCompleted(modelId, PredictionPhase.INFERENCE, durationNanos);
+    metricsListener.counterIncremented(modelId, PredictionCounter.ELIMINATION_COST, transformedModel.getNumFactorEntries());
+  }
+
+  protected void incrementCounter(PredictionCounter counter) {
+    if (metricsListener != null) {
+      metricsListener.counterIncremented(transformedModel.getModelId(), counter, 1);
+    }
+  }
+
+  /**
+   * @return the posteriors of all variables and outputs of the model given the evidence, keyed by variable
+   */
+  public Map<String, Distribution> getPosteriors(Evidence evidence) {
+    return getPosteriors(transformedModel.encode(evidence));
+  }
+
+  public Map<String, Distribution> getPosteriors(EncodedEvidence evidence) {
+    Scope evidenceScope = transformedModel.toScope(evidence);
+    int[] evidenceAssignment = transformedModel.toCanonicalAssignment(evidence);
+
+    long startTime = System.nanoTime();
+    Map<String, double[]> posteriorValues = posteriorInferencer.getPosteriors(evidenceScope, evidenceAssignment);
+    if (metricsListener != null) {
+      recordInference(System.nanoTime() - startTime);
+    }
+
+    Map<String, Distribution> posteriors = new HashMap<String, Distribution>();
+    for (Map.Entry<String, double[]> posterior : posteriorValues.entrySet()) {
+      posteriors.put(posterior.getKey(), new MaterializedDistribution(posterior.getKey(), posterior.getValue(), transformedModel.variableIndex));
+    }
+
+    for (OutputMapping outputMapping : transformedModel.getOutputMappings()) {
+      double[] rulePosterior = posteriorValues.get(outputMapping.getRuleVariable());
+      if (rulePosterior != null) {
+        String outputVariable = outputMapping.getOutputVariable();
+        posteriors.put(outputVariable, new MaterializedDistribution(outputVariable, outputMapping.fold(rulePosterior), transformedModel.getOutputIndex()));
+      }
+    }
+
+    return posteriors;
+  }
+
+  /**
+   * Groups keys, e.g. process instance ids, whose evidence is identical so that
+   * each distinct evidence has to be inferred only once. Such evidence is usually generated
+   * from process data, so assignments the model does not know are treated as not observed.
+   *
+   * @return the keys by their encoded evidence in the order of first occurrence
+   */
+  public <K> Map<EncodedEvidence, List<K>> groupByEvidence(Map<K, Evidence> evidenceByKey) {
+    Map<EncodedEvidence, List<K>> groups = new LinkedHashMap<EncodedEvidence, List<K>>();
+
+    for (Map.Entry<K, Evidence> evidence : evidenceByKey.entrySet()) {
+      EncodedEvidence encodedEvidence = transformedModel.encode(evidence.getValue(), true);
+
+      List<K> keys = groups.get(encodedEvidence);
+      if (keys == null) {
+        keys = new ArrayList<K>();
+        groups.put(encodedEvidence, keys);
+      }
+      keys.add(evidence.getKey());
+    }
+
+    return groups;
+  }
+
+  /**
+   * Computes the posterior of the variable for many evidences at once, inferring every
+   * distinct evidence only once.
+   *
+   * @return the posterior by key; keys with identical evidence share the same distribution
+   */
+  public <K> Map<K, Distribution> getPosteriors(String variable, Map<K, Evidence> evidenceByKey) {
+    Map<K, Distribution> posteriors = new LinkedHashMap<K, Distribution>();
+
+    for (Map.Entry<List<K>, Distribution> group : getGroupedPosteriors(variable, evidenceByKey).entrySet()) {
+      for (K key : group.getKey()) {
+        posteriors.put(key, group.getValue());
+      }
+    }
+
+    return posteriors;
+  }
+
+  /**
+   * Computes the posterior of the variable for many evidences at once like {@link #getPosteriors(String, Map)}
+   * but keeps the keys with identical evidence together.
+   *
+   * @return the posterior by group of keys in the order of {@link #groupByEvidence(Map)}
+   */
+  public <K> Map<List<K>, Distribution> getGroupedPosteriors(String variable, Map<K, Evidence> evidenceByKey) {
+    Map<List<K>, Distribution> posteriors = new LinkedHashMap<List<K>, Distribution>();
+
+    for (Map.Entry<EncodedEvidence, List<K>> group : groupByEvidence(evidenceByKey).entrySet()) {
+      posteriors.put(group.getValue(), getPosterior(variable, group.getKey()));
+    }
+
+    return posteriors;
+  }
+
+  protected synchronized DiscreteModelInferencer getInferencer() {
+    if (inferencer == null) {
+      inferencer = initializeInferencer(transformedModel);
+    }
+    return inferencer;
+  }
+
+  public CanonicalDmnModel getTransformedModel() {
+    return transformedModel;
+  }
+
+  public PosteriorInferencer getPosteriorInferencer() {
+    return posteriorInferencer;
+  }
+
+  public PosteriorCache getPosteriorCache() {
+    return posteriorCache;
+  }
+
+  /**
+   * @param posteriorCache may be null to disable caching of posteriors
+   */
+  public void setPosteriorCache(PosteriorCache posteriorCache) {
+    this.posteriorCache = posteriorCache;
+  }
+
+  public PredictionMetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+
+  /**
+   * @param metricsListener may be null; is notified of inferences and posterior cache lookups
+   */
+  public void setMetricsListener(PredictionMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+  }
+
+  public PosteriorMode getPosteriorMode() {
+    return posteriorMode;
+  }
+
+  public void setPosteriorMode(PosteriorMode posteriorMode) {
+    this.posteriorMode = posteriorMode;
+  }
 }
@@ -0,0 +1,257 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+
+/**
+ * Bounded cache of {@link Predictor}s keyed by decision definition id.
+ *
+ * <p>Entries are evicted in least-recently-used order once more than <code>maxSize</code>
+ * predictors are cached and expire <code>timeToLive</code> milliseconds after they have
+ * been built. If a {@link DecisionEvaluationCounter} is set, an entry is considered stale
+ * as soon as at least <code>stalenessThreshold</code> evaluations have been recorded for the decision
+ * since the entry was built. Since counting the evaluations queries the history, an entry is checked at most
+ * once per <code>stalenessCheckInterval</code> milliseconds and never while the cache is locked.</p>
+ *
+ * <p>Every invalidation starts a new generation of the cache and records it for the invalidated decisions.
+ * A predictor whose build started before its decision was invalidated is rejected by {@link #put(String, Predictor, long)},
+ * so that a build in progress cannot cache a predictor of a replaced decision while builds of other decisions
+ * are not affected.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class PredictorCache {
+
+  public static final int DEFAULT_MAX_SIZE = 100;
+  public static final long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000L;
+  public static final long DEFAULT_STALENESS_CHECK_INTERVAL = 10 * 1000L;
+
+  protected int maxSize;
+  protected long timeToLive;
+
+  // read without holding the lock
+  protected volatile DecisionEvaluationCounter evaluationCounter;
+  protected volatile long stalenessThreshold;
+  protected volatile long stalenessCheckInterval = DEFAULT_STALENESS_CHECK_INTERVAL;
+
+  protected Map<String, CacheEntry> entries;
+
+  // guarded by this; incremented on every invalidation
+  protected long generation;
+  // guarded by this; the generation of the last invalidation of all decisions and of single decisions since then
+  protected long invalidationGeneration;
+  protected Map<String, Long> decisionInvalidationGenerations = new HashMap<String, Long>();
+
+  protected AtomicLong hitCount = new AtomicLong();
+  protected AtomicLong missCount = new AtomicLong();
+
+  public PredictorCache() {
+    this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+  }
+
+  /**
+   * @param maxSize the maximum number of cached predictors
+   * @param timeToLive milliseconds after which a predictor is rebuilt; a value <= 0 disables expiry
+   */
+  public PredictorCache(final int maxSize, long timeToLive) {
+    this.maxSize = maxSize;
+    this.timeToLive = timeToLive;
+    this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Enables history based invalidation: an entry becomes stale once the decision
+   * has been evaluated <code>stalenessThreshold</code> times since the entry was built.
+   */
+  public void setStalenessCheck(DecisionEvaluationCounter evaluationCounter, long stalenessThreshold) {
+    setStalenessCheck(evaluationCounter, stalenessThreshold, DEFAULT_STALENESS_CHECK_INTERVAL);
+  }
+
+  /**
+   * @param stalenessCheckInterval the minimum number of milliseconds between two checks of the same entry;
+   *   a value <= 0 checks on every access
+   */
+  public void setStalenessCheck(DecisionEvaluationCounter evaluationCounter, long stalenessThreshold, long stalenessCheckInterval) {
+    this.stalenessThreshold = stalenessThreshold;
+    this.stalenessCheckInterval = stalenessCheckInterval;
+    this.evaluationCounter = evaluationCounter;
+  }
+
+  /**
+   * @return the cached predictor or null if there is no valid entry
+   */
+  public Predictor get(String decisionDefinitionId) {
+    CacheEntry entry;
+    synchronized (this) {
+      entry = entries.get(decisionDefinitionId);
+      if (entry != null && isExpired(entry)) {
+        entries.remove(decisionDefinitionId);
+        entry = null;
+      }
+    }
+
+    if (entry != null && isStale(decisionDefinitionId, entry)) {
+      remove(decisionDefinitionId, entry);
+      entry = null;
+    }
+
+    if (entry != null) {
+      hitCount.incrementAndGet();
+      return entry.predictor;
+    }
+    else {
+      missCount.incrementAndGet();
+      return null;
+    }
+  }
+
+  public void put(String decisionDefinitionId, Predictor predictor) {
+    CacheEntry entry = createEntry(decisionDefinitionId, predictor);
+
+    synchronized (this) {
+      entries.put(decisionDefinitionId, entry);
+    }
+  }
+
+  /**
+   * Caches the predictor unless the decision has been invalidated since the given generation.
+   *
+   * @param generation the generation of the cache when the predictor's build started, see {@link #getGeneration()}
+   * @return true if the predictor was cached
+   */
+  public boolean put(String decisionDefinitionId, Predictor predictor, long generation) {
+    CacheEntry entry = createEntry(decisionDefinitionId, predictor);
+
+    synchronized (this) {
+      if (generation < getInvalidationGeneration(decisionDefinitionId)) {
+        return false;
+      }
+      entries.put(decisionDefinitionId, entry);
+      return true;
+    }
+  }
+
+  protected CacheEntry createEntry(String decisionDefinitionId, Predictor predictor) {
+    CacheEntry entry = new CacheEntry();
+    entry.predictor = predictor;
+    entry.creationTime = ClockUtil.getCurrentTime().getTime();
+    entry.lastStalenessCheck = new AtomicLong(entry.creationTime);
+
+    DecisionEvaluationCounter evaluationCounter = this.evaluationCounter;
+    if (evaluationCounter != null) {
+      entry.evaluationCount = evaluationCounter.getEvaluationCount(decisionDefinitionId);
+    }
+
+    return entry;
+  }
+
+  /**
+   * Removes the entry unless it has been replaced in the meantime.
+   */
+  protected synchronized void remove(String decisionDefinitionId, CacheEntry entry) {
+    if (entries.get(decisionDefinitionId) == entry) {
+      entries.remove(decisionDefinitionId);
+    }
+  }
+
+  public synchronized void invalidate(String decisionDefinitionId) {
+    entries.remove(decisionDefinitionId);
+    generation++;
+    decisionInvalidationGenerations.put(decisionDefinitionId, generation);
+  }
+
+  public synchronized void invalidateAll() {
+    entries.clear();
+    generation++;
+    invalidationGeneration = generation;
+    decisionInvalidationGenerations.clear();
+  }
+
+  /**
+   * @return the generation in which the decision has been invalidated last
+   */
+  protected synchronized long getInvalidationGeneration(String decisionDefinitionId) {
+    Long decisionInvalidationGeneration = decisionInvalidationGenerations.get(decisionDefinitionId);
+    if (decisionInvalidationGeneration != null) {
+      return decisionInvalidationGeneration;
+    }
+    else {
+      return invalidationGeneration;
+    }
+  }
+
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public long getStalenessCheckInterval() {
+    return stalenessCheckInterval;
+  }
+
+  protected boolean isExpired(CacheEntry entry) {
+    return timeToLive > 0 && ClockUtil.getCurrentTime().getTime() - entry.creationTime >= timeToLive;
+  }
+
+  /**
+   * Counts the evaluations since the entry was built unless the entry has been checked within the
+   * check interval or another thread is checking it right now.
+   */
+  protected boolean isStale(String decisionDefinitionId, CacheEntry entry) {
+    DecisionEvaluationCounter evaluationCounter = this.evaluationCounter;
+    long stalenessThreshold = this.stalenessThreshold;
+    if (evaluationCounter == null || stalenessThreshold <= 0) {
+      return false;
+    }
+
+    long now = ClockUtil.getCurrentTime().getTime();
+    long lastCheck = entry.lastStalenessCheck.get();
+    if (now - lastCheck < stalenessCheckInterval || !entry.lastStalenessCheck.compareAndSet(lastCheck, now)) {
+      return false;
+    }
+
+    long newEvaluations = evaluationCounter.getEvaluationCount(decisionDefinitionId) - entry.evaluationCount;
+    return newEvaluations >= stalenessThreshold;
+  }
+
+  protected static class CacheEntry {
+    protected Predictor predictor;
+    protected long creationTime;
+    protected long evaluationCount;
+    protected AtomicLong lastStalenessCheck;
+  }
+}
@@ -40,6 +40,13 @@ public class ProbabilityTableBuilder {
       assignment[i] = valueIndex;
     }
 
+    submitValue(assignment, value);
+  }
+
+  /**
+   * @param assignment value codes in the order of the scope's variables
+   */
+  public void submitValue(int[] assignment, double value) {
     int valueIndex = scope.getIndexCoder().getIndexForAssignment(assignment);
     values[valueIndex] = value;
   }
@@ -0,0 +1,189 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+import org.camunda.bpm.model.dmn.DmnModelInstance;
+import org.camunda.bpm.model.dmn.instance.DecisionTable;
+import org.camunda.bpm.model.dmn.instance.Input;
+import org.camunda.bpm.model.dmn.instance.InputEntry;
+import org.camunda.bpm.model.dmn.instance.Rule;
+
+/**
+ * Builds distributions from the rule counts of a {@link RuleCountStore}. Since every
+ * rule determines the values of all inputs, the input distributions are aggregated
+ * from the rule counts, so that building a distribution costs O(number of rules)
+ * independent of how often the decision has been evaluated.
+ *
+ * <p>Counts are smoothed with a uniform Dirichlet prior of {@link #PSEUDO_COUNT} per value.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class RuleCountDistributionSource implements DistributionSource {
+
+  public static final double PSEUDO_COUNT = 1.0d;
+
+  protected DecisionRepository decisionRepository;
+  protected RuleCountStore ruleCountStore;
+  protected PredictionMetricsListener metricsListener;
+
+  public RuleCountDistributionSource(DecisionRepository decisionRepository, RuleCountStore ruleCountStore) {
+    this.decisionRepository = decisionRepository;
+    this.ruleCountStore = ruleCountStore;
+  }
+
+  public Distribution getDistribution(String dmnModelId, String variable, VariableIndex variableIndex) {
+    return getDistributions(dmnModelId, variableIndex).get(variable);
+  }
+
+  public Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex) {
+    Map<String, Double> ruleCounts = getWeightedRuleCounts(dmnModelId);
+
+    Map<String, double[]> counts = new HashMap<String, double[]>();
+    for (String variable : variableIndex.getVariables()) {
+      counts.put(variable, new double[variableIndex.getCardinality(variable)]);
+    }
+
+    DmnModelInstance dmnModel = decisionRepository.getDecisionModel(dmnModelId);
+    // the history only covers the target decision of a decision requirements graph
+    DecisionTable decisionTable = DecisionRequirementsGraph.getTargetDecisionTable(dmnModel, decisionRepository.getDecisionKey(dmnModelId));
+
+    for (Rule rule : decisionTable.getRules()) {
+      Double ruleCount = ruleCounts.get(rule.getId());
+      if (ruleCount == null || ruleCount == 0.0d) {
+        continue;
+      }
+
+      addCount(counts, CanonicalDmnModel.RULE_VARIABLE_NAME, rule.getId(), ruleCount, variableIndex);
+
+      Iterator<Input> inputIt = decisionTable.getInputs().iterator();
+      Iterator<InputEntry> inputEntryIt = rule.getInputEntries().iterator();
+
+      while (inputIt.hasNext() && inputEntryIt.hasNext()) {
+        addCount(counts, inputIt.next().getLabel(), inputEntryIt.next().getTextContent(), ruleCount, variableIndex);
+      }
+    }
+
+    Map<String, Distribution> distributions = new HashMap<String, Distribution>();
+    for (Map.Entry<String, double[]> variableCounts : counts.entrySet()) {
+      String variable = variableCounts.getKey();
+      distributions.put(variable, new MaterializedDistribution(variable, toProbabilities(variableCounts.getValue()), variableIndex));
+    }
+
+    return distributions;
+  }
+
+  /**
+   * @return the counts by rule id that the distributions are based on; counts may be fractional if
+   *   evaluations are weighted, e.g. by their age
+   */
+  protected Map<String, Double> getWeightedRuleCounts(String dmnModelId) {
+    Map<String, Double> weightedRuleCounts = new HashMap<String, Double>();
+    for (Map.Entry<String, Long> ruleCount : getRuleCounts(dmnModelId).entrySet()) {
+      if (ruleCount.getValue() != null) {
+        weightedRuleCounts.put(ruleCount.getKey(), ruleCount.getValue().doubleValue());
+      }
+    }
+    return weightedRuleCounts;
+  }
+
+  protected Map<String, Long> getRuleCounts(String dmnModelId) {
+    Map<String, Long> ruleCounts = ruleCountStore.getRuleCounts(dmnModelId);
+
+    if (ruleCounts == null) {
+      long startTime = System.nanoTime();
+
+      initializeRuleCounts(dmnModelId);
+      ruleCounts = ruleCountStore.getRuleCounts(dmnModelId);
+
+      initialRuleCountsLoaded(dmnModelId, startTime);
+    }
+
+    return ruleCounts;
+  }
+
+  protected void initializeRuleCounts(String dmnModelId) {
+    // evaluations are recorded before the initial counts are loaded, so that none is missed meanwhile
+    long countingSince = ruleCountStore.startCounting(dmnModelId, ClockUtil.getCurrentTime().getTime());
+    long lateCommitsSince = LateCommitFilter.getLateCommitsSince(countingSince);
+
+    Map<String, Long> initialRuleCounts = loadInitialRuleCounts(dmnModelId, lateCommitsSince);
+    List<RuleEvaluation> lateEvaluations = loadLateEvaluations(dmnModelId, lateCommitsSince, countingSince);
+    ruleCountStore.initializeRuleCounts(dmnModelId, initialRuleCounts, lateEvaluations);
+  }
+
+  /**
+   * Provides the counts a decision starts with when the store has none yet.
+   *
+   * @param countedBefore the time in milliseconds from which on evaluations are either recorded by the store
+   *   or provided by {@link #loadLateEvaluations(String, long, long)}; only evaluations before are to be counted
+   */
+  protected Map<String, Long> loadInitialRuleCounts(String dmnModelId, long countedBefore) {
+    return Collections.emptyMap();
+  }
+
+  /**
+   * Provides the evaluations shortly before the store records evaluations one by one, since they may
+   * still commit and be recorded, too.
+   *
+   * @param lateCommitsSince inclusive lower bound of the evaluation time in milliseconds
+   * @param countingSince exclusive upper bound of the evaluation time in milliseconds
+   */
+  protected List<RuleEvaluation> loadLateEvaluations(String dmnModelId, long lateCommitsSince, long countingSince) {
+    return Collections.emptyList();
+  }
+
+  protected void initialRuleCountsLoaded(String dmnModelId, long startTime) {
+    if (metricsListener != null) {
+      metricsListener.phaseCompleted(dmnModelId, PredictionPhase.HISTORY_QUERY, System.nanoTime() - startTime);
+    }
+  }
+
+  protected void addCount(Map<String, double[]> counts, String variable, String value, double count, VariableIndex variableIndex) {
+    double[] variableCounts = counts.get(variable);
+    if (variableCounts != null) {
+      variableCounts[variableIndex.getIndex(variable, value)] += count;
+    }
+  }
+
+  protected double[] toProbabilities(double[] counts) {
+    double total = 0.0d;
+    for (double count : counts) {
+      total += count + PSEUDO_COUNT;
+    }
+
+    double[] probabilities = new double[counts.length];
+    for (int i = 0; i < counts.length; i++) {
+      probabilities[i] = (counts[i] + PSEUDO_COUNT) / total;
+    }
+
+    return probabilities;
+  }
+
+  public PredictionMetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+
+  /**
+   * @param metricsListener may be null; is notified of the duration of loading the initial rule counts of a decision
+   */
+  public void setMetricsListener(PredictionMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+  }
+}
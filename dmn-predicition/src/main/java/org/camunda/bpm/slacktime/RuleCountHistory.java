@@ -0,0 +1,55 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the rules matched by past evaluations of a decision within a time range.
+ *
+ * @author Thorben Lindhauer
+ */
+public interface RuleCountHistory {
+
+  /**
+   * @param evaluatedAfter exclusive lower bound of the evaluation time in milliseconds or
+   *   {@link ModelSnapshot#NO_WATERMARK} to count from the beginning of the history
+   * @param evaluatedUntil inclusive upper bound of the evaluation time in milliseconds
+   * @return the number of evaluations by matched rule id
+   */
+  Map<String, Long> getRuleCounts(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil);
+
+  /**
+   * Counts the evaluations within the time range separately per bucket of the given duration,
+   * reading the history only once.
+   *
+   * @param evaluatedAfter exclusive lower bound of the evaluation time in milliseconds or
+   *   {@link ModelSnapshot#NO_WATERMARK} to count from the beginning of the history
+   * @param evaluatedUntil inclusive upper bound of the evaluation time in milliseconds
+   * @return by bucket, i.e. the evaluation time divided by the bucket duration, the number of evaluations
+   *   by matched rule id; buckets without evaluations may be missing
+   */
+  Map<Long, Map<String, Long>> getRuleCountsByBucket(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil,
+      long bucketDuration);
+
+  /**
+   * Lists the evaluations within the time range one by one, e.g. to tell them apart from those counted on commit.
+   *
+   * @param evaluatedAfter exclusive lower bound of the evaluation time in milliseconds or
+   *   {@link ModelSnapshot#NO_WATERMARK} to list from the beginning of the history
+   * @param evaluatedUntil inclusive upper bound of the evaluation time in milliseconds
+   * @return the evaluations that matched a rule
+   */
+  List<RuleEvaluation> getRuleEvaluations(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil);
+}
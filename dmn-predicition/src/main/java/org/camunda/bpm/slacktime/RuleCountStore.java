@@ -0,0 +1,77 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the number of times each rule of a decision has matched.
+ *
+ * <p>The counts of a decision are set up in two steps, so that no evaluation is lost or counted twice
+ * while the history is scanned: {@link #startCounting(String, long)} records every evaluation from a
+ * point in time on, then {@link #initializeRuleCounts(String, Map, List)} adds the counts of the evaluations
+ * before that point.</p>
+ *
+ * <p>An evaluation is counted once its transaction commits, which may be after the history has been read
+ * although it took place before the start of counting. Therefore, the evaluations within
+ * {@link #LATE_COMMIT_WINDOW} before the start of counting are provided one by one and are told apart from
+ * those counted on commit by their historic decision instance ids, see {@link LateCommitFilter}.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public interface RuleCountStore {
+
+  /**
+   * The time in milliseconds a transaction that evaluates a decision is assumed to stay open at most.
+   */
+  long LATE_COMMIT_WINDOW = 60L * 1000L;
+
+  /**
+   * @return a snapshot of the counts by rule id or null if no counts have been initialized for the decision
+   */
+  Map<String, Long> getRuleCounts(String decisionDefinitionId);
+
+  /**
+   * Starts recording the evaluations of the decision that take place at or after <code>countingSince</code>
+   * unless recording has already started.
+   *
+   * @return the time in milliseconds from which evaluations are recorded; the counts of earlier evaluations
+   *   have to be provided by {@link #initializeRuleCounts(String, Map, List)}
+   */
+  long startCounting(String decisionDefinitionId, long countingSince);
+
+  /**
+   * Adds the counts of the evaluations before the start of counting unless the counts have already
+   * been initialized. If counting has not been started, all evaluations from now on are recorded.
+   */
+  void initializeRuleCounts(String decisionDefinitionId, Map<String, Long> ruleCounts);
+
+  /**
+   * Like {@link #initializeRuleCounts(String, Map)}, but the evaluations within {@link #LATE_COMMIT_WINDOW} before
+   * the start of counting are provided separately, so that those which have already been counted on commit are skipped.
+   *
+   * @param ruleCounts the counts of the evaluations before {@link LateCommitFilter#getLateCommitsSince(long)}
+   * @param lateEvaluations the evaluations from then until before the start of counting
+   */
+  void initializeRuleCounts(String decisionDefinitionId, Map<String, Long> ruleCounts, List<RuleEvaluation> lateEvaluations);
+
+  /**
+   * Increments the count of the rule once its evaluation has committed. Has no effect if counting has not been
+   * started for the decision, if the evaluation is contained in the initial counts or if it has already been counted.
+   *
+   * @param decisionInstanceId the id of the historic decision instance
+   * @param evaluationTime the evaluation time in milliseconds
+   */
+  void incrementRuleCount(String decisionDefinitionId, String decisionInstanceId, String ruleId, long evaluationTime);
+}
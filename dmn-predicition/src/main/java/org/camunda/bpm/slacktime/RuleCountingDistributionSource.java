@@ -0,0 +1,31 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Map;
+
+/**
+ * A {@link DistributionSource} that reads the evaluations of a decision to build its distributions and
+ * can hand out the number of evaluations by matched rule it has read, so that they do not have to be read again,
+ * e.g. by the {@link InputDependencyLearner}.
+ *
+ * @author Thorben Lindhauer
+ */
+public interface RuleCountingDistributionSource extends DistributionSource {
+
+  /**
+   * Builds the distributions like {@link #getDistributions(String, VariableIndex)} and adds the number
+   * of evaluations by matched rule id that have been read to the given map.
+   */
+  Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex, Map<String, Long> ruleCounts);
+}
@@ -0,0 +1,47 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+/**
+ * A single past evaluation of a decision and the rule it matched.
+ *
+ * @author Thorben Lindhauer
+ */
+public class RuleEvaluation {
+
+  protected String decisionInstanceId;
+  protected String ruleId;
+  protected long evaluationTime;
+
+  /**
+   * @param decisionInstanceId the id of the historic decision instance
+   * @param evaluationTime the evaluation time in milliseconds
+   */
+  public RuleEvaluation(String decisionInstanceId, String ruleId, long evaluationTime) {
+    this.decisionInstanceId = decisionInstanceId;
+    this.ruleId = ruleId;
+    this.evaluationTime = evaluationTime;
+  }
+
+  public String getDecisionInstanceId() {
+    return decisionInstanceId;
+  }
+
+  public String getRuleId() {
+    return ruleId;
+  }
+
+  public long getEvaluationTime() {
+    return evaluationTime;
+  }
+}
@@ -0,0 +1,76 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.thorbenlindhauer.variable.Scope;
+
+/**
+ * Sparse representation of the deterministic factor P($rule | all inputs). Every rule
+ * contributes exactly one assignment of the network scope, so only these entries are kept and
+ * memory grows with the number of rules instead of the product of all cardinalities. All other
+ * assignments have a value of zero.
+ *
+ * @author Thorben Lindhauer
+ */
+public class RuleFactor {
+
+  protected Scope scope;
+
+  protected List<int[]> entryAssignments = new ArrayList<int[]>();
+  protected List<Double> entryValues = new ArrayList<Double>();
+
+  public RuleFactor(Scope scope) {
+    this.scope = scope;
+  }
+
+  /**
+   * @param assignment value codes in the order of the scope's variables
+   */
+  public void addEntry(int[] assignment, double value) {
+    entryAssignments.add(assignment);
+    entryValues.add(value);
+  }
+
+  public Scope getScope() {
+    return scope;
+  }
+
+  public int getNumEntries() {
+    return entryAssignments.size();
+  }
+
+  public int[] getAssignment(int entry) {
+    return entryAssignments.get(entry);
+  }
+
+  public double getValue(int entry) {
+    return entryValues.get(entry);
+  }
+
+  /**
+   * Materializes the factor as a table indexed by the scope's index coder. Its size is
+   * the product of all cardinalities, so this is only meant for small models.
+   */
+  public double[] toDenseTable(VariableIndex variableIndex) {
+    ProbabilityTableBuilder tableBuilder = new ProbabilityTableBuilder(scope, variableIndex);
+
+    for (int entry = 0; entry < entryAssignments.size(); entry++) {
+      tableBuilder.submitValue(entryAssignments.get(entry), entryValues.get(entry));
+    }
+
+    return tableBuilder.getTable();
+  }
+}
@@ -0,0 +1,127 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.thorbenlindhauer.variable.Scope;
+
+/**
+ * Computes a posterior by eliminating all other variables in a single pass over the
+ * entries of the sparse rule factor that are consistent with the evidence, instead of running
+ * one elimination per value of the queried variable.
+ *
+ * @author Thorben Lindhauer
+ */
+public class SinglePassInferencer implements PosteriorInferencer {
+
+  protected CanonicalDmnModel model;
+
+  // per variable of the network scope
+  protected String[] variables;
+  protected int[] cardinalities;
+  protected double[][] inputTables;
+
+  public SinglePassInferencer(CanonicalDmnModel model) {
+    this.model = model;
+    this.variables = model.getNetworkScope().getVariableIds();
+    this.cardinalities = new int[variables.length];
+    this.inputTables = new double[variables.length][];
+
+    for (int i = 0; i < variables.length; i++) {
+      cardinalities[i] = model.getVariableIndex().getCardinality(variables[i]);
+      inputTables[i] = model.getInputTable(variables[i]);
+    }
+  }
+
+  public double[] getPosterior(String variable, Scope evidenceScope, int[] evidenceAssignment) {
+    int position = InferenceUtil.indexOf(variables, variable);
+    boolean[] queried = new boolean[variables.length];
+    queried[position] = true;
+
+    return sumOut(queried, evidenceScope, evidenceAssignment)[position];
+  }
+
+  public Map<String, double[]> getPosteriors(Scope evidenceScope, int[] evidenceAssignment) {
+    boolean[] queried = new boolean[variables.length];
+    for (int i = 0; i < queried.length; i++) {
+      queried[i] = true;
+    }
+
+    double[][] posteriors = sumOut(queried, evidenceScope, evidenceAssignment);
+
+    Map<String, double[]> result = new HashMap<String, double[]>();
+    for (int i = 0; i < variables.length; i++) {
+      result.put(variables[i], posteriors[i]);
+    }
+    return result;
+  }
+
+  /**
+   * @return the normalized marginals of the queried variables, null for all others
+   */
+  protected double[][] sumOut(boolean[] queried, Scope evidenceScope, int[] evidenceAssignment) {
+    String[] evidenceVariables = evidenceScope.getVariableIds();
+    int[] evidencePositions = new int[evidenceVariables.length];
+    for (int i = 0; i < evidenceVariables.length; i++) {
+      evidencePositions[i] = InferenceUtil.indexOf(variables, evidenceVariables[i]);
+    }
+
+    double[][] posteriors = new double[variables.length][];
+    for (int i = 0; i < variables.length; i++) {
+      if (queried[i]) {
+        posteriors[i] = new double[cardinalities[i]];
+      }
+    }
+
+    // all other assignments of the rule factor are zero and contribute nothing
+    RuleFactor ruleFactor = model.getRuleFactor();
+
+    for (int entry = 0; entry < ruleFactor.getNumEntries(); entry++) {
+      int[] assignment = ruleFactor.getAssignment(entry);
+
+      if (isConsistent(assignment, evidencePositions, evidenceAssignment)) {
+        double value = ruleFactor.getValue(entry);
+        for (int i = 0; i < variables.length; i++) {
+          if (inputTables[i] != null) {
+            value *= inputTables[i][assignment[i]];
+          }
+        }
+
+        for (int i = 0; i < variables.length; i++) {
+          if (queried[i]) {
+            posteriors[i][assignment[i]] += value;
+          }
+        }
+      }
+    }
+
+    for (double[] posterior : posteriors) {
+      if (posterior != null) {
+        InferenceUtil.normalize(posterior);
+      }
+    }
+
+    return posteriors;
+  }
+
+  protected boolean isConsistent(int[] assignment, int[] evidencePositions, int[] evidenceAssignment) {
+    for (int i = 0; i < evidencePositions.length; i++) {
+      if (assignment[evidencePositions[i]] != evidenceAssignment[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,59 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Map;
+
+/**
+ * Rule count based distribution source that only considers the evaluations within a sliding
+ * time window and optionally weights them by their recency, see {@link SlidingWindowRuleCountStore}.
+ * The window of a decision is filled from the history the first time it is needed; afterwards,
+ * it is kept up to date by counting evaluations and old buckets expire on their own.
+ *
+ * @author Thorben Lindhauer
+ */
+public class SlidingWindowDistributionSource extends RuleCountDistributionSource {
+
+  protected SlidingWindowRuleCountStore windowStore;
+  protected RuleCountHistory ruleCountHistory;
+
+  /**
+   * @param ruleCountHistory may be null to start with empty windows
+   */
+  public SlidingWindowDistributionSource(DecisionRepository decisionRepository, SlidingWindowRuleCountStore windowStore,
+      RuleCountHistory ruleCountHistory) {
+    super(decisionRepository, windowStore);
+    this.windowStore = windowStore;
+    this.ruleCountHistory = ruleCountHistory;
+  }
+
+  protected Map<String, Double> getWeightedRuleCounts(String dmnModelId) {
+    Map<String, Double> ruleCounts = windowStore.getWeightedRuleCounts(dmnModelId);
+
+    if (ruleCounts == null) {
+      long startTime = System.nanoTime();
+
+      if (ruleCountHistory != null) {
+        windowStore.initializeRuleCounts(dmnModelId, ruleCountHistory);
+      }
+      else {
+        initializeRuleCounts(dmnModelId);
+      }
+      ruleCounts = windowStore.getWeightedRuleCounts(dmnModelId);
+
+      initialRuleCountsLoaded(dmnModelId, startTime);
+    }
+
+    return ruleCounts;
+  }
+}
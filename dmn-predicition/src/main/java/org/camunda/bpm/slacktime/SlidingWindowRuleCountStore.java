@@ -0,0 +1,291 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+
+/**
+ * Keeps the rule counts of a decision in a ring buffer of time buckets, e.g. hourly or daily,
+ * so that only evaluations within the last <code>numBuckets</code> buckets are counted. A bucket
+ * expires when its slot in the ring is reused, so memory is bounded by the number of buckets times
+ * the number of rules and no cleanup is required.
+ *
+ * <p>{@link #getWeightedRuleCounts(String)} optionally weights every bucket by
+ * <code>decayFactor^age</code>, where the age of the current bucket is zero, so that recent
+ * evaluations count more than older ones. Either way, it sums one array per bucket.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class SlidingWindowRuleCountStore implements RuleCountStore {
+
+  public static final long HOURLY = 60L * 60L * 1000L;
+  public static final long DAILY = 24L * HOURLY;
+
+  public static final double NO_DECAY = 1.0d;
+
+  protected long bucketDuration;
+  protected int numBuckets;
+  protected double decayFactor;
+
+  protected ConcurrentMap<String, RuleCountWindow> windowsByDecision = new ConcurrentHashMap<String, RuleCountWindow>();
+
+  public SlidingWindowRuleCountStore(long bucketDuration, int numBuckets) {
+    this(bucketDuration, numBuckets, NO_DECAY);
+  }
+
+  /**
+   * @param bucketDuration the time span of a bucket in milliseconds
+   * @param decayFactor the weight of a bucket relative to the next newer one, between 0 and 1
+   */
+  public SlidingWindowRuleCountStore(long bucketDuration, int numBuckets, double decayFactor) {
+    if (bucketDuration <= 0 || numBuckets <= 0) {
+      throw new IllegalArgumentException("Bucket duration and number of buckets must be positive");
+    }
+    if (decayFactor <= 0.0d || decayFactor > 1.0d) {
+      throw new IllegalArgumentException("Decay factor must be in (0, 1]");
+    }
+
+    this.bucketDuration = bucketDuration;
+    this.numBuckets = numBuckets;
+    this.decayFactor = decayFactor;
+  }
+
+  /**
+   * @return the undecayed counts within the window by rule id or null if the counts of the decision have not been initialized
+   */
+  public Map<String, Long> getRuleCounts(String decisionDefinitionId) {
+    RuleCountWindow window = getInitializedWindow(decisionDefinitionId);
+    if (window == null) {
+      return null;
+    }
+
+    Map<String, Long> ruleCounts = new HashMap<String, Long>();
+    for (Map.Entry<String, Double> ruleCount : window.sum(getCurrentBucket(), NO_DECAY).entrySet()) {
+      ruleCounts.put(ruleCount.getKey(), ruleCount.getValue().longValue());
+    }
+
+    return ruleCounts;
+  }
+
+  /**
+   * @return the counts within the window weighted by the decay of their bucket or
+   *   null if the counts of the decision have not been initialized
+   */
+  public Map<String, Double> getWeightedRuleCounts(String decisionDefinitionId) {
+    RuleCountWindow window = getInitializedWindow(decisionDefinitionId);
+    return window != null ? window.sum(getCurrentBucket(), decayFactor) : null;
+  }
+
+  protected RuleCountWindow getInitializedWindow(String decisionDefinitionId) {
+    RuleCountWindow window = windowsByDecision.get(decisionDefinitionId);
+    return window != null && window.initialized ? window : null;
+  }
+
+  public long startCounting(String decisionDefinitionId, long countingSince) {
+    RuleCountWindow newWindow = new RuleCountWindow(numBuckets, countingSince);
+    RuleCountWindow window = windowsByDecision.putIfAbsent(decisionDefinitionId, newWindow);
+
+    return window != null ? window.lateCommitFilter.getCountingSince() : countingSince;
+  }
+
+  /**
+   * The counts have no evaluation times, so they are added to the current bucket.
+   */
+  public void initializeRuleCounts(String decisionDefinitionId, Map<String, Long> ruleCounts) {
+    initializeRuleCounts(decisionDefinitionId, ruleCounts, Collections.<RuleEvaluation>emptyList());
+  }
+
+  /**
+   * The counts have no evaluation times, so they are added to the current bucket. The late evaluations
+   * are added to the buckets of their evaluation times.
+   */
+  public void initializeRuleCounts(String decisionDefinitionId, Map<String, Long> ruleCounts, List<RuleEvaluation> lateEvaluations) {
+    long currentBucket = getCurrentBucket();
+    initializeWindow(decisionDefinitionId, Collections.singletonMap(currentBucket, ruleCounts), lateEvaluations, currentBucket);
+  }
+
+  protected void initializeWindow(String decisionDefinitionId, Map<Long, Map<String, Long>> ruleCountsByBucket,
+      List<RuleEvaluation> lateEvaluations, long currentBucket) {
+    startCounting(decisionDefinitionId, Long.MIN_VALUE);
+    windowsByDecision.get(decisionDefinitionId).initialize(ruleCountsByBucket, lateEvaluations, bucketDuration, currentBucket);
+  }
+
+  /**
+   * Fills every bucket of the window with the counts of its time range, reading the history of the
+   * window once. As with {@link #initializeRuleCounts(String, Map, List)}, evaluations are recorded before the
+   * history is read and the evaluations shortly before are read one by one, so that none is lost or counted twice.
+   */
+  public void initializeRuleCounts(String decisionDefinitionId, RuleCountHistory ruleCountHistory) {
+    long currentBucket = getCurrentBucket();
+    long countingSince = startCounting(decisionDefinitionId, ClockUtil.getCurrentTime().getTime());
+    long lateCommitsSince = LateCommitFilter.getLateCommitsSince(countingSince);
+    long windowStart = (currentBucket - numBuckets + 1) * bucketDuration;
+
+    Map<Long, Map<String, Long>> ruleCountsByBucket;
+    if (lateCommitsSince > windowStart) {
+      ruleCountsByBucket = ruleCountHistory.getRuleCountsByBucket(decisionDefinitionId, windowStart - 1, lateCommitsSince - 1, bucketDuration);
+    }
+    else {
+      ruleCountsByBucket = Collections.emptyMap();
+    }
+
+    List<RuleEvaluation> lateEvaluations;
+    long lateEvaluationsSince = Math.max(windowStart, lateCommitsSince);
+    if (countingSince > lateEvaluationsSince) {
+      lateEvaluations = ruleCountHistory.getRuleEvaluations(decisionDefinitionId, lateEvaluationsSince - 1, countingSince - 1);
+    }
+    else {
+      lateEvaluations = Collections.emptyList();
+    }
+
+    initializeWindow(decisionDefinitionId, ruleCountsByBucket, lateEvaluations, currentBucket);
+  }
+
+  /**
+   * Adds the evaluation to the bucket of its evaluation time.
+   */
+  public void incrementRuleCount(String decisionDefinitionId, String decisionInstanceId, String ruleId, long evaluationTime) {
+    RuleCountWindow window = windowsByDecision.get(decisionDefinitionId);
+
+    if (window != null && window.lateCommitFilter.countOnCommit(decisionInstanceId, evaluationTime)) {
+      window.add(ruleId, evaluationTime / bucketDuration, 1L, getCurrentBucket());
+    }
+  }
+
+  protected long getCurrentBucket() {
+    return ClockUtil.getCurrentTime().getTime() / bucketDuration;
+  }
+
+  public long getBucketDuration() {
+    return bucketDuration;
+  }
+
+  public int getNumBuckets() {
+    return numBuckets;
+  }
+
+  public double getDecayFactor() {
+    return decayFactor;
+  }
+
+  /**
+   * The buckets of one decision; rules are interned to dense indexes so that a bucket is a plain array.
+   */
+  protected static class RuleCountWindow {
+
+    protected static final long EMPTY = Long.MIN_VALUE;
+
+    protected LateCommitFilter lateCommitFilter;
+    protected volatile boolean initialized;
+
+    protected Map<String, Integer> ruleIndexes = new HashMap<String, Integer>();
+    protected String[] ruleIds = new String[8];
+
+    // counts by slot and rule index; the slot of a bucket is its number modulo the number of buckets
+    protected long[][] bucketCounts;
+    protected long[] slotBuckets;
+
+    public RuleCountWindow(int numBuckets, long countingSince) {
+      this.lateCommitFilter = new LateCommitFilter(countingSince);
+      bucketCounts = new long[numBuckets][ruleIds.length];
+      slotBuckets = new long[numBuckets];
+      Arrays.fill(slotBuckets, EMPTY);
+    }
+
+    public synchronized void initialize(Map<Long, Map<String, Long>> ruleCountsByBucket, List<RuleEvaluation> lateEvaluations,
+        long bucketDuration, long currentBucket) {
+      if (initialized) {
+        return;
+      }
+
+      for (Map.Entry<Long, Map<String, Long>> bucketRuleCounts : ruleCountsByBucket.entrySet()) {
+        for (Map.Entry<String, Long> ruleCount : bucketRuleCounts.getValue().entrySet()) {
+          add(ruleCount.getKey(), bucketRuleCounts.getKey(), ruleCount.getValue(), currentBucket);
+        }
+      }
+      for (RuleEvaluation evaluation : lateCommitFilter.initialize(lateEvaluations)) {
+        add(evaluation.getRuleId(), evaluation.getEvaluationTime() / bucketDuration, 1L, currentBucket);
+      }
+      initialized = true;
+    }
+
+    public synchronized void add(String ruleId, long bucket, long count, long currentBucket) {
+      int numBuckets = slotBuckets.length;
+      if (bucket > currentBucket || bucket <= currentBucket - numBuckets) {
+        return;
+      }
+
+      int slot = (int) (bucket % numBuckets);
+      if (slotBuckets[slot] != bucket) {
+        // the slot still holds an expired bucket
+        Arrays.fill(bucketCounts[slot], 0L);
+        slotBuckets[slot] = bucket;
+      }
+
+      bucketCounts[slot][getRuleIndex(ruleId)] += count;
+    }
+
+    protected int getRuleIndex(String ruleId) {
+      Integer ruleIndex = ruleIndexes.get(ruleId);
+      if (ruleIndex != null) {
+        return ruleIndex;
+      }
+
+      int newRuleIndex = ruleIndexes.size();
+      if (newRuleIndex == ruleIds.length) {
+        ruleIds = Arrays.copyOf(ruleIds, ruleIds.length * 2);
+        for (int slot = 0; slot < bucketCounts.length; slot++) {
+          bucketCounts[slot] = Arrays.copyOf(bucketCounts[slot], ruleIds.length);
+        }
+      }
+
+      ruleIds[newRuleIndex] = ruleId;
+      ruleIndexes.put(ruleId, newRuleIndex);
+      return newRuleIndex;
+    }
+
+    public synchronized Map<String, Double> sum(long currentBucket, double decayFactor) {
+      int numBuckets = slotBuckets.length;
+      int numRules = ruleIndexes.size();
+      double[] sums = new double[numRules];
+
+      for (int slot = 0; slot < numBuckets; slot++) {
+        long age = currentBucket - slotBuckets[slot];
+        if (slotBuckets[slot] == EMPTY || age < 0 || age >= numBuckets) {
+          continue;
+        }
+
+        double weight = decayFactor == NO_DECAY ? 1.0d : Math.pow(decayFactor, age);
+        long[] counts = bucketCounts[slot];
+        for (int rule = 0; rule < numRules; rule++) {
+          sums[rule] += weight * counts[rule];
+        }
+      }
+
+      Map<String, Double> ruleCounts = new HashMap<String, Double>();
+      for (int rule = 0; rule < numRules; rule++) {
+        ruleCounts.put(ruleIds[rule], sums[rule]);
+      }
+
+      return ruleCounts;
+    }
+  }
+}
@@ -0,0 +1,246 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.camunda.bpm.model.dmn.HitPolicy;
+
+import com.github.thorbenlindhauer.variable.Scope;
+
+/**
+ * Closed-form inference for decision tables with the UNIQUE hit policy.
+ *
+ * <p>In that case every input assignment matches at most one rule and the inputs are
+ * independent, so P($rule = r | e) is proportional to the product of the priors of all of r's entries
+ * if r is consistent with the evidence and zero otherwise: the priors of observed inputs are the same for
+ * all consistent rules and cancel out during normalization. These products are computed once per model,
+ * as are the posteriors without evidence. Input marginals are sums over the rule posteriors.</p>
+ *
+ * <p>For a query, only the rules whose entry matches the observed value of the most selective observed
+ * variable are checked against the remaining evidence. If all inputs are observed, at most one rule
+ * can match, so the search ends at the first consistent rule.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class UniqueHitPolicyInferencer implements PosteriorInferencer {
+
+  protected String[] variables;
+  protected int[] cardinalities;
+  protected int rulePosition;
+
+  // per rule: value codes in network scope order and the product of the priors of its entries
+  protected int[][] ruleAssignments;
+  protected double[] rulePriors;
+
+  // per variable and value: the rules whose entry has that value
+  protected int[][][] rulesByValue;
+
+  // per variable: the posterior without evidence
+  protected double[][] priorMarginals;
+
+  public UniqueHitPolicyInferencer(CanonicalDmnModel model) {
+    this.variables = model.getNetworkScope().getVariableIds();
+    this.rulePosition = InferenceUtil.indexOf(variables, CanonicalDmnModel.RULE_VARIABLE_NAME);
+    this.cardinalities = new int[variables.length];
+    for (int i = 0; i < variables.length; i++) {
+      cardinalities[i] = model.getVariableIndex().getCardinality(variables[i]);
+    }
+
+    RuleFactor ruleFactor = model.getRuleFactor();
+    int numRules = ruleFactor.getNumEntries();
+    ruleAssignments = new int[numRules][];
+    rulePriors = new double[numRules];
+
+    for (int rule = 0; rule < numRules; rule++) {
+      ruleAssignments[rule] = ruleFactor.getAssignment(rule);
+
+      double prior = 1.0d;
+      for (int i = 0; i < variables.length; i++) {
+        if (i != rulePosition) {
+          prior *= model.getInputTable(variables[i])[ruleAssignments[rule][i]];
+        }
+      }
+      rulePriors[rule] = prior;
+    }
+
+    indexRules();
+
+    int[] allRules = new int[numRules];
+    for (int rule = 0; rule < numRules; rule++) {
+      allRules[rule] = rule;
+    }
+
+    priorMarginals = new double[variables.length][];
+    for (int i = 0; i < variables.length; i++) {
+      priorMarginals[i] = marginalize(i, allRules, numRules);
+    }
+  }
+
+  protected void indexRules() {
+    rulesByValue = new int[variables.length][][];
+
+    for (int i = 0; i < variables.length; i++) {
+      int[] numRulesByValue = new int[cardinalities[i]];
+      for (int[] ruleAssignment : ruleAssignments) {
+        numRulesByValue[ruleAssignment[i]]++;
+      }
+
+      rulesByValue[i] = new int[cardinalities[i]][];
+      for (int value = 0; value < cardinalities[i]; value++) {
+        rulesByValue[i][value] = new int[numRulesByValue[value]];
+        numRulesByValue[value] = 0;
+      }
+
+      for (int rule = 0; rule < ruleAssignments.length; rule++) {
+        int value = ruleAssignments[rule][i];
+        rulesByValue[i][value][numRulesByValue[value]++] = rule;
+      }
+    }
+  }
+
+  /**
+   * @return true if the model has the UNIQUE hit policy, every rule has a deterministic entry
+   *   and no two rules match the same input assignment
+   */
+  public static boolean isApplicable(CanonicalDmnModel model) {
+    if (model.getHitPolicy() != HitPolicy.UNIQUE) {
+      return false;
+    }
+
+    String[] variables = model.getNetworkScope().getVariableIds();
+    int rulePosition = InferenceUtil.indexOf(variables, CanonicalDmnModel.RULE_VARIABLE_NAME);
+    for (int i = 0; i < variables.length; i++) {
+      if (i != rulePosition && model.getInputTable(variables[i]) == null) {
+        return false;
+      }
+    }
+
+    RuleFactor ruleFactor = model.getRuleFactor();
+    Set<String> inputAssignments = new HashSet<String>();
+
+    for (int entry = 0; entry < ruleFactor.getNumEntries(); entry++) {
+      if (ruleFactor.getValue(entry) != 1.0d) {
+        return false;
+      }
+
+      int[] inputAssignment = ruleFactor.getAssignment(entry).clone();
+      inputAssignment[rulePosition] = 0;
+      if (!inputAssignments.add(Arrays.toString(inputAssignment))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  public double[] getPosterior(String variable, Scope evidenceScope, int[] evidenceAssignment) {
+    int position = InferenceUtil.indexOf(variables, variable);
+
+    if (evidenceScope.getVariableIds().length == 0) {
+      return priorMarginals[position].clone();
+    }
+
+    int[] matchingRules = new int[ruleAssignments.length];
+    int numMatchingRules = findMatchingRules(evidenceScope, evidenceAssignment, matchingRules);
+
+    return marginalize(position, matchingRules, numMatchingRules);
+  }
+
+  public Map<String, double[]> getPosteriors(Scope evidenceScope, int[] evidenceAssignment) {
+    Map<String, double[]> posteriors = new HashMap<String, double[]>();
+
+    if (evidenceScope.getVariableIds().length == 0) {
+      for (int i = 0; i < variables.length; i++) {
+        posteriors.put(variables[i], priorMarginals[i].clone());
+      }
+      return posteriors;
+    }
+
+    int[] matchingRules = new int[ruleAssignments.length];
+    int numMatchingRules = findMatchingRules(evidenceScope, evidenceAssignment, matchingRules);
+
+    for (int i = 0; i < variables.length; i++) {
+      posteriors.put(variables[i], marginalize(i, matchingRules, numMatchingRules));
+    }
+
+    return posteriors;
+  }
+
+  /**
+   * Collects the rules that are consistent with the evidence.
+   *
+   * @return the number of rules written to <code>matchingRules</code>
+   */
+  protected int findMatchingRules(Scope evidenceScope, int[] evidenceAssignment, int[] matchingRules) {
+    String[] evidenceVariables = evidenceScope.getVariableIds();
+    int[] evidencePositions = new int[evidenceVariables.length];
+    boolean[] observed = new boolean[variables.length];
+    int numObservedInputs = 0;
+
+    // the rules with the observed value of the most selective variable are the only candidates
+    int[] candidateRules = null;
+    for (int i = 0; i < evidenceVariables.length; i++) {
+      evidencePositions[i] = InferenceUtil.indexOf(variables, evidenceVariables[i]);
+      if (evidencePositions[i] != rulePosition && !observed[evidencePositions[i]]) {
+        numObservedInputs++;
+      }
+      observed[evidencePositions[i]] = true;
+
+      int[] rules = rulesByValue[evidencePositions[i]][evidenceAssignment[i]];
+      if (candidateRules == null || rules.length < candidateRules.length) {
+        candidateRules = rules;
+      }
+    }
+
+    boolean allInputsObserved = numObservedInputs == variables.length - 1;
+    int numMatchingRules = 0;
+
+    for (int rule : candidateRules) {
+      if (isConsistent(ruleAssignments[rule], evidencePositions, evidenceAssignment)) {
+        matchingRules[numMatchingRules++] = rule;
+
+        if (allInputsObserved) {
+          // no other rule can match the same input assignment
+          break;
+        }
+      }
+    }
+
+    return numMatchingRules;
+  }
+
+  protected boolean isConsistent(int[] ruleAssignment, int[] evidencePositions, int[] evidenceAssignment) {
+    for (int i = 0; i < evidencePositions.length; i++) {
+      if (ruleAssignment[evidencePositions[i]] != evidenceAssignment[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  protected double[] marginalize(int position, int[] rules, int numRules) {
+    double[] marginal = new double[cardinalities[position]];
+
+    for (int i = 0; i < numRules; i++) {
+      int rule = rules[i];
+      marginal[ruleAssignments[rule][position]] += rulePriors[rule];
+    }
+
+    return InferenceUtil.normalize(marginal);
+  }
+}
@@ -12,24 +12,87 @@
  */
 package org.camunda.bpm.slacktime;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
+ * Dictionary of the variables of a model and their values. Variables and values are
+ * interned to dense int codes once, so that encoding a value is a hash lookup and
+ * decoding it is an array access.
+ *
  * @author Thorben Lindhauer
  *
  */
 public class VariableIndex {
 
+  public static final int UNKNOWN = -1;
+
   protected Map<String, List<String>> sortedVariableValues;
 
+  protected String[] variables;
+  protected Map<String, Integer> variableCodes;
+  protected String[][] values;
+  protected Map<String, Integer>[] valueCodes;
+
+  @SuppressWarnings("unchecked")
   public VariableIndex(Map<String, List<String>> sortedVariableValues) {
     this.sortedVariableValues = sortedVariableValues;
+
+    List<String> sortedVariables = new ArrayList<String>(sortedVariableValues.keySet());
+    Collections.sort(sortedVariables);
+
+    variables = sortedVariables.toArray(new String[sortedVariables.size()]);
+    variableCodes = new HashMap<String, Integer>();
+    values = new String[variables.length][];
+    valueCodes = new Map[variables.length];
+
+    for (int i = 0; i < variables.length; i++) {
+      variableCodes.put(variables[i], i);
+
+      List<String> variableValues = sortedVariableValues.get(variables[i]);
+      values[i] = variableValues.toArray(new String[variableValues.size()]);
+      valueCodes[i] = new HashMap<String, Integer>();
+      for (int j = 0; j < values[i].length; j++) {
+        valueCodes[i].put(values[i][j], j);
+      }
+    }
   }
 
+  /**
+   * @return the code of the value or {@link #UNKNOWN} if the variable does not have that value
+   */
   public int getIndex(String variable, String value) {
-    return sortedVariableValues.get(variable).indexOf(value);
+    return getIndex(getVariableCode(variable), value);
+  }
+
+  public int getIndex(int variableCode, String value) {
+    Integer valueCode = valueCodes[variableCode].get(value);
+    return valueCode != null ? valueCode : UNKNOWN;
+  }
+
+  public String getValue(int variableCode, int valueCode) {
+    return values[variableCode][valueCode];
+  }
+
+  /**
+   * @return the code of the variable or {@link #UNKNOWN} if it is not part of the index
+   */
+  public int getVariableCode(String variable) {
+    Integer variableCode = variableCodes.get(variable);
+    return variableCode != null ? variableCode : UNKNOWN;
+  }
+
+  public String getVariable(int variableCode) {
+    return variables[variableCode];
+  }
+
+  public int getNumVariables() {
+    return variables.length;
   }
 
   public Collection<String> getVariableValues(String variable) {
@@ -37,6 +100,60 @@ public class VariableIndex {
   }
 
   public int getCardinality(String variable) {
-    return sortedVariableValues.size();
+    return sortedVariableValues.get(variable).size();
+  }
+
+  public int getCardinality(int variableCode) {
+    return values[variableCode].length;
+  }
+
+  public Set<String> getVariables() {
+    return sortedVariableValues.keySet();
+  }
+
+  public EncodedEvidence encode(Evidence evidence) {
+    return encode(evidence, false);
+  }
+
+  /**
+   * @param ignoreUnknown if true, assignments of variables or values that are not part of the
+   *   model are treated as not observed; otherwise they are rejected
+   */
+  public EncodedEvidence encode(Evidence evidence, boolean ignoreUnknown) {
+    EncodedEvidence encodedEvidence = new EncodedEvidence(variables.length);
+
+    for (Map.Entry<String, String> assignment : evidence.variableAssignment.entrySet()) {
+      int variableCode = getVariableCode(assignment.getKey());
+      if (variableCode == UNKNOWN) {
+        if (ignoreUnknown) {
+          continue;
+        }
+        throw new IllegalArgumentException("Variable " + assignment.getKey() + " is not part of the model");
+      }
+
+      int valueCode = getIndex(variableCode, assignment.getValue());
+      if (valueCode == UNKNOWN) {
+        if (ignoreUnknown) {
+          continue;
+        }
+        throw new IllegalArgumentException("Value " + assignment.getValue() + " is not a value of variable " + assignment.getKey());
+      }
+
+      encodedEvidence.submit(variableCode, valueCode);
+    }
+
+    return encodedEvidence;
+  }
+
+  public Evidence decode(EncodedEvidence encodedEvidence) {
+    Evidence evidence = new Evidence();
+
+    for (int i = 0; i < variables.length; i++) {
+      if (encodedEvidence.isObserved(i)) {
+        evidence.submit(variables[i], values[i][encodedEvidence.getValueCode(i)]);
+      }
+    }
+
+    return evidence;
   }
 }
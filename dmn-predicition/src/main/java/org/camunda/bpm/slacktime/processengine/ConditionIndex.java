@@ -0,0 +1,305 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.camunda.bpm.dmn.feel.impl.FeelEngine;
+import org.camunda.bpm.engine.variable.context.VariableContext;
+
+/**
+ * Index over the distinct unary tests of one input column. String and number literals
+ * are found by hash lookup and numeric comparisons and intervals such as <code>&lt; 5</code>
+ * or <code>[1..10]</code> by binary search over the elementary segments of all interval
+ * endpoints. Only the remaining tests are evaluated by the FEEL engine.
+ *
+ * <p>Like a linear scan over the rules, a lookup returns the matching test that occurs first in
+ * rule order. String literals only match string values and numeric tests only match numbers;
+ * values of other types are matched by evaluating all tests with the FEEL engine.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class ConditionIndex {
+
+  protected static final String NUMBER = "(-?\\d+(?:\\.\\d+)?)";
+  protected static final Pattern NUMBER_PATTERN = Pattern.compile(NUMBER);
+  protected static final Pattern COMPARISON_PATTERN = Pattern.compile("(<=|>=|<|>)\\s*" + NUMBER);
+  protected static final Pattern INTERVAL_PATTERN = Pattern.compile("([\\[\\]\\(])\\s*" + NUMBER + "\\s*\\.\\.\\s*" + NUMBER + "\\s*([\\[\\]\\)])");
+
+  // all distinct tests in order of their first occurrence
+  protected List<UnaryTest> tests = new ArrayList<UnaryTest>();
+
+  protected Map<String, UnaryTest> stringLiterals = new HashMap<String, UnaryTest>();
+  protected Map<Double, UnaryTest> numberLiterals = new HashMap<Double, UnaryTest>();
+  protected List<UnaryTest> otherTests = new ArrayList<UnaryTest>();
+
+  // sorted distinct interval endpoints; segment 2i + 1 is the endpoint i itself,
+  // segment 2i the open range below it and segment 2n the range above the last endpoint
+  protected double[] endpoints = new double[0];
+  protected UnaryTest[] segmentTests = new UnaryTest[]{null};
+
+  /**
+   * @param conditions the condition of every rule in rule order
+   * @param ruleIds the ids of the rules in the same order
+   */
+  public ConditionIndex(List<String> conditions, List<String> ruleIds) {
+    Map<String, UnaryTest> testsByCondition = new LinkedHashMap<String, UnaryTest>();
+
+    for (int i = 0; i < conditions.size(); i++) {
+      String condition = conditions.get(i);
+
+      UnaryTest test = testsByCondition.get(condition);
+      if (test == null) {
+        test = new UnaryTest(condition, testsByCondition.size());
+        testsByCondition.put(condition, test);
+      }
+      test.ruleIds.add(ruleIds.get(i));
+    }
+
+    tests.addAll(testsByCondition.values());
+
+    List<UnaryTest> intervalTests = new ArrayList<UnaryTest>();
+    for (UnaryTest test : tests) {
+      if (test.stringLiteral != null) {
+        putIfAbsent(stringLiterals, test.stringLiteral, test);
+      }
+      else if (test.numberLiteral != null) {
+        putIfAbsent(numberLiterals, test.numberLiteral, test);
+      }
+      else if (test.interval != null) {
+        intervalTests.add(test);
+      }
+      else {
+        otherTests.add(test);
+      }
+    }
+
+    if (!intervalTests.isEmpty()) {
+      indexIntervals(intervalTests);
+    }
+  }
+
+  protected <K> void putIfAbsent(Map<K, UnaryTest> map, K key, UnaryTest test) {
+    if (!map.containsKey(key)) {
+      map.put(key, test);
+    }
+  }
+
+  protected void indexIntervals(List<UnaryTest> intervalTests) {
+    TreeSet<Double> sortedEndpoints = new TreeSet<Double>();
+    for (UnaryTest test : intervalTests) {
+      if (!Double.isInfinite(test.interval.lower)) {
+        sortedEndpoints.add(test.interval.lower);
+      }
+      if (!Double.isInfinite(test.interval.upper)) {
+        sortedEndpoints.add(test.interval.upper);
+      }
+    }
+
+    endpoints = new double[sortedEndpoints.size()];
+    int i = 0;
+    for (Double endpoint : sortedEndpoints) {
+      endpoints[i++] = endpoint;
+    }
+
+    segmentTests = new UnaryTest[2 * endpoints.length + 1];
+    for (int segment = 0; segment < segmentTests.length; segment++) {
+      double representative = getRepresentative(segment);
+
+      // interval tests are in rule order, so the first containing one is the first match
+      for (UnaryTest test : intervalTests) {
+        if (test.interval.contains(representative)) {
+          segmentTests[segment] = test;
+          break;
+        }
+      }
+    }
+  }
+
+  protected double getRepresentative(int segment) {
+    if (endpoints.length == 0) {
+      return 0.0d;
+    }
+    if (segment % 2 == 1) {
+      return endpoints[segment / 2];
+    }
+
+    int upperEndpoint = segment / 2;
+    if (upperEndpoint == 0) {
+      return endpoints[0] - 1.0d;
+    }
+    else if (upperEndpoint == endpoints.length) {
+      return endpoints[endpoints.length - 1] + 1.0d;
+    }
+    else {
+      return (endpoints[upperEndpoint - 1] + endpoints[upperEndpoint]) / 2.0d;
+    }
+  }
+
+  /**
+   * @return the test that matches the value and occurs first in rule order or null if none matches
+   */
+  public UnaryTest match(Object value, String inputVariable, VariableContext inputContext, FeelEngine feelEngine) {
+    UnaryTest bestMatch = null;
+
+    if (value instanceof String) {
+      bestMatch = stringLiterals.get(value);
+    }
+    else if (value instanceof Number) {
+      // adding zero normalizes -0.0
+      double number = ((Number) value).doubleValue() + 0.0d;
+      bestMatch = first(numberLiterals.get(number), findInterval(number));
+    }
+    else {
+      for (UnaryTest test : tests) {
+        if (feelEngine.evaluateSimpleUnaryTests(test.expression, inputVariable, inputContext)) {
+          return test;
+        }
+      }
+      return null;
+    }
+
+    for (UnaryTest test : otherTests) {
+      if (bestMatch != null && test.order > bestMatch.order) {
+        break;
+      }
+      if (feelEngine.evaluateSimpleUnaryTests(test.expression, inputVariable, inputContext)) {
+        return test;
+      }
+    }
+
+    return bestMatch;
+  }
+
+  protected UnaryTest findInterval(double number) {
+    if (Double.isNaN(number)) {
+      return null;
+    }
+
+    int index = Arrays.binarySearch(endpoints, number);
+    int segment = index >= 0 ? 2 * index + 1 : 2 * (-index - 1);
+
+    return segmentTests[segment];
+  }
+
+  protected UnaryTest first(UnaryTest test, UnaryTest otherTest) {
+    if (test == null) {
+      return otherTest;
+    }
+    else if (otherTest == null) {
+      return test;
+    }
+    else {
+      return test.order < otherTest.order ? test : otherTest;
+    }
+  }
+
+  public List<UnaryTest> getTests() {
+    return tests;
+  }
+
+  /**
+   * A distinct condition of an input column together with the rules that use it.
+   */
+  public static class UnaryTest {
+
+    protected String expression;
+    protected int order;
+    protected List<String> ruleIds = new ArrayList<String>();
+
+    // at most one of these is set, depending on the form of the expression
+    protected String stringLiteral;
+    protected Double numberLiteral;
+    protected Interval interval;
+
+    public UnaryTest(String expression, int order) {
+      this.expression = expression;
+      this.order = order;
+      parse(expression != null ? expression.trim() : "");
+    }
+
+    protected void parse(String expression) {
+      if (expression.length() >= 2
+          && expression.startsWith("\"")
+          && expression.endsWith("\"")
+          && expression.indexOf('"', 1) == expression.length() - 1) {
+        stringLiteral = expression.substring(1, expression.length() - 1);
+        return;
+      }
+
+      Matcher matcher = NUMBER_PATTERN.matcher(expression);
+      if (matcher.matches()) {
+        numberLiteral = Double.parseDouble(matcher.group(1)) + 0.0d;
+        return;
+      }
+
+      matcher = COMPARISON_PATTERN.matcher(expression);
+      if (matcher.matches()) {
+        String operator = matcher.group(1);
+        double bound = Double.parseDouble(matcher.group(2));
+
+        if (operator.startsWith("<")) {
+          interval = new Interval(Double.NEGATIVE_INFINITY, false, bound, operator.equals("<="));
+        }
+        else {
+          interval = new Interval(bound, operator.equals(">="), Double.POSITIVE_INFINITY, false);
+        }
+        return;
+      }
+
+      matcher = INTERVAL_PATTERN.matcher(expression);
+      if (matcher.matches()) {
+        interval = new Interval(
+            Double.parseDouble(matcher.group(2)), matcher.group(1).equals("["),
+            Double.parseDouble(matcher.group(3)), matcher.group(4).equals("]"));
+      }
+    }
+
+    public String getExpression() {
+      return expression;
+    }
+
+    public List<String> getRuleIds() {
+      return ruleIds;
+    }
+  }
+
+  protected static class Interval {
+
+    protected double lower;
+    protected boolean lowerInclusive;
+    protected double upper;
+    protected boolean upperInclusive;
+
+    public Interval(double lower, boolean lowerInclusive, double upper, boolean upperInclusive) {
+      this.lower = lower;
+      this.lowerInclusive = lowerInclusive;
+      this.upper = upper;
+      this.upperInclusive = upperInclusive;
+    }
+
+    public boolean contains(double number) {
+      boolean aboveLower = lowerInclusive ? number >= lower : number > lower;
+      boolean belowUpper = upperInclusive ? number <= upper : number < upper;
+      return aboveLower && belowUpper;
+    }
+  }
+}
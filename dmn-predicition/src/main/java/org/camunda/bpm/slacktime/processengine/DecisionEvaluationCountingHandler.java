@@ -0,0 +1,80 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import java.util.List;
+
+import org.camunda.bpm.engine.history.HistoricDecisionOutputInstance;
+import org.camunda.bpm.engine.impl.cfg.TransactionListener;
+import org.camunda.bpm.engine.impl.cfg.TransactionState;
+import org.camunda.bpm.engine.impl.context.Context;
+import org.camunda.bpm.engine.impl.history.event.HistoricDecisionInstanceEntity;
+import org.camunda.bpm.engine.impl.history.event.HistoryEvent;
+import org.camunda.bpm.engine.impl.history.handler.HistoryEventHandler;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
+import org.camunda.bpm.slacktime.RuleCountStore;
+
+/**
+ * Increments the count of the matched rule in a {@link RuleCountStore} for every
+ * decision evaluation, once the surrounding transaction has committed.
+ *
+ * @author Thorben Lindhauer
+ */
+public class DecisionEvaluationCountingHandler implements HistoryEventHandler {
+
+  protected RuleCountStore ruleCountStore;
+
+  public DecisionEvaluationCountingHandler(RuleCountStore ruleCountStore) {
+    this.ruleCountStore = ruleCountStore;
+  }
+
+  public void handleEvent(HistoryEvent historyEvent) {
+    if (historyEvent instanceof HistoricDecisionInstanceEntity) {
+      HistoricDecisionInstanceEntity decisionInstance = (HistoricDecisionInstanceEntity) historyEvent;
+      List<HistoricDecisionOutputInstance> outputs = decisionInstance.getOutputs();
+
+      if (outputs != null && !outputs.isEmpty()) {
+        // assuming there is exactly one matching rule
+        countOnCommit(decisionInstance, outputs.get(0).getRuleId());
+      }
+    }
+  }
+
+  public void handleEvents(List<HistoryEvent> historyEvents) {
+    for (HistoryEvent historyEvent : historyEvents) {
+      handleEvent(historyEvent);
+    }
+  }
+
+  protected void countOnCommit(final HistoricDecisionInstanceEntity decisionInstance, final String ruleId) {
+    CommandContext commandContext = Context.getCommandContext();
+
+    if (commandContext != null) {
+      commandContext.getTransactionContext().addTransactionListener(TransactionState.COMMITTED, new TransactionListener() {
+        public void execute(CommandContext commandContext) {
+          // the id of the decision instance is only assigned when it is flushed
+          count(decisionInstance, ruleId);
+        }
+      });
+    }
+    else {
+      count(decisionInstance, ruleId);
+    }
+  }
+
+  protected void count(HistoricDecisionInstanceEntity decisionInstance, String ruleId) {
+    ruleCountStore.incrementRuleCount(decisionInstance.getDecisionDefinitionId(), decisionInstance.getId(), ruleId,
+        decisionInstance.getEvaluationTime().getTime());
+  }
+
+}
@@ -0,0 +1,410 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.history.handler.CompositeDbHistoryEventHandler;
+import org.camunda.bpm.engine.impl.history.handler.CompositeHistoryEventHandler;
+import org.camunda.bpm.engine.impl.history.handler.HistoryEventHandler;
+import org.camunda.bpm.engine.impl.interceptor.CommandExecutor;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+import org.camunda.bpm.engine.impl.persistence.deploy.Deployer;
+import org.camunda.bpm.slacktime.DistributionSource;
+import org.camunda.bpm.slacktime.FileModelSnapshotStore;
+import org.camunda.bpm.slacktime.InMemoryRuleCountStore;
+import org.camunda.bpm.slacktime.InputDependencyLearner;
+import org.camunda.bpm.slacktime.ModelSnapshot;
+import org.camunda.bpm.slacktime.PredictionMetrics;
+import org.camunda.bpm.slacktime.PredictiveDmnEngine;
+import org.camunda.bpm.slacktime.PredictorCache;
+import org.camunda.bpm.slacktime.RuleCountStore;
+import org.camunda.bpm.slacktime.SlidingWindowDistributionSource;
+import org.camunda.bpm.slacktime.SlidingWindowRuleCountStore;
+
+/**
+ * Process engine plugin that sets up a {@link PredictiveDmnEngine} with a predictor
+ * cache for the engine and registers it with {@link PredictiveDmnEngines}.
+ * Cached predictors are invalidated when decisions are deployed and, if a staleness threshold
+ * is configured, when enough new decision history has been recorded.
+ *
+ * <p>If <code>countEvaluations</code> is enabled, the plugin registers a {@link DecisionEvaluationCountingHandler}
+ * and predictors are built from the incrementally maintained rule counts instead of
+ * scanning the decision history. If additionally a <code>windowBucketDuration</code> is set, only the
+ * evaluations of the last <code>windowBuckets</code> buckets of that many milliseconds are counted, each bucket
+ * weighted by <code>windowDecayFactor</code> to the power of its age, see {@link SlidingWindowRuleCountStore}.
+ * Since such distributions change over time, a finite cache time to live should be configured.
+ * The counts are only kept in memory, so after a restart the first prediction of every decision scans
+ * its whole history again, or the history of the window, respectively. With a <code>snapshotDirectory</code>,
+ * only the history newer than the decision's snapshot is read instead.</p>
+ *
+ * <p>If a <code>snapshotDirectory</code> is set, built models are saved there and a decision's snapshot
+ * is loaded when its model is built. A model is then rebuilt by replaying only the history that is newer
+ * than its snapshot. Evaluations younger than <code>snapshotWatermarkLag</code> milliseconds are replayed
+ * but not saved, so that evaluations whose transactions commit late are not missed.</p>
+ *
+ * <p>If <code>inputDependencyTreewidth</code> is greater than 0, dependencies between the inputs are learned
+ * from the decision history with a treewidth of at most that bound, see {@link InputDependencyLearner}.</p>
+ *
+ * <p>If <code>inputTableThreads</code> is greater than 0, the distributions of the inputs are fetched by that
+ * many threads in parallel when a model is built. Every input is then requested separately from the
+ * distribution source, which only pays off if the source does not scan the history per request,
+ * e.g. if <code>countEvaluations</code> is enabled.</p>
+ *
+ * <p>Timings and counters of the prediction pipeline are collected in {@link PredictionMetrics} and
+ * published via JMX unless <code>jmxEnabled</code> is disabled. Predictions that take longer than
+ * <code>slowPredictionThreshold</code> milliseconds are logged.</p>
+ *
+ * <p>Predictors requested asynchronously are built by <code>predictorBuildThreads</code> threads.</p>
+ *
+ * <p>When the process engine is closed, its predictive engine and metrics are unregistered again and
+ * the threads building predictors and fetching input distributions are shut down.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class DmnPredictionPlugin extends AbstractProcessEnginePlugin {
+
+  protected int cacheMaxSize = PredictorCache.DEFAULT_MAX_SIZE;
+  protected long cacheTimeToLive = PredictorCache.DEFAULT_TIME_TO_LIVE;
+  protected long stalenessThreshold = 0;
+  protected long stalenessCheckInterval = PredictorCache.DEFAULT_STALENESS_CHECK_INTERVAL;
+  protected boolean countEvaluations = false;
+  protected int historyPageSize = HistoricDecisionInstanceScanner.UNPAGED;
+  protected long slowPredictionThreshold = 0;
+  protected boolean jmxEnabled = true;
+  protected String snapshotDirectory;
+  protected long snapshotWatermarkLag = ModelSnapshot.DEFAULT_WATERMARK_LAG;
+  protected long windowBucketDuration = 0;
+  protected int windowBuckets = 24;
+  protected double windowDecayFactor = SlidingWindowRuleCountStore.NO_DECAY;
+  protected int inputDependencyTreewidth = InputDependencyLearner.INDEPENDENT;
+  protected int inputTableThreads = 0;
+  protected int predictorBuildThreads = 2;
+
+  protected String processEngineName;
+  protected PredictorCache predictorCache;
+  protected RuleCountStore ruleCountStore;
+  protected ExecutorService inputTableExecutor;
+  protected ExecutorService predictorBuildExecutor;
+
+  public void preInit(ProcessEngineConfigurationImpl processEngineConfiguration) {
+    processEngineName = processEngineConfiguration.getProcessEngineName();
+    predictorCache = new PredictorCache(cacheMaxSize, cacheTimeToLive);
+
+    List<CommandInterceptor> preInterceptors = processEngineConfiguration.getCustomPreCommandInterceptorsTxRequired();
+    if (preInterceptors == null) {
+      preInterceptors = new ArrayList<CommandInterceptor>();
+      processEngineConfiguration.setCustomPreCommandInterceptorsTxRequired(preInterceptors);
+    }
+    preInterceptors.add(new ProcessEngineCloseInterceptor(this));
+
+    List<Deployer> postDeployers = processEngineConfiguration.getCustomPostDeployers();
+    if (postDeployers == null) {
+      postDeployers = new ArrayList<Deployer>();
+      processEngineConfiguration.setCustomPostDeployers(postDeployers);
+    }
+    postDeployers.add(new PredictorCacheInvalidationDeployer(predictorCache));
+
+    if (countEvaluations) {
+      if (windowBucketDuration > 0) {
+        ruleCountStore = new SlidingWindowRuleCountStore(windowBucketDuration, windowBuckets, windowDecayFactor);
+      }
+      else {
+        ruleCountStore = new InMemoryRuleCountStore();
+      }
+      HistoryEventHandler countingHandler = new DecisionEvaluationCountingHandler(ruleCountStore);
+
+      HistoryEventHandler historyEventHandler = processEngineConfiguration.getHistoryEventHandler();
+      if (historyEventHandler == null) {
+        processEngineConfiguration.setHistoryEventHandler(new CompositeDbHistoryEventHandler(countingHandler));
+      }
+      else {
+        processEngineConfiguration.setHistoryEventHandler(new CompositeHistoryEventHandler(historyEventHandler, countingHandler));
+      }
+    }
+  }
+
+  /**
+   * The process engine is closed by its schema operations command executor which is the executor the
+   * {@link ProcessEngineCloseInterceptor} has been added to unless a custom one is configured. A custom
+   * executor is wrapped by another interceptor instead.
+   */
+  public void postInit(ProcessEngineConfigurationImpl processEngineConfiguration) {
+    CommandExecutor schemaOperationsExecutor = processEngineConfiguration.getCommandExecutorSchemaOperations();
+    if (schemaOperationsExecutor != processEngineConfiguration.getCommandExecutorTxRequired()) {
+      ProcessEngineCloseInterceptor closeInterceptor = new ProcessEngineCloseInterceptor(this);
+      closeInterceptor.setNext(schemaOperationsExecutor);
+      processEngineConfiguration.setCommandExecutorSchemaOperations(closeInterceptor);
+    }
+  }
+
+  public void postProcessEngineBuild(ProcessEngine processEngine) {
+    PredictionMetrics metrics = new PredictionMetrics();
+    metrics.setSlowPredictionThreshold(slowPredictionThreshold);
+
+    DistributionSource distributionSource;
+    if (countEvaluations && ruleCountStore instanceof SlidingWindowRuleCountStore) {
+      SlidingWindowDistributionSource windowDistributionSource = new SlidingWindowDistributionSource(
+          new EngineDecisionRepository(processEngine), (SlidingWindowRuleCountStore) ruleCountStore,
+          new EngineRuleCountHistory(processEngine, historyPageSize));
+      windowDistributionSource.setMetricsListener(metrics);
+      distributionSource = windowDistributionSource;
+    }
+    else if (countEvaluations) {
+      HistoryRuleCountDistributionSource ruleCountDistributionSource =
+          new HistoryRuleCountDistributionSource(processEngine, ruleCountStore, historyPageSize);
+      ruleCountDistributionSource.setMetricsListener(metrics);
+      distributionSource = ruleCountDistributionSource;
+    }
+    else {
+      HistoryDistributionSource historyDistributionSource = new HistoryDistributionSource(processEngine, historyPageSize);
+      historyDistributionSource.setMetricsListener(metrics);
+      distributionSource = historyDistributionSource;
+    }
+
+    PredictiveDmnEngine predictiveEngine = PredictiveDmnEngines.createPredictiveEngine(processEngine, distributionSource, predictorCache);
+    predictiveEngine.setMetricsListener(metrics);
+
+    if (snapshotDirectory != null) {
+      FileModelSnapshotStore snapshotStore = new FileModelSnapshotStore(new File(snapshotDirectory));
+      predictiveEngine.setSnapshotStore(snapshotStore, new EngineRuleCountHistory(processEngine, historyPageSize));
+      predictiveEngine.setSnapshotWatermarkLag(snapshotWatermarkLag);
+    }
+
+    if (inputTableThreads > 0) {
+      inputTableExecutor = newDaemonThreadPool(inputTableThreads, "dmn-prediction-input-table-");
+      predictiveEngine.setInputTableExecutor(inputTableExecutor);
+    }
+
+    if (predictorBuildThreads > 0) {
+      predictorBuildExecutor = newDaemonThreadPool(predictorBuildThreads, "dmn-prediction-builder-");
+      predictiveEngine.setPredictorBuildExecutor(predictorBuildExecutor);
+    }
+
+    if (inputDependencyTreewidth > InputDependencyLearner.INDEPENDENT) {
+      predictiveEngine.setInputDependencyLearner(
+          new InputDependencyLearner(new EngineRuleCountHistory(processEngine, historyPageSize), inputDependencyTreewidth));
+    }
+
+    if (stalenessThreshold > 0) {
+      predictorCache.setStalenessCheck(new HistoryDistributionSource(processEngine), stalenessThreshold, stalenessCheckInterval);
+    }
+
+    PredictiveDmnEngines.register(processEngine.getName(), predictiveEngine);
+
+    if (jmxEnabled) {
+      PredictiveDmnEngines.registerMetrics(processEngine.getName(), metrics);
+    }
+  }
+
+  /**
+   * Called by the {@link ProcessEngineCloseInterceptor} when the process engine has been closed.
+   */
+  public void processEngineClosed() {
+    PredictiveDmnEngines.unregister(processEngineName);
+
+    // lets running builds complete their tasks instead of leaving requests waiting
+    if (predictorBuildExecutor != null) {
+      predictorBuildExecutor.shutdown();
+    }
+    if (inputTableExecutor != null) {
+      inputTableExecutor.shutdown();
+    }
+  }
+
+  protected static ExecutorService newDaemonThreadPool(int threads, final String threadNamePrefix) {
+    return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      protected AtomicInteger threadCount = new AtomicInteger();
+
+      public Thread newThread(Runnable runnable) {
+        // daemon threads so that they do not keep the JVM alive
+        Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  public int getCacheMaxSize() {
+    return cacheMaxSize;
+  }
+
+  public void setCacheMaxSize(int cacheMaxSize) {
+    this.cacheMaxSize = cacheMaxSize;
+  }
+
+  public long getCacheTimeToLive() {
+    return cacheTimeToLive;
+  }
+
+  public void setCacheTimeToLive(long cacheTimeToLive) {
+    this.cacheTimeToLive = cacheTimeToLive;
+  }
+
+  public long getStalenessThreshold() {
+    return stalenessThreshold;
+  }
+
+  public void setStalenessThreshold(long stalenessThreshold) {
+    this.stalenessThreshold = stalenessThreshold;
+  }
+
+  public long getStalenessCheckInterval() {
+    return stalenessCheckInterval;
+  }
+
+  /**
+   * @param stalenessCheckInterval the minimum number of milliseconds between two staleness checks of a cached predictor
+   */
+  public void setStalenessCheckInterval(long stalenessCheckInterval) {
+    this.stalenessCheckInterval = stalenessCheckInterval;
+  }
+
+  public boolean isCountEvaluations() {
+    return countEvaluations;
+  }
+
+  public void setCountEvaluations(boolean countEvaluations) {
+    this.countEvaluations = countEvaluations;
+  }
+
+  public int getHistoryPageSize() {
+    return historyPageSize;
+  }
+
+  /**
+   * If > 0, history is read in pages of the given size when building distributions.
+   */
+  public void setHistoryPageSize(int historyPageSize) {
+    this.historyPageSize = historyPageSize;
+  }
+
+  public long getSlowPredictionThreshold() {
+    return slowPredictionThreshold;
+  }
+
+  /**
+   * If > 0, predictions taking at least this many milliseconds are logged with the dimensions of the model.
+   */
+  public void setSlowPredictionThreshold(long slowPredictionThreshold) {
+    this.slowPredictionThreshold = slowPredictionThreshold;
+  }
+
+  public boolean isJmxEnabled() {
+    return jmxEnabled;
+  }
+
+  public void setJmxEnabled(boolean jmxEnabled) {
+    this.jmxEnabled = jmxEnabled;
+  }
+
+  public String getSnapshotDirectory() {
+    return snapshotDirectory;
+  }
+
+  /**
+   * @param snapshotDirectory the directory model snapshots are kept in; null disables snapshots
+   */
+  public void setSnapshotDirectory(String snapshotDirectory) {
+    this.snapshotDirectory = snapshotDirectory;
+  }
+
+  public long getSnapshotWatermarkLag() {
+    return snapshotWatermarkLag;
+  }
+
+  /**
+   * @param snapshotWatermarkLag the number of milliseconds that evaluations may take to commit and still be saved in a snapshot
+   */
+  public void setSnapshotWatermarkLag(long snapshotWatermarkLag) {
+    this.snapshotWatermarkLag = snapshotWatermarkLag;
+  }
+
+  public long getWindowBucketDuration() {
+    return windowBucketDuration;
+  }
+
+  /**
+   * If > 0 and evaluations are counted, distributions only consider the evaluations within a sliding window
+   * of buckets of this many milliseconds, e.g. {@link SlidingWindowRuleCountStore#HOURLY}.
+   */
+  public void setWindowBucketDuration(long windowBucketDuration) {
+    this.windowBucketDuration = windowBucketDuration;
+  }
+
+  public int getWindowBuckets() {
+    return windowBuckets;
+  }
+
+  public void setWindowBuckets(int windowBuckets) {
+    this.windowBuckets = windowBuckets;
+  }
+
+  public double getWindowDecayFactor() {
+    return windowDecayFactor;
+  }
+
+  /**
+   * @param windowDecayFactor the weight of a bucket relative to the next newer one, between 0 and 1
+   */
+  public void setWindowDecayFactor(double windowDecayFactor) {
+    this.windowDecayFactor = windowDecayFactor;
+  }
+
+  public int getInputDependencyTreewidth() {
+    return inputDependencyTreewidth;
+  }
+
+  /**
+   * @param inputDependencyTreewidth the maximum treewidth of the learned dependencies between inputs; 0 keeps inputs independent
+   */
+  public void setInputDependencyTreewidth(int inputDependencyTreewidth) {
+    this.inputDependencyTreewidth = inputDependencyTreewidth;
+  }
+
+  public int getInputTableThreads() {
+    return inputTableThreads;
+  }
+
+  /**
+   * @param inputTableThreads the number of threads fetching input distributions in parallel; 0 fetches them in the building thread
+   */
+  public void setInputTableThreads(int inputTableThreads) {
+    this.inputTableThreads = inputTableThreads;
+  }
+
+  public int getPredictorBuildThreads() {
+    return predictorBuildThreads;
+  }
+
+  /**
+   * @param predictorBuildThreads the number of threads building predictors for asynchronous requests;
+   *   0 builds them in the requesting thread
+   */
+  public void setPredictorBuildThreads(int predictorBuildThreads) {
+    this.predictorBuildThreads = predictorBuildThreads;
+  }
+
+  public RuleCountStore getRuleCountStore() {
+    return ruleCountStore;
+  }
+}
@@ -33,4 +33,8 @@ public class EngineDecisionRepository implements DecisionRepository {
     return repositoryService.getDmnModelInstance(id);
   }
 
+  public String getDecisionKey(String id) {
+    return repositoryService.getDecisionDefinition(id).getKey();
+  }
+
 }
@@ -0,0 +1,108 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.history.HistoricDecisionInstance;
+import org.camunda.bpm.slacktime.ModelSnapshot;
+import org.camunda.bpm.slacktime.RuleCountHistory;
+import org.camunda.bpm.slacktime.RuleEvaluation;
+import org.camunda.bpm.slacktime.processengine.HistoricDecisionInstanceScanner.HistoricDecisionInstanceVisitor;
+
+/**
+ * Counts matched rules in the decision history of a process engine.
+ *
+ * @author Thorben Lindhauer
+ */
+public class EngineRuleCountHistory implements RuleCountHistory {
+
+  protected HistoricDecisionInstanceScanner historyScanner;
+
+  public EngineRuleCountHistory(ProcessEngine engine) {
+    this(engine, HistoricDecisionInstanceScanner.UNPAGED);
+  }
+
+  public EngineRuleCountHistory(ProcessEngine engine, int historyPageSize) {
+    this.historyScanner = new HistoricDecisionInstanceScanner(engine.getHistoryService(), historyPageSize);
+  }
+
+  public Map<String, Long> getRuleCounts(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil) {
+    return getRuleCounts(decisionDefinitionId, toLowerBound(evaluatedAfter), new Date(evaluatedUntil));
+  }
+
+  public Map<String, Long> getRuleCounts(String decisionDefinitionId, Date evaluatedAfter, Date evaluatedBefore) {
+    final Map<String, Long> ruleCounts = new HashMap<String, Long>();
+
+    historyScanner.scan(decisionDefinitionId, evaluatedAfter, evaluatedBefore, new HistoricDecisionInstanceVisitor() {
+      public void visit(HistoricDecisionInstance historicDecisionInstance) {
+        countMatchedRule(ruleCounts, historicDecisionInstance);
+      }
+    });
+
+    return ruleCounts;
+  }
+
+  public Map<Long, Map<String, Long>> getRuleCountsByBucket(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil,
+      final long bucketDuration) {
+    final Map<Long, Map<String, Long>> ruleCountsByBucket = new HashMap<Long, Map<String, Long>>();
+
+    historyScanner.scan(decisionDefinitionId, toLowerBound(evaluatedAfter), new Date(evaluatedUntil), new HistoricDecisionInstanceVisitor() {
+      public void visit(HistoricDecisionInstance historicDecisionInstance) {
+        long bucket = historicDecisionInstance.getEvaluationTime().getTime() / bucketDuration;
+        Map<String, Long> ruleCounts = ruleCountsByBucket.get(bucket);
+        if (ruleCounts == null) {
+          ruleCounts = new HashMap<String, Long>();
+          ruleCountsByBucket.put(bucket, ruleCounts);
+        }
+        countMatchedRule(ruleCounts, historicDecisionInstance);
+      }
+    });
+
+    return ruleCountsByBucket;
+  }
+
+  public List<RuleEvaluation> getRuleEvaluations(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil) {
+    final List<RuleEvaluation> evaluations = new ArrayList<RuleEvaluation>();
+
+    historyScanner.scan(decisionDefinitionId, toLowerBound(evaluatedAfter), new Date(evaluatedUntil), new HistoricDecisionInstanceVisitor() {
+      public void visit(HistoricDecisionInstance historicDecisionInstance) {
+        String ruleId = HistoricDecisionInstanceScanner.getMatchedRuleId(historicDecisionInstance);
+        if (ruleId != null) {
+          evaluations.add(new RuleEvaluation(historicDecisionInstance.getId(), ruleId,
+              historicDecisionInstance.getEvaluationTime().getTime()));
+        }
+      }
+    });
+
+    return evaluations;
+  }
+
+  protected Date toLowerBound(long evaluatedAfter) {
+    // the query bounds are inclusive
+    return evaluatedAfter != ModelSnapshot.NO_WATERMARK ? new Date(evaluatedAfter + 1) : null;
+  }
+
+  protected void countMatchedRule(Map<String, Long> ruleCounts, HistoricDecisionInstance historicDecisionInstance) {
+    String ruleId = HistoricDecisionInstanceScanner.getMatchedRuleId(historicDecisionInstance);
+    if (ruleId != null) {
+      Long count = ruleCounts.get(ruleId);
+      ruleCounts.put(ruleId, count == null ? 1L : count + 1);
+    }
+  }
+}
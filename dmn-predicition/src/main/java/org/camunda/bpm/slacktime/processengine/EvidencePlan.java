@@ -0,0 +1,130 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableInputImpl;
+import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableRuleImpl;
+import org.camunda.bpm.dmn.engine.impl.spi.el.ElExpression;
+import org.camunda.bpm.dmn.engine.impl.spi.el.ElProvider;
+import org.camunda.bpm.dmn.feel.impl.FeelEngine;
+import org.camunda.bpm.engine.impl.dmn.entity.repository.DecisionDefinitionEntity;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.variable.context.VariableContext;
+import org.camunda.bpm.engine.variable.impl.context.SingleVariableContext;
+import org.camunda.bpm.slacktime.Evidence;
+import org.camunda.bpm.slacktime.processengine.ConditionIndex.UnaryTest;
+
+/**
+ * Compiled form of a decision definition for generating evidence. It holds the parsed
+ * input expressions and, per input column, a {@link ConditionIndex} over the distinct unary tests
+ * of the rules, so that generating the evidence of a process instance only evaluates.
+ *
+ * @author Thorben Lindhauer
+ */
+public class EvidencePlan {
+
+  protected FeelEngine feelEngine;
+  protected List<InputPlan> inputPlans = new ArrayList<InputPlan>();
+
+  // null if at least one input expression cannot be analyzed
+  protected Set<String> referencedVariables = new HashSet<String>();
+
+  public static EvidencePlan compile(DecisionDefinitionEntity decisionDefinition, ElProvider elProvider, FeelEngine feelEngine) {
+    EvidencePlan plan = new EvidencePlan();
+    plan.feelEngine = feelEngine;
+
+    List<DmnDecisionTableInputImpl> inputs = decisionDefinition.getInputs();
+    for (int i = 0; i < inputs.size(); i++) {
+      DmnDecisionTableInputImpl input = inputs.get(i);
+
+      InputPlan inputPlan = new InputPlan();
+      inputPlan.name = input.getName();
+      inputPlan.inputVariable = input.getInputVariable();
+      inputPlan.expression = elProvider.createExpression("${" + input.getExpression().getExpression() + "}"); // TODO: works for juel only
+
+      if (plan.referencedVariables != null) {
+        Set<String> inputVariables = null;
+        if (isJuel(input.getExpression().getExpressionLanguage())) {
+          inputVariables = ExpressionVariableAnalyzer.getReferencedVariables(input.getExpression().getExpression());
+        }
+
+        if (inputVariables != null) {
+          plan.referencedVariables.addAll(inputVariables);
+        }
+        else {
+          plan.referencedVariables = null;
+        }
+      }
+
+      List<String> conditions = new ArrayList<String>();
+      List<String> ruleIds = new ArrayList<String>();
+      for (DmnDecisionTableRuleImpl rule : decisionDefinition.getRules()) {
+        conditions.add(rule.getConditions().get(i).getExpression());
+        ruleIds.add(rule.getId());
+      }
+      inputPlan.conditionIndex = new ConditionIndex(conditions, ruleIds);
+
+      plan.inputPlans.add(inputPlan);
+    }
+
+    return plan;
+  }
+
+  protected static boolean isJuel(String expressionLanguage) {
+    return expressionLanguage == null || "juel".equalsIgnoreCase(expressionLanguage);
+  }
+
+  /**
+   * @return the names of all variables the input expressions read or null if
+   *   they cannot be determined, in which case all variables must be provided
+   */
+  public Set<String> getReferencedVariables() {
+    return referencedVariables;
+  }
+
+  public Evidence generateEvidence(VariableContext variables) {
+    Evidence evidence = new Evidence();
+
+    for (InputPlan inputPlan : inputPlans) {
+      Object value = null;
+      try {
+        value = inputPlan.expression.getValue(variables);
+      } catch (Exception e) {
+        // a failing evaluation is treated as if the input is not known
+        continue;
+      }
+
+      SingleVariableContext inputContext = new SingleVariableContext(inputPlan.inputVariable, Variables.untypedValue(value));
+
+      // there should be no more than one input expression that is satisfied
+      UnaryTest test = inputPlan.conditionIndex.match(value, inputPlan.inputVariable, inputContext, feelEngine);
+      if (test != null) {
+        evidence.submit(inputPlan.name, test.getExpression());
+      }
+    }
+
+    return evidence;
+  }
+
+  protected static class InputPlan {
+    protected String name;
+    protected String inputVariable;
+    protected ElExpression expression;
+    protected ConditionIndex conditionIndex;
+  }
+}
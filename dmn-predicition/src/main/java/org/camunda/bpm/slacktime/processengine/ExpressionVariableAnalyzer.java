@@ -0,0 +1,146 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Determines the variables that a JUEL expression reads by scanning its identifiers.
+ *
+ * <p>The analysis is conservative: property names after a <code>.</code> and string literals
+ * are skipped and if the expression contains anything that may resolve variables indirectly, e.g.
+ * function calls or nested expressions, it is considered not analyzable.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class ExpressionVariableAnalyzer {
+
+  protected static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+      "true", "false", "null", "empty", "not", "and", "or", "div", "mod",
+      "eq", "ne", "lt", "gt", "le", "ge", "instanceof"));
+
+  /**
+   * @param expression a JUEL expression without the surrounding <code>${}</code>
+   * @return the names of the referenced variables or null if the expression cannot be analyzed
+   */
+  public static Set<String> getReferencedVariables(String expression) {
+    if (expression == null || expression.contains("${") || expression.contains("#{")) {
+      return null;
+    }
+
+    Set<String> variables = new LinkedHashSet<String>();
+
+    int position = 0;
+    while (position < expression.length()) {
+      char character = expression.charAt(position);
+
+      if (character == '"' || character == '\'') {
+        position = skipStringLiteral(expression, position);
+      }
+      else if (Character.isJavaIdentifierStart(character)) {
+        int end = position + 1;
+        while (end < expression.length() && Character.isJavaIdentifierPart(expression.charAt(end))) {
+          end++;
+        }
+
+        String identifier = expression.substring(position, end);
+        char previous = previousNonWhitespace(expression, position);
+        char next = nextNonWhitespace(expression, end);
+
+        if (next == '(' || isNamespacePrefix(expression, end)) {
+          // functions may read arbitrary variables
+          return null;
+        }
+        if (previous != '.' && !KEYWORDS.contains(identifier)) {
+          variables.add(identifier);
+        }
+
+        position = end;
+      }
+      else if (Character.isDigit(character)) {
+        // skip numbers including exponents such as 1e10
+        position++;
+        while (position < expression.length() && Character.isLetterOrDigit(expression.charAt(position))) {
+          position++;
+        }
+      }
+      else {
+        position++;
+      }
+    }
+
+    return variables;
+  }
+
+  protected static int skipStringLiteral(String expression, int start) {
+    char quote = expression.charAt(start);
+    int position = start + 1;
+
+    while (position < expression.length()) {
+      char character = expression.charAt(position);
+      if (character == '\\') {
+        position += 2;
+      }
+      else if (character == quote) {
+        return position + 1;
+      }
+      else {
+        position++;
+      }
+    }
+
+    return position;
+  }
+
+  /**
+   * @return true if the identifier ending at the position is followed by <code>:name(</code>
+   */
+  protected static boolean isNamespacePrefix(String expression, int position) {
+    int colon = skipWhitespace(expression, position);
+    if (colon >= expression.length() || expression.charAt(colon) != ':') {
+      return false;
+    }
+
+    int nameStart = skipWhitespace(expression, colon + 1);
+    int nameEnd = nameStart;
+    while (nameEnd < expression.length() && Character.isJavaIdentifierPart(expression.charAt(nameEnd))) {
+      nameEnd++;
+    }
+
+    return nameEnd > nameStart && nextNonWhitespace(expression, nameEnd) == '(';
+  }
+
+  protected static char previousNonWhitespace(String expression, int position) {
+    for (int i = position - 1; i >= 0; i--) {
+      if (!Character.isWhitespace(expression.charAt(i))) {
+        return expression.charAt(i);
+      }
+    }
+    return 0;
+  }
+
+  protected static char nextNonWhitespace(String expression, int position) {
+    int next = skipWhitespace(expression, position);
+    return next < expression.length() ? expression.charAt(next) : 0;
+  }
+
+  protected static int skipWhitespace(String expression, int position) {
+    while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+      position++;
+    }
+    return position;
+  }
+}
@@ -0,0 +1,187 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.camunda.bpm.engine.HistoryService;
+import org.camunda.bpm.engine.ProcessEngineException;
+import org.camunda.bpm.engine.history.HistoricDecisionInstance;
+import org.camunda.bpm.engine.history.HistoricDecisionInstanceQuery;
+import org.camunda.bpm.engine.history.HistoricDecisionOutputInstance;
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+
+/**
+ * Walks over the historic instances of a decision including their outputs.
+ *
+ * <p>With a page size > 0, the history is fetched in pages of that size ordered by
+ * evaluation time, so that only one page is held in memory at a time. Pages are not addressed
+ * by offset but by the evaluation time of the last visited instance, so that every page query
+ * starts where the previous one ended and instances inserted meanwhile do not shift the pages.
+ * Since evaluation times are not unique, the next page starts at that evaluation time again and
+ * skips the instances of that time that have already been visited. Instances evaluated after
+ * the scan has started are not visited. Otherwise, all instances are fetched with a single query.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class HistoricDecisionInstanceScanner {
+
+  public static final int UNPAGED = 0;
+
+  protected HistoryService historyService;
+  protected int pageSize;
+
+  public HistoricDecisionInstanceScanner(HistoryService historyService) {
+    this(historyService, UNPAGED);
+  }
+
+  public HistoricDecisionInstanceScanner(HistoryService historyService, int pageSize) {
+    this.historyService = historyService;
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * @return the number of visited historic decision instances
+   */
+  public long scan(String decisionDefinitionId, HistoricDecisionInstanceVisitor visitor) {
+    return scan(decisionDefinitionId, null, null, visitor);
+  }
+
+  /**
+   * Visits the instances evaluated within the given bounds, both inclusive.
+   *
+   * @param evaluatedAfter may be null to start at the beginning of the history
+   * @param evaluatedBefore may be null to include all instances evaluated before the scan started
+   * @return the number of visited historic decision instances
+   */
+  public long scan(String decisionDefinitionId, Date evaluatedAfter, Date evaluatedBefore, HistoricDecisionInstanceVisitor visitor) {
+    if (pageSize <= 0) {
+      List<HistoricDecisionInstance> historicDecisionInstances = createQuery(decisionDefinitionId, evaluatedAfter, evaluatedBefore).list();
+      for (HistoricDecisionInstance historicDecisionInstance : historicDecisionInstances) {
+        visitor.visit(historicDecisionInstance);
+      }
+      return historicDecisionInstances.size();
+    }
+
+    Date scanEnd = evaluatedBefore != null ? evaluatedBefore : ClockUtil.getCurrentTime();
+
+    // the evaluation time the next page starts at and the instances of that time visited so far
+    Date cursor = evaluatedAfter;
+    Set<String> visitedAtCursor = new HashSet<String>();
+    long visited = 0;
+    List<HistoricDecisionInstance> page;
+
+    do {
+      page = createQuery(decisionDefinitionId, cursor, scanEnd)
+        .orderByEvaluationTime()
+        .asc()
+        .listPage(0, pageSize);
+
+      long visitedBefore = visited;
+      for (HistoricDecisionInstance historicDecisionInstance : page) {
+        Date evaluationTime = historicDecisionInstance.getEvaluationTime();
+        if (cursor == null || evaluationTime.after(cursor)) {
+          cursor = evaluationTime;
+          visitedAtCursor.clear();
+        }
+
+        if (visitedAtCursor.add(historicDecisionInstance.getId())) {
+          visitor.visit(historicDecisionInstance);
+          visited++;
+        }
+      }
+
+      if (page.size() == pageSize && visited == visitedBefore) {
+        // a full page of instances that share the evaluation time of the cursor
+        visited += scanEvaluationTime(decisionDefinitionId, cursor, visitedAtCursor, visitor);
+        cursor = new Date(cursor.getTime() + 1);
+        visitedAtCursor.clear();
+      }
+    } while (page.size() == pageSize && !cursor.after(scanEnd));
+
+    return visited;
+  }
+
+  /**
+   * @return the id of the rule that matched in the instance or null if no rule matched
+   */
+  public static String getMatchedRuleId(HistoricDecisionInstance historicDecisionInstance) {
+    List<HistoricDecisionOutputInstance> outputInstances;
+    try {
+      outputInstances = historicDecisionInstance.getOutputs();
+    }
+    catch (ProcessEngineException e) {
+      // the outputs are always fetched, but the engine does not initialize them if there are none
+      return null;
+    }
+
+    if (outputInstances.isEmpty()) {
+      return null;
+    }
+
+    // assuming there is exactly one matching rule
+    return outputInstances.get(0).getRuleId();
+  }
+
+  /**
+   * Visits the instances of one evaluation time that have not been visited yet. These are
+   * fetched with a single query since there is no key to page them by.
+   */
+  protected long scanEvaluationTime(String decisionDefinitionId, Date evaluationTime, Set<String> visitedInstances,
+      HistoricDecisionInstanceVisitor visitor) {
+    long visited = 0;
+
+    for (HistoricDecisionInstance historicDecisionInstance : createQuery(decisionDefinitionId, evaluationTime, evaluationTime).list()) {
+      if (!visitedInstances.contains(historicDecisionInstance.getId())) {
+        visitor.visit(historicDecisionInstance);
+        visited++;
+      }
+    }
+
+    return visited;
+  }
+
+  protected HistoricDecisionInstanceQuery createQuery(String decisionDefinitionId) {
+    return historyService
+      .createHistoricDecisionInstanceQuery()
+      .includeOutputs()
+      .decisionDefinitionId(decisionDefinitionId);
+  }
+
+  protected HistoricDecisionInstanceQuery createQuery(String decisionDefinitionId, Date evaluatedAfter, Date evaluatedBefore) {
+    HistoricDecisionInstanceQuery query = createQuery(decisionDefinitionId);
+    if (evaluatedAfter != null) {
+      query.evaluatedAfter(evaluatedAfter);
+    }
+    if (evaluatedBefore != null) {
+      query.evaluatedBefore(evaluatedBefore);
+    }
+    return query;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public void setPageSize(int pageSize) {
+    this.pageSize = pageSize;
+  }
+
+  public static interface HistoricDecisionInstanceVisitor {
+
+    void visit(HistoricDecisionInstance historicDecisionInstance);
+  }
+}
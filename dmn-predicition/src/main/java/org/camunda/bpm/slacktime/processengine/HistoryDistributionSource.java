@@ -12,23 +12,32 @@
  */
 package org.camunda.bpm.slacktime.processengine;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.camunda.bpm.engine.HistoryService;
 import org.camunda.bpm.engine.ProcessEngine;
 import org.camunda.bpm.engine.RepositoryService;
 import org.camunda.bpm.engine.history.HistoricDecisionInstance;
-import org.camunda.bpm.engine.history.HistoricDecisionOutputInstance;
 import org.camunda.bpm.model.dmn.DmnModelInstance;
 import org.camunda.bpm.model.dmn.instance.DecisionTable;
 import org.camunda.bpm.model.dmn.instance.Input;
 import org.camunda.bpm.model.dmn.instance.InputEntry;
 import org.camunda.bpm.model.dmn.instance.Rule;
+import org.camunda.bpm.slacktime.CanonicalDmnModel;
+import org.camunda.bpm.slacktime.DecisionEvaluationCounter;
+import org.camunda.bpm.slacktime.DecisionRequirementsGraph;
 import org.camunda.bpm.slacktime.Distribution;
-import org.camunda.bpm.slacktime.DistributionSource;
+import org.camunda.bpm.slacktime.PredictionCounter;
+import org.camunda.bpm.slacktime.PredictionMetricsListener;
+import org.camunda.bpm.slacktime.PredictionPhase;
+import org.camunda.bpm.slacktime.RuleCountingDistributionSource;
 import org.camunda.bpm.slacktime.VariableIndex;
+import org.camunda.bpm.slacktime.processengine.HistoricDecisionInstanceScanner.HistoricDecisionInstanceVisitor;
 
 import com.github.thorbenlindhauer.learning.prior.ConditionalDiscreteDistributionPrior;
 import com.github.thorbenlindhauer.learning.prior.UniformDirichletPriorInitializer;
@@ -39,73 +48,207 @@ import com.github.thorbenlindhauer.variable.Scope;
  * @author Thorben Lindhauer
  *
  */
-public class HistoryDistributionSource implements DistributionSource {
+public class HistoryDistributionSource implements RuleCountingDistributionSource, DecisionEvaluationCounter {
 
   protected HistoryService historyService;
   protected RepositoryService repositoryService;
+  protected HistoricDecisionInstanceScanner historyScanner;
+  protected PredictionMetricsListener metricsListener;
 
   public HistoryDistributionSource(ProcessEngine engine) {
+    this(engine, HistoricDecisionInstanceScanner.UNPAGED);
+  }
+
+  /**
+   * @param historyPageSize if > 0, the history is read in pages of this size
+   *   instead of loading all historic decision instances at once
+   */
+  public HistoryDistributionSource(ProcessEngine engine, int historyPageSize) {
     this.historyService = engine.getHistoryService();
     this.repositoryService = engine.getRepositoryService();
+    this.historyScanner = new HistoricDecisionInstanceScanner(historyService, historyPageSize);
   }
 
   public Distribution getDistribution(String dmnModelId, String variable, VariableIndex variableIndex) {
+    return getDistributions(dmnModelId, Collections.singleton(variable), variableIndex).get(variable);
+  }
 
-    // TODO: validate that decision definition has hit policy UNIQUE
-    Scope scope = new ScopeBuilderImpl().discreteVariable(variable, variableIndex.getCardinality(variable)).buildScope();
-
-    ConditionalDiscreteDistributionPrior prior = new ConditionalDiscreteDistributionPrior(scope, scope.subScope(), new UniformDirichletPriorInitializer());
+  public Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex) {
+    return getDistributions(dmnModelId, variableIndex.getVariables(), variableIndex);
+  }
 
-    // TODO: don't make a complete query everytime but persist and update prior
-    // TODO: could also use one query to build all distributions
-    List<HistoricDecisionInstance> historicDecisionInstances = historyService
-      .createHistoricDecisionInstanceQuery()
-      .includeOutputs()
-      .decisionDefinitionId(dmnModelId)
-      .list();
+  public Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex, Map<String, Long> ruleCounts) {
+    return getDistributions(dmnModelId, variableIndex.getVariables(), variableIndex, ruleCounts);
+  }
 
-    DmnModelInstance dmnModel = repositoryService.getDmnModelInstance(dmnModelId);
-    Collection<Input> inputs = getInputs(dmnModel);
+  protected Map<String, Distribution> getDistributions(String dmnModelId, Collection<String> variables, VariableIndex variableIndex) {
+    return getDistributions(dmnModelId, variables, variableIndex, null);
+  }
 
-    for (HistoricDecisionInstance historicDecisionInstance : historicDecisionInstances) {
-      String matchedRule = determineMatchedRule(historicDecisionInstance);
+  /**
+   * Builds the distributions of the given variables in a single pass over the decision's history
+   *
+   * @param ruleCounts may be null; otherwise the number of scanned instances by matched rule id is added to it
+   */
+  protected Map<String, Distribution> getDistributions(String dmnModelId, Collection<String> variables, final VariableIndex variableIndex,
+      final Map<String, Long> ruleCounts) {
 
-      Collection<InputEntry> inputEntries = getInputEntriesForRule(dmnModel, matchedRule);
+    // TODO: validate that decision definition has hit policy UNIQUE
+    final Map<String, ConditionalDiscreteDistributionPrior> priors = new HashMap<String, ConditionalDiscreteDistributionPrior>();
+    for (String variable : variables) {
+      Scope scope = new ScopeBuilderImpl().discreteVariable(variable, variableIndex.getCardinality(variable)).buildScope();
+      priors.put(variable, new ConditionalDiscreteDistributionPrior(scope, scope.subScope(), new UniformDirichletPriorInitializer()));
+    }
 
-      Iterator<Input> inputIt = inputs.iterator();
-      Iterator<InputEntry> inputEntryIt = inputEntries.iterator();
+    // TODO: don't make a complete query everytime but persist and update prior
+    DmnModelInstance dmnModel = repositoryService.getDmnModelInstance(dmnModelId);
+    DecisionTable decisionTable = getDecisionTable(dmnModelId, dmnModel);
+    final RuleEntryIndex ruleEntryIndex = new RuleEntryIndex(decisionTable.getInputs(), decisionTable.getRules(), priors, variableIndex);
 
-      while (inputIt.hasNext() && inputEntryIt.hasNext()) {
-        Input input = inputIt.next();
-        InputEntry inputEntry = inputEntryIt.next();
+    long startTime = System.nanoTime();
+    long scannedInstances = historyScanner.scan(dmnModelId, new HistoricDecisionInstanceVisitor() {
+      public void visit(HistoricDecisionInstance historicDecisionInstance) {
+        String matchedRule = determineMatchedRule(historicDecisionInstance);
+        if (matchedRule != null) {
+          ruleEntryIndex.submitEvidence(matchedRule);
 
-        if (input.getLabel().equals(variable)) {
-          String inputValue = inputEntry.getTextContent();
-          int assignmentIndex = variableIndex.getIndex(variable, inputValue);
-          prior.submitEvidence(new int[]{}, assignmentIndex);
+          if (ruleCounts != null) {
+            Long count = ruleCounts.get(matchedRule);
+            ruleCounts.put(matchedRule, count == null ? 1L : count + 1);
+          }
         }
       }
+    });
+
+    if (metricsListener != null) {
+      metricsListener.phaseCompleted(dmnModelId, PredictionPhase.HISTORY_QUERY, System.nanoTime() - startTime);
+      metricsListener.counterIncremented(dmnModelId, PredictionCounter.HISTORIC_INSTANCES_SCANNED, scannedInstances);
     }
 
-    return new PriorDistribution(variable, prior, variableIndex);
+    Map<String, Distribution> distributions = new HashMap<String, Distribution>();
+    for (Map.Entry<String, ConditionalDiscreteDistributionPrior> prior : priors.entrySet()) {
+      distributions.put(prior.getKey(), new PriorDistribution(prior.getKey(), prior.getValue(), variableIndex));
+    }
+
+    return distributions;
   }
 
+  public long getEvaluationCount(String decisionDefinitionId) {
+    return historyService
+      .createHistoricDecisionInstanceQuery()
+      .decisionDefinitionId(decisionDefinitionId)
+      .count();
+  }
+
+  public PredictionMetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+
+  /**
+   * @param metricsListener may be null; is notified of the duration of history scans and the number of scanned instances
+   */
+  public void setMetricsListener(PredictionMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+  }
+
+  /**
+   * @return the id of the matched rule or null if no rule matched
+   */
   protected String determineMatchedRule(HistoricDecisionInstance historicDecisionInstance) {
-    // assuming there is exactly one matching rule
-    HistoricDecisionOutputInstance outputInstance = historicDecisionInstance.getOutputs().get(0);
-    return outputInstance.getRuleId();
+    return HistoricDecisionInstanceScanner.getMatchedRuleId(historicDecisionInstance);
   }
 
-  protected Collection<InputEntry> getInputEntriesForRule(DmnModelInstance dmnModel, String ruleId) {
-    Rule rule = dmnModel.getModelElementById(ruleId);
-    return rule.getInputEntries();
+  protected DecisionTable getDecisionTable(String dmnModelId, DmnModelInstance dmnModel) {
+    // the history only covers the decision of the definition, not the decisions it requires
+    String decisionKey = repositoryService.getDecisionDefinition(dmnModelId).getKey();
+    return DecisionRequirementsGraph.getTargetDecisionTable(dmnModel, decisionKey);
   }
 
-  protected Collection<Input> getInputs(DmnModelInstance dmnModel) {
-    // TODO: assuming there is exactly one decision table
-    DecisionTable table = dmnModel.getModelElementsByType(DecisionTable.class).iterator().next();
+  /**
+   * The value codes of the input entries of every rule, compiled once per scan so that
+   * counting a historic decision instance is a lookup of its rule id and some array reads
+   * instead of a traversal of the DMN model.
+   */
+  protected static class RuleEntryIndex {
+
+    protected static final int[] NO_CONDITION = new int[0];
 
-    return table.getInputs();
+    protected Map<String, Integer> ruleIndexes = new HashMap<String, Integer>();
+
+    // the rule prior may be null if the rule variable is not requested
+    protected ConditionalDiscreteDistributionPrior rulePrior;
+    protected int[] ruleValueCodes;
+
+    // priors of the requested inputs and the value codes of their entries by rule index and column
+    protected ConditionalDiscreteDistributionPrior[] inputPriors;
+    protected int[][] entryValueCodes;
+
+    public RuleEntryIndex(Collection<Input> inputs, Collection<Rule> rules,
+        Map<String, ConditionalDiscreteDistributionPrior> priors, VariableIndex variableIndex) {
+      this.rulePrior = priors.get(CanonicalDmnModel.RULE_VARIABLE_NAME);
+
+      List<String> inputVariables = new ArrayList<String>();
+      List<Integer> inputColumns = new ArrayList<Integer>();
+      int column = 0;
+      for (Input input : inputs) {
+        if (priors.containsKey(input.getLabel())) {
+          inputVariables.add(input.getLabel());
+          inputColumns.add(column);
+        }
+        column++;
+      }
+
+      inputPriors = new ConditionalDiscreteDistributionPrior[inputVariables.size()];
+      for (int i = 0; i < inputPriors.length; i++) {
+        inputPriors[i] = priors.get(inputVariables.get(i));
+      }
+
+      ruleValueCodes = new int[rules.size()];
+      entryValueCodes = new int[rules.size()][];
+
+      int ruleIndex = 0;
+      for (Rule rule : rules) {
+        ruleIndexes.put(rule.getId(), ruleIndex);
+        if (rulePrior != null) {
+          ruleValueCodes[ruleIndex] = variableIndex.getIndex(CanonicalDmnModel.RULE_VARIABLE_NAME, rule.getId());
+        }
+
+        List<String> entries = new ArrayList<String>();
+        for (InputEntry inputEntry : rule.getInputEntries()) {
+          entries.add(inputEntry.getTextContent());
+        }
+
+        int[] valueCodes = new int[inputPriors.length];
+        for (int i = 0; i < inputPriors.length; i++) {
+          int entryColumn = inputColumns.get(i);
+          valueCodes[i] = entryColumn < entries.size()
+              ? variableIndex.getIndex(inputVariables.get(i), entries.get(entryColumn))
+              : VariableIndex.UNKNOWN;
+        }
+        entryValueCodes[ruleIndex] = valueCodes;
+
+        ruleIndex++;
+      }
+    }
+
+    public void submitEvidence(String matchedRule) {
+      Integer ruleIndex = ruleIndexes.get(matchedRule);
+      if (ruleIndex == null) {
+        // the rule is not part of this version of the decision
+        return;
+      }
+
+      if (rulePrior != null) {
+        rulePrior.submitEvidence(NO_CONDITION, ruleValueCodes[ruleIndex]);
+      }
+
+      int[] valueCodes = entryValueCodes[ruleIndex];
+      for (int i = 0; i < inputPriors.length; i++) {
+        if (valueCodes[i] != VariableIndex.UNKNOWN) {
+          inputPriors[i].submitEvidence(NO_CONDITION, valueCodes[i]);
+        }
+      }
+    }
   }
 
   public static class PriorDistribution implements Distribution {
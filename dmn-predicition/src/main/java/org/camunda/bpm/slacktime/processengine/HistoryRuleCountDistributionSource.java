@@ -0,0 +1,58 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.slacktime.ModelSnapshot;
+import org.camunda.bpm.slacktime.RuleCountDistributionSource;
+import org.camunda.bpm.slacktime.RuleCountStore;
+import org.camunda.bpm.slacktime.RuleEvaluation;
+
+/**
+ * Rule count based distribution source that initializes the counts of a decision
+ * from its history the first time they are needed. Afterwards, the counts are kept
+ * up to date by a {@link DecisionEvaluationCountingHandler}.
+ *
+ * <p>The store records evaluations before the history is scanned and the scan only covers the
+ * evaluations before that, so that evaluations which commit while the history is scanned are counted
+ * exactly once. The evaluations within {@link RuleCountStore#LATE_COMMIT_WINDOW} before are read
+ * with their historic decision instance ids, so that an evaluation whose transaction is still open
+ * when the history is scanned is counted once it commits, but not twice.</p>
+ *
+ * @author Thorben Lindhauer
+ */
+public class HistoryRuleCountDistributionSource extends RuleCountDistributionSource {
+
+  protected EngineRuleCountHistory ruleCountHistory;
+
+  public HistoryRuleCountDistributionSource(ProcessEngine engine, RuleCountStore ruleCountStore) {
+    this(engine, ruleCountStore, HistoricDecisionInstanceScanner.UNPAGED);
+  }
+
+  public HistoryRuleCountDistributionSource(ProcessEngine engine, RuleCountStore ruleCountStore, int historyPageSize) {
+    super(new EngineDecisionRepository(engine), ruleCountStore);
+    this.ruleCountHistory = new EngineRuleCountHistory(engine, historyPageSize);
+  }
+
+  protected Map<String, Long> loadInitialRuleCounts(String dmnModelId, long countedBefore) {
+    // later evaluations are counted by the handler or read one by one
+    return ruleCountHistory.getRuleCounts(dmnModelId, ModelSnapshot.NO_WATERMARK, countedBefore - 1);
+  }
+
+  protected List<RuleEvaluation> loadLateEvaluations(String dmnModelId, long lateCommitsSince, long countingSince) {
+    return ruleCountHistory.getRuleEvaluations(dmnModelId, lateCommitsSince - 1, countingSince - 1);
+  }
+}
@@ -0,0 +1,112 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineException;
+import org.camunda.bpm.slacktime.DistributionSource;
+import org.camunda.bpm.slacktime.PredictionMetrics;
+import org.camunda.bpm.slacktime.PredictionMetricsDynamicMBean;
+import org.camunda.bpm.slacktime.PredictiveDmnEngine;
+import org.camunda.bpm.slacktime.PredictorCache;
+
+/**
+ * Holds one {@link PredictiveDmnEngine} per process engine so that cached predictors
+ * survive across requests. Engines are registered by the {@link DmnPredictionPlugin}.
+ * The {@link PredictionMetrics} of an engine can be published to the platform MBean server
+ * under <code>org.camunda.bpm.slacktime:type=PredictionMetrics,engine=&lt;name&gt;</code>.
+ *
+ * @author Thorben Lindhauer
+ */
+public class PredictiveDmnEngines {
+
+  public static final String METRICS_OBJECT_NAME_PREFIX = "org.camunda.bpm.slacktime:type=PredictionMetrics,engine=";
+
+  protected static ConcurrentMap<String, PredictiveDmnEngine> engines = new ConcurrentHashMap<String, PredictiveDmnEngine>();
+
+  /**
+   * Returns the engine registered for the process engine by its {@link DmnPredictionPlugin}. Without the plugin,
+   * cached predictors would neither be invalidated on deployments nor released when the process engine is closed,
+   * so there is no engine to predict with.
+   *
+   * @throws ProcessEngineException if the plugin is not registered with the process engine
+   */
+  public static PredictiveDmnEngine getPredictiveEngine(ProcessEngine processEngine) {
+    PredictiveDmnEngine predictiveEngine = engines.get(processEngine.getName());
+
+    if (predictiveEngine == null) {
+      throw new ProcessEngineException("No predictive engine is registered for process engine " + processEngine.getName()
+          + "; the " + DmnPredictionPlugin.class.getSimpleName() + " has to be added to its process engine plugins");
+    }
+
+    return predictiveEngine;
+  }
+
+  public static PredictiveDmnEngine createPredictiveEngine(ProcessEngine processEngine, DistributionSource distributionSource,
+      PredictorCache predictorCache) {
+    return new PredictiveDmnEngine(new EngineDecisionRepository(processEngine), distributionSource, predictorCache);
+  }
+
+  public static void register(String processEngineName, PredictiveDmnEngine predictiveEngine) {
+    engines.put(processEngineName, predictiveEngine);
+  }
+
+  public static void unregister(String processEngineName) {
+    engines.remove(processEngineName);
+    unregisterMetrics(processEngineName);
+  }
+
+  /**
+   * Publishes the metrics via JMX, replacing metrics previously registered for the process engine
+   */
+  public static void registerMetrics(String processEngineName, PredictionMetrics metrics) {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    try {
+      ObjectName objectName = getMetricsObjectName(processEngineName);
+      if (mBeanServer.isRegistered(objectName)) {
+        mBeanServer.unregisterMBean(objectName);
+      }
+      mBeanServer.registerMBean(new PredictionMetricsDynamicMBean(metrics), objectName);
+    }
+    catch (JMException e) {
+      throw new ProcessEngineException("Could not register prediction metrics of process engine " + processEngineName, e);
+    }
+  }
+
+  public static void unregisterMetrics(String processEngineName) {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    try {
+      ObjectName objectName = getMetricsObjectName(processEngineName);
+      if (mBeanServer.isRegistered(objectName)) {
+        mBeanServer.unregisterMBean(objectName);
+      }
+    }
+    catch (JMException e) {
+      throw new ProcessEngineException("Could not unregister prediction metrics of process engine " + processEngineName, e);
+    }
+  }
+
+  public static ObjectName getMetricsObjectName(String processEngineName) throws JMException {
+    return new ObjectName(METRICS_OBJECT_NAME_PREFIX + ObjectName.quote(processEngineName));
+  }
+}
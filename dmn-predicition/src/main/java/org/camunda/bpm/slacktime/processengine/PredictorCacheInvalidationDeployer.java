@@ -0,0 +1,45 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import java.util.List;
+
+import org.camunda.bpm.engine.impl.dmn.entity.repository.DecisionDefinitionEntity;
+import org.camunda.bpm.engine.impl.persistence.deploy.Deployer;
+import org.camunda.bpm.engine.impl.persistence.entity.DeploymentEntity;
+import org.camunda.bpm.slacktime.PredictorCache;
+
+/**
+ * Invalidates cached predictors whenever decisions are deployed. Must be registered
+ * as a custom post deployer, see {@link DmnPredictionPlugin}.
+ *
+ * @author Thorben Lindhauer
+ */
+public class PredictorCacheInvalidationDeployer implements Deployer {
+
+  protected PredictorCache predictorCache;
+
+  public PredictorCacheInvalidationDeployer(PredictorCache predictorCache) {
+    this.predictorCache = predictorCache;
+  }
+
+  public void deploy(DeploymentEntity deployment) {
+    List<DecisionDefinitionEntity> decisionDefinitions = deployment.getDeployedArtifacts(DecisionDefinitionEntity.class);
+
+    if (decisionDefinitions != null && !decisionDefinitions.isEmpty()) {
+      // a new version may replace a decision that is cached under the id of a previous deployment
+      predictorCache.invalidateAll();
+    }
+  }
+
+}
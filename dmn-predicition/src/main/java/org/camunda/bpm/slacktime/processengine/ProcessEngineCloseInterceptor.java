@@ -0,0 +1,46 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.processengine;
+
+import org.camunda.bpm.engine.impl.SchemaOperationCommands;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+
+/**
+ * Notifies the {@link DmnPredictionPlugin} when its process engine is closed. Process engine plugins
+ * have no close callback, but every engine executes a <code>SchemaOperationProcessEngineClose</code> command
+ * with its schema operations command executor when it is closed. Must be registered as a custom pre command
+ * interceptor or, if the engine has a custom schema operations command executor, wrap that executor,
+ * see {@link DmnPredictionPlugin#postInit(org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl)}.
+ *
+ * @author Thorben Lindhauer
+ */
+public class ProcessEngineCloseInterceptor extends CommandInterceptor {
+
+  protected DmnPredictionPlugin plugin;
+
+  public ProcessEngineCloseInterceptor(DmnPredictionPlugin plugin) {
+    this.plugin = plugin;
+  }
+
+  public <T> T execute(Command<T> command) {
+    try {
+      return next.execute(command);
+    }
+    finally {
+      if (SchemaOperationCommands.isProcessEngineClose(command)) {
+        plugin.processEngineClosed();
+      }
+    }
+  }
+}
@@ -12,27 +12,37 @@
  */
 package org.camunda.bpm.slacktime.processengine;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.camunda.bpm.dmn.engine.DmnEngine;
 import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
-import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableInputImpl;
-import org.camunda.bpm.dmn.engine.impl.DmnDecisionTableRuleImpl;
-import org.camunda.bpm.dmn.engine.impl.DmnExpressionImpl;
-import org.camunda.bpm.dmn.engine.impl.spi.el.ElExpression;
-import org.camunda.bpm.dmn.engine.impl.spi.el.ElProvider;
-import org.camunda.bpm.dmn.feel.impl.FeelEngine;
 import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.ProcessInstanceQueryImpl;
+import org.camunda.bpm.engine.impl.VariableInstanceQueryImpl;
 import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
 import org.camunda.bpm.engine.impl.context.Context;
 import org.camunda.bpm.engine.impl.dmn.entity.repository.DecisionDefinitionEntity;
 import org.camunda.bpm.engine.impl.interceptor.Command;
 import org.camunda.bpm.engine.impl.interceptor.CommandContext;
 import org.camunda.bpm.engine.impl.persistence.entity.ExecutionEntity;
-import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.runtime.ProcessInstance;
+import org.camunda.bpm.engine.runtime.ProcessInstanceQuery;
+import org.camunda.bpm.engine.runtime.VariableInstance;
+import org.camunda.bpm.engine.variable.context.VariableContext;
 import org.camunda.bpm.engine.variable.impl.VariableMapImpl;
-import org.camunda.bpm.engine.variable.impl.context.SingleVariableContext;
 import org.camunda.bpm.slacktime.Evidence;
+import org.camunda.bpm.slacktime.PredictionCounter;
+import org.camunda.bpm.slacktime.PredictionMetricsListener;
+import org.camunda.bpm.slacktime.PredictionPhase;
 
 /**
  * @author Thorben Lindhauer
@@ -40,62 +50,191 @@ import org.camunda.bpm.slacktime.Evidence;
  */
 public class ProcessInstanceEvidenceGenerator {
 
+  // keeps IN clauses within the limits of all supported databases
+  protected static final int MAX_PROCESS_INSTANCES_PER_QUERY = 500;
+
+  protected static final Map<DecisionDefinitionEntity, EvidencePlan> EVIDENCE_PLANS =
+      new WeakHashMap<DecisionDefinitionEntity, EvidencePlan>();
+
   protected ProcessEngine processEngine;
+  protected PredictionMetricsListener metricsListener;
 
   public ProcessInstanceEvidenceGenerator(ProcessEngine engine) {
     this.processEngine = engine;
   }
 
+  /**
+   * @return the evidence or null if the process instance does not exist (anymore)
+   */
   public Evidence generateEvidence(final String decisionDefinitionId, final String processInstanceId) {
+    return generateEvidence(decisionDefinitionId, Collections.singletonList(processInstanceId)).get(processInstanceId);
+  }
+
+  /**
+   * Generates the evidence of all given process instances in one command.
+   *
+   * @return the evidence by process instance id in the order of the given ids; ids of process
+   *   instances that do not exist (anymore) are left out
+   */
+  public Map<String, Evidence> generateEvidence(final String decisionDefinitionId, final Collection<String> processInstanceIds) {
 
     ProcessEngineConfigurationImpl engineConfiguration = (ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration();
-    return engineConfiguration.getCommandExecutorTxRequired().execute(new Command<Evidence>() {
+    return engineConfiguration.getCommandExecutorTxRequired().execute(new Command<Map<String, Evidence>>() {
 
-      public Evidence execute(CommandContext commandContext) {
+      public Map<String, Evidence> execute(CommandContext commandContext) {
         DecisionDefinitionEntity decisionDefinition =
             Context.getProcessEngineConfiguration().getDeploymentCache().findDeployedDecisionDefinitionById(decisionDefinitionId);
+
+        return generateEvidence(decisionDefinition, processInstanceIds, commandContext);
+      }
+    });
+  }
+
+  /**
+   * Generates the evidence of all running instances of a process definition. The instances are
+   * fetched page by page with the runtime service's query, so that its authorization checks apply.
+   *
+   * @return the evidence by process instance id
+   */
+  public Map<String, Evidence> generateEvidenceForProcessDefinition(String decisionDefinitionId, String processDefinitionId) {
+    Map<String, Evidence> evidenceByProcessInstance = new LinkedHashMap<String, Evidence>();
+
+    ProcessInstanceQuery query = processEngine.getRuntimeService()
+      .createProcessInstanceQuery()
+      .processDefinitionId(processDefinitionId)
+      .orderByProcessInstanceId()
+      .asc();
+
+    int firstResult = 0;
+    List<ProcessInstance> processInstances;
+    do {
+      processInstances = query.listPage(firstResult, MAX_PROCESS_INSTANCES_PER_QUERY);
+
+      List<String> processInstanceIds = new ArrayList<String>();
+      for (ProcessInstance processInstance : processInstances) {
+        processInstanceIds.add(processInstance.getId());
+      }
+
+      if (!processInstanceIds.isEmpty()) {
+        evidenceByProcessInstance.putAll(generateEvidence(decisionDefinitionId, processInstanceIds));
+      }
+      firstResult += processInstances.size();
+    } while (processInstances.size() == MAX_PROCESS_INSTANCES_PER_QUERY);
+
+    return evidenceByProcessInstance;
+  }
+
+  protected Map<String, Evidence> generateEvidence(DecisionDefinitionEntity decisionDefinition,
+      Collection<String> processInstanceIds, CommandContext commandContext) {
+    long startTime = System.nanoTime();
+
+    EvidencePlan plan = getEvidencePlan(decisionDefinition);
+    Map<String, VariableContext> variablesByProcessInstance = loadVariables(plan, processInstanceIds, commandContext);
+
+    Map<String, Evidence> evidenceByProcessInstance = new LinkedHashMap<String, Evidence>();
+    for (String processInstanceId : processInstanceIds) {
+      VariableContext variables = variablesByProcessInstance.get(processInstanceId);
+      if (variables != null) {
+        evidenceByProcessInstance.put(processInstanceId, plan.generateEvidence(variables));
+      }
+    }
+
+    if (metricsListener != null) {
+      String decisionDefinitionId = decisionDefinition.getId();
+      metricsListener.phaseCompleted(decisionDefinitionId, PredictionPhase.EVIDENCE_GENERATION, System.nanoTime() - startTime);
+      metricsListener.counterIncremented(decisionDefinitionId, PredictionCounter.EVIDENCE_GENERATED, evidenceByProcessInstance.size());
+    }
+
+    return evidenceByProcessInstance;
+  }
+
+  /**
+   * Fetches only the variables that the input expressions reference, so that other
+   * variables, e.g. large serialized objects, are neither read nor deserialized. Falls back to all
+   * variables of the process instances if the referenced variables are not known.
+   *
+   * @return the variables by process instance id; process instances that do not exist are left out
+   */
+  protected Map<String, VariableContext> loadVariables(EvidencePlan plan, Collection<String> processInstanceIds,
+      CommandContext commandContext) {
+    Map<String, VariableContext> variablesByProcessInstance = new HashMap<String, VariableContext>();
+    Set<String> referencedVariables = plan.getReferencedVariables();
+
+    if (referencedVariables == null) {
+      for (String processInstanceId : processInstanceIds) {
         ExecutionEntity processInstance = commandContext.getExecutionManager().findExecutionById(processInstanceId);
+        if (processInstance != null) {
+          variablesByProcessInstance.put(processInstanceId, processInstance.getVariables());
+        }
+      }
 
-        DefaultDmnEngineConfiguration dmnEngineConfiguration = (DefaultDmnEngineConfiguration) Context
-            .getProcessEngineConfiguration()
-            .getDmnEngineConfiguration();
+      return variablesByProcessInstance;
+    }
 
-        VariableMapImpl variables = processInstance.getVariables();
-        Evidence evidence = new Evidence();
+    Map<String, VariableMapImpl> variableMaps = new HashMap<String, VariableMapImpl>();
+    String[] variableNames = referencedVariables.toArray(new String[referencedVariables.size()]);
+    List<String> ids = new ArrayList<String>(new HashSet<String>(processInstanceIds));
 
-        // TODO: would have to check the expression languages, etc.
-        ElProvider elProvider = dmnEngineConfiguration.getElProvider();
-        FeelEngine feelEngine = dmnEngineConfiguration.getFeelEngine();
-
-
-        for (int i = 0; i < decisionDefinition.getInputs().size(); i++) {
-          DmnDecisionTableInputImpl input = decisionDefinition.getInputs().get(i);
-          DmnExpressionImpl inputExpression = input.getExpression();
-          ElExpression expression = elProvider.createExpression("${" + inputExpression.getExpression() + "}"); // TODO: works for juel only
-
-          Object value = null;
-          try {
-            value = expression.getValue(variables);
-          } catch (Exception e) {
-            // a failing evaluation is treated as if the input is not known
-            continue;
-          }
-
-          SingleVariableContext inputContext = new SingleVariableContext(input.getInputVariable(), Variables.untypedValue(value));
-
-          List<DmnDecisionTableRuleImpl> rules = decisionDefinition.getRules();
-          for (DmnDecisionTableRuleImpl rule : rules) {
-            String inputEntryExpression = rule.getConditions().get(i).getExpression();
-            boolean testFulfilled = feelEngine.evaluateSimpleUnaryTests(inputEntryExpression, input.getInputVariable(), inputContext);
-            if (testFulfilled) {
-              evidence.submit(input.getName(), inputEntryExpression);
-              break; // there should be no more than one input expression that is satisfied
-            }
-          }
+    for (int start = 0; start < ids.size(); start += MAX_PROCESS_INSTANCES_PER_QUERY) {
+      List<String> chunk = ids.subList(start, Math.min(start + MAX_PROCESS_INSTANCES_PER_QUERY, ids.size()));
+
+      ProcessInstanceQueryImpl processInstanceQuery = new ProcessInstanceQueryImpl();
+      processInstanceQuery.processInstanceIds(new HashSet<String>(chunk));
+      for (ProcessInstance processInstance : processInstanceQuery.executeList(commandContext, null)) {
+        VariableMapImpl variables = new VariableMapImpl();
+        variableMaps.put(processInstance.getId(), variables);
+        variablesByProcessInstance.put(processInstance.getId(), variables);
+      }
+
+      if (referencedVariables.isEmpty()) {
+        continue;
+      }
+
+      VariableInstanceQueryImpl query = new VariableInstanceQueryImpl();
+      query.variableScopeIdIn(chunk.toArray(new String[chunk.size()]));
+      query.variableNameIn(variableNames);
+
+      for (VariableInstance variableInstance : query.executeList(commandContext, null)) {
+        VariableMapImpl variables = variableMaps.get(variableInstance.getProcessInstanceId());
+        if (variables != null) {
+          variables.putValueTyped(variableInstance.getName(), variableInstance.getTypedValue());
         }
+      }
+    }
+
+    return variablesByProcessInstance;
+  }
 
-        return evidence;
+  public PredictionMetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+
+  /**
+   * @param metricsListener may be null; is notified of the duration of evidence generation
+   */
+  public void setMetricsListener(PredictionMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+  }
+
+  /**
+   * Plans are cached per decision definition entity of the deployment cache and
+   * are released together with it.
+   */
+  protected static EvidencePlan getEvidencePlan(DecisionDefinitionEntity decisionDefinition) {
+    synchronized (EVIDENCE_PLANS) {
+      EvidencePlan plan = EVIDENCE_PLANS.get(decisionDefinition);
+
+      if (plan == null) {
+        // TODO: would have to check the expression languages, etc.
+        DefaultDmnEngineConfiguration dmnEngineConfiguration = (DefaultDmnEngineConfiguration) Context
+            .getProcessEngineConfiguration()
+            .getDmnEngineConfiguration();
+
+        plan = EvidencePlan.compile(decisionDefinition, dmnEngineConfiguration.getElProvider(), dmnEngineConfiguration.getFeelEngine());
+        EVIDENCE_PLANS.put(decisionDefinition, plan);
       }
-    });
+
+      return plan;
+    }
   }
 }
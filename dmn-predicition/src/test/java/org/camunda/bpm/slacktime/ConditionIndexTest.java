@@ -0,0 +1,95 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.camunda.bpm.dmn.feel.impl.FeelEngine;
+import org.camunda.bpm.engine.variable.context.VariableContext;
+import org.camunda.bpm.slacktime.processengine.ConditionIndex;
+import org.camunda.bpm.slacktime.processengine.ConditionIndex.UnaryTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class ConditionIndexTest {
+
+  @Test
+  public void testStringLiteralsAreDeduplicated() {
+    ConditionIndex index = createIndex("\"Summer\"", "\"Winter\"", "\"Summer\"");
+    RecordingFeelEngine feelEngine = new RecordingFeelEngine();
+
+    Assert.assertEquals(2, index.getTests().size());
+
+    UnaryTest test = index.match("Summer", "cellInput", null, feelEngine);
+    Assert.assertEquals("\"Summer\"", test.getExpression());
+    Assert.assertEquals(Arrays.asList("rule0", "rule2"), test.getRuleIds());
+
+    Assert.assertNull(index.match("Autumn", "cellInput", null, feelEngine));
+    Assert.assertTrue(feelEngine.evaluatedExpressions.isEmpty());
+  }
+
+  @Test
+  public void testNumericTestsMatchFirstInRuleOrder() {
+    ConditionIndex index = createIndex("< 5", "[5..10]", "]10..20[", "7", ">= 20");
+    RecordingFeelEngine feelEngine = new RecordingFeelEngine();
+
+    Assert.assertEquals("< 5", index.match(-3, "cellInput", null, feelEngine).getExpression());
+    Assert.assertEquals("[5..10]", index.match(5, "cellInput", null, feelEngine).getExpression());
+    Assert.assertEquals("[5..10]", index.match(7L, "cellInput", null, feelEngine).getExpression());
+    Assert.assertEquals("[5..10]", index.match(10.0d, "cellInput", null, feelEngine).getExpression());
+    Assert.assertEquals("]10..20[", index.match(10.5d, "cellInput", null, feelEngine).getExpression());
+    Assert.assertEquals(">= 20", index.match(20, "cellInput", null, feelEngine).getExpression());
+    Assert.assertTrue(feelEngine.evaluatedExpressions.isEmpty());
+  }
+
+  @Test
+  public void testOtherTestsAreOnlyEvaluatedBeforeTheIndexedMatch() {
+    ConditionIndex index = createIndex("\"Summer\"", "not(\"Winter\")");
+    RecordingFeelEngine feelEngine = new RecordingFeelEngine();
+
+    index.match("Summer", "cellInput", null, feelEngine);
+    Assert.assertTrue(feelEngine.evaluatedExpressions.isEmpty());
+
+    index.match("Autumn", "cellInput", null, feelEngine);
+    Assert.assertEquals(Arrays.asList("not(\"Winter\")"), feelEngine.evaluatedExpressions);
+  }
+
+  protected ConditionIndex createIndex(String... conditions) {
+    List<String> ruleIds = new ArrayList<String>();
+    for (int i = 0; i < conditions.length; i++) {
+      ruleIds.add("rule" + i);
+    }
+
+    return new ConditionIndex(Arrays.asList(conditions), ruleIds);
+  }
+
+  protected static class RecordingFeelEngine implements FeelEngine {
+
+    protected List<String> evaluatedExpressions = new ArrayList<String>();
+
+    public <T> T evaluateSimpleExpression(String expression, VariableContext variableContext) {
+      throw new UnsupportedOperationException();
+    }
+
+    public boolean evaluateSimpleUnaryTests(String expression, String inputVariable, VariableContext variableContext) {
+      evaluatedExpressions.add(expression);
+      return false;
+    }
+  }
+}
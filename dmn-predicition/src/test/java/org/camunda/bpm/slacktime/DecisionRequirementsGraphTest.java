@@ -0,0 +1,153 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.camunda.bpm.model.dmn.DmnModelInstance;
+import org.camunda.bpm.model.dmn.instance.InputEntry;
+import org.camunda.bpm.slacktime.Predictor.InferenceMethod;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class DecisionRequirementsGraphTest {
+
+  protected static final double TOLERABLE_ASSERT_DELTA = 0.00001d;
+
+  protected MockDistributionSource distributionSource;
+  protected CanonicalDmnModel model;
+
+  @Before
+  public void setUp() {
+    MockDistribution monthDistribution = new MockDistribution();
+    monthDistribution.setProbability("\"Dec\"", 0.2d);
+    monthDistribution.setProbability("\"Jan\"", 0.3d);
+    monthDistribution.setProbability("\"Jul\"", 0.5d);
+
+    MockDistribution hungryDistribution = new MockDistribution();
+    hungryDistribution.setProbability("\"yes\"", 0.4d);
+    hungryDistribution.setProbability("\"no\"", 0.6d);
+
+    distributionSource = new MockDistributionSource();
+    distributionSource.addDistribution("month", monthDistribution);
+    distributionSource.addDistribution("hungry", hungryDistribution);
+
+    model = CanonicalDmnModel.fromDmnModelInstance("drd", StandaloneDmnPredictionTest.readModel("drd.dmn"), distributionSource);
+  }
+
+  @Test
+  public void testRequiredDecisionsShareOneNetwork() {
+    Assert.assertArrayEquals(new String[]{"hungry", "month", "season", "season.$rule", "$rule"},
+        model.getNetworkScope().getVariableIds());
+
+    // the season is determined by the required decision
+    Assert.assertNull(model.getInputTable("season"));
+    Assert.assertNotNull(model.getInputTable("month"));
+
+    // dish-1 matches two season rules, dish-4 none
+    Assert.assertEquals(4, model.getRuleFactor().getNumEntries());
+
+    Predictor predictor = new Predictor(model);
+    Assert.assertFalse(predictor.getPosteriorInferencer() instanceof UniqueHitPolicyInferencer);
+
+    Distribution dishPosterior = predictor.getPosterior("$rule", new Evidence());
+    Assert.assertEquals(0.2d / 0.7d, dishPosterior.getProbability("dish-1"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(0.2d / 0.7d, dishPosterior.getProbability("dish-2"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(0.3d / 0.7d, dishPosterior.getProbability("dish-3"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(0.0d, dishPosterior.getProbability("dish-4"), TOLERABLE_ASSERT_DELTA);
+
+    // observing an upstream input propagates to the downstream decision
+    Evidence julyEvidence = new Evidence();
+    julyEvidence.submit("month", "\"Jul\"");
+    dishPosterior = predictor.getPosterior("$rule", julyEvidence);
+    Assert.assertEquals(0.4d, dishPosterior.getProbability("dish-2"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(0.6d, dishPosterior.getProbability("dish-3"), TOLERABLE_ASSERT_DELTA);
+
+    // and observing a downstream rule propagates to the required decision
+    Evidence stewEvidence = new Evidence();
+    stewEvidence.submit("$rule", "dish-1");
+    Distribution seasonRulePosterior = predictor.getPosterior("season.$rule", stewEvidence);
+    Assert.assertEquals(0.4d, seasonRulePosterior.getProbability("season-1"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(0.6d, seasonRulePosterior.getProbability("season-2"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(1.0d, predictor.getPosterior("season", stewEvidence).getProbability("\"Winter\""), TOLERABLE_ASSERT_DELTA);
+  }
+
+  @Test
+  public void testInferenceMethodsAgreeOnSharedNetwork() {
+    Predictor singlePassPredictor = new Predictor(model, InferenceMethod.SINGLE_PASS);
+    singlePassPredictor.setPosteriorMode(Predictor.PosteriorMode.PER_VALUE);
+
+    Evidence winterEvidence = new Evidence();
+    winterEvidence.submit("season", "\"Winter\"");
+
+    Evidence hungryEvidence = new Evidence();
+    hungryEvidence.submit("hungry", "\"no\"");
+
+    for (InferenceMethod inferenceMethod : new InferenceMethod[]{InferenceMethod.CLIQUE_TREE, InferenceMethod.PRECOMPILED}) {
+      Predictor predictor = new Predictor(model, inferenceMethod);
+
+      for (Evidence evidence : new Evidence[]{new Evidence(), winterEvidence, hungryEvidence}) {
+        for (String variable : model.getNetworkScope().getVariableIds()) {
+          Distribution posterior = predictor.getPosterior(variable, evidence);
+          Distribution expectedPosterior = singlePassPredictor.getPosterior(variable, evidence);
+
+          for (String value : posterior.getValues()) {
+            Assert.assertEquals(expectedPosterior.getProbability(value), posterior.getProbability(value), TOLERABLE_ASSERT_DELTA);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testAnyValueOfLinkedInputMatchesAllRequiredRules() {
+    DmnModelInstance modelInstance = StandaloneDmnPredictionTest.readModel("drd.dmn");
+    InputEntry seasonEntry = modelInstance.getModelElementById("dish-4-1");
+    seasonEntry.getText().setTextContent(DecisionRequirementsGraph.ANY_VALUE);
+
+    CanonicalDmnModel anySeasonModel = CanonicalDmnModel.fromDmnModelInstance("drd", modelInstance, distributionSource);
+
+    // dish-4 is combined with all three season rules
+    Assert.assertEquals(7, anySeasonModel.getRuleFactor().getNumEntries());
+    Assert.assertEquals(VariableIndex.UNKNOWN, anySeasonModel.getVariableIndex().getIndex("season", DecisionRequirementsGraph.ANY_VALUE));
+
+    Evidence julyEvidence = new Evidence();
+    julyEvidence.submit("month", "\"Jul\"");
+    julyEvidence.submit("hungry", "\"no\"");
+    Distribution dishPosterior = new Predictor(anySeasonModel).getPosterior("$rule", julyEvidence);
+    Assert.assertEquals(0.5d, dishPosterior.getProbability("dish-3"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(0.5d, dishPosterior.getProbability("dish-4"), TOLERABLE_ASSERT_DELTA);
+  }
+
+  @Test
+  public void testTooManyRuleCombinationsAreRejected() {
+    List<int[][]> ruleAssignments = new ArrayList<int[][]>();
+    ruleAssignments.add(new int[][]{{0, VariableIndex.UNKNOWN}, {1, VariableIndex.UNKNOWN}});
+    ruleAssignments.add(new int[][]{{VariableIndex.UNKNOWN, 0}, {VariableIndex.UNKNOWN, 1}});
+
+    RuleFactor ruleFactor = new RuleFactor(model.getNetworkScope().subScope("hungry", "month"));
+    try {
+      CanonicalDmnModel.joinRuleAssignments(ruleAssignments, 0, new int[]{VariableIndex.UNKNOWN, VariableIndex.UNKNOWN}, ruleFactor, 3);
+      Assert.fail("expected the combinations to be rejected");
+    }
+    catch (IllegalArgumentException e) {
+      Assert.assertEquals(3, ruleFactor.getNumEntries());
+    }
+  }
+}
@@ -81,6 +81,33 @@ public class DmnPredictionTest {
     Assert.assertTrue(rule1Prob > rule3Prob);
   }
 
+  @Test
+  @Deployment(resources = "drd.dmn")
+  public void testPredictRequiredDecision() {
+    // given
+    String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery()
+        .decisionDefinitionKey("season").singleResult().getId();
+
+    evaluateSeason(decisionId, "Dec");
+    evaluateSeason(decisionId, "Dec");
+    evaluateSeason(decisionId, "Jul");
+
+    // when
+    Predictor predictor = predictionEngine.getPredictor(decisionId);
+
+    // then the model only consists of the season decision, not of the dish decision that requires it
+    Assert.assertArrayEquals(new String[]{"month", "$rule"}, predictor.getTransformedModel().getNetworkScope().getVariableIds());
+
+    Distribution ruleDistribution = predictor.getPosterior("$rule", new Evidence());
+    Assert.assertEquals(3.0d / 6, ruleDistribution.getProbability("season-1"), 0.00001d);
+    Assert.assertEquals(1.0d / 6, ruleDistribution.getProbability("season-2"), 0.00001d);
+    Assert.assertEquals(2.0d / 6, ruleDistribution.getProbability("season-3"), 0.00001d);
+  }
+
+  protected void evaluateSeason(String decisionId, String month) {
+    engineRule.getDecisionService().evaluateDecisionTableById(decisionId, Variables.createVariables().putValue("month", month));
+  }
+
   protected void evaluateDecisionTable(String decisionId, String season, String hungry) {
     engineRule.getDecisionService().evaluateDecisionTableById(decisionId,
         Variables.createVariables().putValue("season", season).putValue("hungry", hungry));
@@ -0,0 +1,44 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import static org.camunda.bpm.slacktime.processengine.ExpressionVariableAnalyzer.getReferencedVariables;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class ExpressionVariableAnalyzerTest {
+
+  @Test
+  public void testReferencedVariables() {
+    Assert.assertEquals(new HashSet<String>(Arrays.asList("season")), getReferencedVariables("season"));
+    Assert.assertEquals(new HashSet<String>(Arrays.asList("order", "limit")),
+        getReferencedVariables("order.amount > limit and order['status'] != \"closed\""));
+    Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c")), getReferencedVariables("a ? b : c"));
+    Assert.assertEquals(new HashSet<String>(), getReferencedVariables("1e3 + 'text' == null"));
+  }
+
+  @Test
+  public void testUnanalyzableExpressions() {
+    Assert.assertNull(getReferencedVariables("execution.getVariable(\"season\")"));
+    Assert.assertNull(getReferencedVariables("fn:toUpper(season)"));
+    Assert.assertNull(getReferencedVariables("dateTime()"));
+  }
+}
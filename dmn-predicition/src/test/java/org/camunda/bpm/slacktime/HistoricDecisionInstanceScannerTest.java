@@ -0,0 +1,107 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.camunda.bpm.engine.history.HistoricDecisionInstance;
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+import org.camunda.bpm.engine.test.Deployment;
+import org.camunda.bpm.engine.test.ProcessEngineRule;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.slacktime.processengine.HistoricDecisionInstanceScanner;
+import org.camunda.bpm.slacktime.processengine.HistoricDecisionInstanceScanner.HistoricDecisionInstanceVisitor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class HistoricDecisionInstanceScannerTest {
+
+  @Rule
+  public ProcessEngineRule engineRule = new ProcessEngineRule();
+
+  @After
+  public void resetClock() {
+    ClockUtil.reset();
+  }
+
+  @Test
+  @Deployment(resources = "table1.dmn")
+  public void testPagesWithEqualEvaluationTimes() {
+    // given more instances of one evaluation time than fit into a page
+    String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery().singleResult().getId();
+
+    evaluateDecisionTable(decisionId, 1000L, 5);
+    evaluateDecisionTable(decisionId, 2000L, 1);
+    evaluateDecisionTable(decisionId, 3000L, 3);
+
+    HistoricDecisionInstanceScanner scanner = new HistoricDecisionInstanceScanner(engineRule.getHistoryService(), 2);
+    final List<String> visitedInstances = new ArrayList<String>();
+
+    // when
+    long visited = scanner.scan(decisionId, new HistoricDecisionInstanceVisitor() {
+      public void visit(HistoricDecisionInstance historicDecisionInstance) {
+        visitedInstances.add(historicDecisionInstance.getId());
+      }
+    });
+
+    // then every instance is visited exactly once
+    Assert.assertEquals(9, visited);
+    Assert.assertEquals(9, visitedInstances.size());
+    Assert.assertEquals(9, new HashSet<String>(visitedInstances).size());
+  }
+
+  @Test
+  @Deployment(resources = "table1.dmn")
+  public void testPagesWithinBounds() {
+    // given
+    String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery().singleResult().getId();
+
+    evaluateDecisionTable(decisionId, 1000L, 2);
+    evaluateDecisionTable(decisionId, 2000L, 3);
+    evaluateDecisionTable(decisionId, 3000L, 2);
+    evaluateDecisionTable(decisionId, 4000L, 1);
+
+    HistoricDecisionInstanceScanner scanner = new HistoricDecisionInstanceScanner(engineRule.getHistoryService(), 2);
+    final List<Date> evaluationTimes = new ArrayList<Date>();
+
+    // when
+    long visited = scanner.scan(decisionId, new Date(2000L), new Date(3000L), new HistoricDecisionInstanceVisitor() {
+      public void visit(HistoricDecisionInstance historicDecisionInstance) {
+        evaluationTimes.add(historicDecisionInstance.getEvaluationTime());
+      }
+    });
+
+    // then
+    Assert.assertEquals(5, visited);
+    for (Date evaluationTime : evaluationTimes) {
+      Assert.assertTrue(evaluationTime.getTime() >= 2000L && evaluationTime.getTime() <= 3000L);
+    }
+  }
+
+  protected void evaluateDecisionTable(String decisionId, long evaluationTime, int times) {
+    ClockUtil.setCurrentTime(new Date(evaluationTime));
+    for (int i = 0; i < times; i++) {
+      engineRule.getDecisionService().evaluateDecisionTableById(decisionId,
+          Variables.createVariables().putValue("season", "Summer").putValue("hungry", "yes"));
+    }
+  }
+}
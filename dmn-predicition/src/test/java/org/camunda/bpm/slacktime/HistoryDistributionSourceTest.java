@@ -0,0 +1,195 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.history.HistoricDecisionInstance;
+import org.camunda.bpm.engine.test.Deployment;
+import org.camunda.bpm.engine.test.ProcessEngineRule;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.slacktime.processengine.HistoryDistributionSource;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class HistoryDistributionSourceTest {
+
+  protected static final double TOLERABLE_ASSERT_DELTA = 0.00001d;
+
+  @Rule
+  public ProcessEngineRule engineRule = new ProcessEngineRule();
+
+  @Test
+  @Deployment(resources = "table1.dmn")
+  public void testGetAllDistributions() {
+    // given
+    String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery().singleResult().getId();
+
+    evaluateDecisionTable(decisionId, "Winter", "no");
+    evaluateDecisionTable(decisionId, "Winter", "yes");
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+
+    HistoryDistributionSource distributionSource = new HistoryDistributionSource(engineRule.getProcessEngine());
+    VariableIndex variableIndex = createVariableIndex();
+
+    // when
+    Map<String, Distribution> distributions = distributionSource.getDistributions(decisionId, variableIndex);
+
+    // then
+    Assert.assertEquals(3, distributions.size());
+
+    for (String variable : variableIndex.getVariables()) {
+      Distribution singleDistribution = distributionSource.getDistribution(decisionId, variable, variableIndex);
+      Distribution bulkDistribution = distributions.get(variable);
+
+      for (String value : variableIndex.getVariableValues(variable)) {
+        Assert.assertEquals(singleDistribution.getProbability(value), bulkDistribution.getProbability(value), TOLERABLE_ASSERT_DELTA);
+      }
+    }
+
+    Distribution ruleDistribution = distributions.get(CanonicalDmnModel.RULE_VARIABLE_NAME);
+    Assert.assertTrue(ruleDistribution.getProbability("row-876493691-1") > ruleDistribution.getProbability("row-876493691-2"));
+    Assert.assertEquals(ruleDistribution.getProbability("row-876493691-2"), ruleDistribution.getProbability("row-876493691-4"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertTrue(ruleDistribution.getProbability("row-876493691-2") > ruleDistribution.getProbability("row-876493691-3"));
+  }
+
+  @Test
+  @Deployment(resources = "table1.dmn")
+  public void testPagedHistoryScan() {
+    // given
+    String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery().singleResult().getId();
+
+    evaluateDecisionTable(decisionId, "Winter", "no");
+    evaluateDecisionTable(decisionId, "Winter", "yes");
+    evaluateDecisionTable(decisionId, "Winter", "yes");
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+    evaluateDecisionTable(decisionId, "Summer", "no");
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+
+    VariableIndex variableIndex = createVariableIndex();
+    HistoryDistributionSource unpagedSource = new HistoryDistributionSource(engineRule.getProcessEngine());
+    HistoryDistributionSource pagedSource = new HistoryDistributionSource(engineRule.getProcessEngine(), 3);
+
+    // when
+    Map<String, Distribution> unpagedDistributions = unpagedSource.getDistributions(decisionId, variableIndex);
+    Map<String, Distribution> pagedDistributions = pagedSource.getDistributions(decisionId, variableIndex);
+
+    // then
+    for (String variable : variableIndex.getVariables()) {
+      for (String value : variableIndex.getVariableValues(variable)) {
+        Assert.assertEquals(unpagedDistributions.get(variable).getProbability(value),
+            pagedDistributions.get(variable).getProbability(value), TOLERABLE_ASSERT_DELTA);
+      }
+    }
+  }
+
+  @Test
+  @Deployment(resources = "table1.dmn")
+  public void testRuleCountsOfScan() {
+    // given
+    String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery().singleResult().getId();
+
+    evaluateDecisionTable(decisionId, "Winter", "no");
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+    evaluateDecisionTable(decisionId, "Spring", "no");
+
+    HistoryDistributionSource distributionSource = new HistoryDistributionSource(engineRule.getProcessEngine());
+    Map<String, Long> ruleCounts = new HashMap<String, Long>();
+
+    // when
+    distributionSource.getDistributions(decisionId, createVariableIndex(), ruleCounts);
+
+    // then the evaluation without a matching rule is not counted
+    Assert.assertEquals(2, ruleCounts.size());
+    Assert.assertEquals(Long.valueOf(2L), ruleCounts.get("row-876493691-1"));
+  }
+
+  @Test
+  @Deployment(resources = "table1.dmn")
+  public void testEvaluationWithoutMatchingRuleIsSkipped() {
+    // given
+    String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery().singleResult().getId();
+
+    evaluateDecisionTable(decisionId, "Winter", "no");
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+
+    VariableIndex variableIndex = createVariableIndex();
+    HistoryDistributionSource distributionSource = new HistoryDistributionSource(engineRule.getProcessEngine());
+    Map<String, Distribution> expectedDistributions = distributionSource.getDistributions(decisionId, variableIndex);
+
+    // no rule matches spring
+    evaluateDecisionTable(decisionId, "Spring", "no");
+
+    // when
+    Map<String, Distribution> distributions = distributionSource.getDistributions(decisionId, variableIndex);
+
+    // then
+    for (String variable : variableIndex.getVariables()) {
+      for (String value : variableIndex.getVariableValues(variable)) {
+        Assert.assertEquals(expectedDistributions.get(variable).getProbability(value),
+            distributions.get(variable).getProbability(value), TOLERABLE_ASSERT_DELTA);
+      }
+    }
+  }
+
+  @Test
+  @Deployment(resources = "table1.dmn")
+  public void testUnknownRuleIsSkipped() {
+    // given
+    String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery().singleResult().getId();
+
+    evaluateDecisionTable(decisionId, "Winter", "no");
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+
+    // e.g. the rules of another version of the decision
+    HistoryDistributionSource distributionSource = new HistoryDistributionSource(engineRule.getProcessEngine()) {
+      protected String determineMatchedRule(HistoricDecisionInstance historicDecisionInstance) {
+        return "unknownRule";
+      }
+    };
+
+    // when
+    Distribution ruleDistribution = distributionSource.getDistribution(decisionId, CanonicalDmnModel.RULE_VARIABLE_NAME, createVariableIndex());
+
+    // then the distribution is the uniform prior
+    for (String rule : createVariableIndex().getVariableValues(CanonicalDmnModel.RULE_VARIABLE_NAME)) {
+      Assert.assertEquals(0.25d, ruleDistribution.getProbability(rule), TOLERABLE_ASSERT_DELTA);
+    }
+  }
+
+  public static VariableIndex createVariableIndex() {
+    Map<String, List<String>> values = new HashMap<String, List<String>>();
+    values.put("season", Arrays.asList("\"Summer\"", "\"Winter\""));
+    values.put("hungry", Arrays.asList("\"no\"", "\"yes\""));
+    values.put(CanonicalDmnModel.RULE_VARIABLE_NAME,
+        Arrays.asList("row-876493691-1", "row-876493691-2", "row-876493691-3", "row-876493691-4"));
+
+    return new VariableIndex(values);
+  }
+
+  protected void evaluateDecisionTable(String decisionId, String season, String hungry) {
+    engineRule.getDecisionService().evaluateDecisionTableById(decisionId,
+        Variables.createVariables().putValue("season", season).putValue("hungry", hungry));
+  }
+}
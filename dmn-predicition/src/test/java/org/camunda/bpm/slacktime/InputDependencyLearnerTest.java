@@ -0,0 +1,145 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class InputDependencyLearnerTest {
+
+  protected static final double TOLERABLE_ASSERT_DELTA = 0.00001d;
+
+  @Test
+  public void testCorrelatedInputsAreConditioned() {
+    CanonicalDmnModel model = StandaloneDmnPredictionTest.createTable1Engine().getPredictor("table1").getTransformedModel();
+
+    CanonicalDmnModel dependentModel = new InputDependencyLearner(null, 1).learn(model, correlatedRuleCounts());
+
+    Assert.assertEquals("hungry", dependentModel.getInputParent("season"));
+    Assert.assertNull(dependentModel.getInputParent("hungry"));
+    Assert.assertNull(dependentModel.getInputTable("season"));
+    Assert.assertNotNull(dependentModel.getInputTable("hungry"));
+
+    Predictor predictor = new Predictor(dependentModel);
+    Assert.assertFalse(predictor.getPosteriorInferencer() instanceof UniqueHitPolicyInferencer);
+
+    // P(season | hungry = yes) is learned from rules 1 (Summer) and 4 (Winter)
+    Evidence hungryEvidence = new Evidence();
+    hungryEvidence.submit("hungry", "\"yes\"");
+    Distribution rulePosterior = predictor.getPosterior("$rule", hungryEvidence);
+    Assert.assertEquals(41.0d / 47.0d, rulePosterior.getProbability("row-876493691-1"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(6.0d / 47.0d, rulePosterior.getProbability("row-876493691-4"), TOLERABLE_ASSERT_DELTA);
+
+    Predictor variableEliminationPredictor = new Predictor(dependentModel);
+    variableEliminationPredictor.setPosteriorMode(Predictor.PosteriorMode.PER_VALUE);
+    for (String variable : new String[]{"$rule", "season", "hungry"}) {
+      Distribution posterior = predictor.getPosterior(variable, new Evidence());
+      Distribution expectedPosterior = variableEliminationPredictor.getPosterior(variable, new Evidence());
+
+      for (String value : posterior.getValues()) {
+        Assert.assertEquals(expectedPosterior.getProbability(value), posterior.getProbability(value), TOLERABLE_ASSERT_DELTA);
+      }
+    }
+  }
+
+  @Test
+  public void testTreewidthZeroKeepsInputsIndependent() {
+    CanonicalDmnModel model = StandaloneDmnPredictionTest.createTable1Engine().getPredictor("table1").getTransformedModel();
+
+    Assert.assertSame(model, new InputDependencyLearner(null, InputDependencyLearner.INDEPENDENT).learn(model, correlatedRuleCounts()));
+  }
+
+  @Test
+  public void testRulesOfTargetDecisionAreCountedOnce() {
+    MockDistributionSource distributionSource = new MockDistributionSource();
+    CanonicalDmnModel model = CanonicalDmnModel.fromDmnModelInstance("drd", StandaloneDmnPredictionTest.readModel("drd.dmn"), distributionSource);
+
+    Map<String, Long> ruleCounts = new HashMap<String, Long>();
+    ruleCounts.put("dish-1", 40L);
+    ruleCounts.put("dish-3", 40L);
+
+    // the months of the required decision are not recorded, so they are not correlated with being hungry
+    CanonicalDmnModel dependentModel = new InputDependencyLearner(null, 1).learn(model, ruleCounts);
+    Assert.assertNull(dependentModel.getInputParent("month"));
+    Assert.assertNull(dependentModel.getInputParent("hungry"));
+  }
+
+  @Test
+  public void testEngineLearnsFromCountsOfTheModel() {
+    MockDecisionRepository repository = new MockDecisionRepository();
+    repository.addDecisionModel("table1", StandaloneDmnPredictionTest.readModel("table1.dmn"));
+
+    InMemoryRuleCountStore ruleCountStore = new InMemoryRuleCountStore();
+    ruleCountStore.initializeRuleCounts("table1", correlatedRuleCounts());
+
+    MockRuleCountHistory history = new MockRuleCountHistory();
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, new RuleCountDistributionSource(repository, ruleCountStore));
+    engine.setInputDependencyLearner(new InputDependencyLearner(history, 1));
+
+    CanonicalDmnModel dependentModel = engine.getPredictor("table1").getTransformedModel();
+
+    Assert.assertEquals("hungry", dependentModel.getInputParent("season"));
+    Assert.assertTrue(history.getRequestedRanges().isEmpty());
+  }
+
+  @Test
+  public void testEngineLearnsFromCountsOfTheScan() {
+    MockDecisionRepository repository = new MockDecisionRepository();
+    repository.addDecisionModel("table1", StandaloneDmnPredictionTest.readModel("table1.dmn"));
+
+    InMemoryRuleCountStore ruleCountStore = new InMemoryRuleCountStore();
+    ruleCountStore.initializeRuleCounts("table1", correlatedRuleCounts());
+    final RuleCountDistributionSource ruleCountSource = new RuleCountDistributionSource(repository, ruleCountStore);
+
+    // e.g. a source scanning the history
+    RuleCountingDistributionSource scanningSource = new RuleCountingDistributionSource() {
+      public Distribution getDistribution(String dmnModelId, String variable, VariableIndex variableIndex) {
+        return ruleCountSource.getDistribution(dmnModelId, variable, variableIndex);
+      }
+
+      public Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex) {
+        return ruleCountSource.getDistributions(dmnModelId, variableIndex);
+      }
+
+      public Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex, Map<String, Long> ruleCounts) {
+        ruleCounts.putAll(correlatedRuleCounts());
+        return getDistributions(dmnModelId, variableIndex);
+      }
+    };
+
+    MockRuleCountHistory history = new MockRuleCountHistory();
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, scanningSource);
+    engine.setInputDependencyLearner(new InputDependencyLearner(history, 1));
+
+    CanonicalDmnModel dependentModel = engine.getPredictor("table1").getTransformedModel();
+
+    Assert.assertEquals("hungry", dependentModel.getInputParent("season"));
+    Assert.assertTrue(history.getRequestedRanges().isEmpty());
+  }
+
+  protected Map<String, Long> correlatedRuleCounts() {
+    Map<String, Long> ruleCounts = new HashMap<String, Long>();
+    ruleCounts.put("row-876493691-1", 40L);
+    ruleCounts.put("row-876493691-2", 40L);
+    ruleCounts.put("row-876493691-3", 5L);
+    ruleCounts.put("row-876493691-4", 5L);
+    return ruleCounts;
+  }
+}
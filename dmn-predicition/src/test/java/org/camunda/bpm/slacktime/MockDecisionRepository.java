@@ -24,17 +24,28 @@ import org.camunda.bpm.model.dmn.DmnModelInstance;
 public class MockDecisionRepository implements DecisionRepository {
 
   protected Map<String, DmnModelInstance> models;
+  protected Map<String, String> decisionKeys;
 
   public MockDecisionRepository() {
     this.models = new HashMap<String, DmnModelInstance>();
+    this.decisionKeys = new HashMap<String, String>();
   }
 
   public DmnModelInstance getDecisionModel(String id) {
     return models.get(id);
   }
 
+  public String getDecisionKey(String id) {
+    return decisionKeys.get(id);
+  }
+
   public void addDecisionModel(String id, DmnModelInstance modelInstance) {
     models.put(id, modelInstance);
   }
 
+  public void addDecisionModel(String id, String decisionKey, DmnModelInstance modelInstance) {
+    models.put(id, modelInstance);
+    decisionKeys.put(id, decisionKey);
+  }
+
 }
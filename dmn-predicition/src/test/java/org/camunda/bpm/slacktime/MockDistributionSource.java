@@ -30,4 +30,14 @@ public class MockDistributionSource implements DistributionSource {
   public Distribution getDistribution(String dmnModelId, String input, VariableIndex variableIndex) {
     return distributions.get(input);
   }
+
+  public Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex) {
+    Map<String, Distribution> result = new HashMap<String, Distribution>();
+    for (String variable : variableIndex.getVariables()) {
+      if (distributions.containsKey(variable)) {
+        result.put(variable, distributions.get(variable));
+      }
+    }
+    return result;
+  }
 }
@@ -0,0 +1,82 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class MockRuleCountHistory implements RuleCountHistory {
+
+  protected List<String> ruleIds = new ArrayList<String>();
+  protected List<Long> evaluationTimes = new ArrayList<Long>();
+  protected List<long[]> requestedRanges = new ArrayList<long[]>();
+
+  public void addEvaluation(String ruleId, long evaluationTime) {
+    addEvaluations(ruleId, evaluationTime, 1);
+  }
+
+  public void addEvaluations(String ruleId, long evaluationTime, int count) {
+    for (int i = 0; i < count; i++) {
+      ruleIds.add(ruleId);
+      evaluationTimes.add(evaluationTime);
+    }
+  }
+
+  public Map<String, Long> getRuleCounts(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil) {
+    Map<Long, Map<String, Long>> ruleCountsByBucket = getRuleCountsByBucket(decisionDefinitionId, evaluatedAfter, evaluatedUntil, Long.MAX_VALUE);
+    return ruleCountsByBucket.isEmpty() ? new HashMap<String, Long>() : ruleCountsByBucket.get(0L);
+  }
+
+  public Map<Long, Map<String, Long>> getRuleCountsByBucket(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil,
+      long bucketDuration) {
+    requestedRanges.add(new long[]{evaluatedAfter, evaluatedUntil});
+
+    Map<Long, Map<String, Long>> ruleCountsByBucket = new HashMap<Long, Map<String, Long>>();
+    for (int i = 0; i < ruleIds.size(); i++) {
+      long evaluationTime = evaluationTimes.get(i);
+      if (evaluationTime > evaluatedAfter && evaluationTime <= evaluatedUntil) {
+        Map<String, Long> ruleCounts = ruleCountsByBucket.get(evaluationTime / bucketDuration);
+        if (ruleCounts == null) {
+          ruleCounts = new HashMap<String, Long>();
+          ruleCountsByBucket.put(evaluationTime / bucketDuration, ruleCounts);
+        }
+        Long ruleCount = ruleCounts.get(ruleIds.get(i));
+        ruleCounts.put(ruleIds.get(i), ruleCount != null ? ruleCount + 1 : 1L);
+      }
+    }
+    return ruleCountsByBucket;
+  }
+
+  public List<RuleEvaluation> getRuleEvaluations(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil) {
+    requestedRanges.add(new long[]{evaluatedAfter, evaluatedUntil});
+
+    List<RuleEvaluation> evaluations = new ArrayList<RuleEvaluation>();
+    for (int i = 0; i < ruleIds.size(); i++) {
+      long evaluationTime = evaluationTimes.get(i);
+      if (evaluationTime > evaluatedAfter && evaluationTime <= evaluatedUntil) {
+        evaluations.add(new RuleEvaluation("evaluation" + i, ruleIds.get(i), evaluationTime));
+      }
+    }
+    return evaluations;
+  }
+
+  public List<long[]> getRequestedRanges() {
+    return requestedRanges;
+  }
+}
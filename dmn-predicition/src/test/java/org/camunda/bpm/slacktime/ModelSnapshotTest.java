@@ -0,0 +1,242 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class ModelSnapshotTest {
+
+  protected static final double TOLERABLE_ASSERT_DELTA = 0.00001d;
+
+  protected MockDecisionRepository repository;
+  protected File snapshotDirectory;
+
+  @Before
+  public void setUp() throws IOException {
+    repository = new MockDecisionRepository();
+    repository.addDecisionModel("table1", StandaloneDmnPredictionTest.readModel("table1.dmn"));
+    repository.addDecisionModel("drd", StandaloneDmnPredictionTest.readModel("drd.dmn"));
+
+    snapshotDirectory = File.createTempFile("snapshots", "");
+    snapshotDirectory.delete();
+    snapshotDirectory.mkdirs();
+  }
+
+  @After
+  public void tearDown() {
+    ClockUtil.reset();
+
+    File[] files = snapshotDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    snapshotDirectory.delete();
+  }
+
+  @Test
+  public void testWriteAndReadSnapshot() throws IOException {
+    Map<String, Long> ruleCounts = ruleCounts(3, 1, 0, 5);
+    CanonicalDmnModel model = buildModel(ruleCounts);
+
+    File file = new File(snapshotDirectory, "table1.snapshot");
+    new ModelSnapshot(model, ruleCounts, 1000L).writeTo(file);
+    ModelSnapshot snapshot = ModelSnapshot.readFrom(file);
+
+    Assert.assertEquals("table1", snapshot.getDecisionDefinitionId());
+    Assert.assertEquals(1000L, snapshot.getHistoryWatermark());
+    Assert.assertEquals(5L, snapshot.getRuleCount("row-876493691-4"));
+    Assert.assertEquals(model.getHitPolicy(), snapshot.getModel().getHitPolicy());
+    Assert.assertArrayEquals(model.getNetworkScope().getVariableIds(), snapshot.getModel().getNetworkScope().getVariableIds());
+
+    OutputMapping outputMapping = snapshot.getModel().getOutputMapping("eatIceCream");
+    Assert.assertEquals(CanonicalDmnModel.RULE_VARIABLE_NAME, outputMapping.getRuleVariable());
+    Assert.assertEquals(2, outputMapping.getNumOutputValues());
+
+    assertSamePosteriors(model, snapshot.getModel());
+  }
+
+  @Test
+  public void testReplayEqualsModelOfAllCounts() {
+    Map<String, Long> ruleCounts = ruleCounts(3, 1, 0, 5);
+    ModelSnapshot snapshot = new ModelSnapshot(buildModel(ruleCounts), ruleCounts, 1000L);
+
+    ModelSnapshot replayedSnapshot = snapshot.replay(ruleCounts(0, 4, 2, 1), 2000L);
+
+    Assert.assertEquals(2000L, replayedSnapshot.getHistoryWatermark());
+    Assert.assertEquals(6L, replayedSnapshot.getRuleCount("row-876493691-4"));
+    assertSamePosteriors(buildModel(ruleCounts(3, 5, 2, 6)), replayedSnapshot.getModel());
+  }
+
+  @Test
+  public void testReplayCountsTargetRulesOnceInDecisionRequirementsGraph() {
+    Map<String, Long> ruleCounts = drdRuleCounts(3, 1, 0, 5);
+    ModelSnapshot snapshot = new ModelSnapshot(buildModel("drd", ruleCounts), ruleCounts, 1000L);
+
+    // dish-1 is part of two rule factor entries, one per winter month of the required decision
+    ModelSnapshot replayedSnapshot = snapshot.replay(drdRuleCounts(4, 0, 2, 1), 2000L);
+
+    Predictor expectedPredictor = new Predictor(buildModel("drd", drdRuleCounts(7, 1, 2, 6)));
+    Predictor actualPredictor = new Predictor(replayedSnapshot.getModel());
+    for (String variable : new String[]{"$rule", "hungry", "month"}) {
+      Assert.assertArrayEquals(expectedPredictor.getPosteriorValues(variable, new Evidence()),
+          actualPredictor.getPosteriorValues(variable, new Evidence()), TOLERABLE_ASSERT_DELTA);
+    }
+
+    // the required decision's input is not recorded in the history
+    Assert.assertArrayEquals(new double[]{1.0d / 3, 1.0d / 3, 1.0d / 3},
+        replayedSnapshot.getModel().getInputTable("month"), TOLERABLE_ASSERT_DELTA);
+  }
+
+  @Test
+  public void testEngineReplaysHistoryNewerThanSnapshot() {
+    RecordingRuleCountHistory history = new RecordingRuleCountHistory();
+    history.ruleCounts = ruleCounts(3, 1, 0, 5);
+
+    ClockUtil.setCurrentTime(new Date(1000L));
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, new MockDistributionSource());
+    engine.setSnapshotStore(new FileModelSnapshotStore(snapshotDirectory), history);
+    engine.setSnapshotWatermarkLag(0L);
+    engine.getPredictor("table1");
+
+    Assert.assertEquals(1, history.requestedRanges.size());
+    Assert.assertArrayEquals(new long[]{ModelSnapshot.NO_WATERMARK, 1000L}, history.requestedRanges.get(0));
+
+    // a restarted engine loads the snapshot and only reads newer history
+    history.ruleCounts = ruleCounts(0, 4, 2, 1);
+    ClockUtil.setCurrentTime(new Date(2000L));
+
+    FileModelSnapshotStore snapshotStore = new FileModelSnapshotStore(snapshotDirectory);
+    PredictiveDmnEngine restartedEngine = new PredictiveDmnEngine(repository, new MockDistributionSource());
+    restartedEngine.setSnapshotStore(snapshotStore, history);
+    restartedEngine.setSnapshotWatermarkLag(0L);
+    CanonicalDmnModel model = restartedEngine.getPredictor("table1").getTransformedModel();
+
+    Assert.assertEquals(2, history.requestedRanges.size());
+    Assert.assertArrayEquals(new long[]{1000L, 2000L}, history.requestedRanges.get(1));
+    assertSamePosteriors(buildModel(ruleCounts(3, 5, 2, 6)), model);
+
+    // the replayed snapshot has been saved
+    Assert.assertEquals(2000L, snapshotStore.load("table1").getHistoryWatermark());
+  }
+
+  @Test
+  public void testEvaluationsCommittedLateAreCounted() {
+    MockRuleCountHistory history = new MockRuleCountHistory();
+    history.addEvaluation("row-876493691-1", 500L);
+
+    ClockUtil.setCurrentTime(new Date(1000L));
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, new MockDistributionSource());
+    engine.setSnapshotStore(new FileModelSnapshotStore(snapshotDirectory), history);
+    engine.setSnapshotWatermarkLag(100L);
+    engine.getPredictor("table1");
+
+    // the snapshot lags behind, so that younger history is read again by the next build
+    FileModelSnapshotStore snapshotStore = new FileModelSnapshotStore(snapshotDirectory);
+    Assert.assertEquals(900L, snapshotStore.load("table1").getHistoryWatermark());
+
+    // evaluated before the last build but committed afterwards
+    history.addEvaluation("row-876493691-2", 950L);
+    history.addEvaluation("row-876493691-4", 1500L);
+    ClockUtil.setCurrentTime(new Date(2000L));
+
+    PredictiveDmnEngine restartedEngine = new PredictiveDmnEngine(repository, new MockDistributionSource());
+    restartedEngine.setSnapshotStore(snapshotStore, history);
+    restartedEngine.setSnapshotWatermarkLag(100L);
+    CanonicalDmnModel model = restartedEngine.getPredictor("table1").getTransformedModel();
+
+    assertSamePosteriors(buildModel(ruleCounts(1, 1, 0, 1)), model);
+    Assert.assertEquals(1900L, snapshotStore.load("table1").getHistoryWatermark());
+    Assert.assertEquals(1L, snapshotStore.load("table1").getRuleCount("row-876493691-2"));
+  }
+
+  protected void assertSamePosteriors(CanonicalDmnModel expectedModel, CanonicalDmnModel actualModel) {
+    Evidence evidence = new Evidence();
+    evidence.submit("season", "\"Winter\"");
+
+    Predictor expectedPredictor = new Predictor(expectedModel);
+    Predictor actualPredictor = new Predictor(actualModel);
+
+    for (String variable : new String[]{"$rule", "season", "hungry"}) {
+      for (Evidence currentEvidence : new Evidence[]{new Evidence(), evidence}) {
+        Assert.assertArrayEquals(expectedPredictor.getPosteriorValues(variable, currentEvidence),
+            actualPredictor.getPosteriorValues(variable, currentEvidence), TOLERABLE_ASSERT_DELTA);
+      }
+    }
+  }
+
+  protected CanonicalDmnModel buildModel(Map<String, Long> ruleCounts) {
+    return buildModel("table1", ruleCounts);
+  }
+
+  protected CanonicalDmnModel buildModel(String decisionDefinitionId, Map<String, Long> ruleCounts) {
+    InMemoryRuleCountStore ruleCountStore = new InMemoryRuleCountStore();
+    ruleCountStore.initializeRuleCounts(decisionDefinitionId, ruleCounts);
+
+    return CanonicalDmnModel.fromDmnModelInstance(decisionDefinitionId, repository.getDecisionModel(decisionDefinitionId),
+        new RuleCountDistributionSource(repository, ruleCountStore));
+  }
+
+  protected Map<String, Long> ruleCounts(long... counts) {
+    return ruleCounts("row-876493691-", counts);
+  }
+
+  protected Map<String, Long> drdRuleCounts(long... counts) {
+    return ruleCounts("dish-", counts);
+  }
+
+  protected Map<String, Long> ruleCounts(String ruleIdPrefix, long... counts) {
+    Map<String, Long> ruleCounts = new HashMap<String, Long>();
+    for (int i = 0; i < counts.length; i++) {
+      ruleCounts.put(ruleIdPrefix + (i + 1), counts[i]);
+    }
+    return ruleCounts;
+  }
+
+  protected static class RecordingRuleCountHistory implements RuleCountHistory {
+
+    protected Map<String, Long> ruleCounts;
+    protected List<long[]> requestedRanges = new ArrayList<long[]>();
+
+    public Map<String, Long> getRuleCounts(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil) {
+      requestedRanges.add(new long[]{evaluatedAfter, evaluatedUntil});
+      return ruleCounts;
+    }
+
+    public Map<Long, Map<String, Long>> getRuleCountsByBucket(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil,
+        long bucketDuration) {
+      throw new UnsupportedOperationException();
+    }
+
+    public List<RuleEvaluation> getRuleEvaluations(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class PosteriorCacheTest {
+
+  protected static final double TOLERABLE_ASSERT_DELTA = 0.00001d;
+
+  @Test
+  public void testRepeatedEvidenceIsServedFromCache() {
+    Predictor predictor = StandaloneDmnPredictionTest.createTable1Engine().getPredictor("table1");
+    PosteriorCache posteriorCache = predictor.getPosteriorCache();
+
+    Evidence evidence = new Evidence();
+    evidence.submit("season", "\"Winter\"");
+
+    Evidence equalEvidence = new Evidence();
+    equalEvidence.submit("season", "\"Winter\"");
+
+    double[] posterior = predictor.getPosteriorValues("$rule", evidence);
+    double[] cachedPosterior = predictor.getPosteriorValues("$rule", equalEvidence);
+
+    Assert.assertArrayEquals(posterior, cachedPosterior, TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(1, posteriorCache.getHitCount());
+    Assert.assertEquals(1, posteriorCache.getMissCount());
+
+    // a different variable or evidence is a miss
+    predictor.getPosteriorValues("hungry", evidence);
+    predictor.getPosteriorValues("$rule", new Evidence());
+
+    Assert.assertEquals(1, posteriorCache.getHitCount());
+    Assert.assertEquals(3, posteriorCache.getMissCount());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEviction() {
+    PosteriorCache cache = new PosteriorCache(2);
+    String[] evidenceVariables = new String[]{"season"};
+
+    cache.put("$rule", evidenceVariables, new int[]{0}, new double[]{1.0d});
+    cache.put("$rule", evidenceVariables, new int[]{1}, new double[]{2.0d});
+
+    // access the first entry so that the second one is evicted
+    Assert.assertNotNull(cache.get("$rule", evidenceVariables, new int[]{0}));
+    cache.put("hungry", evidenceVariables, new int[]{0}, new double[]{3.0d});
+
+    Assert.assertEquals(2, cache.size());
+    Assert.assertNotNull(cache.get("$rule", evidenceVariables, new int[]{0}));
+    Assert.assertNull(cache.get("$rule", evidenceVariables, new int[]{1}));
+  }
+}
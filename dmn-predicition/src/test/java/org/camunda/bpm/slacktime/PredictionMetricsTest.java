@@ -0,0 +1,243 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.ProcessEngineConfiguration;
+import org.camunda.bpm.engine.ProcessEngineException;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandExecutor;
+import org.camunda.bpm.engine.test.ProcessEngineRule;
+import org.camunda.bpm.slacktime.processengine.DmnPredictionPlugin;
+import org.camunda.bpm.slacktime.processengine.PredictiveDmnEngines;
+import org.camunda.bpm.slacktime.processengine.ProcessEngineCloseInterceptor;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class PredictionMetricsTest {
+
+  @Rule
+  public ProcessEngineRule engineRule = new ProcessEngineRule();
+
+  @Test
+  public void testPhasesAndCountersAreRecorded() {
+    MockDecisionRepository repository = new MockDecisionRepository();
+    repository.addDecisionModel("table1", StandaloneDmnPredictionTest.readModel("table1.dmn"));
+
+    MockDistribution seasonDistribution = new MockDistribution();
+    seasonDistribution.setProbability("\"Winter\"", 0.4d);
+    seasonDistribution.setProbability("\"Summer\"", 0.6d);
+
+    MockDistribution hungryDistribution = new MockDistribution();
+    hungryDistribution.setProbability("\"yes\"", 0.3d);
+    hungryDistribution.setProbability("\"no\"", 0.7d);
+
+    MockDistributionSource distributionSource = new MockDistributionSource();
+    distributionSource.addDistribution("season", seasonDistribution);
+    distributionSource.addDistribution("hungry", hungryDistribution);
+
+    PredictionMetrics metrics = new PredictionMetrics();
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, distributionSource, new PredictorCache());
+    engine.setMetricsListener(metrics);
+
+    Evidence evidence = new Evidence();
+    evidence.submit("season", "\"Winter\"");
+
+    engine.predict("table1", "$rule", evidence);
+    engine.predict("table1", "$rule", evidence);
+
+    // the predictor is built once and the second posterior is cached
+    Assert.assertEquals(1, metrics.getPhaseCount(PredictionPhase.MODEL_LOADING));
+    Assert.assertEquals(1, metrics.getPhaseCount(PredictionPhase.MODEL_BUILDING));
+    Assert.assertEquals(1, metrics.getPhaseCount(PredictionPhase.INFERENCE));
+    Assert.assertEquals(1, metrics.getCounter(PredictionCounter.PREDICTOR_CACHE_HITS));
+    Assert.assertEquals(1, metrics.getCounter(PredictionCounter.PREDICTOR_CACHE_MISSES));
+    Assert.assertEquals(1, metrics.getCounter(PredictionCounter.POSTERIOR_CACHE_HITS));
+    Assert.assertEquals(1, metrics.getCounter(PredictionCounter.POSTERIOR_CACHE_MISSES));
+    Assert.assertEquals(0.5d, metrics.getHitRate(PredictionCounter.POSTERIOR_CACHE_HITS, PredictionCounter.POSTERIOR_CACHE_MISSES), 0.0d);
+
+    CanonicalDmnModel model = engine.getPredictor("table1").getTransformedModel();
+    Assert.assertEquals(model.getNumFactorEntries(), metrics.getCounter(PredictionCounter.FACTOR_TABLE_ENTRIES));
+    Assert.assertEquals(model.getNumFactorEntries(), metrics.getCounter(PredictionCounter.ELIMINATION_COST));
+    Assert.assertTrue(metrics.getPhaseMaxTime(PredictionPhase.INFERENCE) <= metrics.getPhaseTotalTime(PredictionPhase.INFERENCE));
+
+    Assert.assertEquals(0, metrics.getCounter(PredictionCounter.SLOW_PREDICTIONS));
+
+    metrics.setSlowPredictionThreshold(10);
+    metrics.predictionCompleted("table1", model, TimeUnit.MILLISECONDS.toNanos(5));
+    metrics.predictionCompleted("table1", model, TimeUnit.MILLISECONDS.toNanos(20));
+    Assert.assertEquals(1, metrics.getCounter(PredictionCounter.SLOW_PREDICTIONS));
+
+    metrics.reset();
+    Assert.assertEquals(0, metrics.getPhaseCount(PredictionPhase.INFERENCE));
+    Assert.assertEquals(0, metrics.getCounter(PredictionCounter.SLOW_PREDICTIONS));
+  }
+
+  @Test
+  public void testGroupedPredictionIsReported() {
+    MockDecisionRepository repository = new MockDecisionRepository();
+    repository.addDecisionModel("table1", StandaloneDmnPredictionTest.readModel("table1.dmn"));
+
+    MockDistribution seasonDistribution = new MockDistribution();
+    seasonDistribution.setProbability("\"Winter\"", 0.4d);
+    seasonDistribution.setProbability("\"Summer\"", 0.6d);
+
+    MockDistribution hungryDistribution = new MockDistribution();
+    hungryDistribution.setProbability("\"yes\"", 0.3d);
+    hungryDistribution.setProbability("\"no\"", 0.7d);
+
+    MockDistributionSource distributionSource = new MockDistributionSource();
+    distributionSource.addDistribution("season", seasonDistribution);
+    distributionSource.addDistribution("hungry", hungryDistribution);
+
+    final List<String> completedPredictions = new ArrayList<String>();
+    PredictionMetrics metrics = new PredictionMetrics() {
+      @Override
+      public void predictionCompleted(String decisionDefinitionId, CanonicalDmnModel model, long durationNanos) {
+        completedPredictions.add(decisionDefinitionId);
+        super.predictionCompleted(decisionDefinitionId, model, durationNanos);
+      }
+    };
+
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, distributionSource, new PredictorCache());
+    engine.setMetricsListener(metrics);
+
+    Evidence winter = new Evidence();
+    winter.submit("season", "\"Winter\"");
+    Evidence summer = new Evidence();
+    summer.submit("season", "\"Summer\"");
+
+    Map<String, Evidence> evidenceByKey = new LinkedHashMap<String, Evidence>();
+    evidenceByKey.put("pi1", winter);
+    evidenceByKey.put("pi2", summer);
+    evidenceByKey.put("pi3", winter);
+
+    Predictor predictor = engine.getPredictor("table1");
+    Map<List<String>, Distribution> posteriors = engine.predictGroups("table1", predictor, "$rule", evidenceByKey);
+
+    Assert.assertEquals(2, posteriors.size());
+    Iterator<List<String>> groups = posteriors.keySet().iterator();
+    Assert.assertEquals(Arrays.asList("pi1", "pi3"), groups.next());
+    Assert.assertEquals(Arrays.asList("pi2"), groups.next());
+
+    // every distinct evidence is inferred once and the whole batch is reported as one prediction
+    Assert.assertEquals(2, metrics.getPhaseCount(PredictionPhase.INFERENCE));
+    Assert.assertEquals(Arrays.asList("table1"), completedPredictions);
+  }
+
+  @Test
+  public void testMetricsAreRegisteredViaJmx() throws Exception {
+    String processEngineName = engineRule.getProcessEngine().getName();
+    PredictionMetrics metrics = (PredictionMetrics) PredictiveDmnEngines.getPredictiveEngine(engineRule.getProcessEngine()).getMetricsListener();
+
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = PredictiveDmnEngines.getMetricsObjectName(processEngineName);
+    Assert.assertTrue(mBeanServer.isRegistered(objectName));
+
+    metrics.phaseCompleted("decision", PredictionPhase.HISTORY_QUERY, TimeUnit.MILLISECONDS.toNanos(3));
+    metrics.counterIncremented("decision", PredictionCounter.HISTORIC_INSTANCES_SCANNED, 42);
+
+    Assert.assertEquals(metrics.getPhaseCount(PredictionPhase.HISTORY_QUERY), mBeanServer.getAttribute(objectName, "HistoryQueryCount"));
+    Assert.assertEquals(metrics.getCounter(PredictionCounter.HISTORIC_INSTANCES_SCANNED),
+        mBeanServer.getAttribute(objectName, "HistoricInstancesScanned"));
+    Assert.assertTrue((Double) mBeanServer.getAttribute(objectName, "HistoryQueryMaxTimeMillis") >= 3.0d);
+
+    mBeanServer.invoke(objectName, "reset", new Object[0], new String[0]);
+    Assert.assertEquals(0L, mBeanServer.getAttribute(objectName, "HistoryQueryCount"));
+  }
+
+  @Test
+  public void testMetricsAreUnregisteredWhenProcessEngineCloses() throws Exception {
+    ProcessEngineConfigurationImpl engineConfiguration = (ProcessEngineConfigurationImpl) ProcessEngineConfiguration
+      .createStandaloneInMemProcessEngineConfiguration()
+      .setProcessEngineName("closing")
+      .setJdbcUrl("jdbc:h2:mem:camunda-closing");
+    engineConfiguration.getProcessEnginePlugins().add(new DmnPredictionPlugin());
+
+    ProcessEngine processEngine = engineConfiguration.buildProcessEngine();
+
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = PredictiveDmnEngines.getMetricsObjectName("closing");
+    Assert.assertTrue(mBeanServer.isRegistered(objectName));
+
+    processEngine.close();
+    Assert.assertFalse(mBeanServer.isRegistered(objectName));
+  }
+
+  @Test
+  public void testMetricsAreUnregisteredWithCustomSchemaOperationsExecutor() throws Exception {
+    final ProcessEngineConfigurationImpl engineConfiguration = (ProcessEngineConfigurationImpl) ProcessEngineConfiguration
+      .createStandaloneInMemProcessEngineConfiguration()
+      .setProcessEngineName("customSchemaOperations")
+      .setJdbcUrl("jdbc:h2:mem:camunda-customSchemaOperations");
+    CommandExecutor customExecutor = new CommandExecutor() {
+      public <T> T execute(Command<T> command) {
+        return engineConfiguration.getCommandExecutorTxRequired().execute(command);
+      }
+    };
+    engineConfiguration.setCommandExecutorSchemaOperations(customExecutor);
+    engineConfiguration.getProcessEnginePlugins().add(new DmnPredictionPlugin());
+
+    ProcessEngine processEngine = engineConfiguration.buildProcessEngine();
+
+    CommandExecutor schemaOperationsExecutor = engineConfiguration.getCommandExecutorSchemaOperations();
+    Assert.assertTrue(schemaOperationsExecutor instanceof ProcessEngineCloseInterceptor);
+    Assert.assertSame(customExecutor, ((ProcessEngineCloseInterceptor) schemaOperationsExecutor).getNext());
+
+    ObjectName objectName = PredictiveDmnEngines.getMetricsObjectName("customSchemaOperations");
+    Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+
+    processEngine.close();
+    Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+  }
+
+  @Test
+  public void testNoEngineWithoutPlugin() throws Exception {
+    ProcessEngine processEngine = ProcessEngineConfiguration
+      .createStandaloneInMemProcessEngineConfiguration()
+      .setProcessEngineName("withoutPlugin")
+      .setJdbcUrl("jdbc:h2:mem:camunda-withoutPlugin")
+      .buildProcessEngine();
+
+    try {
+      PredictiveDmnEngines.getPredictiveEngine(processEngine);
+      Assert.fail("an engine without the plugin should not get a predictive engine");
+    }
+    catch (ProcessEngineException e) {
+      // expected
+    }
+    finally {
+      processEngine.close();
+    }
+
+    Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(PredictiveDmnEngines.getMetricsObjectName("withoutPlugin")));
+  }
+}
@@ -0,0 +1,374 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+import org.camunda.bpm.model.dmn.Dmn;
+import org.camunda.bpm.model.dmn.DmnModelInstance;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class PredictorCacheTest {
+
+  protected MockDecisionRepository repository;
+  protected MockDistributionSource distributionSource;
+
+  @Before
+  public void setUp() {
+    repository = new MockDecisionRepository();
+    repository.addDecisionModel("table1", readModelFromClasspath("table1.dmn"));
+    repository.addDecisionModel("table2", readModelFromClasspath("table1.dmn"));
+
+    MockDistribution hungryDistribution = new MockDistribution();
+    hungryDistribution.setProbability("\"yes\"", 0.3d);
+    hungryDistribution.setProbability("\"no\"", 0.7d);
+
+    MockDistribution seasonDistribution = new MockDistribution();
+    seasonDistribution.setProbability("\"Winter\"", 0.5d);
+    seasonDistribution.setProbability("\"Summer\"", 0.5d);
+
+    distributionSource = new MockDistributionSource();
+    distributionSource.addDistribution("season", seasonDistribution);
+    distributionSource.addDistribution("hungry", hungryDistribution);
+  }
+
+  @After
+  public void resetClock() {
+    ClockUtil.reset();
+  }
+
+  @Test
+  public void testCacheHit() {
+    PredictorCache cache = new PredictorCache();
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, distributionSource, cache);
+
+    Predictor predictor = engine.getPredictor("table1");
+
+    Assert.assertSame(predictor, engine.getPredictor("table1"));
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testSizeBasedEviction() {
+    PredictorCache cache = new PredictorCache(1, 0);
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, distributionSource, cache);
+
+    Predictor predictor = engine.getPredictor("table1");
+    engine.getPredictor("table2");
+
+    Assert.assertEquals(1, cache.size());
+    Assert.assertNotSame(predictor, engine.getPredictor("table1"));
+  }
+
+  @Test
+  public void testTimeBasedEviction() {
+    ClockUtil.setCurrentTime(new Date(0));
+    PredictorCache cache = new PredictorCache(10, 1000L);
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, distributionSource, cache);
+
+    Predictor predictor = engine.getPredictor("table1");
+
+    ClockUtil.setCurrentTime(new Date(999));
+    Assert.assertSame(predictor, engine.getPredictor("table1"));
+
+    ClockUtil.setCurrentTime(new Date(1000));
+    Assert.assertNotSame(predictor, engine.getPredictor("table1"));
+  }
+
+  @Test
+  public void testStalenessThreshold() {
+    final long[] evaluationCount = new long[] {0};
+    final int[] checks = new int[] {0};
+
+    ClockUtil.setCurrentTime(new Date(0));
+    PredictorCache cache = new PredictorCache();
+    cache.setStalenessCheck(new DecisionEvaluationCounter() {
+      public long getEvaluationCount(String decisionDefinitionId) {
+        checks[0]++;
+        return evaluationCount[0];
+      }
+    }, 10, 1000L);
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, distributionSource, cache);
+
+    Predictor predictor = engine.getPredictor("table1");
+    Assert.assertEquals(1, checks[0]);
+
+    // the entry is not checked again within the check interval
+    evaluationCount[0] = 10;
+    ClockUtil.setCurrentTime(new Date(999));
+    Assert.assertSame(predictor, engine.getPredictor("table1"));
+    Assert.assertEquals(1, checks[0]);
+
+    evaluationCount[0] = 9;
+    ClockUtil.setCurrentTime(new Date(1000));
+    Assert.assertSame(predictor, engine.getPredictor("table1"));
+    Assert.assertEquals(2, checks[0]);
+
+    evaluationCount[0] = 10;
+    ClockUtil.setCurrentTime(new Date(2000));
+    Assert.assertNotSame(predictor, engine.getPredictor("table1"));
+  }
+
+  @Test
+  public void testInvalidation() {
+    PredictorCache cache = new PredictorCache();
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, distributionSource, cache);
+
+    Predictor predictor = engine.getPredictor("table1");
+    cache.invalidate("table1");
+
+    Assert.assertNotSame(predictor, engine.getPredictor("table1"));
+  }
+
+  @Test
+  public void testConcurrentRequestsShareOneBuild() throws Exception {
+    final CountDownLatch buildStarted = new CountDownLatch(1);
+    final CountDownLatch releaseBuild = new CountDownLatch(1);
+    final AtomicInteger builds = new AtomicInteger();
+
+    DistributionSource blockingSource = new DistributionSource() {
+      public Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex) {
+        builds.incrementAndGet();
+        buildStarted.countDown();
+        try {
+          releaseBuild.await();
+        }
+        catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return distributionSource.getDistributions(dmnModelId, variableIndex);
+      }
+
+      public Distribution getDistribution(String dmnModelId, String variable, VariableIndex variableIndex) {
+        return distributionSource.getDistribution(dmnModelId, variable, variableIndex);
+      }
+    };
+
+    final PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, blockingSource, new PredictorCache());
+    PredictionMetrics metrics = new PredictionMetrics();
+    engine.setMetricsListener(metrics);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    try {
+      Callable<Predictor> request = new Callable<Predictor>() {
+        public Predictor call() {
+          return engine.getPredictor("table1");
+        }
+      };
+
+      Future<Predictor> firstRequest = executor.submit(request);
+      buildStarted.await();
+      Future<Predictor> secondRequest = executor.submit(request);
+
+      // the second request must have joined the build before it is released
+      while (metrics.getCounter(PredictionCounter.COALESCED_PREDICTOR_BUILDS) == 0) {
+        Thread.sleep(1);
+      }
+      releaseBuild.countDown();
+
+      Assert.assertSame(firstRequest.get(), secondRequest.get());
+      Assert.assertEquals(1, builds.get());
+      Assert.assertTrue(engine.predictorBuilds.isEmpty());
+    }
+    finally {
+      releaseBuild.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testAsyncBuild() throws Exception {
+    final List<Runnable> pendingBuilds = new ArrayList<Runnable>();
+    Executor executor = new Executor() {
+      public void execute(Runnable command) {
+        pendingBuilds.add(command);
+      }
+    };
+
+    PredictorCache cache = new PredictorCache();
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, distributionSource, cache);
+
+    Future<Predictor> predictor = engine.getPredictorAsync("table1", executor);
+    Assert.assertFalse(predictor.isDone());
+
+    // a second request joins the pending build
+    Assert.assertSame(predictor, engine.getPredictorAsync("table1", executor));
+    Assert.assertEquals(1, pendingBuilds.size());
+
+    pendingBuilds.get(0).run();
+
+    Assert.assertTrue(predictor.isDone());
+    Assert.assertEquals(1, cache.size());
+
+    Future<Predictor> cachedPredictor = engine.getPredictorAsync("table1", executor);
+    Assert.assertTrue(cachedPredictor.isDone());
+    Assert.assertSame(predictor.get(), cachedPredictor.get());
+    Assert.assertEquals(1, pendingBuilds.size());
+  }
+
+  @Test
+  public void testBuildInProgressDuringInvalidationIsNotCached() throws Exception {
+    final List<Runnable> pendingBuilds = new ArrayList<Runnable>();
+    Executor executor = new Executor() {
+      public void execute(Runnable command) {
+        pendingBuilds.add(command);
+      }
+    };
+
+    PredictorCache cache = new PredictorCache();
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, distributionSource, cache);
+
+    Future<Predictor> predictor = engine.getPredictorAsync("table1", executor);
+    // e.g. a new version of the decision is deployed
+    cache.invalidateAll();
+    pendingBuilds.get(0).run();
+
+    // the build still serves the requests that were waiting for it
+    Assert.assertNotNull(predictor.get());
+    Assert.assertEquals(0, cache.size());
+    Assert.assertFalse(cache.put("table1", predictor.get(), cache.getGeneration() - 1));
+  }
+
+  @Test
+  public void testInvalidationOfOtherDecisionDoesNotRejectBuild() throws Exception {
+    final List<Runnable> pendingBuilds = new ArrayList<Runnable>();
+    Executor executor = new Executor() {
+      public void execute(Runnable command) {
+        pendingBuilds.add(command);
+      }
+    };
+
+    PredictorCache cache = new PredictorCache();
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, distributionSource, cache);
+
+    Future<Predictor> table1Predictor = engine.getPredictorAsync("table1", executor);
+    Future<Predictor> table2Predictor = engine.getPredictorAsync("table2", executor);
+    cache.invalidate("table2");
+    pendingBuilds.get(0).run();
+    pendingBuilds.get(1).run();
+
+    Assert.assertEquals(1, cache.size());
+    Assert.assertSame(table1Predictor.get(), cache.get("table1"));
+    Assert.assertNull(cache.get("table2"));
+    Assert.assertNotNull(table2Predictor.get());
+  }
+
+  @Test
+  public void testFailedAsyncBuildIsReportedOnce() throws Exception {
+    final List<Runnable> pendingBuilds = new ArrayList<Runnable>();
+    Executor executor = new Executor() {
+      public void execute(Runnable command) {
+        pendingBuilds.add(command);
+      }
+    };
+
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, createFailingSource(), new PredictorCache());
+
+    engine.getPredictorAsync("table1", executor);
+    pendingBuilds.get(0).run();
+
+    Future<Predictor> failedBuild = engine.getPredictorAsync("table1", executor);
+    Assert.assertTrue(failedBuild.isDone());
+    try {
+      failedBuild.get();
+      Assert.fail("the failure of the build should be reported");
+    }
+    catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    // the next request starts a new build
+    Assert.assertFalse(engine.getPredictorAsync("table1", executor).isDone());
+    Assert.assertEquals(2, pendingBuilds.size());
+  }
+
+  @Test
+  public void testOutdatedFailedAsyncBuildIsNotReported() throws Exception {
+    final List<Runnable> pendingBuilds = new ArrayList<Runnable>();
+    Executor executor = new Executor() {
+      public void execute(Runnable command) {
+        pendingBuilds.add(command);
+      }
+    };
+
+    PredictorCache cache = new PredictorCache();
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, createFailingSource(), cache);
+
+    // the failure is dropped when the decision is invalidated
+    engine.getPredictorAsync("table1", executor);
+    pendingBuilds.get(0).run();
+    cache.invalidate("table1");
+
+    Assert.assertFalse(engine.getPredictorAsync("table1", executor).isDone());
+    Assert.assertEquals(2, pendingBuilds.size());
+
+    // the failure expires
+    ClockUtil.setCurrentTime(new Date(0));
+    pendingBuilds.get(1).run();
+    ClockUtil.setCurrentTime(new Date(PredictiveDmnEngine.FAILED_BUILD_RETENTION));
+
+    Assert.assertFalse(engine.getPredictorAsync("table1", executor).isDone());
+    Assert.assertEquals(3, pendingBuilds.size());
+  }
+
+  @Test
+  public void testFailedSynchronousBuildIsNotKept() {
+    PredictiveDmnEngine engine = new PredictiveDmnEngine(repository, createFailingSource(), new PredictorCache());
+
+    try {
+      engine.getPredictor("table1");
+      Assert.fail("the build should fail");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+
+    Assert.assertTrue(engine.failedBuilds.isEmpty());
+  }
+
+  protected DistributionSource createFailingSource() {
+    return new DistributionSource() {
+      public Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex) {
+        throw new IllegalStateException("history not available");
+      }
+
+      public Distribution getDistribution(String dmnModelId, String variable, VariableIndex variableIndex) {
+        throw new IllegalStateException("history not available");
+      }
+    };
+  }
+
+  protected DmnModelInstance readModelFromClasspath(String resource) {
+    return Dmn.readModelFromStream(PredictorCacheTest.class.getClassLoader().getResourceAsStream(resource));
+  }
+}
@@ -12,10 +12,21 @@
  */
 package org.camunda.bpm.slacktime;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.context.Context;
+import org.camunda.bpm.engine.impl.dmn.entity.repository.DecisionDefinitionEntity;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
 import org.camunda.bpm.engine.runtime.ProcessInstance;
 import org.camunda.bpm.engine.test.Deployment;
 import org.camunda.bpm.engine.test.ProcessEngineRule;
 import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.slacktime.processengine.EvidencePlan;
 import org.camunda.bpm.slacktime.processengine.ProcessInstanceEvidenceGenerator;
 import org.junit.Assert;
 import org.junit.Rule;
@@ -49,4 +60,94 @@ public class ProcessInstanceEvidenceGeneratorTest {
     Assert.assertEquals("\"Summer\"", evidence.getVariableAssignment("season"));
     Assert.assertNull(evidence.getVariableAssignment("hungry"));
   }
+
+  @Test
+  @Deployment(resources = {"table1.dmn", "oneTaskProcess.bpmn20.xml"})
+  public void testGenerateEvidenceForProcessDefinition() {
+    String decisionDefinitionId = engineRule.getRepositoryService()
+      .createDecisionDefinitionQuery()
+      .singleResult()
+      .getId();
+
+    ProcessInstance summerInstance = engineRule
+      .getRuntimeService()
+      .startProcessInstanceByKey("oneTaskProcess", Variables.createVariables().putValue("season", "Summer"));
+    ProcessInstance winterInstance = engineRule
+      .getRuntimeService()
+      .startProcessInstanceByKey("oneTaskProcess", Variables.createVariables().putValue("season", "Winter"));
+
+    ProcessInstanceEvidenceGenerator generator = new ProcessInstanceEvidenceGenerator(engineRule.getProcessEngine());
+    Map<String, Evidence> evidence = generator.generateEvidenceForProcessDefinition(decisionDefinitionId,
+        summerInstance.getProcessDefinitionId());
+
+    Assert.assertEquals(2, evidence.size());
+    Assert.assertEquals("\"Summer\"", evidence.get(summerInstance.getId()).getVariableAssignment("season"));
+    Assert.assertEquals("\"Winter\"", evidence.get(winterInstance.getId()).getVariableAssignment("season"));
+
+    Map<String, Evidence> listedEvidence = generator.generateEvidence(decisionDefinitionId,
+        Arrays.asList(winterInstance.getId(), summerInstance.getId()));
+    Assert.assertEquals(Arrays.asList(winterInstance.getId(), summerInstance.getId()),
+        new ArrayList<String>(listedEvidence.keySet()));
+  }
+
+  @Test
+  @Deployment(resources = {"table1.dmn", "oneTaskProcess.bpmn20.xml"})
+  public void testUnknownProcessInstancesAreLeftOut() {
+    String decisionDefinitionId = engineRule.getRepositoryService()
+      .createDecisionDefinitionQuery()
+      .singleResult()
+      .getId();
+
+    ProcessInstance processInstance = engineRule
+      .getRuntimeService()
+      .startProcessInstanceByKey("oneTaskProcess", Variables.createVariables().putValue("season", "Summer"));
+
+    ProcessInstanceEvidenceGenerator generator = new ProcessInstanceEvidenceGenerator(engineRule.getProcessEngine());
+    Map<String, Evidence> evidence = generator.generateEvidence(decisionDefinitionId,
+        Arrays.asList("unknownProcessInstance", processInstance.getId()));
+
+    Assert.assertEquals(1, evidence.size());
+    Assert.assertEquals("\"Summer\"", evidence.get(processInstance.getId()).getVariableAssignment("season"));
+    Assert.assertNull(generator.generateEvidence(decisionDefinitionId, "unknownProcessInstance"));
+  }
+
+  @Test
+  @Deployment(resources = {"table1.dmn", "oneTaskProcess.bpmn20.xml"})
+  public void testEvidencePlanIsCachedPerDecisionDefinition() {
+    final String decisionDefinitionId = engineRule.getRepositoryService()
+      .createDecisionDefinitionQuery()
+      .singleResult()
+      .getId();
+
+    ProcessEngineConfigurationImpl engineConfiguration =
+        (ProcessEngineConfigurationImpl) engineRule.getProcessEngine().getProcessEngineConfiguration();
+
+    engineConfiguration.getCommandExecutorTxRequired().execute(new Command<Void>() {
+      public Void execute(CommandContext commandContext) {
+        DecisionDefinitionEntity decisionDefinition =
+            Context.getProcessEngineConfiguration().getDeploymentCache().findDeployedDecisionDefinitionById(decisionDefinitionId);
+
+        EvidencePlan plan = TestEvidenceGenerator.evidencePlan(decisionDefinition);
+        Assert.assertNotNull(plan);
+        Assert.assertSame(plan, TestEvidenceGenerator.evidencePlan(decisionDefinition));
+
+        Evidence evidence = plan.generateEvidence(Variables.createVariables().putValue("season", "Winter").asVariableContext());
+        Assert.assertEquals("\"Winter\"", evidence.getVariableAssignment("season"));
+        Assert.assertNull(evidence.getVariableAssignment("hungry"));
+
+        return null;
+      }
+    });
+  }
+
+  public static class TestEvidenceGenerator extends ProcessInstanceEvidenceGenerator {
+
+    public TestEvidenceGenerator(ProcessEngine engine) {
+      super(engine);
+    }
+
+    public static EvidencePlan evidencePlan(DecisionDefinitionEntity decisionDefinition) {
+      return getEvidencePlan(decisionDefinition);
+    }
+  }
 }
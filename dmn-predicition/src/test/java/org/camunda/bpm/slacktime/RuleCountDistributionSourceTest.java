@@ -0,0 +1,226 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.cfg.ProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+import org.camunda.bpm.engine.test.Deployment;
+import org.camunda.bpm.engine.test.ProcessEngineRule;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.slacktime.processengine.DmnPredictionPlugin;
+import org.camunda.bpm.slacktime.processengine.EngineDecisionRepository;
+import org.camunda.bpm.slacktime.processengine.HistoryRuleCountDistributionSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class RuleCountDistributionSourceTest {
+
+  protected static final double TOLERABLE_ASSERT_DELTA = 0.00001d;
+
+  @Rule
+  public ProcessEngineRule engineRule = new ProcessEngineRule("camunda.counting.cfg.xml");
+
+  protected RuleCountStore ruleCountStore;
+
+  @Before
+  public void setUp() {
+    ProcessEngineConfigurationImpl engineConfiguration =
+        (ProcessEngineConfigurationImpl) engineRule.getProcessEngine().getProcessEngineConfiguration();
+
+    for (ProcessEnginePlugin plugin : engineConfiguration.getProcessEnginePlugins()) {
+      if (plugin instanceof DmnPredictionPlugin) {
+        ruleCountStore = ((DmnPredictionPlugin) plugin).getRuleCountStore();
+      }
+    }
+  }
+
+  @After
+  public void resetClock() {
+    ClockUtil.reset();
+  }
+
+  @Test
+  @Deployment(resources = "table1.dmn")
+  public void testCountsAreInitializedFromHistoryAndIncremented() {
+    // given
+    String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery().singleResult().getId();
+
+    setTime(1000L);
+    evaluateDecisionTable(decisionId, "Winter", "no");
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+
+    setTime(2000L);
+    RuleCountDistributionSource distributionSource =
+        new HistoryRuleCountDistributionSource(engineRule.getProcessEngine(), ruleCountStore);
+    Predictor predictor = new PredictiveDmnEngine(new EngineDecisionRepository(engineRule.getProcessEngine()), distributionSource)
+      .getPredictor(decisionId);
+    Assert.assertNotNull(predictor);
+
+    // when
+    evaluateDecisionTable(decisionId, "Summer", "yes");
+    evaluateDecisionTable(decisionId, "Summer", "no");
+
+    // then
+    Map<String, Long> ruleCounts = ruleCountStore.getRuleCounts(decisionId);
+    Assert.assertEquals(Long.valueOf(2), ruleCounts.get("row-876493691-1"));
+    Assert.assertEquals(Long.valueOf(1), ruleCounts.get("row-876493691-2"));
+    Assert.assertEquals(Long.valueOf(1), ruleCounts.get("row-876493691-3"));
+    Assert.assertNull(ruleCounts.get("row-876493691-4"));
+  }
+
+  @Test
+  @Deployment(resources = "table1.dmn")
+  public void testEvaluationsDuringInitializationAreCountedOnce() {
+    // given
+    final String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery().singleResult().getId();
+
+    setTime(1000L);
+    evaluateDecisionTable(decisionId, "Winter", "no");
+
+    setTime(2000L);
+    RuleCountDistributionSource distributionSource =
+        new HistoryRuleCountDistributionSource(engineRule.getProcessEngine(), ruleCountStore) {
+          protected Map<String, Long> loadInitialRuleCounts(String dmnModelId, long countedBefore) {
+            // evaluations that commit before and after the history is read
+            evaluateDecisionTable(decisionId, "Summer", "yes");
+            Map<String, Long> initialRuleCounts = super.loadInitialRuleCounts(dmnModelId, countedBefore);
+            evaluateDecisionTable(decisionId, "Summer", "no");
+            return initialRuleCounts;
+          }
+        };
+
+    // when
+    distributionSource.getDistributions(decisionId, createVariableIndex());
+
+    // then
+    Map<String, Long> ruleCounts = ruleCountStore.getRuleCounts(decisionId);
+    Assert.assertEquals(Long.valueOf(1), ruleCounts.get("row-876493691-1"));
+    Assert.assertEquals(Long.valueOf(1), ruleCounts.get("row-876493691-2"));
+    Assert.assertEquals(Long.valueOf(1), ruleCounts.get("row-876493691-3"));
+  }
+
+  @Test
+  @Deployment(resources = "table1.dmn")
+  public void testLateCommitsAreCountedOnce() {
+    // given
+    final String decisionId = engineRule.getRepositoryService().createDecisionDefinitionQuery().singleResult().getId();
+
+    setTime(2000L);
+    RuleCountDistributionSource distributionSource =
+        new HistoryRuleCountDistributionSource(engineRule.getProcessEngine(), ruleCountStore) {
+          protected List<RuleEvaluation> loadLateEvaluations(String dmnModelId, long lateCommitsSince, long countingSince) {
+            // evaluations that took place before counting started but commit before and after the history is read
+            setTime(1500L);
+            evaluateDecisionTable(decisionId, "Summer", "yes");
+            List<RuleEvaluation> lateEvaluations = super.loadLateEvaluations(dmnModelId, lateCommitsSince, countingSince);
+            evaluateDecisionTable(decisionId, "Summer", "no");
+            setTime(2000L);
+            return lateEvaluations;
+          }
+        };
+
+    // when
+    distributionSource.getDistributions(decisionId, createVariableIndex());
+
+    // then
+    Map<String, Long> ruleCounts = ruleCountStore.getRuleCounts(decisionId);
+    Assert.assertEquals(Long.valueOf(1), ruleCounts.get("row-876493691-1"));
+    Assert.assertEquals(Long.valueOf(1), ruleCounts.get("row-876493691-3"));
+  }
+
+  @Test
+  public void testLateCommitsOfTheWindowAreCountedOnce() {
+    // given
+    InMemoryRuleCountStore store = new InMemoryRuleCountStore();
+    long countingSince = store.startCounting("table1", 100000L);
+
+    // committed before the initial counts are set
+    store.incrementRuleCount("table1", "instance1", "rule1", countingSince - 1);
+
+    // when
+    Map<String, Long> initialRuleCounts = Collections.singletonMap("rule1", 5L);
+    List<RuleEvaluation> lateEvaluations = Arrays.asList(
+        new RuleEvaluation("instance1", "rule1", countingSince - 1),
+        new RuleEvaluation("instance2", "rule2", countingSince - 2));
+    store.initializeRuleCounts("table1", initialRuleCounts, lateEvaluations);
+
+    // committed afterwards; the last one is older than the window and contained in the initial counts
+    store.incrementRuleCount("table1", "instance3", "rule2", countingSince - 10);
+    store.incrementRuleCount("table1", "instance2", "rule2", countingSince - 2);
+    store.incrementRuleCount("table1", "instance4", "rule2", countingSince - RuleCountStore.LATE_COMMIT_WINDOW - 1);
+
+    // then
+    Map<String, Long> ruleCounts = store.getRuleCounts("table1");
+    Assert.assertEquals(Long.valueOf(6), ruleCounts.get("rule1"));
+    Assert.assertEquals(Long.valueOf(2), ruleCounts.get("rule2"));
+  }
+
+  @Test
+  public void testDistributionsFromRuleCounts() {
+    // given
+    MockDecisionRepository repository = new MockDecisionRepository();
+    repository.addDecisionModel("table1", StandaloneDmnPredictionTest.readModel("table1.dmn"));
+
+    InMemoryRuleCountStore store = new InMemoryRuleCountStore();
+    RuleCountDistributionSource distributionSource = new RuleCountDistributionSource(repository, store);
+
+    // initializes empty counts
+    distributionSource.getDistributions("table1", createVariableIndex());
+
+    store.incrementRuleCount("table1", "instance1", "row-876493691-1", ClockUtil.getCurrentTime().getTime());
+    store.incrementRuleCount("table1", "instance2", "row-876493691-1", ClockUtil.getCurrentTime().getTime());
+    store.incrementRuleCount("table1", "instance3", "row-876493691-3", ClockUtil.getCurrentTime().getTime());
+
+    // when
+    Map<String, Distribution> distributions = distributionSource.getDistributions("table1", createVariableIndex());
+
+    // then "Summer" occurs three times, "Winter" never; one pseudo count per value
+    Distribution seasonDistribution = distributions.get("season");
+    Assert.assertEquals(4.0d / 5.0d, seasonDistribution.getProbability("\"Summer\""), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(1.0d / 5.0d, seasonDistribution.getProbability("\"Winter\""), TOLERABLE_ASSERT_DELTA);
+
+    Distribution hungryDistribution = distributions.get("hungry");
+    Assert.assertEquals(3.0d / 5.0d, hungryDistribution.getProbability("\"yes\""), TOLERABLE_ASSERT_DELTA);
+
+    Distribution ruleDistribution = distributions.get(CanonicalDmnModel.RULE_VARIABLE_NAME);
+    Assert.assertEquals(3.0d / 7.0d, ruleDistribution.getProbability("row-876493691-1"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(1.0d / 7.0d, ruleDistribution.getProbability("row-876493691-4"), TOLERABLE_ASSERT_DELTA);
+  }
+
+  protected void setTime(long time) {
+    ClockUtil.setCurrentTime(new Date(time));
+  }
+
+  protected VariableIndex createVariableIndex() {
+    return HistoryDistributionSourceTest.createVariableIndex();
+  }
+
+  protected void evaluateDecisionTable(String decisionId, String season, String hungry) {
+    engineRule.getDecisionService().evaluateDecisionTableById(decisionId,
+        Variables.createVariables().putValue("season", season).putValue("hungry", hungry));
+  }
+}
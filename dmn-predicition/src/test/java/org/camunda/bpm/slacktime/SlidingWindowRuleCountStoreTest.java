@@ -0,0 +1,126 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.camunda.bpm.engine.impl.util.ClockUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class SlidingWindowRuleCountStoreTest {
+
+  protected static final double TOLERABLE_ASSERT_DELTA = 0.00001d;
+
+  protected static final long START = 1000L * SlidingWindowRuleCountStore.HOURLY;
+
+  @After
+  public void tearDown() {
+    ClockUtil.reset();
+  }
+
+  @Test
+  public void testOldBucketsExpireAndAreDecayed() {
+    SlidingWindowRuleCountStore store = new SlidingWindowRuleCountStore(SlidingWindowRuleCountStore.HOURLY, 3, 0.5d);
+
+    setTime(START);
+    store.initializeRuleCounts("table1", Collections.<String, Long>emptyMap());
+    store.incrementRuleCount("table1", "instance1", "rule1", ClockUtil.getCurrentTime().getTime());
+    store.incrementRuleCount("table1", "instance2", "rule1", ClockUtil.getCurrentTime().getTime());
+
+    setTime(START + SlidingWindowRuleCountStore.HOURLY);
+    store.incrementRuleCount("table1", "instance3", "rule2", ClockUtil.getCurrentTime().getTime());
+
+    Map<String, Double> weightedCounts = store.getWeightedRuleCounts("table1");
+    Assert.assertEquals(1.0d, weightedCounts.get("rule1"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(1.0d, weightedCounts.get("rule2"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(Long.valueOf(2L), store.getRuleCounts("table1").get("rule1"));
+
+    // the first bucket leaves the window, its slot is reused
+    setTime(START + 3 * SlidingWindowRuleCountStore.HOURLY);
+    store.incrementRuleCount("table1", "instance4", "rule2", ClockUtil.getCurrentTime().getTime());
+
+    weightedCounts = store.getWeightedRuleCounts("table1");
+    Assert.assertEquals(0.0d, weightedCounts.get("rule1"), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(1.0d + 0.25d, weightedCounts.get("rule2"), TOLERABLE_ASSERT_DELTA);
+  }
+
+  @Test
+  public void testWindowIsInitializedFromHistoryInOneScan() {
+    MockRuleCountHistory history = new MockRuleCountHistory();
+    history.addEvaluations("row-876493691-1", START - 5 * SlidingWindowRuleCountStore.HOURLY, 100);
+    history.addEvaluations("row-876493691-2", START - SlidingWindowRuleCountStore.HOURLY, 3);
+    history.addEvaluation("row-876493691-4", START);
+
+    MockDecisionRepository repository = new MockDecisionRepository();
+    repository.addDecisionModel("table1", StandaloneDmnPredictionTest.readModel("table1.dmn"));
+
+    setTime(START + 10);
+    SlidingWindowRuleCountStore store = new SlidingWindowRuleCountStore(SlidingWindowRuleCountStore.HOURLY, 2);
+    SlidingWindowDistributionSource distributionSource = new SlidingWindowDistributionSource(repository, store, history);
+
+    CanonicalDmnModel model = CanonicalDmnModel.fromDmnModelInstance("table1", repository.getDecisionModel("table1"), distributionSource);
+
+    // rule 1 was only matched before the window; "Winter" has 4 evaluations and "Summer" none
+    double[] seasonTable = model.getInputTable("season");
+    int winter = model.getVariableIndex().getIndex("season", "\"Winter\"");
+    Assert.assertEquals(5.0d / 6.0d, seasonTable[winter], TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(1.0d / 6.0d, seasonTable[1 - winter], TOLERABLE_ASSERT_DELTA);
+
+    // the window is read up to the start of counting, the evaluations that may still commit one by one
+    long lateCommitsSince = START + 10 - RuleCountStore.LATE_COMMIT_WINDOW;
+    Assert.assertEquals(2, history.getRequestedRanges().size());
+    Assert.assertArrayEquals(new long[]{START - SlidingWindowRuleCountStore.HOURLY - 1, lateCommitsSince - 1}, history.getRequestedRanges().get(0));
+    Assert.assertArrayEquals(new long[]{lateCommitsSince - 1, START + 9}, history.getRequestedRanges().get(1));
+  }
+
+  @Test
+  public void testEvaluationsDuringInitializationAreCounted() {
+    final SlidingWindowRuleCountStore store = new SlidingWindowRuleCountStore(SlidingWindowRuleCountStore.HOURLY, 2);
+
+    // an evaluation that is counted while the history is read, but not yet committed
+    MockRuleCountHistory history = new MockRuleCountHistory() {
+      public Map<Long, Map<String, Long>> getRuleCountsByBucket(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil,
+          long bucketDuration) {
+        store.incrementRuleCount(decisionDefinitionId, "instance1", "rule2", START + 10);
+        return super.getRuleCountsByBucket(decisionDefinitionId, evaluatedAfter, evaluatedUntil, bucketDuration);
+      }
+
+      public List<RuleEvaluation> getRuleEvaluations(String decisionDefinitionId, long evaluatedAfter, long evaluatedUntil) {
+        // an evaluation before the start of counting that commits just before it is read
+        store.incrementRuleCount(decisionDefinitionId, "evaluation0", "rule1", START);
+        return super.getRuleEvaluations(decisionDefinitionId, evaluatedAfter, evaluatedUntil);
+      }
+    };
+    history.addEvaluation("rule1", START);
+
+    setTime(START + 10);
+    store.initializeRuleCounts("table1", history);
+
+    Map<String, Long> ruleCounts = store.getRuleCounts("table1");
+    Assert.assertEquals(Long.valueOf(1L), ruleCounts.get("rule1"));
+    Assert.assertEquals(Long.valueOf(1L), ruleCounts.get("rule2"));
+  }
+
+  protected void setTime(long time) {
+    ClockUtil.setCurrentTime(new Date(time));
+  }
+}
@@ -12,6 +12,13 @@
  */
 package org.camunda.bpm.slacktime;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import org.camunda.bpm.model.dmn.Dmn;
 import org.camunda.bpm.model.dmn.DmnModelInstance;
 import org.junit.Assert;
@@ -70,7 +77,271 @@ public class StandaloneDmnPredictionTest {
     // vll kann man das auch so modellieren: {inputs} => RULE => {outputs} und RULE => {outputs} spart man sich erstmal
   }
 
+  @Test
+  public void testSinglePassPosteriorMatchesVariableElimination() {
+    Predictor predictor = createTable1Engine().getPredictor("table1");
+
+    Evidence winterEvidence = new Evidence();
+    winterEvidence.submit("season", "\"Winter\"");
+
+    Evidence hungryEvidence = new Evidence();
+    hungryEvidence.submit("hungry", "\"yes\"");
+
+    for (Evidence evidence : new Evidence[]{new Evidence(), winterEvidence, hungryEvidence}) {
+      for (String variable : new String[]{"$rule", "season", "hungry"}) {
+        predictor.setPosteriorMode(Predictor.PosteriorMode.PER_VALUE);
+        Distribution perValuePosterior = predictor.getPosterior(variable, evidence);
+
+        predictor.setPosteriorMode(Predictor.PosteriorMode.SINGLE_PASS);
+        Distribution singlePassPosterior = predictor.getPosterior(variable, evidence);
+
+        for (String value : singlePassPosterior.getValues()) {
+          Assert.assertEquals(perValuePosterior.getProbability(value), singlePassPosterior.getProbability(value), TOLERABLE_ASSERT_DELTA);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testUniqueHitPolicyClosedFormMatchesVariableElimination() {
+    Predictor predictor = createTable1Engine().getPredictor("table1");
+    predictor.setPosteriorCache(null);
+    Assert.assertTrue(predictor.getPosteriorInferencer() instanceof UniqueHitPolicyInferencer);
+
+    Evidence winterEvidence = new Evidence();
+    winterEvidence.submit("season", "\"Winter\"");
+
+    Evidence fullEvidence = new Evidence();
+    fullEvidence.submit("season", "\"Summer\"");
+    fullEvidence.submit("hungry", "\"yes\"");
+
+    Evidence ruleEvidence = new Evidence();
+    ruleEvidence.submit(CanonicalDmnModel.RULE_VARIABLE_NAME, "row-876493691-2");
+
+    // a complete input assignment matches exactly one rule
+    Assert.assertEquals(1.0d, predictor.getPosterior(CanonicalDmnModel.RULE_VARIABLE_NAME, fullEvidence)
+        .getProbability("row-876493691-1"), TOLERABLE_ASSERT_DELTA);
+
+    for (Evidence evidence : new Evidence[]{new Evidence(), winterEvidence, fullEvidence, ruleEvidence}) {
+      Map<String, Distribution> posteriors = predictor.getPosteriors(evidence);
+
+      predictor.setPosteriorMode(Predictor.PosteriorMode.PER_VALUE);
+      for (String variable : posteriors.keySet()) {
+        Distribution expectedPosterior = predictor.getPosterior(variable, evidence);
+
+        for (String value : expectedPosterior.getValues()) {
+          Assert.assertEquals(expectedPosterior.getProbability(value), posteriors.get(variable).getProbability(value), TOLERABLE_ASSERT_DELTA);
+        }
+      }
+      predictor.setPosteriorMode(Predictor.PosteriorMode.SINGLE_PASS);
+    }
+  }
+
+  @Test
+  public void testCliqueTreeMarginalsMatchVariableElimination() {
+    PredictiveDmnEngine engine = createTable1Engine();
+    Predictor variableEliminationPredictor = engine.getPredictor("table1");
+    variableEliminationPredictor.setPosteriorMode(Predictor.PosteriorMode.PER_VALUE);
+
+    engine.setInferenceMethod(Predictor.InferenceMethod.CLIQUE_TREE);
+    Predictor cliqueTreePredictor = engine.getPredictor("table1");
+
+    Evidence winterEvidence = new Evidence();
+    winterEvidence.submit("season", "\"Winter\"");
+
+    Evidence hungryEvidence = new Evidence();
+    hungryEvidence.submit("hungry", "\"yes\"");
+
+    for (Evidence evidence : new Evidence[]{new Evidence(), winterEvidence, hungryEvidence}) {
+      Map<String, Distribution> posteriors = cliqueTreePredictor.getPosteriors(evidence);
+      // season, hungry, $rule and the output eatIceCream
+      Assert.assertEquals(4, posteriors.size());
+
+      for (String variable : posteriors.keySet()) {
+        Distribution expectedPosterior = variableEliminationPredictor.getPosterior(variable, evidence);
+
+        for (String value : expectedPosterior.getValues()) {
+          Assert.assertEquals(expectedPosterior.getProbability(value), posteriors.get(variable).getProbability(value), TOLERABLE_ASSERT_DELTA);
+          Assert.assertEquals(expectedPosterior.getProbability(value),
+              cliqueTreePredictor.getPosterior(variable, evidence).getProbability(value), TOLERABLE_ASSERT_DELTA);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPrecompiledRulePosteriorMatchesVariableElimination() {
+    PredictiveDmnEngine engine = createTable1Engine();
+    Predictor variableEliminationPredictor = engine.getPredictor("table1");
+    variableEliminationPredictor.setPosteriorMode(Predictor.PosteriorMode.PER_VALUE);
+
+    engine.setInferenceMethod(Predictor.InferenceMethod.PRECOMPILED);
+    Predictor precompiledPredictor = engine.getPredictor("table1");
+    precompiledPredictor.setPosteriorCache(null);
+    Assert.assertTrue(((PrecompiledInferencer) precompiledPredictor.getPosteriorInferencer()).isPrecompiled());
+
+    Evidence winterEvidence = new Evidence();
+    winterEvidence.submit("season", "\"Winter\"");
+
+    Evidence fullEvidence = new Evidence();
+    fullEvidence.submit("season", "\"Summer\"");
+    fullEvidence.submit("hungry", "\"no\"");
+
+    for (Evidence evidence : new Evidence[]{new Evidence(), winterEvidence, fullEvidence}) {
+      Distribution expectedPosterior = variableEliminationPredictor.getPosterior(CanonicalDmnModel.RULE_VARIABLE_NAME, evidence);
+      Distribution actualPosterior = precompiledPredictor.getPosterior(CanonicalDmnModel.RULE_VARIABLE_NAME, evidence);
+
+      for (String value : expectedPosterior.getValues()) {
+        Assert.assertEquals(expectedPosterior.getProbability(value), actualPosterior.getProbability(value), TOLERABLE_ASSERT_DELTA);
+      }
+    }
+  }
+
+  @Test
+  public void testPrecompiledFallsBackAboveSizeLimit() {
+    PredictiveDmnEngine engine = createTable1Engine();
+    engine.setInferenceMethod(Predictor.InferenceMethod.PRECOMPILED);
+    engine.setPrecompiledTableSizeLimit(1);
+
+    Predictor predictor = engine.getPredictor("table1");
+    Assert.assertFalse(((PrecompiledInferencer) predictor.getPosteriorInferencer()).isPrecompiled());
+
+    Predictor standalonePredictor = new Predictor(predictor.getTransformedModel(), Predictor.InferenceMethod.PRECOMPILED, 1);
+    Assert.assertFalse(((PrecompiledInferencer) standalonePredictor.getPosteriorInferencer()).isPrecompiled());
+
+    Distribution posterior = predictor.getPosterior(CanonicalDmnModel.RULE_VARIABLE_NAME, new Evidence());
+    double sum = 0.0d;
+    for (String value : posterior.getValues()) {
+      sum += posterior.getProbability(value);
+    }
+    Assert.assertEquals(1.0d, sum, TOLERABLE_ASSERT_DELTA);
+  }
+
+  @Test
+  public void testSinglePassInferenceUsesSparseRuleFactor() {
+    Predictor predictor = createTable1Engine().getPredictor("table1");
+    CanonicalDmnModel model = predictor.getTransformedModel();
+
+    Assert.assertEquals(4, model.getRuleFactor().getNumEntries());
+
+    Evidence evidence = new Evidence();
+    evidence.submit("season", "\"Winter\"");
+    predictor.getPosterior(CanonicalDmnModel.RULE_VARIABLE_NAME, evidence);
+
+    // the dense graphical model is only required for variable elimination
+    Assert.assertNull(model.graphicalModel);
+  }
+
+  @Test
+  public void testBatchPredictionGroupsIdenticalEvidence() {
+    PredictiveDmnEngine engine = createTable1Engine();
+    Predictor predictor = engine.getPredictor("table1");
+
+    Map<String, Evidence> evidenceByInstance = new LinkedHashMap<String, Evidence>();
+    for (String instance : new String[]{"instance1", "instance2", "instance3"}) {
+      evidenceByInstance.put(instance, new Evidence());
+    }
+    evidenceByInstance.get("instance1").submit("season", "\"Winter\"");
+    evidenceByInstance.get("instance3").submit("season", "\"Winter\"");
+
+    Assert.assertEquals(2, predictor.groupByEvidence(evidenceByInstance).size());
+
+    Map<String, Distribution> posteriors = engine.predict("table1", CanonicalDmnModel.RULE_VARIABLE_NAME, evidenceByInstance);
+    Assert.assertEquals(3, posteriors.size());
+    Assert.assertSame(posteriors.get("instance1"), posteriors.get("instance3"));
+
+    Distribution expectedPosterior = predictor.getPosterior(CanonicalDmnModel.RULE_VARIABLE_NAME, evidenceByInstance.get("instance2"));
+    for (String value : expectedPosterior.getValues()) {
+      Assert.assertEquals(expectedPosterior.getProbability(value), posteriors.get("instance2").getProbability(value), TOLERABLE_ASSERT_DELTA);
+    }
+  }
+
+  @Test
+  public void testOutputPosteriorIsFoldedFromRulePosterior() {
+    Predictor predictor = createTable1Engine().getPredictor("table1");
+
+    Evidence winterEvidence = new Evidence();
+    winterEvidence.submit("season", "\"Winter\"");
+
+    // rule 2 yields "no", rule 4 "yes"
+    Distribution outputPosterior = predictor.getPosterior("eatIceCream", winterEvidence);
+    Assert.assertEquals(0.7d, outputPosterior.getProbability("\"no\""), TOLERABLE_ASSERT_DELTA);
+    Assert.assertEquals(0.3d, outputPosterior.getProbability("\"yes\""), TOLERABLE_ASSERT_DELTA);
+
+    Distribution rulePosterior = predictor.getPosterior("$rule", new Evidence());
+    Distribution batchOutputPosterior = predictor.getPosteriors(new Evidence()).get("eatIceCream");
+    Assert.assertEquals(rulePosterior.getProbability("row-876493691-2"), batchOutputPosterior.getProbability("\"no\""), TOLERABLE_ASSERT_DELTA);
+
+    // outputs are no network variables
+    Assert.assertEquals(VariableIndex.UNKNOWN, predictor.getTransformedModel().getVariableIndex().getVariableCode("eatIceCream"));
+  }
+
+  @Test
+  public void testInputTablesAreBuiltInParallel() throws Exception {
+    MockDistribution hungryDistribution = new MockDistribution();
+    hungryDistribution.setProbability("\"yes\"", 0.3d);
+    hungryDistribution.setProbability("\"no\"", 0.7d);
+
+    MockDistribution seasonDistribution = new MockDistribution();
+    seasonDistribution.setProbability("\"Winter\"", 0.4d);
+    seasonDistribution.setProbability("\"Summer\"", 0.6d);
+
+    // every lookup only returns once both inputs are requested at the same time
+    final CyclicBarrier concurrentLookups = new CyclicBarrier(2);
+    MockDistributionSource distributionSource = new MockDistributionSource() {
+      public Distribution getDistribution(String dmnModelId, String input, VariableIndex variableIndex) {
+        try {
+          concurrentLookups.await(10, TimeUnit.SECONDS);
+        }
+        catch (Exception e) {
+          throw new IllegalStateException("Input distributions were not requested in parallel", e);
+        }
+        return super.getDistribution(dmnModelId, input, variableIndex);
+      }
+    };
+    distributionSource.addDistribution("season", seasonDistribution);
+    distributionSource.addDistribution("hungry", hungryDistribution);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      CanonicalDmnModel model = CanonicalDmnModel.fromDmnModelInstance("table1", readModel("table1.dmn"), distributionSource, null, executor);
+      CanonicalDmnModel sequentialModel = createTable1Engine().getPredictor("table1").getTransformedModel();
+
+      for (String input : new String[]{"season", "hungry"}) {
+        Assert.assertArrayEquals(sequentialModel.getInputTable(input), model.getInputTable(input), TOLERABLE_ASSERT_DELTA);
+      }
+      Assert.assertEquals(sequentialModel.getRuleFactor().getNumEntries(), model.getRuleFactor().getNumEntries());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public static PredictiveDmnEngine createTable1Engine() {
+    MockDistributionSource distributionSource = new MockDistributionSource();
+
+    MockDistribution hungryDistribution = new MockDistribution();
+    hungryDistribution.setProbability("\"yes\"", 0.3d);
+    hungryDistribution.setProbability("\"no\"", 0.7d);
+
+    MockDistribution seasonDistribution = new MockDistribution();
+    seasonDistribution.setProbability("\"Winter\"", 0.4d);
+    seasonDistribution.setProbability("\"Summer\"", 0.6d);
+
+    distributionSource.addDistribution("season", seasonDistribution);
+    distributionSource.addDistribution("hungry", hungryDistribution);
+
+    MockDecisionRepository repository = new MockDecisionRepository();
+    repository.addDecisionModel("table1", readModel("table1.dmn"));
+
+    return new PredictiveDmnEngine(repository, distributionSource);
+  }
+
   protected DmnModelInstance readModelFromClasspath(String resource) {
+    return readModel(resource);
+  }
+
+  public static DmnModelInstance readModel(String resource) {
     return Dmn.readModelFromStream(StandaloneDmnPredictionTest.class.getClassLoader().getResourceAsStream(resource));
   }
 }
@@ -0,0 +1,93 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime;
+
+import static org.camunda.bpm.slacktime.HistoryDistributionSourceTest.createVariableIndex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Thorben Lindhauer
+ *
+ */
+public class VariableIndexTest {
+
+  protected static final double TOLERABLE_ASSERT_DELTA = 0.00001d;
+
+  @Test
+  public void testValueCodesFollowCanonicalOrder() {
+    VariableIndex variableIndex = createVariableIndex();
+
+    Assert.assertEquals(0, variableIndex.getIndex("season", "\"Summer\""));
+    Assert.assertEquals(1, variableIndex.getIndex("season", "\"Winter\""));
+    Assert.assertEquals(VariableIndex.UNKNOWN, variableIndex.getIndex("season", "\"Autumn\""));
+    Assert.assertEquals(4, variableIndex.getCardinality(CanonicalDmnModel.RULE_VARIABLE_NAME));
+
+    int seasonCode = variableIndex.getVariableCode("season");
+    Assert.assertEquals("season", variableIndex.getVariable(seasonCode));
+    Assert.assertEquals("\"Winter\"", variableIndex.getValue(seasonCode, 1));
+  }
+
+  @Test
+  public void testEncodeAndDecodeEvidence() {
+    VariableIndex variableIndex = createVariableIndex();
+
+    Evidence evidence = new Evidence();
+    evidence.submit("hungry", "\"yes\"");
+
+    EncodedEvidence encodedEvidence = variableIndex.encode(evidence);
+    Assert.assertEquals(1, encodedEvidence.getNumObservedVariables());
+    Assert.assertFalse(encodedEvidence.isObserved(variableIndex.getVariableCode("season")));
+    Assert.assertEquals(1, encodedEvidence.getValueCode(variableIndex.getVariableCode("hungry")));
+    Assert.assertEquals(encodedEvidence, variableIndex.encode(evidence));
+
+    Evidence decodedEvidence = variableIndex.decode(encodedEvidence);
+    Assert.assertEquals(evidence.variableAssignment, decodedEvidence.variableAssignment);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEncodeUnknownValue() {
+    Evidence evidence = new Evidence();
+    evidence.submit("season", "\"Autumn\"");
+
+    createVariableIndex().encode(evidence);
+  }
+
+  @Test
+  public void testEncodeIgnoresUnknownAssignments() {
+    VariableIndex variableIndex = createVariableIndex();
+
+    Evidence evidence = new Evidence();
+    evidence.submit("season", "\"Autumn\"");
+    evidence.submit("weather", "\"Sunny\"");
+    evidence.submit("hungry", "\"yes\"");
+
+    EncodedEvidence encodedEvidence = variableIndex.encode(evidence, true);
+    Assert.assertEquals(1, encodedEvidence.getNumObservedVariables());
+    Assert.assertTrue(encodedEvidence.isObserved(variableIndex.getVariableCode("hungry")));
+  }
+
+  @Test
+  public void testEncodedEvidencePosterior() {
+    Predictor predictor = StandaloneDmnPredictionTest.createTable1Engine().getPredictor("table1");
+
+    Evidence evidence = new Evidence();
+    evidence.submit("season", "\"Winter\"");
+    EncodedEvidence encodedEvidence = predictor.getTransformedModel().encode(evidence);
+
+    predictor.setPosteriorCache(null);
+    Assert.assertArrayEquals(predictor.getPosteriorValues("$rule", evidence),
+        predictor.getPosteriorValues("$rule", encodedEvidence), TOLERABLE_ASSERT_DELTA);
+  }
+}
@@ -0,0 +1,80 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.benchmark;
+
+import java.util.Random;
+
+import org.camunda.bpm.model.dmn.DmnModelInstance;
+import org.camunda.bpm.slacktime.CanonicalDmnModel;
+import org.camunda.bpm.slacktime.DecisionRepository;
+import org.camunda.bpm.slacktime.Evidence;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A synthetic decision table, its priors and a transformed model, parameterized by
+ * the size of the table.
+ *
+ * @author Thorben Lindhauer
+ */
+@State(Scope.Benchmark)
+public class DecisionTableState implements DecisionRepository {
+
+  public static final String DECISION_ID = "synthetic";
+  protected static final long SEED = 42L;
+
+  @Param({"2", "4", "8"})
+  public int inputs;
+
+  @Param({"3", "10"})
+  public int valuesPerInput;
+
+  @Param({"10", "100", "300"})
+  public int rules;
+
+  public SyntheticDecisionTable table;
+  public DmnModelInstance modelInstance;
+  public SyntheticDistributionSource distributionSource;
+  public CanonicalDmnModel model;
+
+  // about half of the inputs observed
+  public Evidence evidence;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    table = new SyntheticDecisionTable(inputs, valuesPerInput, rules, SEED);
+    modelInstance = table.toModelInstance();
+    distributionSource = new SyntheticDistributionSource(SEED);
+    model = CanonicalDmnModel.fromDmnModelInstance(DECISION_ID, modelInstance, distributionSource);
+
+    // evidence that is consistent with at least one rule
+    Random random = new Random(SEED);
+    int rule = random.nextInt(table.getNumRules());
+    evidence = new Evidence();
+    for (int i = 0; i < inputs; i += 2) {
+      evidence.submit(SyntheticDecisionTable.inputName(i), SyntheticDecisionTable.value(table.getRuleEntry(rule, i)));
+    }
+  }
+
+  public DmnModelInstance getDecisionModel(String id) {
+    return modelInstance;
+  }
+
+  public String getDecisionKey(String id) {
+    // the model has a single decision
+    return null;
+  }
+}
@@ -0,0 +1,126 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.camunda.bpm.dmn.engine.impl.DefaultDmnEngineConfiguration;
+import org.camunda.bpm.engine.impl.dmn.el.ProcessEngineElProvider;
+import org.camunda.bpm.engine.impl.dmn.entity.repository.DecisionDefinitionEntity;
+import org.camunda.bpm.engine.impl.dmn.transformer.DecisionDefinitionHandler;
+import org.camunda.bpm.engine.impl.el.ExpressionManager;
+import org.camunda.bpm.engine.variable.VariableMap;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.variable.context.VariableContext;
+import org.camunda.bpm.model.dmn.instance.DecisionTable;
+import org.camunda.bpm.slacktime.EncodedEvidence;
+import org.camunda.bpm.slacktime.Evidence;
+import org.camunda.bpm.slacktime.Predictor;
+import org.camunda.bpm.slacktime.processengine.EvidencePlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures generating the evidence of process instances with a compiled {@link EvidencePlan}
+ * and grouping identical evidence for batch prediction. The variables are held in memory, so loading
+ * them from the database is not part of the measurement.
+ *
+ * @author Thorben Lindhauer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvidenceGenerationBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class ProcessInstanceState {
+
+    @Param({"1", "100", "1000"})
+    public int processInstances;
+
+    public EvidencePlan evidencePlan;
+    public List<VariableContext> variables;
+    public Map<String, Evidence> evidenceByProcessInstance;
+    public Predictor predictor;
+
+    @Setup(Level.Trial)
+    public void setUp(DecisionTableState tableState) {
+      // evaluates the input expressions like the process engine does
+      DefaultDmnEngineConfiguration dmnEngineConfiguration = new DefaultDmnEngineConfiguration();
+      dmnEngineConfiguration.setElProvider(new ProcessEngineElProvider(new ExpressionManager()));
+      dmnEngineConfiguration.buildEngine();
+
+      // transforms the table into the decision definition that the process engine caches
+      dmnEngineConfiguration.getTransformer()
+        .getElementTransformHandlerRegistry()
+        .addHandler(DecisionTable.class, new DecisionDefinitionHandler());
+      List<DecisionDefinitionEntity> decisionDefinitions = dmnEngineConfiguration.getTransformer()
+        .createTransform()
+        .modelInstance(tableState.modelInstance)
+        .transformDecisions();
+
+      evidencePlan = EvidencePlan.compile(decisionDefinitions.get(0),
+          dmnEngineConfiguration.getElProvider(), dmnEngineConfiguration.getFeelEngine());
+
+      // every variable has one of the values of the table or one that no rule tests for
+      Random random = new Random(DecisionTableState.SEED);
+      variables = new ArrayList<VariableContext>();
+      for (int i = 0; i < processInstances; i++) {
+        VariableMap processInstanceVariables = Variables.createVariables();
+        for (int input = 0; input < tableState.inputs; input++) {
+          processInstanceVariables.putValue(SyntheticDecisionTable.inputName(input),
+              "value" + random.nextInt(tableState.valuesPerInput + 1));
+        }
+        variables.add(processInstanceVariables.asVariableContext());
+      }
+
+      evidenceByProcessInstance = new LinkedHashMap<String, Evidence>();
+      for (int i = 0; i < variables.size(); i++) {
+        evidenceByProcessInstance.put("processInstance" + i, evidencePlan.generateEvidence(variables.get(i)));
+      }
+
+      predictor = new Predictor(tableState.model, Predictor.InferenceMethod.SINGLE_PASS);
+    }
+  }
+
+  @Benchmark
+  public List<Evidence> generateEvidence(ProcessInstanceState state) {
+    List<Evidence> evidence = new ArrayList<Evidence>(state.variables.size());
+    for (VariableContext processInstanceVariables : state.variables) {
+      evidence.add(state.evidencePlan.generateEvidence(processInstanceVariables));
+    }
+    return evidence;
+  }
+
+  @Benchmark
+  public Map<EncodedEvidence, List<String>> groupByEvidence(ProcessInstanceState state) {
+    return state.predictor.groupByEvidence(state.evidenceByProcessInstance);
+  }
+}
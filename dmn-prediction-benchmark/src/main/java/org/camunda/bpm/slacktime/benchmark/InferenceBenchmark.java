@@ -0,0 +1,77 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.camunda.bpm.slacktime.CanonicalDmnModel;
+import org.camunda.bpm.slacktime.Distribution;
+import org.camunda.bpm.slacktime.Predictor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures posterior queries with the posterior cache disabled, so that every
+ * invocation runs inference.
+ *
+ * @author Thorben Lindhauer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InferenceBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class PredictorState {
+
+    @Param({"SINGLE_PASS", "CLIQUE_TREE", "PRECOMPILED"})
+    public Predictor.InferenceMethod inferenceMethod;
+
+    public Predictor predictor;
+
+    @Setup(Level.Trial)
+    public void setUp(DecisionTableState tableState) {
+      predictor = new Predictor(tableState.model, inferenceMethod);
+      predictor.setPosteriorCache(null);
+    }
+  }
+
+  @Benchmark
+  public double rulePosteriorOfAllValues(DecisionTableState tableState, PredictorState predictorState) {
+    Distribution posterior = predictorState.predictor.getPosterior(CanonicalDmnModel.RULE_VARIABLE_NAME, tableState.evidence);
+
+    double sum = 0.0d;
+    for (String value : posterior.getValues()) {
+      sum += posterior.getProbability(value);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public Map<String, Distribution> posteriorsOfAllVariables(DecisionTableState tableState, PredictorState predictorState) {
+    return predictorState.predictor.getPosteriors(tableState.evidence);
+  }
+}
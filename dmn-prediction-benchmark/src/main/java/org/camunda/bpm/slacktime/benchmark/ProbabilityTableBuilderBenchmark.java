@@ -0,0 +1,109 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.camunda.bpm.slacktime.CanonicalDmnModel;
+import org.camunda.bpm.slacktime.ProbabilityTableBuilder;
+import org.camunda.bpm.slacktime.RuleFactor;
+import org.camunda.bpm.slacktime.VariableIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building the dense rule table with {@link ProbabilityTableBuilder}. The table
+ * spans the whole network scope, so this uses smaller tables than the other benchmarks.
+ *
+ * @author Thorben Lindhauer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProbabilityTableBuilderBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class SmallDecisionTableState {
+
+    @Param({"2", "4", "6"})
+    public int inputs;
+
+    @Param({"3", "5"})
+    public int valuesPerInput;
+
+    @Param({"10", "100"})
+    public int rules;
+
+    public CanonicalDmnModel model;
+
+    // string assignments of all rules for the map based builder method
+    public List<Map<String, String>> ruleAssignments;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      SyntheticDecisionTable table = new SyntheticDecisionTable(inputs, valuesPerInput, rules, DecisionTableState.SEED);
+      model = CanonicalDmnModel.fromDmnModelInstance(DecisionTableState.DECISION_ID,
+          table.toModelInstance(), new SyntheticDistributionSource(DecisionTableState.SEED));
+
+      VariableIndex variableIndex = model.getVariableIndex();
+      RuleFactor ruleFactor = model.getRuleFactor();
+      String[] variables = ruleFactor.getScope().getVariableIds();
+
+      ruleAssignments = new ArrayList<Map<String, String>>();
+      for (int entry = 0; entry < ruleFactor.getNumEntries(); entry++) {
+        int[] assignment = ruleFactor.getAssignment(entry);
+
+        Map<String, String> ruleAssignment = new HashMap<String, String>();
+        for (int i = 0; i < variables.length; i++) {
+          int variableCode = variableIndex.getVariableCode(variables[i]);
+          ruleAssignment.put(variables[i], variableIndex.getValue(variableCode, assignment[i]));
+        }
+        ruleAssignments.add(ruleAssignment);
+      }
+    }
+  }
+
+  @Benchmark
+  public double[] buildFromValueCodes(SmallDecisionTableState state) {
+    CanonicalDmnModel model = state.model;
+    return model.getRuleFactor().toDenseTable(model.getVariableIndex());
+  }
+
+  @Benchmark
+  public double[] buildFromStringAssignments(SmallDecisionTableState state) {
+    CanonicalDmnModel model = state.model;
+    ProbabilityTableBuilder tableBuilder = new ProbabilityTableBuilder(model.getNetworkScope(), model.getVariableIndex());
+
+    for (Map<String, String> ruleAssignment : state.ruleAssignments) {
+      tableBuilder.submitValue(ruleAssignment, 1.0d);
+    }
+
+    return tableBuilder.getTable();
+  }
+}
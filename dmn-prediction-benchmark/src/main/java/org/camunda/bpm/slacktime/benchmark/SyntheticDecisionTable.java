@@ -0,0 +1,131 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.camunda.bpm.model.dmn.Dmn;
+import org.camunda.bpm.model.dmn.DmnModelInstance;
+
+/**
+ * Generates decision tables with a given number of inputs, distinct values per input and
+ * rules. Every rule has a distinct combination of string literal entries, so the tables satisfy the
+ * UNIQUE hit policy.
+ *
+ * @author Thorben Lindhauer
+ */
+public class SyntheticDecisionTable {
+
+  protected int numInputs;
+  protected int numValuesPerInput;
+
+  // per rule the value number of each input
+  protected int[][] ruleEntries;
+
+  public SyntheticDecisionTable(int numInputs, int numValuesPerInput, int numRules, long seed) {
+    this.numInputs = numInputs;
+    this.numValuesPerInput = numValuesPerInput;
+
+    long numCombinations = 1;
+    for (int i = 0; i < numInputs && numCombinations < numRules; i++) {
+      numCombinations *= numValuesPerInput;
+    }
+
+    int actualNumRules = (int) Math.min(numRules, numCombinations);
+    ruleEntries = new int[actualNumRules][];
+
+    Random random = new Random(seed);
+    Set<String> usedCombinations = new HashSet<String>();
+
+    for (int rule = 0; rule < actualNumRules; rule++) {
+      int[] entries = new int[numInputs];
+      do {
+        for (int i = 0; i < numInputs; i++) {
+          entries[i] = random.nextInt(numValuesPerInput);
+        }
+      } while (!usedCombinations.add(Arrays.toString(entries)));
+
+      ruleEntries[rule] = entries;
+    }
+  }
+
+  public static String inputName(int input) {
+    return "input" + input;
+  }
+
+  /**
+   * @return the input entry text of the value, i.e. a quoted string literal
+   */
+  public static String value(int value) {
+    return "\"value" + value + "\"";
+  }
+
+  public int getNumInputs() {
+    return numInputs;
+  }
+
+  public int getNumValuesPerInput() {
+    return numValuesPerInput;
+  }
+
+  public int getNumRules() {
+    return ruleEntries.length;
+  }
+
+  public int getRuleEntry(int rule, int input) {
+    return ruleEntries[rule][input];
+  }
+
+  public DmnModelInstance toModelInstance() {
+    StringBuilder xml = new StringBuilder();
+    xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    xml.append("<definitions xmlns=\"http://www.omg.org/spec/DMN/20151101/dmn11.xsd\" id=\"definitions\" ")
+      .append("name=\"definitions\" namespace=\"http://camunda.org/schema/1.0/dmn\">\n");
+    xml.append("  <decision id=\"decision\" name=\"synthetic\">\n");
+    xml.append("    <decisionTable id=\"decisionTable\">\n");
+
+    for (int i = 0; i < numInputs; i++) {
+      xml.append("      <input id=\"input").append(i).append("\" label=\"").append(inputName(i)).append("\">\n");
+      xml.append("        <inputExpression id=\"inputExpression").append(i).append("\" typeRef=\"string\">")
+        .append("<text>").append(inputName(i)).append("</text></inputExpression>\n");
+      xml.append("      </input>\n");
+    }
+    xml.append("      <output id=\"output\" label=\"result\" name=\"result\" typeRef=\"string\" />\n");
+
+    for (int rule = 0; rule < ruleEntries.length; rule++) {
+      xml.append("      <rule id=\"rule").append(rule).append("\">\n");
+      for (int i = 0; i < numInputs; i++) {
+        xml.append("        <inputEntry id=\"inputEntry").append(rule).append("_").append(i).append("\">")
+          .append("<text><![CDATA[").append(value(ruleEntries[rule][i])).append("]]></text></inputEntry>\n");
+      }
+      xml.append("        <outputEntry id=\"outputEntry").append(rule).append("\">")
+        .append("<text><![CDATA[\"").append(rule).append("\"]]></text></outputEntry>\n");
+      xml.append("      </rule>\n");
+    }
+
+    xml.append("    </decisionTable>\n");
+    xml.append("  </decision>\n");
+    xml.append("</definitions>\n");
+
+    try {
+      return Dmn.readModelFromStream(new ByteArrayInputStream(xml.toString().getBytes("UTF-8")));
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.camunda.bpm.slacktime.Distribution;
+import org.camunda.bpm.slacktime.DistributionSource;
+import org.camunda.bpm.slacktime.MaterializedDistribution;
+import org.camunda.bpm.slacktime.VariableIndex;
+
+/**
+ * Provides random but reproducible priors for all variables of a model.
+ *
+ * @author Thorben Lindhauer
+ */
+public class SyntheticDistributionSource implements DistributionSource {
+
+  protected long seed;
+
+  public SyntheticDistributionSource(long seed) {
+    this.seed = seed;
+  }
+
+  public Distribution getDistribution(String dmnModelId, String variable, VariableIndex variableIndex) {
+    return createDistribution(variable, variableIndex, new Random(seed + variable.hashCode()));
+  }
+
+  public Map<String, Distribution> getDistributions(String dmnModelId, VariableIndex variableIndex) {
+    Map<String, Distribution> distributions = new HashMap<String, Distribution>();
+    for (String variable : variableIndex.getVariables()) {
+      distributions.put(variable, getDistribution(dmnModelId, variable, variableIndex));
+    }
+    return distributions;
+  }
+
+  protected Distribution createDistribution(String variable, VariableIndex variableIndex, Random random) {
+    double[] probabilities = new double[variableIndex.getCardinality(variable)];
+
+    double sum = 0.0d;
+    for (int i = 0; i < probabilities.length; i++) {
+      // bounded away from zero so that no value is impossible
+      probabilities[i] = 0.1d + random.nextDouble();
+      sum += probabilities[i];
+    }
+    for (int i = 0; i < probabilities.length; i++) {
+      probabilities[i] /= sum;
+    }
+
+    return new MaterializedDistribution(variable, probabilities, variableIndex);
+  }
+}
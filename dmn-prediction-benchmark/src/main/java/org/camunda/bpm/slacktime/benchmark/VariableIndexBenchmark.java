@@ -0,0 +1,57 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.camunda.bpm.slacktime.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.camunda.bpm.slacktime.EncodedEvidence;
+import org.camunda.bpm.slacktime.VariableIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures encoding values and evidence with the {@link VariableIndex} of a model.
+ *
+ * @author Thorben Lindhauer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariableIndexBenchmark {
+
+  @Benchmark
+  public int lookUpAllRuleEntries(DecisionTableState state) {
+    VariableIndex variableIndex = state.model.getVariableIndex();
+    SyntheticDecisionTable table = state.table;
+
+    int sum = 0;
+    for (int rule = 0; rule < table.getNumRules(); rule++) {
+      for (int i = 0; i < table.getNumInputs(); i++) {
+        sum += variableIndex.getIndex(SyntheticDecisionTable.inputName(i), SyntheticDecisionTable.value(table.getRuleEntry(rule, i)));
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public EncodedEvidence encodeEvidence(DecisionTableState state) {
+    return state.model.encode(state.evidence);
+  }
+}